@@ -0,0 +1,132 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.benchmark;
+
+import cz.jirutka.rsql.parser.RSQLParser;
+import cz.jirutka.rsql.parser.ast.Node;
+import cz.jirutka.rsql.parser.eval.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares evaluation of a filter on a batch of rows: row by row with a compiled
+ * {@link Predicate}, and all at once with the {@link ColumnarEvaluator}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class EvaluationBenchmark {
+
+    private static final String[] STATUSES = { "new", "open", "closed", "archived" };
+
+    @Param({ "65536" })
+    public int rows;
+
+    @Param({ "price=gt=50;status=in=(new,open),quantity=le=3" })
+    public String query;
+
+    private Node node;
+
+    private long[] quantity;
+    private double[] price;
+    private int[] status;
+
+    private ColumnSource source;
+
+    private Predicate<Cursor> predicate;
+
+    private final ColumnarEvaluator evaluator = new ColumnarEvaluator();
+
+    private long[] selection;
+
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        quantity = new long[rows];
+        price = new double[rows];
+        status = new int[rows];
+
+        for (int i = 0; i < rows; i++) {
+            quantity[i] = random.nextInt(20);
+            price[i] = random.nextDouble() * 100;
+            status[i] = random.nextInt(STATUSES.length);
+        }
+        node = new RSQLParser().parse(query);
+
+        source = new ColumnSource() {
+            public int getRowCount() { return rows; }
+            public Column getColumn(String selector) {
+                switch (selector) {
+                    case "quantity": return Column.of(quantity);
+                    case "price": return Column.of(price);
+                    case "status": return Column.dictionary(status, STATUSES);
+                    default: return null;
+                }
+            }
+        };
+        predicate = new PredicateCompiler<Cursor>()
+            .withAccessor("quantity", new LongAccessor<Cursor>() {
+                public long getLong(Cursor c) { return quantity[c.row]; }
+            })
+            .withAccessor("price", new DoubleAccessor<Cursor>() {
+                public double getDouble(Cursor c) { return price[c.row]; }
+            })
+            .withAccessor("status", new ObjectAccessor<Cursor, String>() {
+                public String get(Cursor c) { return STATUSES[status[c.row]]; }
+                public String convert(String argument) { return argument; }
+            })
+            .compile(node);
+
+        selection = new long[(rows + 63) / 64];
+    }
+
+    @Benchmark
+    public int rowByRow() {
+        Cursor cursor = new Cursor();
+        int count = 0;
+        for (cursor.row = 0; cursor.row < rows; cursor.row++) {
+            if (predicate.test(cursor)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long[] columnar() {
+        evaluator.evaluate(node, source, selection);
+        return selection;
+    }
+
+
+    static final class Cursor {
+        int row;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.benchmark;
+
+import cz.jirutka.rsql.parser.RSQLParser;
+import cz.jirutka.rsql.parser.ast.Node;
+import cz.jirutka.rsql.parser.eval.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares filtering of in-memory objects by testing each one with a compiled
+ * {@link Predicate}, and by the indexes of an {@link IndexedCollection}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class IndexedCollectionBenchmark {
+
+    private static final String[] STATUSES = { "new", "open", "closed", "archived" };
+
+    @Param({ "1000000" })
+    public int rows;
+
+    @Param({ "customer==c42;price=gt=50", "status=in=(new,open);quantity=le=3,customer==c7" })
+    public String query;
+
+    private List<Item> items;
+
+    private Predicate<Item> predicate;
+
+    private IndexedCollection<Item> collection;
+
+    private Node node;
+
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        items = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            items.add(new Item("c" + random.nextInt(10000), STATUSES[random.nextInt(STATUSES.length)],
+                    random.nextInt(20), random.nextDouble() * 100));
+        }
+        ObjectAccessor<Item, String> customer = new ObjectAccessor<Item, String>() {
+            public String get(Item item) { return item.customer; }
+            public String convert(String argument) { return argument; }
+        };
+        ObjectAccessor<Item, String> status = new ObjectAccessor<Item, String>() {
+            public String get(Item item) { return item.status; }
+            public String convert(String argument) { return argument; }
+        };
+        LongAccessor<Item> quantity = new LongAccessor<Item>() {
+            public long getLong(Item item) { return item.quantity; }
+        };
+        DoubleAccessor<Item> price = new DoubleAccessor<Item>() {
+            public double getDouble(Item item) { return item.price; }
+        };
+        node = new RSQLParser().parse(query);
+
+        predicate = new PredicateCompiler<Item>()
+            .withAccessor("customer", customer)
+            .withAccessor("status", status)
+            .withAccessor("quantity", quantity)
+            .withAccessor("price", price)
+            .compile(node);
+
+        collection = IndexedCollection.of(items)
+            .withHashIndex("customer", customer)
+            .withHashIndex("status", status)
+            .withSortedIndex("quantity", quantity)
+            .withSortedIndex("price", price);
+    }
+
+    @Benchmark
+    public int scan() {
+        int count = 0;
+        for (Item item : items) {
+            if (predicate.test(item)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int indexed() {
+        return collection.select(node).cardinality();
+    }
+
+
+    static final class Item {
+        final String customer;
+        final String status;
+        final long quantity;
+        final double price;
+
+        Item(String customer, String status, long quantity, double price) {
+            this.customer = customer;
+            this.status = status;
+            this.quantity = quantity;
+            this.price = price;
+        }
+    }
+}
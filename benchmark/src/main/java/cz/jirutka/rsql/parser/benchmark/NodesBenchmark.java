@@ -0,0 +1,148 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.benchmark;
+
+import cz.jirutka.rsql.parser.RSQLParser;
+import cz.jirutka.rsql.parser.ast.ComparisonNode;
+import cz.jirutka.rsql.parser.ast.Fingerprint;
+import cz.jirutka.rsql.parser.ast.LogicalNode;
+import cz.jirutka.rsql.parser.ast.Node;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of commonly used operations on the parsed AST: accessors of
+ * {@link ComparisonNode} and {@link LogicalNode} (copying and indexed), {@code equals}/{@code hashCode} that are
+ * used when the nodes serve as map keys, and {@link Fingerprint} compared with hashing of {@code toString()}.
+ *
+ * <p>Run with <tt>-prof gc</tt> to see how much garbage the accessors produce.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class NodesBenchmark {
+
+    @Param({ "TYPICAL", "LONG_IN_LIST" })
+    public Queries query;
+
+    private Node root;
+
+    private Node rootCopy;
+
+    private ComparisonNode comparison;
+
+    private LogicalNode logical;
+
+
+    @Setup
+    public void setup() {
+        RSQLParser parser = new RSQLParser();
+
+        root = parser.parse(query.query());
+        rootCopy = parser.parse(query.query());
+        comparison = findComparison(root);
+        // a single comparison has no logical node, so use the typical query for that
+        logical = (LogicalNode) (root instanceof LogicalNode ? root : parser.parse(Queries.TYPICAL.query()));
+    }
+
+    @Benchmark
+    public void comparisonAccessors(Blackhole bh) {
+        bh.consume(comparison.getSelector());
+        bh.consume(comparison.getOperator());
+        bh.consume(comparison.getArguments());
+    }
+
+    @Benchmark
+    public void comparisonIndexedAccessors(Blackhole bh) {
+        bh.consume(comparison.getSelector());
+        bh.consume(comparison.getOperator());
+        for (int i = 0; i < comparison.getArgumentCount(); i++) {
+            bh.consume(comparison.getArgument(i));
+        }
+    }
+
+    @Benchmark
+    public void logicalAccessors(Blackhole bh) {
+        bh.consume(logical.getOperator());
+        bh.consume(logical.getChildren());
+    }
+
+    @Benchmark
+    public void logicalIndexedAccessors(Blackhole bh) {
+        bh.consume(logical.getOperator());
+        for (int i = 0; i < logical.getChildCount(); i++) {
+            bh.consume(logical.getChild(i));
+        }
+    }
+
+    @Benchmark
+    public void logicalIterator(Blackhole bh) {
+        for (Node child : logical) {
+            bh.consume(child);
+        }
+    }
+
+    @Benchmark
+    public boolean treeEquals() {
+        return root.equals(rootCopy);
+    }
+
+    @Benchmark
+    public int treeHashCode() {
+        return root.hashCode();
+    }
+
+    @Benchmark
+    public int comparisonHashCode() {
+        return comparison.hashCode();
+    }
+
+    @Benchmark
+    public Fingerprint fingerprint() {
+        return Fingerprint.of(root);
+    }
+
+    @Benchmark
+    public Fingerprint shapeFingerprint() {
+        return Fingerprint.ofShape(root, true);
+    }
+
+    @Benchmark
+    public int toStringHashCode() {
+        return root.toString().hashCode();
+    }
+
+
+    private static ComparisonNode findComparison(Node node) {
+        while (node instanceof LogicalNode) {
+            node = ((LogicalNode) node).iterator().next();
+        }
+        return (ComparisonNode) node;
+    }
+}
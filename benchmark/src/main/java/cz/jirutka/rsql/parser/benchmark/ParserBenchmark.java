@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.benchmark;
+
+import cz.jirutka.rsql.parser.RSQLParser;
+import cz.jirutka.rsql.parser.ast.Node;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures throughput and latency of {@link RSQLParser#parse(String)} and
+ * {@link RSQLParser#parse(byte[])} for the sample {@linkplain Queries queries}, and of the
+ * {@linkplain RSQLParser#withIterativeParsing(boolean) iterative} parsing mode.
+ *
+ * <p>Run with the GC profiler to measure allocation per parse:
+ * <pre>{@code
+ * java -jar target/benchmarks.jar ParserBenchmark -prof gc
+ * }</pre>
+ * See <tt>gc.alloc.rate.norm</tt> (bytes per operation) in the results.</p>
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+    @Param
+    public Queries query;
+
+    private RSQLParser parser;
+
+    private RSQLParser iterativeParser;
+
+    private String input;
+
+    private byte[] utf8Input;
+
+
+    @Setup
+    public void setup() {
+        parser = new RSQLParser();
+        iterativeParser = parser.withIterativeParsing(true);
+        input = query.query();
+        utf8Input = input.getBytes(Charset.forName("UTF-8"));
+    }
+
+    @Benchmark
+    public Node parse() {
+        return parser.parse(input);
+    }
+
+    @Benchmark
+    public Node parseUtf8() {
+        return parser.parse(utf8Input);
+    }
+
+    @Benchmark
+    public Node parseIterative() {
+        return iterativeParser.parse(input);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.benchmark;
+
+/**
+ * Sample RSQL queries used by the benchmarks. All queries are generated deterministically, so
+ * results of different runs (and releases) are comparable.
+ */
+public enum Queries {
+
+    /**
+     * A typical short filter as sent by a web UI.
+     */
+    SHORT {
+        String build() {
+            return "name==\"Kill Bill\";year=gt=2003";
+        }
+    },
+
+    /**
+     * A mix of operators in both notations with a few groups.
+     */
+    TYPICAL {
+        String build() {
+            return "genres=in=(sci-fi,action) and (director=='Christopher Nolan' or actor==*Bale)"
+                    + " and year>=2000;year<2010,rating=ge=7.5";
+        }
+    },
+
+    /**
+     * 64 levels of nested groups alternating AND and OR.
+     */
+    DEEP_NESTING {
+        String build() {
+            int depth = 64;
+            StringBuilder sb = new StringBuilder(depth * 16);
+
+            for (int i = 0; i < depth; i++) {
+                sb.append("(s").append(i).append("==a").append(i);
+                sb.append(i % 2 == 0 ? ';' : ',');
+            }
+            sb.append("leaf==x");
+            for (int i = 0; i < depth; i++) {
+                sb.append(')');
+            }
+            return sb.toString();
+        }
+    },
+
+    /**
+     * An <tt>=in=</tt> comparison with 1000 arguments, such as machine-generated filters.
+     */
+    LONG_IN_LIST {
+        String build() {
+            int count = 1000;
+            StringBuilder sb = new StringBuilder(count * 8);
+
+            sb.append("id=in=(");
+            for (int i = 0; i < count; i++) {
+                if (i > 0) sb.append(',');
+                sb.append(100000 + i);
+            }
+            return sb.append(')').toString();
+        }
+    },
+
+    /**
+     * Single and double quoted arguments with escaped quotes and backslashes.
+     */
+    QUOTED_ESCAPED {
+        String build() {
+            return "title=='The \\'Dark\\' Knight';note==\"say \\\"hi\\\" to C:\\\\temp\""
+                    + ";tags=in=('a b',\"c,d\",'(e)');quote=='6*7=42'";
+        }
+    },
+
+    /**
+     * Selectors and arguments with non-ASCII characters.
+     */
+    NON_ASCII {
+        String build() {
+            return "název==\"Příliš žluťoučký kůň\";město=in=(Praha,Brno,Plzeň,Ústí)"
+                    + ";名前=='東京';emoji==\u263A\uD83D\uDE00";
+        }
+    };
+
+
+    private final String query = build();
+
+    abstract String build();
+
+    /**
+     * Returns the query string.
+     */
+    public String query() {
+        return query;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.benchmark;
+
+import cz.jirutka.rsql.parser.RSQLParser;
+import cz.jirutka.rsql.parser.ast.ComparisonNode;
+import cz.jirutka.rsql.parser.ast.LogicalNode;
+import cz.jirutka.rsql.parser.ast.Node;
+import cz.jirutka.rsql.parser.sql.SQLGenerator;
+import cz.jirutka.rsql.parser.sql.SQLQuery;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures generating of SQL by {@link SQLGenerator} with and without the cache of shapes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class SQLGeneratorBenchmark {
+
+    @Param
+    public Queries query;
+
+    private SQLGenerator cached;
+
+    private SQLGenerator uncached;
+
+    private Node node;
+
+
+    @Setup
+    public void setup() {
+        node = new RSQLParser().parse(query.query());
+        cached = withColumns(new SQLGenerator(), node);
+        uncached = cached.withCacheSize(0);
+    }
+
+    @Benchmark
+    public SQLQuery generateCached() {
+        return cached.generate(node);
+    }
+
+    @Benchmark
+    public SQLQuery generateUncached() {
+        return uncached.generate(node);
+    }
+
+
+    private static SQLGenerator withColumns(SQLGenerator generator, Node node) {
+        if (node instanceof ComparisonNode) {
+            String selector = ((ComparisonNode) node).getSelector();
+            return generator.withColumn(selector, '"' + selector + '"');
+        }
+        for (Node child : (LogicalNode) node) {
+            generator = withColumns(generator, child);
+        }
+        return generator;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Parses a batch of queries in parallel. The batch is split into chunks that are claimed by
+ * the workers (and the calling thread) one at a time, so a slow chunk doesn't hold up the
+ * others. Each worker parses with the {@link ParserContext} of its thread, so the parser state
+ * is reused across the chunks, and all of them share the operators of the {@link RSQLParser}.
+ */
+@ThreadSafe
+final class BulkParser {
+
+    /**
+     * Each worker should get several chunks to balance the load, but a chunk should be big
+     * enough to amortize claiming it.
+     */
+    private static final int CHUNKS_PER_WORKER = 8,
+                             MIN_CHUNK_SIZE = 16,
+                             MAX_CHUNK_SIZE = 1024;
+
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+
+    /**
+     * Returns the pool used when no executor is given. It's created on the first use; its
+     * threads are daemons, so it doesn't prevent the JVM from exiting.
+     */
+    static Executor defaultExecutor() {
+        return DefaultPool.INSTANCE;
+    }
+
+    /**
+     * Parses all the queries using the given parser and executor.
+     *
+     * @return The results in the order of the queries.
+     */
+    static List<ParseResult> parseAll(RSQLParser parser, CharSequence[] queries, Executor executor) {
+        ParseResult[] results = new ParseResult[queries.length];
+        int chunkSize = Math.max(MIN_CHUNK_SIZE,
+                Math.min(MAX_CHUNK_SIZE, queries.length / (PARALLELISM * CHUNKS_PER_WORKER)));
+        int chunks = (queries.length + chunkSize - 1) / chunkSize;
+
+        Batch batch = new Batch(parser, queries, results, chunkSize, chunks);
+
+        // the caller parses too, so a single chunk doesn't need any worker
+        for (int i = 1; i < Math.min(chunks, PARALLELISM); i++) {
+            try {
+                executor.execute(batch);
+            } catch (RejectedExecutionException ex) {
+                break;  // the caller will do the rest
+            }
+        }
+        batch.run();
+        batch.await();
+
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+
+    private static final class Batch implements Runnable {
+
+        private final RSQLParser parser;
+        private final CharSequence[] queries;
+        private final ParseResult[] results;
+        private final int chunkSize;
+        private final int chunks;
+
+        private final AtomicInteger nextChunk = new AtomicInteger();
+        private final CountDownLatch remaining;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Batch(RSQLParser parser, CharSequence[] queries, ParseResult[] results, int chunkSize, int chunks) {
+            this.parser = parser;
+            this.queries = queries;
+            this.results = results;
+            this.chunkSize = chunkSize;
+            this.chunks = chunks;
+            this.remaining = new CountDownLatch(chunks);
+        }
+
+        public void run() {
+            int chunk;
+            while ((chunk = nextChunk.getAndIncrement()) < chunks) {
+                try {
+                    if (failure.get() == null) {
+                        parse(chunk * chunkSize, Math.min(queries.length, (chunk + 1) * chunkSize));
+                    }
+                } catch (Throwable ex) {
+                    // e.g. OutOfMemoryError, the failures of parsing are in the results
+                    failure.compareAndSet(null, ex);
+                } finally {
+                    remaining.countDown();
+                }
+            }
+        }
+
+        private void parse(int from, int to) {
+            for (int i = from; i < to; i++) {
+                CharSequence query = queries[i];
+                try {
+                    results[i] = new ParseResult(query, parser.parse(query), null);
+                } catch (RSQLParserException ex) {
+                    results[i] = new ParseResult(query, null, ex);
+                }
+            }
+        }
+
+        /**
+         * Waits until all the chunks are parsed (the results are then visible to the caller),
+         * and rethrows an unexpected failure of any worker.
+         */
+        void await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    remaining.await();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;  // the chunks in progress cannot be cancelled
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            Throwable ex = failure.get();
+            if (ex instanceof RuntimeException) {
+                throw (RuntimeException) ex;
+            } else if (ex instanceof Error) {
+                throw (Error) ex;
+            } else if (ex != null) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    private static final class DefaultPool {
+        static final ForkJoinPool INSTANCE = new ForkJoinPool();
+    }
+}
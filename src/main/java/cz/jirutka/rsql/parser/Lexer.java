@@ -0,0 +1,404 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser;
+
+import cz.jirutka.rsql.parser.ast.ComparisonOperator;
+
+/**
+ * Hand-written lexer of the RSQL that accepts exactly the same tokens as the token manager
+ * generated by JavaCC from the reference grammar (<tt>src/test/javacc/RSQLParser.jj</tt>),
+ * including the longest match rule, but doesn't create any objects per token. The current
+ * token is described just by its {@link #kind()} (one of the {@link TokenKinds}) and its
+ * position in the input.
+ *
+ * <p>Comparison operators are resolved while lexing by walking the {@link OperatorTrie}, see
+ * {@link #operator()}.</p>
+ */
+final class Lexer implements TokenKinds {
+
+    // Char classes of the ASCII chars; any other char is unreserved.
+    private static final byte
+            UNRESERVED = 0,
+            RESERVED = 1,
+            ALPHA_CHAR = 2;
+
+    private static final byte[] CHAR_CLASS = new byte[128];
+
+    static {
+        for (char c : new char[]{ '"', '\'', '(', ')', ';', ',', '=', '<', '>', '!', '~', ' ' }) {
+            CHAR_CLASS[c] = RESERVED;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            CHAR_CLASS[c] = ALPHA_CHAR;
+            CHAR_CLASS[c - 'a' + 'A'] = ALPHA_CHAR;
+        }
+    }
+
+    private ParserInput input;
+
+    private OperatorTrie operators;
+
+    private int length;
+
+    private int position;
+
+    private int kind;
+
+    private int tokenBegin;
+
+    private int tokenEnd;
+
+    private boolean tokenEscaped;
+
+    private ComparisonOperator tokenOperator;
+
+    /**
+     * Number of distinct tokens read so far (tokens read again after {@link #rewind(int)} are
+     * not counted), and the end of the furthest one.
+     */
+    private int tokenCount, furthestEnd;
+
+    /**
+     * Position of the last error reported by this lexer, or <tt>-1</tt>.
+     */
+    private int errorOffset;
+
+
+    /**
+     * Resets this lexer to read from the beginning of the given input and resolve the given
+     * operators, or releases the current input if <tt>null</tt>.
+     */
+    void reset(ParserInput input, OperatorTrie operators) {
+        this.input = input;
+        this.operators = operators;
+        this.tokenOperator = null;
+        this.length = input != null ? input.length() : 0;
+        this.position = 0;
+        this.kind = EOF;
+        this.tokenCount = 0;
+        this.furthestEnd = 0;
+        this.errorOffset = -1;
+    }
+
+
+    /**
+     * Reads the next token.
+     *
+     * @return Kind of the read token.
+     * @throws ParseException If no token can be matched at the current position.
+     */
+    int next() throws ParseException {
+        while (true) {
+            int pos = position;
+            if (pos >= length) {
+                return token(EOF, pos, pos);
+            }
+            char c = input.charAt(pos);
+
+            switch (c) {
+                case ' ':
+                    if (matches(pos + 1, "and ")) {
+                        return token(AND, pos, pos + 5);
+                    }
+                    if (matches(pos + 1, "or ")) {
+                        return token(OR, pos, pos + 4);
+                    }
+                    position++;  // skip
+                    continue;
+
+                case '\t':
+                    // Tab is both skipped and unreserved, the longer match wins.
+                    int end = scanUnreserved(pos + 1);
+                    if (end == pos + 1) {
+                        position++;  // skip
+                        continue;
+                    }
+                    return token(UNRESERVED_STR, pos, end);
+
+                case ';': return token(AND, pos, pos + 1);
+                case ',': return token(OR, pos, pos + 1);
+                case '(': return token(LPAREN, pos, pos + 1);
+                case ')': return token(RPAREN, pos, pos + 1);
+
+                case '\'':
+                case '"':
+                    return scanQuoted(pos, c);
+
+                case '=':
+                    int state = operators.next(OperatorTrie.ROOT, c);
+                    int i = pos + 1;
+                    char ch;
+                    while (i < length && isAlpha(ch = input.charAt(i))) {
+                        state = operators.next(state, ch);
+                        i++;
+                    }
+                    if (i < length && input.charAt(i) == '=') {
+                        return operatorToken(COMP_FIQL, pos, i + 1, operators.next(state, '='));
+                    }
+                    throw lexicalError(i);
+
+                case '!':
+                    if (pos + 1 < length && input.charAt(pos + 1) == '=') {
+                        return operatorToken(COMP_FIQL, pos, pos + 2,
+                                operators.next(operators.next(OperatorTrie.ROOT, '!'), '='));
+                    }
+                    throw lexicalError(pos + 1);
+
+                case '<':
+                case '>':
+                    state = operators.next(OperatorTrie.ROOT, c);
+                    if (pos + 1 < length && input.charAt(pos + 1) == '=') {
+                        return operatorToken(COMP_ALT, pos, pos + 2, operators.next(state, '='));
+                    }
+                    return operatorToken(COMP_ALT, pos, pos + 1, state);
+
+                default:
+                    if (isReserved(c)) {
+                        throw lexicalError(pos);
+                    }
+                    return token(UNRESERVED_STR, pos, scanUnreserved(pos + 1));
+            }
+        }
+    }
+
+    /**
+     * Moves back to the token that begins at the given position (as returned by
+     * {@link #tokenBegin()} earlier) and reads it again. It's used for lookahead.
+     */
+    int rewind(int tokenBegin) throws ParseException {
+        this.position = tokenBegin;
+        return next();
+    }
+
+    /**
+     * Returns kind of the current token.
+     */
+    int kind() {
+        return kind;
+    }
+
+    /**
+     * Returns position of the first char of the current token.
+     */
+    int tokenBegin() {
+        return tokenBegin;
+    }
+
+    /**
+     * Returns position after the last char of the current token.
+     */
+    int tokenEnd() {
+        return tokenEnd;
+    }
+
+    /**
+     * Returns number of the tokens read from the input, excluding {@link #EOF}.
+     */
+    int tokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * Returns position of the last error created by this lexer, or <tt>-1</tt> if there's none.
+     */
+    int errorOffset() {
+        return errorOffset;
+    }
+
+    /**
+     * Sets position of an error found by the parser, or <tt>-1</tt> to forget the last error
+     * (e.g. if it has been handled).
+     */
+    void errorOffset(int offset) {
+        errorOffset = offset;
+    }
+
+    /**
+     * Returns the operator of the current {@link #COMP_FIQL} or {@link #COMP_ALT} token, or
+     * <tt>null</tt> if it's not one of the supported operators.
+     */
+    ComparisonOperator operator() {
+        return tokenOperator;
+    }
+
+    /**
+     * Returns image of the current token.
+     */
+    String image() {
+        return input.substring(tokenBegin, tokenEnd);
+    }
+
+    /**
+     * Returns the value of the current token; for the quoted strings without the quotes and
+     * with unescaped chars, otherwise just the image.
+     */
+    String value() {
+        if (kind != SINGLE_QUOTED_STR && kind != DOUBLE_QUOTED_STR) {
+            return image();
+        }
+        String str = input.substring(tokenBegin + 1, tokenEnd - 1);
+
+        return tokenEscaped ? unescape(str) : str;
+    }
+
+
+    /**
+     * Creates an exception reporting that the current token is not of the expected kinds.
+     */
+    ParseException unexpected(int... expectedKinds) {
+        StringBuilder expected = new StringBuilder();
+        for (int k : expectedKinds) {
+            if (expected.length() > 0) {
+                expected.append(", ");
+            }
+            expected.append(tokenImage[k]);
+        }
+        String encountered = kind == EOF
+                ? tokenImage[EOF]
+                : "\"" + escape(image()) + "\"";
+
+        errorOffset = tokenBegin;
+        return new ParseException(String.format(
+                "Encountered %s at column %d. Was expecting one of: %s",
+                encountered, tokenBegin + 1, expected));
+    }
+
+
+    private int token(int kind, int begin, int end) {
+        if (kind != EOF && end > furthestEnd) {
+            tokenCount++;
+            furthestEnd = end;
+        }
+        this.kind = kind;
+        this.tokenBegin = begin;
+        this.tokenEnd = end;
+        this.position = end;
+        return kind;
+    }
+
+    private int operatorToken(int kind, int begin, int end, int state) {
+        this.tokenOperator = operators.operator(state);
+        return token(kind, begin, end);
+    }
+
+    private int scanUnreserved(int from) {
+        int i = from;
+        while (i < length && !isReserved(input.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private int scanQuoted(int begin, char quote) throws ParseException {
+        boolean escaped = false;
+
+        for (int i = begin + 1; i < length; i++) {
+            char c = input.charAt(i);
+
+            if (c == '\\') {
+                escaped = true;
+                i++;
+            } else if (c == quote) {
+                tokenEscaped = escaped;
+                return token(quote == '"' ? DOUBLE_QUOTED_STR : SINGLE_QUOTED_STR, begin, i + 1);
+            }
+        }
+        throw lexicalError(length);
+    }
+
+    private boolean matches(int from, String str) {
+        if (from + str.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < str.length(); i++) {
+            if (input.charAt(from + i) != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ParseException lexicalError(int pos) {
+        errorOffset = pos;
+        String encountered = pos < length
+                ? "\"" + escape(String.valueOf(input.charAt(pos))) + "\""
+                : "<EOF>";
+        return new ParseException(String.format(
+                "Lexical error at column %d. Encountered: %s", pos + 1, encountered));
+    }
+
+
+    /**
+     * Escapes the control, quote and non-ASCII characters in the given string as in a Java
+     * string literal.
+     */
+    private static String escape(String str) {
+        StringBuilder sb = new StringBuilder(str.length());
+
+        for (int i = 0; i < str.length(); i++) {
+            char ch = str.charAt(i);
+            switch (ch) {
+                case 0   : break;
+                case '\b': sb.append("\\b"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\f': sb.append("\\f"); break;
+                case '\r': sb.append("\\r"); break;
+                case '"' : sb.append("\\\""); break;
+                case '\'': sb.append("\\'"); break;
+                case '\\': sb.append("\\\\"); break;
+                default:
+                    if (ch < 0x20 || ch > 0x7e) {
+                        String hex = "0000" + Integer.toString(ch, 16);
+                        sb.append("\\u").append(hex.substring(hex.length() - 4));
+                    } else {
+                        sb.append(ch);
+                    }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isReserved(char c) {
+        return c < 128 && CHAR_CLASS[c] == RESERVED;
+    }
+
+    private static boolean isAlpha(char c) {
+        return c < 128 && CHAR_CLASS[c] == ALPHA_CHAR;
+    }
+
+    static String unescape(String s) {
+        final StringBuilder sb = new StringBuilder(s.length());
+
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == '\\') {
+                i++;
+            }
+            if (i < s.length()) {
+                sb.append(s.charAt(i));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser;
+
+import cz.jirutka.rsql.parser.ParserLimits.Limit;
+
+/**
+ * This exception is thrown when parsing of a query exceeds one of the {@link ParserLimits}.
+ * The parsing is stopped immediately, so the query may contain also syntax errors that are not
+ * reported.
+ */
+public class LimitExceededException extends RSQLParserException {
+
+    private final Limit limit;
+
+    private final int maxValue;
+
+
+    public LimitExceededException(Limit limit, int maxValue) {
+        super(String.format("Query exceeds the maximum %s: %d", limit, maxValue));
+        this.limit = limit;
+        this.maxValue = maxValue;
+    }
+
+
+    /**
+     * Returns the limit that has been exceeded.
+     */
+    public Limit getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns the maximum value of the limit.
+     */
+    public int getMaxValue() {
+        return maxValue;
+    }
+}
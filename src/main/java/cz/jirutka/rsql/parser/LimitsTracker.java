@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser;
+
+import cz.jirutka.rsql.parser.ParserLimits.Limit;
+import net.jcip.annotations.NotThreadSafe;
+
+import static cz.jirutka.rsql.parser.ParserLimits.check;
+
+/**
+ * Tracks the resources consumed by parsing of a single query and checks them against the
+ * {@link ParserLimits}. The counters are also reported in {@link ParseStatistics}.
+ */
+@NotThreadSafe
+final class LimitsTracker {
+
+    private ParserLimits limits = ParserLimits.NONE;
+
+    private int depth;
+
+    private int nodes;
+
+    private int argumentsLength;
+
+    private int maxDepth;
+
+    private int arguments;
+
+    private int tokens;
+
+    private int offset;
+
+
+    /**
+     * Resets the counters for parsing of the next query of the given length.
+     *
+     * @throws LimitExceededException If the length exceeds the limit.
+     */
+    void reset(ParserLimits limits, int length) {
+        this.limits = limits;
+        this.depth = 0;
+        this.nodes = 0;
+        this.argumentsLength = 0;
+        this.maxDepth = 0;
+        this.arguments = 0;
+        this.tokens = 0;
+        this.offset = 0;
+
+        check(Limit.LENGTH, length, limits.getMaxLength());
+    }
+
+    void enterGroup() {
+        check(Limit.DEPTH, ++depth, limits.getMaxDepth());
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+    }
+
+    void exitGroup() {
+        depth--;
+    }
+
+    void node() {
+        check(Limit.NODES, ++nodes, limits.getMaxNodes());
+    }
+
+    /**
+     * @param index Index of the argument in its comparison.
+     * @param length Length of the argument in the input.
+     */
+    void argument(int index, int length) {
+        check(Limit.ARGUMENTS, index + 1, limits.getMaxArguments());
+        arguments++;
+
+        argumentsLength += length;
+        check(Limit.ARGUMENTS_LENGTH, argumentsLength, limits.getMaxArgumentsLength());
+    }
+
+    /**
+     * Records the final state of the lexer after parsing (before it's reset).
+     */
+    void finish(Lexer lexer) {
+        tokens = lexer.tokenCount();
+        offset = lexer.errorOffset() >= 0 ? lexer.errorOffset() : lexer.tokenBegin();
+    }
+
+    int getNodeCount() {
+        return nodes;
+    }
+
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    int getArgumentCount() {
+        return arguments;
+    }
+
+    int getTokenCount() {
+        return tokens;
+    }
+
+    /**
+     * Returns position of the error, or the last token read if the parsing has failed for
+     * another reason.
+     */
+    int getOffset() {
+        return offset;
+    }
+}
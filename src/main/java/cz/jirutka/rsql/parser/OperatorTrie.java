@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser;
+
+import cz.jirutka.rsql.parser.ast.ComparisonOperator;
+import net.jcip.annotations.Immutable;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * A trie of symbols of the supported comparison operators that the {@link Lexer} walks while
+ * it reads an operator token, so it can resolve the operator without creating a string.
+ *
+ * <p>All valid symbols consist only of ASCII chars, so each state has a dense table of 128
+ * transitions. States are numbered from 0 (the root); the transition to 0 means no
+ * transition.</p>
+ */
+@Immutable
+final class OperatorTrie {
+
+    static final int ROOT = 0, NONE = -1;
+
+    private static final int ALPHABET_SIZE = 128;
+
+    private final int[] transitions;
+
+    private final ComparisonOperator[] operators;
+
+
+    OperatorTrie(Set<ComparisonOperator> operators) {
+        int[] trans = new int[ALPHABET_SIZE * 16];
+        ComparisonOperator[] ops = new ComparisonOperator[16];
+        int statesCount = 1;
+
+        for (ComparisonOperator op : operators) {
+            for (String sym : op.getSymbols()) {
+                int state = ROOT;
+
+                for (int i = 0; i < sym.length(); i++) {
+                    int idx = state * ALPHABET_SIZE + sym.charAt(i);
+
+                    if (trans[idx] == 0) {
+                        if (statesCount == ops.length) {
+                            ops = Arrays.copyOf(ops, ops.length * 2);
+                            trans = Arrays.copyOf(trans, ops.length * ALPHABET_SIZE);
+                        }
+                        trans[idx] = statesCount++;
+                    }
+                    state = trans[idx];
+                }
+                ops[state] = op;
+            }
+        }
+        this.transitions = Arrays.copyOf(trans, statesCount * ALPHABET_SIZE);
+        this.operators = Arrays.copyOf(ops, statesCount);
+    }
+
+
+    /**
+     * Returns the state after reading the char {@code c} in the given state, or {@link #NONE}
+     * if there's no such transition.
+     */
+    int next(int state, char c) {
+        if (state == NONE || c >= ALPHABET_SIZE) {
+            return NONE;
+        }
+        int next = transitions[state * ALPHABET_SIZE + c];
+        return next != 0 ? next : NONE;
+    }
+
+    /**
+     * Returns the operator whose symbol ends in the given state, or <tt>null</tt> if none.
+     */
+    ComparisonOperator operator(int state) {
+        return state != NONE ? operators[state] : null;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser;
+
+import cz.jirutka.rsql.parser.ast.Node;
+import net.jcip.annotations.Immutable;
+
+/**
+ * A result of parsing of one query in a {@linkplain RSQLParser#parseAll(java.util.Collection)
+ * bulk}: either the parsed AST, or the exception.
+ */
+@Immutable
+public final class ParseResult {
+
+    private final CharSequence query;
+
+    private final Node node;
+
+    private final RSQLParserException exception;
+
+
+    ParseResult(CharSequence query, Node node, RSQLParserException exception) {
+        this.query = query;
+        this.node = node;
+        this.exception = exception;
+    }
+
+
+    /**
+     * Returns the parsed query.
+     */
+    public CharSequence getQuery() {
+        return query;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the query has been parsed successfully.
+     */
+    public boolean isSuccess() {
+        return exception == null;
+    }
+
+    /**
+     * Returns the parsed AST, or <tt>null</tt> if the parsing has failed.
+     */
+    public Node getNode() {
+        return node;
+    }
+
+    /**
+     * Returns the exception the parsing has failed with, or <tt>null</tt> if it's succeeded.
+     */
+    public RSQLParserException getException() {
+        return exception;
+    }
+
+    /**
+     * Returns the parsed AST, or throws the exception if the parsing has failed.
+     *
+     * @throws RSQLParserException
+     */
+    public Node get() throws RSQLParserException {
+        if (exception != null) {
+            throw exception;
+        }
+        return node;
+    }
+
+
+    @Override
+    public String toString() {
+        return isSuccess() ? String.valueOf(node) : "Failed: " + exception.getMessage();
+    }
+}
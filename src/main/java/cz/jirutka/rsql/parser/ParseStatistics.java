@@ -0,0 +1,182 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * Statistics of parsing of a single query, reported to a {@link ParserMonitor}.
+ *
+ * <p>The counts describe the part of the query read until the parsing has finished, so for a
+ * rejected query they're lower than for the whole query.</p>
+ */
+@Immutable
+public final class ParseStatistics {
+
+    /**
+     * The kinds of parsing failures.
+     */
+    public enum FailureKind {
+
+        /** The query is syntactically invalid, see {@link ParseException}. */
+        SYNTAX,
+        /** The query contains an unsupported operator, see {@link UnknownOperatorException}. */
+        UNKNOWN_OPERATOR,
+        /** An argument cannot be converted, see {@link InvalidArgumentException}. */
+        INVALID_ARGUMENT,
+        /** The query exceeds one of the {@link ParserLimits}, see {@link LimitExceededException}. */
+        LIMIT_EXCEEDED,
+        /** The query is nested too deeply for recursive parsing. */
+        TOO_DEEP,
+        /** Any other failure, e.g. an exception thrown by a listener or a nodes factory. */
+        OTHER
+    }
+
+    private final long durationNanos;
+
+    private final int inputLength;
+
+    private final int tokenCount;
+
+    private final int nodeCount;
+
+    private final int maxDepth;
+
+    private final int argumentCount;
+
+    private final RSQLParserException failure;
+
+    private final int failureOffset;
+
+
+    ParseStatistics(long durationNanos, int inputLength, int tokenCount, int nodeCount,
+                    int maxDepth, int argumentCount, RSQLParserException failure, int failureOffset) {
+        this.durationNanos = durationNanos;
+        this.inputLength = inputLength;
+        this.tokenCount = tokenCount;
+        this.nodeCount = nodeCount;
+        this.maxDepth = maxDepth;
+        this.argumentCount = argumentCount;
+        this.failure = failure;
+        this.failureOffset = failure != null ? failureOffset : -1;
+    }
+
+
+    /**
+     * Returns the wall-clock time of the parsing in nanoseconds.
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Returns length of the query in chars (or bytes for UTF-8 encoded input).
+     */
+    public int getInputLength() {
+        return inputLength;
+    }
+
+    /**
+     * Returns number of the tokens read, e.g. 7 for <tt>a==1;b==2</tt>.
+     */
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * Returns number of the nodes created (or reported to a listener), i.e. comparisons and
+     * logical groups with more than one operand.
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the maximal nesting depth of the parenthesized groups.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Returns the total number of arguments of all comparisons.
+     */
+    public int getArgumentCount() {
+        return argumentCount;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the query has been parsed successfully.
+     */
+    public boolean isSuccess() {
+        return failure == null;
+    }
+
+    /**
+     * Returns the exception the parsing has failed with, or <tt>null</tt> if it's succeeded.
+     */
+    public RSQLParserException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Returns kind of the failure, or <tt>null</tt> if the parsing has succeeded.
+     */
+    public FailureKind getFailureKind() {
+        if (failure == null) {
+            return null;
+        }
+        if (failure instanceof LimitExceededException) {
+            return FailureKind.LIMIT_EXCEEDED;
+        }
+        Throwable cause = failure.getCause();
+
+        if (cause instanceof UnknownOperatorException) {
+            return FailureKind.UNKNOWN_OPERATOR;
+        } else if (cause instanceof InvalidArgumentException) {
+            return FailureKind.INVALID_ARGUMENT;
+        } else if (cause instanceof ParseException) {
+            return FailureKind.SYNTAX;
+        } else if (cause instanceof StackOverflowError) {
+            return FailureKind.TOO_DEEP;
+        }
+        return FailureKind.OTHER;
+    }
+
+    /**
+     * Returns the 0-based offset in the input where the parsing has failed (or the offset of
+     * the last token read, if the failure is not related to a specific position), or
+     * <tt>-1</tt> if it's succeeded.
+     */
+    public int getFailureOffset() {
+        return failureOffset;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ParseStatistics(duration: %dns, length: %d, tokens: %d, nodes: %d, "
+                + "depth: %d, arguments: %d, failure: %s at %d)", durationNanos, inputLength,
+                tokenCount, nodeCount, maxDepth, argumentCount, getFailureKind(), failureOffset);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser;
+
+import cz.jirutka.rsql.parser.ParserInput.CharArrayInput;
+import cz.jirutka.rsql.parser.ParserInput.CharSequenceInput;
+import cz.jirutka.rsql.parser.ParserInput.Utf8ArrayInput;
+import cz.jirutka.rsql.parser.ParserInput.Utf8BufferInput;
+import cz.jirutka.rsql.parser.ast.Node;
+import cz.jirutka.rsql.parser.ast.NodesFactory;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A reusable state of parsing: the {@link QueryParser} with its lexer and buffers, the
+ * {@link StreamingParser}, and the inputs. {@link RSQLParser} keeps one context per thread,
+ * so a steady-state parsing allocates only the resulting AST.
+ *
+ * <p>Usage:
+ * <pre>{@code
+ * ParserContext ctx = ParserContext.acquire();
+ * try {
+ *     return ctx.parse(ctx.input(query), factory, operators, limits, false);
+ * } finally {
+ *     ctx.release();
+ * }
+ * }</pre></p>
+ */
+@NotThreadSafe
+final class ParserContext {
+
+    private static final ThreadLocal<ParserContext> CONTEXTS = new ThreadLocal<ParserContext>() {
+        protected ParserContext initialValue() {
+            return new ParserContext();
+        }
+    };
+
+    private final QueryParser parser = new QueryParser();
+
+    private StreamingParser streamingParser;
+
+    private final CharSequenceInput charSequenceInput = new CharSequenceInput();
+
+    private final CharArrayInput charArrayInput = new CharArrayInput();
+
+    private final Utf8ArrayInput utf8ArrayInput = new Utf8ArrayInput();
+
+    private final Utf8BufferInput utf8BufferInput = new Utf8BufferInput();
+
+    private ParserInput currentInput;
+
+    private LimitsTracker lastTracker;
+
+    private boolean inUse;
+
+
+    /**
+     * Returns the context of the current thread, or a new one if it's already in use (i.e.
+     * the parser has been called reentrantly from a {@link RSQLListener} or a
+     * {@link ParserMonitor}).
+     * The context must be {@linkplain #release() released} after use.
+     */
+    static ParserContext acquire() {
+        ParserContext ctx = CONTEXTS.get();
+        if (ctx.inUse) {
+            ctx = new ParserContext();
+        }
+        ctx.inUse = true;
+        return ctx;
+    }
+
+    /**
+     * Releases this context, so it can be used by the next parsing in the current thread.
+     */
+    void release() {
+        if (currentInput != null) {
+            currentInput.clear();
+            currentInput = null;
+        }
+        inUse = false;
+    }
+
+    /**
+     * Returns the tracker with statistics of the last parse in this context.
+     */
+    LimitsTracker lastTracker() {
+        return lastTracker;
+    }
+
+
+    ParserInput input(CharSequence seq) {
+        return currentInput = charSequenceInput.reset(seq);
+    }
+
+    ParserInput input(char[] array, int offset, int length) {
+        return currentInput = charArrayInput.reset(array, offset, length);
+    }
+
+    ParserInput utf8Input(byte[] array, int offset, int length) {
+        return currentInput = utf8ArrayInput.reset(array, offset, length);
+    }
+
+    ParserInput utf8Input(ByteBuffer buffer) {
+        return currentInput = buffer.hasArray()
+                ? utf8ArrayInput.reset(buffer)
+                : utf8BufferInput.reset(buffer);
+    }
+
+    Node parse(ParserInput input, NodesFactory factory, OperatorTrie operators, ParserLimits limits,
+               boolean iterative) throws ParseException {
+        lastTracker = parser.tracker();
+        return parser.parse(input, factory, operators, limits, iterative);
+    }
+
+    void parse(ParserInput input, OperatorTrie operators, ParserLimits limits, RSQLListener listener)
+            throws ParseException {
+        if (streamingParser == null) {
+            streamingParser = new StreamingParser();
+        }
+        lastTracker = streamingParser.tracker();
+        streamingParser.parse(input, operators, limits, listener);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A random-access source of the query for the lexer that reads directly from the given
+ * {@link CharSequence}, {@code char[]} or UTF-8 encoded bytes, without copying or decoding the
+ * whole input up front.
+ *
+ * <p>All reserved characters of the RSQL grammar are ASCII and a UTF-8 encoded multi-byte
+ * character never contains a byte from the ASCII range. Thus the UTF-8 inputs return the raw
+ * bytes as chars <tt>0x00&ndash;0xFF</tt> from {@link #charAt(int)}; non-ASCII bytes are then
+ * treated as unreserved chars, which is exactly how the decoded characters would be treated.
+ * Only images of the tokens are decoded in {@link #substring(int, int)}. Positions (and
+ * columns reported in errors) of the UTF-8 inputs are therefore in bytes, not chars.</p>
+ */
+abstract class ParserInput {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Returns the number of chars (or bytes) of this input.
+     */
+    abstract int length();
+
+    /**
+     * Returns the char (or byte as char) at the specified position.
+     */
+    abstract char charAt(int index);
+
+    /**
+     * Returns the (decoded) string between the specified positions.
+     */
+    abstract String substring(int begin, int end);
+
+
+    /**
+     * Releases the reference to the underlying query, so a reused input doesn't retain it.
+     */
+    abstract void clear();
+
+
+    //////// Implementations ////////
+
+    // The implementations are resettable, so they can be reused by the ParserContext.
+
+    static final class CharSequenceInput extends ParserInput {
+
+        private CharSequence seq;
+
+        CharSequenceInput reset(CharSequence seq) {
+            this.seq = seq;
+            return this;
+        }
+
+        void clear() {
+            seq = null;
+        }
+
+        int length() {
+            return seq.length();
+        }
+
+        char charAt(int index) {
+            return seq.charAt(index);
+        }
+
+        String substring(int begin, int end) {
+            return seq.subSequence(begin, end).toString();
+        }
+    }
+
+    static final class CharArrayInput extends ParserInput {
+
+        private char[] array;
+        private int offset;
+        private int length;
+
+        CharArrayInput reset(char[] array, int offset, int length) {
+            this.array = array;
+            this.offset = offset;
+            this.length = length;
+            return this;
+        }
+
+        void clear() {
+            array = null;
+        }
+
+        int length() {
+            return length;
+        }
+
+        char charAt(int index) {
+            return array[offset + index];
+        }
+
+        String substring(int begin, int end) {
+            return new String(array, offset + begin, end - begin);
+        }
+    }
+
+    static final class Utf8ArrayInput extends ParserInput {
+
+        private byte[] array;
+        private int offset;
+        private int length;
+
+        Utf8ArrayInput reset(byte[] array, int offset, int length) {
+            this.array = array;
+            this.offset = offset;
+            this.length = length;
+            return this;
+        }
+
+        /**
+         * @param buffer A buffer with an accessible array.
+         */
+        Utf8ArrayInput reset(ByteBuffer buffer) {
+            return reset(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+
+        void clear() {
+            array = null;
+        }
+
+        int length() {
+            return length;
+        }
+
+        char charAt(int index) {
+            return (char) (array[offset + index] & 0xFF);
+        }
+
+        String substring(int begin, int end) {
+            return new String(array, offset + begin, end - begin, UTF_8);
+        }
+    }
+
+    /**
+     * Input for a direct (or read-only) {@link ByteBuffer} without an accessible array.
+     */
+    static final class Utf8BufferInput extends ParserInput {
+
+        private ByteBuffer buffer;
+        private int offset;
+        private int length;
+
+        Utf8BufferInput reset(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.offset = buffer.position();
+            this.length = buffer.remaining();
+            return this;
+        }
+
+        void clear() {
+            buffer = null;
+        }
+
+        int length() {
+            return length;
+        }
+
+        char charAt(int index) {
+            return (char) (buffer.get(offset + index) & 0xFF);
+        }
+
+        String substring(int begin, int end) {
+            byte[] bytes = new byte[end - begin];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(offset + begin + i);
+            }
+            return new String(bytes, UTF_8);
+        }
+    }
+}
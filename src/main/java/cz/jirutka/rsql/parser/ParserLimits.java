@@ -0,0 +1,188 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * Limits of resources that may be consumed by parsing of a single query, to be used with
+ * {@link RSQLParser#withLimits(ParserLimits)}. The limits are checked while the query is being
+ * read, so a hostile query is rejected with {@link LimitExceededException} before the
+ * whole AST is built.
+ *
+ * <pre>{@code
+ * ParserLimits limits = new ParserLimits()
+ *     .withMaxLength(4096)
+ *     .withMaxDepth(16)
+ *     .withMaxArguments(1000);
+ * }</pre>
+ */
+@Immutable
+public final class ParserLimits {
+
+    /**
+     * No limits.
+     */
+    public static final ParserLimits NONE = new ParserLimits();
+
+    /**
+     * The kinds of limits.
+     */
+    public enum Limit {
+
+        LENGTH("length of the query"),
+        DEPTH("nesting depth of groups"),
+        NODES("number of nodes"),
+        ARGUMENTS("number of arguments of a comparison"),
+        ARGUMENTS_LENGTH("total length of arguments");
+
+        private final String description;
+
+        Limit(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    private final int maxLength;
+
+    private final int maxDepth;
+
+    private final int maxNodes;
+
+    private final int maxArguments;
+
+    private final int maxArgumentsLength;
+
+
+    /**
+     * Creates limits with all values unlimited.
+     */
+    public ParserLimits() {
+        this(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    private ParserLimits(int maxLength, int maxDepth, int maxNodes, int maxArguments, int maxArgumentsLength) {
+        this.maxLength = maxLength;
+        this.maxDepth = maxDepth;
+        this.maxNodes = maxNodes;
+        this.maxArguments = maxArguments;
+        this.maxArgumentsLength = maxArgumentsLength;
+    }
+
+
+    /**
+     * Returns a copy with the maximum length of the query in chars (or bytes for UTF-8 encoded
+     * queries).
+     *
+     * @throws IllegalArgumentException If the {@code value} is not positive.
+     */
+    public ParserLimits withMaxLength(int value) {
+        return new ParserLimits(positive(value), maxDepth, maxNodes, maxArguments, maxArgumentsLength);
+    }
+
+    /**
+     * Returns a copy with the maximum nesting depth of groups (parentheses); <tt>0</tt> means
+     * that no groups are allowed.
+     *
+     * @throws IllegalArgumentException If the {@code value} is negative.
+     */
+    public ParserLimits withMaxDepth(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("value must not be negative");
+        }
+        return new ParserLimits(maxLength, value, maxNodes, maxArguments, maxArgumentsLength);
+    }
+
+    /**
+     * Returns a copy with the maximum number of nodes (comparisons and logical nodes) of the
+     * resulting AST.
+     *
+     * @throws IllegalArgumentException If the {@code value} is not positive.
+     */
+    public ParserLimits withMaxNodes(int value) {
+        return new ParserLimits(maxLength, maxDepth, positive(value), maxArguments, maxArgumentsLength);
+    }
+
+    /**
+     * Returns a copy with the maximum number of arguments of a single comparison.
+     *
+     * @throws IllegalArgumentException If the {@code value} is not positive.
+     */
+    public ParserLimits withMaxArguments(int value) {
+        return new ParserLimits(maxLength, maxDepth, maxNodes, positive(value), maxArgumentsLength);
+    }
+
+    /**
+     * Returns a copy with the maximum total length of all arguments in the query, as they're
+     * written in the query (i.e. including quotes and escape chars), in chars (or bytes for
+     * UTF-8 encoded queries).
+     *
+     * @throws IllegalArgumentException If the {@code value} is not positive.
+     */
+    public ParserLimits withMaxArgumentsLength(int value) {
+        return new ParserLimits(maxLength, maxDepth, maxNodes, maxArguments, positive(value));
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    public int getMaxArguments() {
+        return maxArguments;
+    }
+
+    public int getMaxArgumentsLength() {
+        return maxArgumentsLength;
+    }
+
+
+    /**
+     * Throws {@link LimitExceededException} if the {@code value} exceeds the {@code max}.
+     */
+    static void check(Limit limit, int value, int max) {
+        if (value > max) {
+            throw new LimitExceededException(limit, max);
+        }
+    }
+
+    private static int positive(int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("value must be positive");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser;
+
+import cz.jirutka.rsql.parser.ParseStatistics.FailureKind;
+import cz.jirutka.rsql.parser.ParserLimits.Limit;
+import cz.jirutka.rsql.parser.ast.Node;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the parsed AST keyed by the query string, to be used with
+ * {@link RSQLParser#withCache(QueryCache)}. The AST is immutable, so the cached nodes can be
+ * safely shared.
+ *
+ * <p>Queries that are syntactically invalid, contain an unknown operator or exceed the limits
+ * are cached as well, so a repeated bad query is not parsed again. Only a description of the
+ * failure is cached and a new exception is created for each hit, because an exception is
+ * mutable (stack trace, suppressed exceptions) and must not be thrown to multiple callers.
+ * Other failures (e.g. of argument conversion) are not cached.</p>
+ *
+ * <p>The cache is split into segments by hash of the query; each segment is guarded by its own
+ * lock and evicts its least recently used entries when it's full. The total number of entries
+ * never exceeds the {@code maximumSize}.</p>
+ *
+ * <p>The cache must not be shared by parsers with different configuration (e.g. different set
+ * of operators), because the cached results would not match.</p>
+ */
+@ThreadSafe
+public final class QueryCache {
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment[] segments;
+
+    private final int segmentMask;
+
+    private final int maximumSize;
+
+
+    /**
+     * @param maximumSize The maximum number of cached queries. Must be positive.
+     * @throws IllegalArgumentException If the {@code maximumSize} is not positive.
+     */
+    public QueryCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        // The number of segments is the largest power of two <= min(MAX_SEGMENTS, maximumSize).
+        int count = Integer.highestOneBit(Math.min(MAX_SEGMENTS, maximumSize));
+
+        this.maximumSize = maximumSize;
+        this.segmentMask = count - 1;
+        this.segments = new Segment[count];
+
+        for (int i = 0; i < count; i++) {
+            // distribute the remainder among the first segments
+            segments[i] = new Segment(maximumSize / count + (i < maximumSize % count ? 1 : 0));
+        }
+    }
+
+
+    /**
+     * Returns the maximum number of cached queries.
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Returns the current number of cached queries.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                size += seg.map.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of lookups that have found a cached result.
+     */
+    public long getHitCount() {
+        long count = 0;
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                count += seg.hits;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of lookups that have not found a cached result, i.e. the query was
+     * parsed.
+     */
+    public long getMissCount() {
+        long count = 0;
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                count += seg.misses;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of results that have been evicted due to the size limit.
+     */
+    public long getEvictionCount() {
+        long count = 0;
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                count += seg.evictions;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Removes all cached results. The statistics are not reset.
+     */
+    public void clear() {
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                seg.map.clear();
+            }
+        }
+    }
+
+
+    /**
+     * Returns the cached result for the query: a {@link Node}, a {@link Failure}, or
+     * <tt>null</tt> if there's none.
+     */
+    Object get(String query) {
+        Segment seg = segmentFor(query);
+        synchronized (seg) {
+            Object result = seg.map.get(query);
+            if (result != null) {
+                seg.hits++;
+            } else {
+                seg.misses++;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Caches the result of parsing the query: a {@link Node} or a {@link Failure}.
+     */
+    void put(String query, Object result) {
+        Segment seg = segmentFor(query);
+        synchronized (seg) {
+            seg.map.put(query, result);
+        }
+    }
+
+    private Segment segmentFor(String query) {
+        int h = query.hashCode();
+        h ^= (h >>> 16);  // spread higher bits, the mask uses only the lower ones
+        return segments[h & segmentMask];
+    }
+
+
+    private static final class Segment {
+
+        @GuardedBy("this")
+        final LinkedHashMap<String, Object> map;
+
+        @GuardedBy("this")
+        long hits, misses, evictions;
+
+        Segment(final int capacity) {
+            this.map = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                    if (size() > capacity) {
+                        evictions++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+
+
+    /**
+     * A description of a parsing failure that creates a new exception of the same kind and
+     * message for each cache hit.
+     */
+    static final class Failure {
+
+        private final FailureKind kind;
+
+        private final String message;
+
+        private final String operator;
+
+        private final Limit limit;
+
+        private final int maxValue;
+
+        private Failure(FailureKind kind, String message, String operator, Limit limit, int maxValue) {
+            this.kind = kind;
+            this.message = message;
+            this.operator = operator;
+            this.limit = limit;
+            this.maxValue = maxValue;
+        }
+
+        /**
+         * Returns a description of the given failure, or <tt>null</tt> if it should not be
+         * cached.
+         */
+        static Failure of(RSQLParserException ex) {
+            if (ex instanceof LimitExceededException) {
+                LimitExceededException limitEx = (LimitExceededException) ex;
+                return new Failure(FailureKind.LIMIT_EXCEEDED, null, null, limitEx.getLimit(), limitEx.getMaxValue());
+            }
+            Throwable cause = ex.getCause();
+
+            if (cause instanceof UnknownOperatorException) {
+                UnknownOperatorException opEx = (UnknownOperatorException) cause;
+                return new Failure(FailureKind.UNKNOWN_OPERATOR, opEx.getMessage(), opEx.getOperator(), null, 0);
+            }
+            if (cause != null && cause.getClass() == ParseException.class) {
+                return new Failure(FailureKind.SYNTAX, cause.getMessage(), null, null, 0);
+            }
+            return null;
+        }
+
+        RSQLParserException newException() {
+            switch (kind) {
+                case LIMIT_EXCEEDED:
+                    return new LimitExceededException(limit, maxValue);
+                case UNKNOWN_OPERATOR:
+                    return new RSQLParserException(new UnknownOperatorException(operator, message));
+                default:
+                    return new RSQLParserException(new ParseException(message));
+            }
+        }
+    }
+}
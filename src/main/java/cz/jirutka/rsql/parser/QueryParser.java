@@ -0,0 +1,373 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser;
+
+import cz.jirutka.rsql.parser.ast.ArgumentConversionException;
+import cz.jirutka.rsql.parser.ast.ComparisonOperator;
+import cz.jirutka.rsql.parser.ast.LogicalOperator;
+import cz.jirutka.rsql.parser.ast.Node;
+import cz.jirutka.rsql.parser.ast.NodesFactory;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hand-written recursive descent parser of the RSQL. It implements the same grammar as the
+ * reference JavaCC grammar (<tt>src/test/javacc/RSQLParser.jj</tt>) in a single pass with one
+ * token lookahead and without backtracking, and produces the same AST.
+ *
+ * <p>The parser has also an iterative mode that keeps the nested groups on an explicit stack
+ * instead of the Java stack, so the nesting depth is limited only by the heap (and the
+ * {@link ParserLimits}). It produces the same AST and errors as the recursive mode.</p>
+ *
+ * <p>The parser is reusable, but not thread-safe. Lists of children nodes and arguments are
+ * reused for subsequent nodes; it's fine since all the nodes copy them.</p>
+ */
+@NotThreadSafe
+final class QueryParser implements TokenKinds {
+
+    /**
+     * Buffers that have grown bigger than this (and buffers for deeper nesting levels) are not
+     * reused, so the parser doesn't retain a lot of memory after parsing an unusually large query.
+     */
+    private static final int MAX_RETAINED_SIZE = 1024,
+                              MAX_RETAINED_LEVELS = 32;
+
+    private final Lexer lexer = new Lexer();
+
+    private final LimitsTracker limits = new LimitsTracker();
+
+    /**
+     * Buffers for children nodes, one per nesting level of or/and.
+     */
+    private final List<ArrayList<Node>> nodeBuffers = new ArrayList<>();
+
+    private ArrayList<String> argumentsBuffer = new ArrayList<>();
+
+    /**
+     * Offsets of the arguments in the input, to report an argument that cannot be converted.
+     */
+    private int[] argumentOffsets = new int[16];
+
+    private int level;
+
+    private NodesFactory factory;
+
+
+    /**
+     * Parses the given input.
+     *
+     * <pre>input = or, EOF;</pre>
+     *
+     * @param iterative Whether to use the iterative mode instead of the recursive one.
+     */
+    Node parse(ParserInput input, NodesFactory factory, OperatorTrie operators, ParserLimits limits,
+               boolean iterative) throws ParseException {
+        this.limits.reset(limits, input.length());
+        this.lexer.reset(input, operators);
+        this.factory = factory;
+        this.level = 0;
+        try {
+            lexer.next();
+            if (iterative) {
+                return iterate();
+            }
+            Node node = or();
+            expect(EOF);
+
+            return node;
+
+        } finally {
+            this.limits.finish(lexer);
+            lexer.reset(null, null);
+            this.factory = null;
+
+            if (argumentsBuffer.size() > MAX_RETAINED_SIZE) {
+                argumentsBuffer = new ArrayList<>();
+                argumentOffsets = new int[16];
+            }
+            argumentsBuffer.clear();
+
+            // there are at most two buffers per level (for or and and)
+            while (nodeBuffers.size() > 2 * MAX_RETAINED_LEVELS) {
+                nodeBuffers.remove(nodeBuffers.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * <pre>or = and, { OR, and };</pre>
+     */
+    private Node or() throws ParseException {
+        Node node = and();
+        if (lexer.kind() != OR) {
+            return node;
+        }
+        ArrayList<Node> nodes = acquireNodeBuffer();
+        try {
+            nodes.add(node);
+
+            while (lexer.kind() == OR) {
+                lexer.next();
+                nodes.add(and());
+            }
+            limits.node();
+            return factory.createLogicalNode(LogicalOperator.OR, nodes);
+
+        } finally {
+            releaseNodeBuffer(nodes);
+        }
+    }
+
+    /**
+     * <pre>and = constraint, { AND, constraint };</pre>
+     */
+    private Node and() throws ParseException {
+        Node node = constraint();
+        if (lexer.kind() != AND) {
+            return node;
+        }
+        ArrayList<Node> nodes = acquireNodeBuffer();
+        try {
+            nodes.add(node);
+
+            while (lexer.kind() == AND) {
+                lexer.next();
+                nodes.add(constraint());
+            }
+            limits.node();
+            return factory.createLogicalNode(LogicalOperator.AND, nodes);
+
+        } finally {
+            releaseNodeBuffer(nodes);
+        }
+    }
+
+    /**
+     * <pre>
+     * constraint = group | comparison;
+     * group      = "(", or, ")";
+     * </pre>
+     */
+    private Node constraint() throws ParseException {
+        if (lexer.kind() == LPAREN) {
+            limits.enterGroup();
+            lexer.next();
+            Node node = or();
+            expect(RPAREN);
+            limits.exitGroup();
+
+            return node;
+        }
+        return comparison();
+    }
+
+    /**
+     * Parses the whole input as {@link #or()}, but without recursion. Each open group has two
+     * buffers on the stack: operands of its or, and operands of the current and.
+     */
+    private Node iterate() throws ParseException {
+        int bottom = level;
+        ArrayList<Node> ors = acquireNodeBuffer();
+        ArrayList<Node> ands = acquireNodeBuffer();
+        try {
+            return iterate(bottom, ors, ands);
+
+        } finally {
+            // release the buffers of groups left open by an error
+            while (level > bottom) {
+                releaseNodeBuffer(nodeBuffers.get(level - 1));
+            }
+        }
+    }
+
+    private Node iterate(int bottom, ArrayList<Node> ors, ArrayList<Node> ands) throws ParseException {
+        while (true) {
+            // constraint: open groups until a comparison
+            while (lexer.kind() == LPAREN) {
+                limits.enterGroup();
+                lexer.next();
+                ors = acquireNodeBuffer();
+                ands = acquireNodeBuffer();
+            }
+            Node node = comparison();
+
+            // close and-chains, or-chains and groups that end after the constraint
+            while (true) {
+                ands.add(node);
+                if (lexer.kind() == AND) {
+                    lexer.next();
+                    break;
+                }
+                ors.add(reduce(LogicalOperator.AND, ands));
+                if (lexer.kind() == OR) {
+                    lexer.next();
+                    break;
+                }
+                node = reduce(LogicalOperator.OR, ors);
+
+                if (level - 2 == bottom) {
+                    expect(EOF);
+                    return node;
+                }
+                expect(RPAREN);
+                limits.exitGroup();
+
+                releaseNodeBuffer(ands);
+                releaseNodeBuffer(ors);
+                ands = nodeBuffers.get(level - 1);
+                ors = nodeBuffers.get(level - 2);
+            }
+        }
+    }
+
+    /**
+     * Creates a logical node of the operands in the buffer (or returns the single operand) and
+     * clears the buffer.
+     */
+    private Node reduce(LogicalOperator operator, ArrayList<Node> operands) {
+        Node node;
+        if (operands.size() == 1) {
+            node = operands.get(0);
+        } else {
+            limits.node();
+            node = factory.createLogicalNode(operator, operands);
+        }
+        operands.clear();
+        return node;
+    }
+
+    /**
+     * <pre>
+     * comparison = selector, comparator, arguments;
+     * arguments  = ( "(", value, { OR, value }, ")" ) | value;
+     * </pre>
+     */
+    private Node comparison() throws ParseException {
+        if (lexer.kind() != UNRESERVED_STR) {
+            throw lexer.unexpected(LPAREN, UNRESERVED_STR);
+        }
+        limits.node();
+        String selector = lexer.image();
+
+        int opKind = lexer.next();
+        if (opKind != COMP_FIQL && opKind != COMP_ALT) {
+            throw lexer.unexpected(COMP_FIQL, COMP_ALT);
+        }
+        ComparisonOperator operator = lexer.operator();
+        String operatorSymbol = operator == null ? lexer.image() : null;
+        int operatorBegin = lexer.tokenBegin();
+        ArrayList<String> arguments = argumentsBuffer;
+        arguments.clear();
+
+        if (lexer.next() == LPAREN) {
+            do {
+                lexer.next();
+                addArgument(arguments);
+            } while (lexer.next() == OR);
+
+            if (lexer.kind() != RPAREN) {
+                throw lexer.unexpected(OR, RPAREN);
+            }
+        } else {
+            addArgument(arguments);
+        }
+        // The node is created before reading the next token, so an unknown operator is
+        // reported before any error that follows the comparison (as in the JavaCC parser).
+        if (operator == null) {
+            lexer.errorOffset(operatorBegin);
+            throw new UnknownOperatorException(operatorSymbol);
+        }
+        Node node;
+        try {
+            node = factory.createComparisonNode(operator, selector, arguments);
+        } catch (ArgumentConversionException ex) {
+            throw new InvalidArgumentException(ex, argumentOffsets[ex.getIndex()] + 1);
+        }
+        lexer.next();
+
+        return node;
+    }
+
+    private void addArgument(ArrayList<String> arguments) throws ParseException {
+        int index = arguments.size();
+        if (index == argumentOffsets.length) {
+            argumentOffsets = Arrays.copyOf(argumentOffsets, index * 2);
+        }
+        argumentOffsets[index] = lexer.tokenBegin();
+        arguments.add(argument(index));
+    }
+
+    /**
+     * Returns the current token as a value. The limits are checked before the value is
+     * extracted, so an oversized argument is not copied.
+     *
+     * <pre>value = unreserved-str | double-quoted | single-quoted;</pre>
+     */
+    private String argument(int index) throws ParseException {
+        int kind = lexer.kind();
+        if (kind != UNRESERVED_STR && kind != SINGLE_QUOTED_STR && kind != DOUBLE_QUOTED_STR) {
+            throw lexer.unexpected(UNRESERVED_STR, SINGLE_QUOTED_STR, DOUBLE_QUOTED_STR);
+        }
+        limits.argument(index, lexer.tokenEnd() - lexer.tokenBegin());
+        return lexer.value();
+    }
+
+    /**
+     * Returns the tracker with statistics of the last parse.
+     */
+    LimitsTracker tracker() {
+        return limits;
+    }
+
+    /**
+     * Checks that the current token is of the expected kind and advances to the next one.
+     */
+    private void expect(int kind) throws ParseException {
+        if (lexer.kind() != kind) {
+            throw lexer.unexpected(kind);
+        }
+        if (kind != EOF) {
+            lexer.next();
+        }
+    }
+
+    private ArrayList<Node> acquireNodeBuffer() {
+        if (level == nodeBuffers.size()) {
+            nodeBuffers.add(new ArrayList<Node>());
+        }
+        return nodeBuffers.get(level++);
+    }
+
+    private void releaseNodeBuffer(ArrayList<Node> buffer) {
+        level--;
+        if (buffer.size() > MAX_RETAINED_SIZE) {
+            nodeBuffers.set(level, new ArrayList<Node>());
+        } else {
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser;
+
+import cz.jirutka.rsql.parser.ast.ComparisonOperator;
+import cz.jirutka.rsql.parser.ast.LogicalOperator;
+
+/**
+ * Receives events from the streaming {@link RSQLParser#parse(CharSequence, RSQLListener) parse}
+ * in the order of the input, without building the AST. The events correspond to the nodes that
+ * would be created by the {@link RSQLParser#parse(CharSequence) parse} returning AST, i.e. a
+ * logical group is reported only if it has more than one operand and redundant parentheses are
+ * not reported at all.
+ *
+ * <p>For example, <tt>a==1;(b=in=(2,3),c!=4)</tt> produces:
+ * <pre>
+ * startLogical(AND)
+ *   startComparison("a", EQUAL), argument("1"), endComparison()
+ *   startLogical(OR)
+ *     startComparison("b", IN), argument("2"), argument("3"), endComparison()
+ *     startComparison("c", NOT_EQUAL), argument("4"), endComparison()
+ *   endLogical(OR)
+ * endLogical(AND)
+ * </pre></p>
+ *
+ * <p>The events are emitted while parsing, so the listener may receive some events before a
+ * syntax error is found in the rest of the input.</p>
+ */
+public interface RSQLListener {
+
+    /**
+     * Called before the first operand of a logical group.
+     */
+    void startLogical(LogicalOperator operator);
+
+    /**
+     * Called after the last operand of a logical group.
+     */
+    void endLogical(LogicalOperator operator);
+
+    /**
+     * Called at the beginning of a comparison, before its arguments.
+     */
+    void startComparison(String selector, ComparisonOperator operator);
+
+    /**
+     * Called for each argument of the current comparison, in order, as soon as it's read.
+     *
+     * @param argument The argument without quotes and with unescaped chars.
+     */
+    void argument(String argument);
+
+    /**
+     * Called after the last argument of the current comparison.
+     */
+    void endComparison();
+}
@@ -24,15 +24,19 @@
 package cz.jirutka.rsql.parser;
 
 import cz.jirutka.rsql.parser.ast.ComparisonOperator;
+import cz.jirutka.rsql.parser.ast.FlatTree;
 import cz.jirutka.rsql.parser.ast.Node;
+import cz.jirutka.rsql.parser.ast.NodeInterner;
 import cz.jirutka.rsql.parser.ast.NodesFactory;
 import cz.jirutka.rsql.parser.ast.RSQLOperators;
+import cz.jirutka.rsql.parser.ast.SelectorSchema;
 import net.jcip.annotations.Immutable;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 /**
  * Parser of the RSQL (RESTful Service Query Language).
@@ -67,23 +71,34 @@ import java.util.Set;
  * unreserved     = all-chars - reserved;
  * escaped        = "\", all-chars;
  * all-chars      = ? all unicode characters ?;
- * }</pre>
+ * }</pre></p>
+ *
+ * <p>Instances of this class are immutable and thread-safe. The parsing state (lexer, buffers)
+ * is reused per thread, so parsing allocates just the resulting AST.</p>
  *
  * @version 2.1
  */
 @Immutable
 public final class RSQLParser {
 
-    private static final Charset ENCODING = Charset.forName("UTF-8");
-
     private final NodesFactory nodesFactory;
 
+    private final OperatorTrie operators;
+
+    private final QueryCache cache;
+
+    private final ParserLimits limits;
+
+    private final boolean iterative;
+
+    private final ParserMonitor monitor;
+
 
     /**
      * Creates a new instance of {@code RSQLParser} with the default set of comparison operators.
      */
     public RSQLParser() {
-        this.nodesFactory = new NodesFactory(RSQLOperators.defaultOperators());
+        this(RSQLOperators.defaultOperators());
     }
 
     /**
@@ -97,30 +112,466 @@ public final class RSQLParser {
             throw new IllegalArgumentException("operators must not be null or empty");
         }
         this.nodesFactory = new NodesFactory(operators);
+        this.operators = new OperatorTrie(operators);
+        this.cache = null;
+        this.limits = ParserLimits.NONE;
+        this.iterative = false;
+        this.monitor = null;
+    }
+
+    private RSQLParser(NodesFactory nodesFactory, OperatorTrie operators, QueryCache cache,
+                       ParserLimits limits, boolean iterative, ParserMonitor monitor) {
+        this.nodesFactory = nodesFactory;
+        this.operators = operators;
+        this.cache = cache;
+        this.limits = limits;
+        this.iterative = iterative;
+        this.monitor = monitor;
+    }
+
+
+    /**
+     * Returns a copy of this parser that caches results of {@link #parse(String)} in the given
+     * cache. The cache must not be shared with parsers that are configured differently.
+     * Copies created by the methods that change how queries are parsed (e.g.
+     * {@link #withLimits(ParserLimits)}) don't use the cache, so it should be set last.
+     *
+     * @param cache The cache to use, or <tt>null</tt> to disable caching.
+     */
+    public RSQLParser withCache(QueryCache cache) {
+        return new RSQLParser(nodesFactory, operators, cache, limits, iterative, monitor);
+    }
+
+    /**
+     * Returns the cache of parse results used by this parser, or <tt>null</tt> if none.
+     */
+    public QueryCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns a copy of this parser that interns the parsed nodes, selectors and arguments in
+     * the given interner, so equal parts of the parsed expressions are shared in memory. It's
+     * useful when a lot of parsed expressions are retained.
+     *
+     * The copy doesn't use the {@linkplain #withCache(QueryCache) cache} of this parser.
+     *
+     * @param interner The interner to use (it may be shared by multiple parsers), or
+     *                 <tt>null</tt> to disable interning.
+     * @see NodesFactory#withInterner(NodeInterner)
+     */
+    public RSQLParser withInterner(NodeInterner interner) {
+        return new RSQLParser(nodesFactory.withInterner(interner), operators, null, limits, iterative, monitor);
+    }
+
+    /**
+     * Returns a copy of this parser that converts arguments of the declared selectors according
+     * to the given schema. An argument that cannot be converted is reported as
+     * {@link InvalidArgumentException} with its position.
+     *
+     * The copy doesn't use the {@linkplain #withCache(QueryCache) cache} of this parser.
+     *
+     * @param schema The schema to use, or <tt>null</tt> to disable conversion.
+     * @see cz.jirutka.rsql.parser.ast.ComparisonNode#getTypedArguments()
+     */
+    public RSQLParser withSchema(SelectorSchema schema) {
+        return new RSQLParser(nodesFactory.withSchema(schema), operators, null, limits, iterative, monitor);
+    }
+
+
+    /**
+     * Returns a copy of this parser that checks the given limits when parsing. A query that
+     * exceeds any of the limits is rejected with {@link LimitExceededException}.
+     *
+     * The copy doesn't use the {@linkplain #withCache(QueryCache) cache} of this parser.
+     *
+     * @param limits The limits, or <tt>null</tt> for no limits.
+     */
+    public RSQLParser withLimits(ParserLimits limits) {
+        return new RSQLParser(nodesFactory, operators, null,
+                limits != null ? limits : ParserLimits.NONE, iterative, monitor);
+    }
+
+    /**
+     * Returns the limits checked by this parser.
+     */
+    public ParserLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Returns a copy of this parser that parses nested groups iteratively using an explicit stack
+     * on the heap instead of recursion, so a deeply nested query cannot overflow the thread's
+     * stack. The nesting depth can be still limited using {@link ParserLimits#withMaxDepth(int)}.
+     * The iterative mode is slightly slower for typical shallow queries; it doesn't apply to
+     * parsing {@linkplain #parse(CharSequence, RSQLListener) into a listener}.
+     *
+     * The copy doesn't use the {@linkplain #withCache(QueryCache) cache} of this parser.
+     *
+     * @param iterative Whether to parse iteratively.
+     */
+    public RSQLParser withIterativeParsing(boolean iterative) {
+        return new RSQLParser(nodesFactory, operators, null, limits, iterative, monitor);
     }
 
     /**
-     * Parses the RSQL expression and returns AST.
+     * Returns <tt>true</tt> if this parser parses nested groups iteratively.
+     */
+    public boolean isIterativeParsing() {
+        return iterative;
+    }
+
+    /**
+     * Returns a copy of this parser that reports {@linkplain ParseStatistics statistics} of
+     * each parsing (including the failed ones) to the given monitor. Results returned from the
+     * {@linkplain #withCache(QueryCache) cache} are not reported. Without a monitor, the
+     * statistics are not collected.
+     *
+     * @param monitor The monitor, or <tt>null</tt> to disable monitoring.
+     */
+    public RSQLParser withMonitor(ParserMonitor monitor) {
+        return new RSQLParser(nodesFactory, operators, cache, limits, iterative, monitor);
+    }
+
+    /**
+     * Returns the monitor used by this parser, or <tt>null</tt> if none.
+     */
+    public ParserMonitor getMonitor() {
+        return monitor;
+    }
+
+
+    /**
+     * Parses the RSQL expression and returns AST. If this parser has a
+     * {@linkplain #withCache(QueryCache) cache}, then a cached result is returned (or a cached
+     * failure is thrown as a new exception) when the same query has been already parsed.
      *
      * @param query The query expression to parse.
      * @return A root of the parsed AST.
      *
      * @throws RSQLParserException If some exception occurred during parsing, i.e. the
-     *          {@code query} is syntactically invalid.
+     *          {@code query} is syntactically invalid or exceeds the {@link #withLimits limits}.
      * @throws IllegalArgumentException If the {@code query} is <tt>null</tt>.
      */
     public Node parse(String query) throws RSQLParserException {
+        return parse((CharSequence) query);
+    }
+
+    /**
+     * Parses the RSQL expression and returns AST. The query is read directly from the given
+     * sequence, only the selectors and arguments are copied into new strings.
+     *
+     * @param query The query expression to parse.
+     * @return A root of the parsed AST.
+     *
+     * @throws RSQLParserException If some exception occurred during parsing, i.e. the
+     *          {@code query} is syntactically invalid or exceeds the {@link #withLimits limits}.
+     * @throws IllegalArgumentException If the {@code query} is <tt>null</tt>.
+     */
+    public Node parse(CharSequence query) throws RSQLParserException {
+        if (query == null) {
+            throw new IllegalArgumentException("query must not be null");
+        }
+        if (cache != null && query instanceof String) {
+            return parseCached((String) query);
+        }
+        ParserContext ctx = ParserContext.acquire();
+        return parse(ctx, ctx.input(query));
+    }
+
+    /**
+     * Parses the RSQL expression from a slice of the given array and returns AST. The array
+     * is not copied, so it must not be modified during parsing.
+     *
+     * @param query The array that contains the query expression to parse.
+     * @param offset The index of the first char of the query.
+     * @param length The number of chars of the query.
+     * @return A root of the parsed AST.
+     *
+     * @throws RSQLParserException If some exception occurred during parsing, i.e. the
+     *          {@code query} is syntactically invalid or exceeds the {@link #withLimits limits}.
+     * @throws IllegalArgumentException If the {@code query} is <tt>null</tt>.
+     * @throws IndexOutOfBoundsException If the {@code offset} and {@code length} are out of
+     *          the array bounds.
+     */
+    public Node parse(char[] query, int offset, int length) throws RSQLParserException {
+        if (query == null) {
+            throw new IllegalArgumentException("query must not be null");
+        }
+        checkBounds(query.length, offset, length);
+
+        ParserContext ctx = ParserContext.acquire();
+        return parse(ctx, ctx.input(query, offset, length));
+    }
+
+    /**
+     * Parses the UTF-8 encoded RSQL expression and returns AST. The bytes are lexed directly,
+     * only the selectors and arguments are decoded into new strings.
+     *
+     * @param query The UTF-8 encoded query expression to parse.
+     * @return A root of the parsed AST.
+     *
+     * @throws RSQLParserException If some exception occurred during parsing, i.e. the
+     *          {@code query} is syntactically invalid or exceeds the {@link #withLimits limits}.
+     * @throws IllegalArgumentException If the {@code query} is <tt>null</tt>.
+     * @see #parse(byte[], int, int)
+     */
+    public Node parse(byte[] query) throws RSQLParserException {
+        if (query == null) {
+            throw new IllegalArgumentException("query must not be null");
+        }
+        ParserContext ctx = ParserContext.acquire();
+        return parse(ctx, ctx.utf8Input(query, 0, query.length));
+    }
+
+    /**
+     * Parses the UTF-8 encoded RSQL expression from a slice of the given array and returns AST.
+     * The array is not copied, so it must not be modified during parsing. Malformed byte
+     * sequences are replaced with U+FFFD, the same way as {@link String#String(byte[], java.nio.charset.Charset)}
+     * does.
+     *
+     * @param query The array that contains the UTF-8 encoded query expression to parse.
+     * @param offset The index of the first byte of the query.
+     * @param length The number of bytes of the query.
+     * @return A root of the parsed AST.
+     *
+     * @throws RSQLParserException If some exception occurred during parsing, i.e. the
+     *          {@code query} is syntactically invalid or exceeds the {@link #withLimits limits}.
+     * @throws IllegalArgumentException If the {@code query} is <tt>null</tt>.
+     * @throws IndexOutOfBoundsException If the {@code offset} and {@code length} are out of
+     *          the array bounds.
+     */
+    public Node parse(byte[] query, int offset, int length) throws RSQLParserException {
+        if (query == null) {
+            throw new IllegalArgumentException("query must not be null");
+        }
+        checkBounds(query.length, offset, length);
+
+        ParserContext ctx = ParserContext.acquire();
+        return parse(ctx, ctx.utf8Input(query, offset, length));
+    }
+
+    /**
+     * Parses the UTF-8 encoded RSQL expression from the remaining bytes of the given buffer
+     * (i.e. between its position and limit) and returns AST. The position of the buffer is not
+     * changed.
+     *
+     * @param query The buffer that contains the UTF-8 encoded query expression to parse.
+     * @return A root of the parsed AST.
+     *
+     * @throws RSQLParserException If some exception occurred during parsing, i.e. the
+     *          {@code query} is syntactically invalid or exceeds the {@link #withLimits limits}.
+     * @throws IllegalArgumentException If the {@code query} is <tt>null</tt>.
+     * @see #parse(byte[], int, int)
+     */
+    public Node parse(ByteBuffer query) throws RSQLParserException {
         if (query == null) {
             throw new IllegalArgumentException("query must not be null");
         }
-        InputStream is = new ByteArrayInputStream(query.getBytes(ENCODING));
-        Parser parser = new Parser(is, ENCODING.name(), nodesFactory);
+        ParserContext ctx = ParserContext.acquire();
+        return parse(ctx, ctx.utf8Input(query));
+    }
+
+
+    /**
+     * Parses the RSQL expression and reports it to the given listener as it's read, without
+     * building AST. The memory used doesn't depend on the size of the query, so it's suitable
+     * for very large queries, e.g. with thousands of arguments that are streamed to a database.
+     * The cache and schema of this parser are not used.
+     *
+     * @param query The query expression to parse.
+     * @param listener The listener to report the parsed constructs to.
+     *
+     * @throws RSQLParserException If some exception occurred during parsing, i.e. the
+     *          {@code query} is syntactically invalid or exceeds the {@link #withLimits limits},
+     *          or the listener has thrown an exception.
+     * @throws IllegalArgumentException If the {@code query} or {@code listener} is <tt>null</tt>.
+     */
+    public void parse(CharSequence query, RSQLListener listener) throws RSQLParserException {
+        if (query == null || listener == null) {
+            throw new IllegalArgumentException("query and listener must not be null");
+        }
+        ParserContext ctx = ParserContext.acquire();
+        parse(ctx, ctx.input(query), listener);
+    }
+
+    /**
+     * Parses the UTF-8 encoded RSQL expression from the remaining bytes of the given buffer
+     * and reports it to the given listener as it's read, without building AST. The position of
+     * the buffer is not changed.
+     *
+     * @param query The buffer that contains the UTF-8 encoded query expression to parse.
+     * @param listener The listener to report the parsed constructs to.
+     *
+     * @throws RSQLParserException If some exception occurred during parsing, i.e. the
+     *          {@code query} is syntactically invalid or exceeds the {@link #withLimits limits},
+     *          or the listener has thrown an exception.
+     * @throws IllegalArgumentException If the {@code query} or {@code listener} is <tt>null</tt>.
+     * @see #parse(CharSequence, RSQLListener)
+     */
+    public void parse(ByteBuffer query, RSQLListener listener) throws RSQLParserException {
+        if (query == null || listener == null) {
+            throw new IllegalArgumentException("query and listener must not be null");
+        }
+        ParserContext ctx = ParserContext.acquire();
+        parse(ctx, ctx.utf8Input(query), listener);
+    }
+
+    /**
+     * Parses all the given queries in parallel on a shared {@link java.util.concurrent.ForkJoinPool}
+     * with one thread per CPU. It's the same as {@link #parseAll(Collection, Executor)} with the
+     * shared pool.
+     *
+     * @param queries The query expressions to parse.
+     * @return An unmodifiable list of the results in the order of the queries.
+     * @throws IllegalArgumentException If the {@code queries} or any of the queries is
+     *          <tt>null</tt>.
+     */
+    public List<ParseResult> parseAll(Collection<? extends CharSequence> queries) {
+        return parseAll(queries, BulkParser.defaultExecutor());
+    }
+
+    /**
+     * Parses all the given queries in parallel using the given executor, e.g. to re-parse a
+     * large number of stored queries. The queries are split into chunks that are parsed by up
+     * to one task per CPU, and the calling thread; each thread reuses its parsing state for all
+     * its chunks. The method returns when all the queries are parsed.
+     *
+     * <p>A query that cannot be parsed doesn't stop the others; its result holds the exception.
+     * The cache, limits and monitor of this parser are used as for {@link #parse(CharSequence)}.
+     * </p>
+     *
+     * @param queries The query expressions to parse; e.g. a stream can be collected into a list.
+     * @param executor The executor to run the parsing tasks. If it rejects a task, the calling
+     *                 thread parses more chunks itself.
+     * @return An unmodifiable list of the results in the order of the queries.
+     * @throws IllegalArgumentException If the {@code queries}, any of the queries, or the
+     *          {@code executor} is <tt>null</tt>.
+     */
+    public List<ParseResult> parseAll(Collection<? extends CharSequence> queries, Executor executor) {
+        if (queries == null || executor == null) {
+            throw new IllegalArgumentException("queries and executor must not be null");
+        }
+        CharSequence[] array = queries.toArray(new CharSequence[queries.size()]);
+        for (CharSequence query : array) {
+            if (query == null) {
+                throw new IllegalArgumentException("queries must not contain null");
+            }
+        }
+        return BulkParser.parseAll(this, array, executor);
+    }
+
+    /**
+     * Parses the RSQL expression into the compact {@link FlatTree} representation of the AST.
+     * It's parsed {@linkplain #parse(CharSequence, RSQLListener) into a listener}, so the cache,
+     * interner and schema of this parser are not used.
+     *
+     * @param query The query expression to parse.
+     * @return The flat tree.
+     * @throws RSQLParserException If some exception occurred during parsing, i.e. the
+     *          {@code query} is syntactically invalid or exceeds the {@link #withLimits limits}.
+     * @throws IllegalArgumentException If the {@code query} is <tt>null</tt>.
+     */
+    public FlatTree parseFlat(CharSequence query) throws RSQLParserException {
+        FlatTree.Builder builder = new FlatTree.Builder();
+        parse(query, builder);
+
+        return builder.build();
+    }
+
+
+    /**
+     * Parses the input using the given context and releases the context.
+     */
+    private Node parse(ParserContext ctx, ParserInput input) throws RSQLParserException {
+        long start = monitor != null ? System.nanoTime() : 0;
+        RSQLParserException failure = null;
+        try {
+            return ctx.parse(input, nodesFactory, operators, limits, iterative);
+
+        } catch (RSQLParserException ex) {
+            throw failure = ex;
+
+        } catch (Exception | StackOverflowError ex) {
+            // StackOverflowError means that the query is nested too deeply for recursive parsing
+            throw failure = new RSQLParserException(ex);
+
+        } finally {
+            try {
+                if (monitor != null) {
+                    report(ctx, input, start, failure);
+                }
+            } finally {
+                ctx.release();
+            }
+        }
+    }
+
+    private void parse(ParserContext ctx, ParserInput input, RSQLListener listener) throws RSQLParserException {
+        long start = monitor != null ? System.nanoTime() : 0;
+        RSQLParserException failure = null;
+        try {
+            ctx.parse(input, operators, limits, listener);
+
+        } catch (RSQLParserException ex) {
+            throw failure = ex;
+
+        } catch (Exception | StackOverflowError ex) {
+            throw failure = new RSQLParserException(ex);
+
+        } finally {
+            try {
+                if (monitor != null) {
+                    report(ctx, input, start, failure);
+                }
+            } finally {
+                ctx.release();
+            }
+        }
+    }
+
+    private void report(ParserContext ctx, ParserInput input, long start, RSQLParserException failure) {
+        long duration = System.nanoTime() - start;
+        LimitsTracker stats = ctx.lastTracker();
+
+        int offset = stats.getOffset();
+        if (failure != null && failure.getCause() instanceof InvalidArgumentException) {
+            offset = ((InvalidArgumentException) failure.getCause()).getColumn() - 1;
+        }
+        monitor.parsed(new ParseStatistics(duration, input.length(), stats.getTokenCount(),
+                stats.getNodeCount(), stats.getMaxDepth(), stats.getArgumentCount(), failure, offset));
+    }
+
+    /**
+     * A cached failure is thrown as a new exception, see {@link QueryCache.Failure}.
+     */
+    private Node parseCached(String query) throws RSQLParserException {
+        Object result = cache.get(query);
 
+        if (result instanceof Node) {
+            return (Node) result;
+        } else if (result != null) {
+            throw ((QueryCache.Failure) result).newException();
+        }
+        ParserContext ctx = ParserContext.acquire();
         try {
-            return parser.Input();
+            Node node = parse(ctx, ctx.input(query));
+            cache.put(query, node);
+            return node;
+
+        } catch (RSQLParserException ex) {
+            QueryCache.Failure failure = QueryCache.Failure.of(ex);
+            if (failure != null) {
+                cache.put(query, failure);
+            }
+            throw ex;
+        }
+    }
 
-        } catch (Exception | TokenMgrError ex) {
-            throw new RSQLParserException(ex);
+    private static void checkBounds(int arrayLength, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > arrayLength - length) {
+            throw new IndexOutOfBoundsException(
+                    String.format("offset: %d, length: %d, array length: %d", offset, length, arrayLength));
         }
     }
 }
@@ -31,4 +31,8 @@ public class RSQLParserException extends RuntimeException {
     public RSQLParserException(Throwable cause) {
         super(cause);
     }
+
+    protected RSQLParserException(String message) {
+        super(message);
+    }
 }
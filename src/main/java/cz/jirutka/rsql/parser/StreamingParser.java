@@ -0,0 +1,367 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser;
+
+import cz.jirutka.rsql.parser.ast.ComparisonOperator;
+import cz.jirutka.rsql.parser.ast.LogicalOperator;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.util.Arrays;
+
+/**
+ * Recursive descent parser of the RSQL that reports the parsed constructs to a
+ * {@link RSQLListener} instead of building AST. It implements the same grammar as the
+ * {@link QueryParser}, but no token is kept in memory.
+ *
+ * <p>The listener must be told about a logical group before its first operand, but the grammar
+ * reveals whether there's a group only after the first operand. So when a group may begin, the
+ * parser looks ahead by skipping tokens up to the first separator on the same nesting level and
+ * then rewinds the lexer. The position of the closing parenthesis of each parenthesized group
+ * skipped this way is remembered, so the lookahead of an outer level jumps over the groups it
+ * has already seen and each token is read only a constant number of times, no matter how deep
+ * it's nested. The retained state is thus two ints per parenthesized group.</p>
+ */
+@NotThreadSafe
+final class StreamingParser implements TokenKinds {
+
+    private final Lexer lexer = new Lexer();
+
+    private final LimitsTracker limits = new LimitsTracker();
+
+    private RSQLListener listener;
+
+    /**
+     * The token that follows the first operand of the or-group scanned by {@link #or()}, so
+     * {@link #and()} doesn't have to scan it again.
+     */
+    private int pendingAndTerminator = -1;
+
+    /**
+     * Number of the parenthesized groups (including lists of arguments, the lookahead doesn't
+     * distinguish them) entered by the parser so far, i.e. the ordinal of the next group in the
+     * order of their opening parentheses.
+     */
+    private int groupsEntered;
+
+    /**
+     * The ordinal of the next group to be seen by {@link #skipOperand(boolean)}.
+     */
+    private int scanGroup;
+
+    /**
+     * Number of the groups seen by {@link #skipOperand(boolean)}.
+     */
+    private int groupsSeen;
+
+    /**
+     * Position of the closing parenthesis of each group by its ordinal, {@link #UNKNOWN} if the
+     * group hasn't been skipped yet, or {@link #UNTERMINATED} if skipping of the group ended at
+     * the end of the input or a lexical error.
+     */
+    private int[] groupEnds = new int[16];
+
+    /**
+     * The ordinal of the first group after the closing parenthesis of each group.
+     */
+    private int[] groupNexts = new int[16];
+
+    /**
+     * Ordinals of the groups being skipped by {@link #skipOperand(boolean)}.
+     */
+    private int[] skipStack = new int[16];
+
+    private static final int UNKNOWN = 0, UNTERMINATED = -1;
+
+    private static final int MAX_RETAINED_GROUPS = 1024;
+
+
+    /**
+     * Parses the given input and reports it to the listener.
+     *
+     * <pre>input = or, EOF;</pre>
+     */
+    void parse(ParserInput input, OperatorTrie operators, ParserLimits limits, RSQLListener listener)
+            throws ParseException {
+        this.limits.reset(limits, input.length());
+        this.lexer.reset(input, operators);
+        this.listener = listener;
+        this.pendingAndTerminator = -1;
+        this.groupsEntered = 0;
+        try {
+            lexer.next();
+            or();
+            expect(EOF);
+
+        } finally {
+            this.limits.finish(lexer);
+            lexer.reset(null, null);
+            this.listener = null;
+
+            if (groupEnds.length > MAX_RETAINED_GROUPS) {
+                groupEnds = new int[16];
+                groupNexts = new int[16];
+                skipStack = new int[16];
+            } else {
+                Arrays.fill(groupEnds, 0, groupsSeen, UNKNOWN);
+            }
+            groupsSeen = 0;
+        }
+    }
+
+    /**
+     * <pre>or = and, { OR, and };</pre>
+     */
+    private void or() throws ParseException {
+        int begin = lexer.tokenBegin();
+        int firstTerminator = skipOperand(false);
+        int terminator = firstTerminator;
+
+        while (terminator == AND) {
+            terminator = skipOperand(true);
+        }
+        lexer.rewind(begin);
+
+        boolean group = terminator == OR;
+        if (group) {
+            limits.node();
+            listener.startLogical(LogicalOperator.OR);
+        }
+        pendingAndTerminator = firstTerminator;
+        and();
+
+        while (lexer.kind() == OR) {
+            lexer.next();
+            and();
+        }
+        if (group) {
+            listener.endLogical(LogicalOperator.OR);
+        }
+    }
+
+    /**
+     * <pre>and = constraint, { AND, constraint };</pre>
+     */
+    private void and() throws ParseException {
+        int terminator = pendingAndTerminator;
+        pendingAndTerminator = -1;
+
+        if (terminator < 0) {
+            int begin = lexer.tokenBegin();
+            terminator = skipOperand(false);
+            lexer.rewind(begin);
+        }
+        boolean group = terminator == AND;
+        if (group) {
+            limits.node();
+            listener.startLogical(LogicalOperator.AND);
+        }
+        constraint();
+
+        while (lexer.kind() == AND) {
+            lexer.next();
+            constraint();
+        }
+        if (group) {
+            listener.endLogical(LogicalOperator.AND);
+        }
+    }
+
+    /**
+     * <pre>
+     * constraint = group | comparison;
+     * group      = "(", or, ")";
+     * </pre>
+     */
+    private void constraint() throws ParseException {
+        if (lexer.kind() == LPAREN) {
+            groupsEntered++;
+            limits.enterGroup();
+            lexer.next();
+            or();
+            expect(RPAREN);
+            limits.exitGroup();
+        } else {
+            comparison();
+        }
+    }
+
+    /**
+     * <pre>
+     * comparison = selector, comparator, arguments;
+     * arguments  = ( "(", value, { OR, value }, ")" ) | value;
+     * </pre>
+     */
+    private void comparison() throws ParseException {
+        if (lexer.kind() != UNRESERVED_STR) {
+            throw lexer.unexpected(LPAREN, UNRESERVED_STR);
+        }
+        limits.node();
+        String selector = lexer.image();
+
+        int opKind = lexer.next();
+        if (opKind != COMP_FIQL && opKind != COMP_ALT) {
+            throw lexer.unexpected(COMP_FIQL, COMP_ALT);
+        }
+        ComparisonOperator operator = lexer.operator();
+        String operatorSymbol = operator == null ? lexer.image() : null;
+        int operatorBegin = lexer.tokenBegin();
+
+        // An unknown operator is reported after the arguments (as in the JavaCC parser),
+        // so they're just validated in that case.
+        if (operator != null) {
+            listener.startComparison(selector, operator);
+        }
+        int index = 0;
+        if (lexer.next() == LPAREN) {
+            groupsEntered++;
+            do {
+                lexer.next();
+                argument(operator != null, index++);
+            } while (lexer.next() == OR);
+
+            if (lexer.kind() != RPAREN) {
+                throw lexer.unexpected(OR, RPAREN);
+            }
+        } else {
+            argument(operator != null, index);
+        }
+        if (operator == null) {
+            lexer.errorOffset(operatorBegin);
+            throw new UnknownOperatorException(operatorSymbol);
+        }
+        listener.endComparison();
+        lexer.next();
+    }
+
+    /**
+     * Reports the current token as a value.
+     *
+     * <pre>value = unreserved-str | double-quoted | single-quoted;</pre>
+     */
+    private void argument(boolean report, int index) throws ParseException {
+        int kind = lexer.kind();
+        if (kind != UNRESERVED_STR && kind != SINGLE_QUOTED_STR && kind != DOUBLE_QUOTED_STR) {
+            throw lexer.unexpected(UNRESERVED_STR, SINGLE_QUOTED_STR, DOUBLE_QUOTED_STR);
+        }
+        limits.argument(index, lexer.tokenEnd() - lexer.tokenBegin());
+        if (report) {
+            listener.argument(lexer.value());
+        }
+    }
+
+    /**
+     * Skips tokens from the current one (or the next one if {@code fromNext}) up to the first
+     * {@link #AND}, {@link #OR}, {@link #RPAREN} or {@link #EOF} that is not nested in
+     * parentheses, and returns its kind. If a lexical error occurs, then it returns {@link #EOF};
+     * the error will be reported when the tokens are parsed for real.
+     *
+     * <p>A group that has been already skipped is jumped over; the end of each group that is
+     * skipped for the first time is remembered.</p>
+     */
+    private int skipOperand(boolean fromNext) {
+        if (!fromNext) {
+            scanGroup = groupsEntered;
+        }
+        int depth = 0;
+        try {
+            for (int kind = fromNext ? lexer.next() : lexer.kind(); ; kind = lexer.next()) {
+                switch (kind) {
+                    case EOF:
+                        return unterminated(depth);
+                    case LPAREN:
+                        int group = scanGroup++;
+                        if (scanGroup > groupsSeen) {
+                            groupsSeen = scanGroup;
+                            ensureGroupCapacity(group);
+                        }
+                        int end = groupEnds[group];
+                        if (end == UNTERMINATED) {
+                            return unterminated(depth);
+                        }
+                        if (end != UNKNOWN) {
+                            lexer.rewind(end);  // the closing parenthesis of the group
+                            scanGroup = groupNexts[group];
+                            break;
+                        }
+                        if (depth == skipStack.length) {
+                            skipStack = Arrays.copyOf(skipStack, depth * 2);
+                        }
+                        skipStack[depth++] = group;
+                        break;
+                    case RPAREN:
+                        if (depth == 0) return RPAREN;
+                        group = skipStack[--depth];
+                        groupEnds[group] = lexer.tokenBegin();
+                        groupNexts[group] = scanGroup;
+                        break;
+                    case AND:
+                    case OR:
+                        if (depth == 0) return kind;
+                        break;
+                }
+            }
+        } catch (ParseException ex) {
+            lexer.errorOffset(-1);  // it will be reported when the operand is parsed
+            return unterminated(depth);
+        }
+    }
+
+    /**
+     * Marks the groups being skipped as unterminated, so they won't be skipped again, and
+     * returns {@link #EOF}.
+     */
+    private int unterminated(int depth) {
+        for (int i = 0; i < depth; i++) {
+            groupEnds[skipStack[i]] = UNTERMINATED;
+        }
+        return EOF;
+    }
+
+    private void ensureGroupCapacity(int group) {
+        if (group >= groupEnds.length) {
+            int size = Math.max(group + 1, groupEnds.length * 2);
+            groupEnds = Arrays.copyOf(groupEnds, size);
+            groupNexts = Arrays.copyOf(groupNexts, size);
+        }
+    }
+
+    /**
+     * Returns the tracker with statistics of the last parse.
+     */
+    LimitsTracker tracker() {
+        return limits;
+    }
+
+    /**
+     * Checks that the current token is of the expected kind and advances to the next one.
+     */
+    private void expect(int kind) throws ParseException {
+        if (lexer.kind() != kind) {
+            throw lexer.unexpected(kind);
+        }
+        if (kind != EOF) {
+            lexer.next();
+        }
+    }
+}
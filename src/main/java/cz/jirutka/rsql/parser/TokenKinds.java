@@ -0,0 +1,62 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser;
+
+/**
+ * Kinds of the RSQL tokens produced by the {@link Lexer}. They are numbered as the tokens of
+ * the reference JavaCC grammar (<tt>src/test/javacc/RSQLParser.jj</tt>).
+ */
+interface TokenKinds {
+
+    /** End of the input. */
+    int EOF = 0;
+
+    int UNRESERVED_STR = 5;
+    int SINGLE_QUOTED_STR = 6;
+    int DOUBLE_QUOTED_STR = 7;
+    int AND = 8;
+    int OR = 9;
+    int LPAREN = 10;
+    int RPAREN = 11;
+    int COMP_FIQL = 12;
+    int COMP_ALT = 13;
+
+    /** Descriptions of the token kinds used in error messages, indexed by the kind. */
+    String[] tokenImage = {
+        "<EOF>",
+        "\" \"",
+        "\"\\t\"",
+        "<ALPHA>",
+        "<ESCAPED_CHAR>",
+        "<UNRESERVED_STR>",
+        "<SINGLE_QUOTED_STR>",
+        "<DOUBLE_QUOTED_STR>",
+        "<AND>",
+        "<OR>",
+        "\"(\"",
+        "\")\"",
+        "<COMP_FIQL>",
+        "<COMP_ALT>",
+    };
+}
@@ -0,0 +1,63 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.ast;
+
+/**
+ * This exception is thrown when an argument of a comparison cannot be converted to the type
+ * declared for the selector in a {@link SelectorSchema}.
+ */
+public class ArgumentConversionException extends IllegalArgumentException {
+
+    private final String selector;
+
+    private final String argument;
+
+    private final int index;
+
+
+    public ArgumentConversionException(String selector, String argument, int index,
+                                       ArgumentType<?> type, Throwable cause) {
+        super(String.format("Cannot convert argument '%s' of selector '%s' to %s: %s",
+                argument, selector, type, cause.getMessage()), cause);
+        this.selector = selector;
+        this.argument = argument;
+        this.index = index;
+    }
+
+
+    public String getSelector() {
+        return selector;
+    }
+
+    public String getArgument() {
+        return argument;
+    }
+
+    /**
+     * Returns index of the argument in the comparison's arguments list.
+     */
+    public int getIndex() {
+        return index;
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.ast;
+
+import net.jcip.annotations.Immutable;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Type of arguments of a selector declared in a {@link SelectorSchema}. It converts the textual
+ * arguments into {@link TypedArguments}; numeric types and timestamps are stored in primitive
+ * arrays.
+ *
+ * @param <T> Java type of the (boxed) values.
+ */
+@Immutable
+public abstract class ArgumentType<T> {
+
+    /**
+     * Strings, i.e. arguments as they are.
+     */
+    public static final ArgumentType<String> STRING = of("string", String.class, new ArgumentConverter<String>() {
+        public String convert(String argument) {
+            return argument;
+        }
+    });
+
+    /**
+     * <tt>true</tt> or <tt>false</tt>, case insensitive.
+     */
+    public static final ArgumentType<Boolean> BOOLEAN = of("boolean", Boolean.class, new ArgumentConverter<Boolean>() {
+        public Boolean convert(String argument) {
+            if ("true".equalsIgnoreCase(argument)) return true;
+            if ("false".equalsIgnoreCase(argument)) return false;
+            throw new IllegalArgumentException("expected true or false");
+        }
+    });
+
+    /**
+     * Integer numbers, stored as <tt>long</tt>.
+     */
+    public static final ArgumentType<Long> LONG = new LongStorage<Long>("long", Long.class) {
+        long parse(String argument) {
+            return Long.parseLong(argument);
+        }
+        Long box(long value) {
+            return value;
+        }
+    };
+
+    /**
+     * Floating point numbers, stored as <tt>double</tt>.
+     */
+    public static final ArgumentType<Double> DOUBLE = new DoubleStorage<Double>("double", Double.class) {
+        double parse(String argument) {
+            return Double.parseDouble(argument);
+        }
+        Double box(double value) {
+            return value;
+        }
+    };
+
+    /**
+     * Points in time in the ISO 8601 format with a time zone offset (e.g.
+     * <tt>2016-03-15T10:15:30Z</tt> or <tt>2016-03-15T10:15:30.120+01:00</tt>), or dates
+     * (<tt>2016-03-15</tt>) that are interpreted as midnight UTC. They're stored as <tt>long</tt>
+     * milliseconds since the epoch and boxed as {@link Date}.
+     */
+    public static final ArgumentType<Date> TIMESTAMP = new LongStorage<Date>("timestamp", Date.class) {
+        long parse(String argument) {
+            return parseTimestamp(argument);
+        }
+        Date box(long value) {
+            return new Date(value);
+        }
+    };
+
+
+    /**
+     * Formats of the {@link #TIMESTAMP}; a date, date-time and date-time with milliseconds.
+     * {@link SimpleDateFormat} is expensive to create and not thread-safe, so it's per thread.
+     */
+    private static final ThreadLocal<SimpleDateFormat[]> TIMESTAMP_FORMATS =
+            new ThreadLocal<SimpleDateFormat[]>() {
+                protected SimpleDateFormat[] initialValue() {
+                    return new SimpleDateFormat[]{
+                        utcFormat("yyyy-MM-dd"),
+                        utcFormat("yyyy-MM-dd'T'HH:mm:ssXXX"),
+                        utcFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX")
+                    };
+                }
+            };
+
+    private final String name;
+
+    private final Class<T> javaType;
+
+
+    ArgumentType(String name, Class<T> javaType) {
+        this.name = name;
+        this.javaType = javaType;
+    }
+
+
+    /**
+     * Creates a custom type with values stored as objects.
+     *
+     * @param name Name of the type used in error messages.
+     * @param javaType Java type of the values.
+     * @param converter Converter of the arguments to values.
+     * @throws IllegalArgumentException If any of the parameters is <tt>null</tt>.
+     */
+    public static <T> ArgumentType<T> of(String name, Class<T> javaType, final ArgumentConverter<T> converter) {
+        Assert.notNull(name, "name must not be null");
+        Assert.notNull(javaType, "javaType must not be null");
+        Assert.notNull(converter, "converter must not be null");
+
+        return new ArgumentType<T>(name, javaType) {
+            public T convert(String argument) {
+                return converter.convert(argument);
+            }
+            TypedArguments convertAll(String selector, List<String> arguments) {
+                Object[] values = new Object[arguments.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = convertOne(selector, arguments, i);
+                }
+                return new TypedArguments(this, null, null, values);
+            }
+        };
+    }
+
+
+    public String getName() {
+        return name;
+    }
+
+    public Class<T> getJavaType() {
+        return javaType;
+    }
+
+    /**
+     * Converts the argument to a value of this type.
+     *
+     * @throws IllegalArgumentException If the argument cannot be converted.
+     */
+    public abstract T convert(String argument);
+
+    /**
+     * Converts the arguments of a comparison of the given selector.
+     *
+     * @throws ArgumentConversionException If any of the arguments cannot be converted.
+     */
+    abstract TypedArguments convertAll(String selector, List<String> arguments);
+
+    /**
+     * Returns the value stored in the given typed arguments at the index as an object.
+     */
+    Object box(TypedArguments args, int index) {
+        return args.objects[index];
+    }
+
+    T convertOne(String selector, List<String> arguments, int index) {
+        String arg = arguments.get(index);
+        try {
+            T value = convert(arg);
+            if (value == null) {
+                throw new IllegalArgumentException("converter returned null");
+            }
+            return value;
+        } catch (IllegalArgumentException ex) {
+            throw new ArgumentConversionException(selector, arg, index, this, ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+
+    static long parseTimestamp(String argument) {
+        SimpleDateFormat[] formats = TIMESTAMP_FORMATS.get();
+        int first = argument.length() == 10 ? 0 : 1;
+        int last = argument.length() == 10 ? 0 : 2;
+        ParsePosition pos = new ParsePosition(0);
+
+        for (int i = first; i <= last; i++) {
+            pos.setIndex(0);
+            pos.setErrorIndex(-1);
+            Date date = formats[i].parse(argument, pos);
+            if (date != null && pos.getIndex() == argument.length()) {
+                return date.getTime();
+            }
+        }
+        throw new IllegalArgumentException("expected ISO 8601 date or date-time with offset");
+    }
+
+    private static SimpleDateFormat utcFormat(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern);
+        format.setLenient(false);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    }
+
+
+    abstract static class LongStorage<T> extends ArgumentType<T> {
+
+        LongStorage(String name, Class<T> javaType) {
+            super(name, javaType);
+        }
+
+        abstract long parse(String argument);
+
+        abstract T box(long value);
+
+        public T convert(String argument) {
+            return box(parse(argument));
+        }
+
+        TypedArguments convertAll(String selector, List<String> arguments) {
+            long[] values = new long[arguments.size()];
+            for (int i = 0; i < values.length; i++) {
+                String arg = arguments.get(i);
+                try {
+                    values[i] = parse(arg);
+                } catch (IllegalArgumentException ex) {
+                    throw new ArgumentConversionException(selector, arg, i, this, ex);
+                }
+            }
+            return new TypedArguments(this, values, null, null);
+        }
+
+        Object box(TypedArguments args, int index) {
+            return box(args.longs[index]);
+        }
+    }
+
+    abstract static class DoubleStorage<T> extends ArgumentType<T> {
+
+        DoubleStorage(String name, Class<T> javaType) {
+            super(name, javaType);
+        }
+
+        abstract double parse(String argument);
+
+        abstract T box(double value);
+
+        public T convert(String argument) {
+            return box(parse(argument));
+        }
+
+        TypedArguments convertAll(String selector, List<String> arguments) {
+            double[] values = new double[arguments.size()];
+            for (int i = 0; i < values.length; i++) {
+                String arg = arguments.get(i);
+                try {
+                    values[i] = parse(arg);
+                } catch (IllegalArgumentException ex) {
+                    throw new ArgumentConversionException(selector, arg, i, this, ex);
+                }
+            }
+            return new TypedArguments(this, null, values, null);
+        }
+
+        Object box(TypedArguments args, int index) {
+            return box(args.doubles[index]);
+        }
+    }
+}
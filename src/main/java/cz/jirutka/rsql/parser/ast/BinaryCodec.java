@@ -0,0 +1,630 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.ast;
+
+import net.jcip.annotations.Immutable;
+
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Encodes the AST into a compact binary format and decodes it back without parsing, e.g. to
+ * forward a parsed query to another service or to persist it.
+ *
+ * <p>The format (version 1) consists of:
+ * <pre>
+ * header    = 'R', 'Q', version;
+ * symbols   = count, { string };      (symbols of the used comparison operators)
+ * strings   = count, { string };      (unique selectors and arguments)
+ * node      = and | or | comparison;  (in pre-order)
+ * and       = 0, count, { node };
+ * or        = 1, count, { node };
+ * comparison = 2 + symbol index, selector index, count, { argument index };
+ * string    = length, { UTF-8 byte };
+ * </pre>
+ * All the numbers except the version are unsigned varints (7 bits per byte, little-endian).</p>
+ *
+ * <p>The decoded nodes are created by the {@link NodesFactory}, so they're the same as the
+ * parsed ones. If the parser uses a {@linkplain #withSchema(SelectorSchema) schema} or an
+ * {@linkplain #withInterner(NodeInterner) interner}, the codec should use the same ones.</p>
+ */
+@Immutable
+public final class BinaryCodec {
+
+    /**
+     * Version of the format written by the encoder.
+     */
+    public static final int VERSION = 1;
+
+    private static final byte MAGIC_0 = 'R', MAGIC_1 = 'Q';
+
+    private static final int TAG_AND = 0, TAG_OR = 1, TAG_COMPARISON = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final ThreadLocal<Decoder> DECODERS = new ThreadLocal<Decoder>() {
+        protected Decoder initialValue() {
+            return new Decoder();
+        }
+    };
+
+    /**
+     * Symbols of the supported operators encoded in UTF-8, and the operators at the same indexes.
+     * It's faster to find a symbol in these few bytes than to decode it and look it up in a map.
+     */
+    private final byte[][] symbols;
+
+    private final ComparisonOperator[] symbolOperators;
+
+    private final NodesFactory factory;
+
+
+    /**
+     * @param operators A set of comparison operators that may be decoded. Must not be
+     *                  <tt>null</tt>.
+     */
+    public BinaryCodec(Set<ComparisonOperator> operators) {
+        Assert.notNull(operators, "operators must not be null");
+
+        List<byte[]> symbols = new ArrayList<>();
+        List<ComparisonOperator> symbolOperators = new ArrayList<>();
+        for (ComparisonOperator op : operators) {
+            for (String sym : op.getSymbols()) {
+                symbols.add(sym.getBytes(UTF_8));
+                symbolOperators.add(op);
+            }
+        }
+        this.symbols = symbols.toArray(new byte[symbols.size()][]);
+        this.symbolOperators = symbolOperators.toArray(new ComparisonOperator[symbolOperators.size()]);
+        this.factory = new NodesFactory(operators);
+    }
+
+    private BinaryCodec(byte[][] symbols, ComparisonOperator[] symbolOperators, NodesFactory factory) {
+        this.symbols = symbols;
+        this.symbolOperators = symbolOperators;
+        this.factory = factory;
+    }
+
+
+    /**
+     * Returns a copy of this codec that interns the decoded nodes and their selectors and
+     * arguments in the given interner.
+     *
+     * @param interner The interner to use, or <tt>null</tt> to disable interning.
+     * @see NodesFactory#withInterner(NodeInterner)
+     */
+    public BinaryCodec withInterner(NodeInterner interner) {
+        return new BinaryCodec(symbols, symbolOperators, factory.withInterner(interner));
+    }
+
+    /**
+     * Returns a copy of this codec that converts arguments of the decoded comparisons according
+     * to the given schema, as the parser does.
+     *
+     * @param schema The schema to use, or <tt>null</tt> to disable conversion.
+     * @see NodesFactory#withSchema(SelectorSchema)
+     */
+    public BinaryCodec withSchema(SelectorSchema schema) {
+        return new BinaryCodec(symbols, symbolOperators, factory.withSchema(schema));
+    }
+
+
+    /**
+     * Encodes the given AST.
+     *
+     * @throws IllegalArgumentException If the {@code node} is <tt>null</tt> or contains a node
+     *         that is not a {@link LogicalNode} or {@link ComparisonNode}.
+     */
+    public byte[] encode(Node node) {
+        Assert.notNull(node, "node must not be null");
+
+        Map<ComparisonOperator, Integer> symbols = new IdentityHashMap<>();
+        Map<String, Integer> strings = new HashMap<>();
+        Output body = new Output(64);
+
+        // explicit stack, so deeply nested trees don't overflow the Java stack
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+
+        while (!stack.isEmpty()) {
+            Node item = stack.pop();
+
+            if (item instanceof LogicalNode) {
+                LogicalNode logical = (LogicalNode) item;
+                List<Node> children = logical.getChildrenView();
+
+                body.writeVarint(logical.getOperator() == LogicalOperator.AND ? TAG_AND : TAG_OR);
+                body.writeVarint(children.size());
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    stack.push(children.get(i));
+                }
+            } else if (item instanceof ComparisonNode) {
+                ComparisonNode comparison = (ComparisonNode) item;
+                List<String> args = comparison.getArgumentsView();
+
+                body.writeVarint(TAG_COMPARISON + index(symbols, comparison.getOperator()));
+                body.writeVarint(index(strings, comparison.getSelector()));
+                body.writeVarint(args.size());
+                for (String arg : args) {
+                    body.writeVarint(index(strings, arg));
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported node: " + item.getClass().getName());
+            }
+        }
+
+        Output out = new Output(body.size + 64);
+        out.writeByte(MAGIC_0);
+        out.writeByte(MAGIC_1);
+        out.writeByte(VERSION);
+
+        out.writeVarint(symbols.size());
+        for (Object op : keys(symbols)) {
+            out.writeString(((ComparisonOperator) op).getSymbol());
+        }
+        out.writeVarint(strings.size());
+        for (Object str : keys(strings)) {
+            out.writeString((String) str);
+        }
+        out.write(body);
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes AST from the given bytes.
+     *
+     * @throws IllegalArgumentException If the {@code bytes} are <tt>null</tt>, malformed, of
+     *         an unsupported version, or contain an operator that is not supported by this codec.
+     * @throws ArgumentConversionException If the codec has a {@linkplain #withSchema schema}
+     *         and an argument cannot be converted to the type declared for the selector.
+     */
+    public Node decode(byte[] bytes) {
+        Assert.notNull(bytes, "bytes must not be null");
+        return decode(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Decodes AST from the given slice of bytes.
+     *
+     * @throws IllegalArgumentException If the {@code bytes} are <tt>null</tt>, malformed, of
+     *         an unsupported version, or contain an operator that is not supported by this codec.
+     * @throws ArgumentConversionException If the codec has a {@linkplain #withSchema schema}
+     *         and an argument cannot be converted to the type declared for the selector.
+     * @throws IndexOutOfBoundsException If the {@code offset} and {@code length} are out of
+     *         bounds of the {@code bytes}.
+     */
+    public Node decode(byte[] bytes, int offset, int length) {
+        Assert.notNull(bytes, "bytes must not be null");
+        if (offset < 0 || length < 0 || offset > bytes.length - length) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "offset: %d, length: %d, array length: %d", offset, length, bytes.length));
+        }
+        Decoder in = DECODERS.get();
+        if (in.bytes != null) {
+            in = new Decoder();  // nested call, e.g. from a custom ArgumentType of the schema
+        }
+        in.reset(bytes, offset, offset + length);
+        try {
+            if (in.readByte() != MAGIC_0 || in.readByte() != MAGIC_1) {
+                throw new IllegalArgumentException("Not an encoded RSQL node");
+            }
+            int version = in.readByte();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported version: " + version);
+            }
+
+            int count = in.readCount();
+            ComparisonOperator[] operators = in.operators(count);
+            for (int i = 0; i < count; i++) {
+                operators[i] = readOperator(in);
+            }
+            count = in.readCount();
+            String[] strings = in.strings(count);
+            for (int i = 0; i < count; i++) {
+                strings[i] = in.readString();
+            }
+
+            Node node = readNodes(in);
+            if (in.position != in.limit) {
+                throw new IllegalArgumentException("Malformed input: unexpected bytes after the root node");
+            }
+            return node;
+
+        } finally {
+            in.release();
+        }
+    }
+
+
+    private ComparisonOperator readOperator(Decoder in) {
+        int length = in.readCount();
+
+        outer:
+        for (int i = 0; i < symbols.length; i++) {
+            byte[] symbol = symbols[i];
+            if (symbol.length != length) {
+                continue;
+            }
+            for (int j = 0; j < length; j++) {
+                if (symbol[j] != in.bytes[in.position + j]) {
+                    continue outer;
+                }
+            }
+            in.position += length;
+            return symbolOperators[i];
+        }
+        throw new IllegalArgumentException("Unknown operator: "
+                + new String(in.bytes, in.position, length, UTF_8));
+    }
+
+    private Node readNodes(Decoder in) {
+        List<String> args = in.args;
+
+        while (true) {
+            int tag = in.readVarint();
+            Node node;
+
+            if (tag == TAG_AND || tag == TAG_OR) {
+                LogicalOperator operator = tag == TAG_AND ? LogicalOperator.AND : LogicalOperator.OR;
+                int count = in.readCount();
+                if (count > 0) {
+                    in.pushGroup(operator, count);
+                    continue;
+                }
+                node = factory.createLogicalNode(operator, Collections.<Node>emptyList());
+
+            } else {
+                ComparisonOperator operator = in.operator(tag - TAG_COMPARISON);
+                String selector = in.string(in.readVarint());
+                int count = in.readCount();
+                args.clear();
+                for (int i = 0; i < count; i++) {
+                    args.add(in.string(in.readVarint()));
+                }
+                node = factory.createComparisonNode(operator, selector, args);
+            }
+
+            // add the node to its group, and close the groups that are complete
+            while (true) {
+                int group = in.depth - 1;
+                if (group < 0) {
+                    return node;
+                }
+                List<Node> children = in.groupChildren.get(group);
+                children.add(node);
+                if (--in.groupRemaining[group] > 0) {
+                    break;
+                }
+                node = factory.createLogicalNode(in.groupOperators[group], children);
+                in.releaseChildren(group);
+            }
+        }
+    }
+
+    private static <T> int index(Map<T, Integer> map, T key) {
+        Integer index = map.get(key);
+        if (index == null) {
+            index = map.size();
+            map.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Returns keys of the map ordered by their index.
+     */
+    private static Object[] keys(Map<?, Integer> map) {
+        Object[] keys = new Object[map.size()];
+        for (Map.Entry<?, Integer> entry : map.entrySet()) {
+            keys[entry.getValue()] = entry.getKey();
+        }
+        return keys;
+    }
+
+    private static final class Output {
+
+        byte[] buffer;
+        int size;
+
+        Output(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void writeByte(int b) {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, size * 2);
+            }
+            buffer[size++] = (byte) b;
+        }
+
+        void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        void writeString(String str) {
+            int length = str.length();
+
+            // fast path for ASCII, that is the most common
+            for (int i = 0; i < length; i++) {
+                if (str.charAt(i) >= 0x80) {
+                    write(str.getBytes(UTF_8));
+                    return;
+                }
+            }
+            writeVarint(length);
+            ensureCapacity(length);
+            for (int i = 0; i < length; i++) {
+                buffer[size++] = (byte) str.charAt(i);
+            }
+        }
+
+        void write(byte[] bytes) {
+            writeVarint(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void write(Output other) {
+            ensureCapacity(other.size);
+            System.arraycopy(other.buffer, 0, buffer, size, other.size);
+            size += other.size;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        private void ensureCapacity(int length) {
+            if (size + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(size + length, buffer.length * 2));
+            }
+        }
+    }
+
+    /**
+     * Reusable state of decoding; {@link BinaryCodec} keeps one per thread.
+     */
+    private static final class Decoder {
+
+        private static final int MAX_RETAINED_SIZE = 1024;
+
+        byte[] bytes;
+        int limit;
+        int position;
+
+        private char[] chars = new char[64];
+        private ComparisonOperator[] operators = new ComparisonOperator[8];
+        private String[] strings = new String[32];
+        private int operatorsCount, stringsCount;
+
+        final ArrayList<String> args = new ArrayList<>();
+
+        // stack of the incomplete groups, the factory copies the lists of children
+        final List<ArrayList<Node>> groupChildren = new ArrayList<>();
+        LogicalOperator[] groupOperators = new LogicalOperator[16];
+        int[] groupRemaining = new int[16];
+        int depth;
+
+
+        void reset(byte[] bytes, int offset, int limit) {
+            this.bytes = bytes;
+            this.position = offset;
+            this.limit = limit;
+            this.depth = 0;
+        }
+
+        void release() {
+            // don't retain a lot of memory after decoding an unusually large tree
+            if (strings.length > MAX_RETAINED_SIZE || args.size() > MAX_RETAINED_SIZE
+                    || groupChildren.size() > MAX_RETAINED_SIZE) {
+                DECODERS.remove();
+            }
+            bytes = null;
+            Arrays.fill(strings, 0, stringsCount, null);
+            Arrays.fill(operators, 0, operatorsCount, null);
+            operatorsCount = stringsCount = 0;
+            args.clear();
+            for (int i = 0; i < depth; i++) {
+                groupChildren.get(i).clear();
+            }
+        }
+
+        ComparisonOperator[] operators(int count) {
+            if (count > operators.length) {
+                operators = new ComparisonOperator[count];
+            }
+            operatorsCount = count;
+            return operators;
+        }
+
+        String[] strings(int count) {
+            if (count > strings.length) {
+                strings = new String[count];
+            }
+            stringsCount = count;
+            return strings;
+        }
+
+        ComparisonOperator operator(int index) {
+            if (index < 0 || index >= operatorsCount) {
+                throw new IllegalArgumentException("Malformed input: invalid operator index " + index);
+            }
+            return operators[index];
+        }
+
+        String string(int index) {
+            if (index < 0 || index >= stringsCount) {
+                throw new IllegalArgumentException("Malformed input: invalid string index " + index);
+            }
+            return strings[index];
+        }
+
+        void releaseChildren(int group) {
+            ArrayList<Node> children = groupChildren.get(group);
+            if (children.size() > MAX_RETAINED_SIZE) {
+                groupChildren.set(group, new ArrayList<Node>());
+            } else {
+                children.clear();
+            }
+            depth--;
+        }
+
+        void pushGroup(LogicalOperator operator, int count) {
+            if (depth == groupOperators.length) {
+                groupOperators = Arrays.copyOf(groupOperators, depth * 2);
+                groupRemaining = Arrays.copyOf(groupRemaining, depth * 2);
+            }
+            if (depth == groupChildren.size()) {
+                groupChildren.add(new ArrayList<Node>());
+            }
+            groupOperators[depth] = operator;
+            groupRemaining[depth] = count;
+            depth++;
+        }
+
+        int readByte() {
+            if (position == limit) {
+                throw new IllegalArgumentException("Malformed input: unexpected end");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed input: varint is too long");
+        }
+
+        /**
+         * Reads number of items that follow; each item takes at least one byte, so it can't be
+         * greater than the number of remaining bytes.
+         */
+        int readCount() {
+            int count = readVarint();
+            if (count < 0 || count > limit - position) {
+                throw new IllegalArgumentException("Malformed input: invalid count " + count);
+            }
+            return count;
+        }
+
+        String readString() {
+            int length = readCount();
+            int end = position + length;
+
+            int i = position;
+            while (i < end && bytes[i] >= 0) {
+                i++;
+            }
+            if (i == end) {
+                // ASCII only, that is the most common; Latin-1 maps the bytes to chars directly
+                String str = new String(bytes, position, length, ISO_8859_1);
+                position = end;
+                return str;
+            }
+            if (chars.length < length) {
+                chars = new char[length];
+            }
+            int count = 0;
+
+            // the JDK's decoder is slow for short strings, so well-formed UTF-8 is decoded here
+            for (i = position; i < end; count++) {
+                int b = bytes[i];
+                if (b >= 0) {
+                    chars[count] = (char) b;
+                    i++;
+                } else if ((b & 0xE0) == 0xC0 && i + 1 < end && isContinuation(bytes[i + 1])
+                        && (b & 0x1E) != 0) {  // not overlong
+                    chars[count] = (char) ((b & 0x1F) << 6 | bytes[i + 1] & 0x3F);
+                    i += 2;
+                } else if ((b & 0xF0) == 0xE0 && i + 2 < end
+                        && isContinuation(bytes[i + 1]) && isContinuation(bytes[i + 2])
+                        && isValid3(b, bytes[i + 1])) {
+                    chars[count] = (char) ((b & 0x0F) << 12 | (bytes[i + 1] & 0x3F) << 6 | bytes[i + 2] & 0x3F);
+                    i += 3;
+                } else if ((b & 0xF8) == 0xF0 && i + 3 < end && isContinuation(bytes[i + 1])
+                        && isContinuation(bytes[i + 2]) && isContinuation(bytes[i + 3])
+                        && isValid4(b, bytes[i + 1])) {
+                    int codePoint = (b & 0x07) << 18 | (bytes[i + 1] & 0x3F) << 12
+                            | (bytes[i + 2] & 0x3F) << 6 | bytes[i + 3] & 0x3F;
+                    chars[count++] = Character.highSurrogate(codePoint);
+                    chars[count] = Character.lowSurrogate(codePoint);
+                    i += 4;
+                } else {
+                    // malformed, let the JDK's decoder replace it
+                    count = -1;
+                    break;
+                }
+            }
+            String str = count >= 0
+                    ? new String(chars, 0, count)
+                    : new String(bytes, position, length, UTF_8);
+            position = end;
+            return str;
+        }
+
+        private static boolean isContinuation(byte b) {
+            return (b & 0xC0) == 0x80;
+        }
+
+        /**
+         * Checks that the 3-byte sequence starting with the given bytes is not overlong (i.e.
+         * encodes at least U+0800) and doesn't encode a surrogate (U+D800..U+DFFF).
+         */
+        private static boolean isValid3(int b0, byte b1) {
+            int bits = (b0 & 0x0F) << 6 | b1 & 0x3F;  // code point >> 6
+            return bits >= 0x20 && (bits < 0x360 || bits > 0x37F);
+        }
+
+        /**
+         * Checks that the 4-byte sequence starting with the given bytes is not overlong (i.e.
+         * encodes at least U+10000) and doesn't encode a code point above U+10FFFF.
+         */
+        private static boolean isValid4(int b0, byte b1) {
+            int bits = (b0 & 0x07) << 6 | b1 & 0x3F;  // code point >> 12
+            return bits >= 0x10 && bits <= 0x10F;
+        }
+    }
+}
@@ -43,6 +43,11 @@ public final class ComparisonNode extends AbstractNode {
 
     private final List<String> arguments;
 
+    private final TypedArguments typedArguments;
+
+    // cached hash code, computed lazily; 0 means not computed yet
+    private int hash;
+
 
     /**
      * @param operator Must not be <tt>null</tt>.
@@ -54,15 +59,34 @@ public final class ComparisonNode extends AbstractNode {
      * @throws IllegalArgumentException If one of the conditions specified above it not met.
      */
     public ComparisonNode(ComparisonOperator operator, String selector, List<String> arguments) {
+        this(operator, selector, arguments, null);
+    }
+
+    /**
+     * @param operator Must not be <tt>null</tt>.
+     * @param selector Must not be <tt>null</tt> or blank.
+     * @param arguments Must not be <tt>null</tt> or empty. If the operator is not
+     *          {@link ComparisonOperator#isMultiValue() multiValue}, then it must contain exactly
+     *          one argument.
+     * @param typedArguments The arguments converted according to a {@link SelectorSchema}, or
+     *          <tt>null</tt>. If given, it must have the same size as {@code arguments}.
+     *
+     * @throws IllegalArgumentException If one of the conditions specified above it not met.
+     */
+    public ComparisonNode(ComparisonOperator operator, String selector, List<String> arguments,
+                          TypedArguments typedArguments) {
         Assert.notNull(operator, "operator must not be null");
         Assert.notBlank(selector, "selector must not be blank");
         Assert.notEmpty(arguments, "arguments list must not be empty");
         Assert.isTrue(operator.isMultiValue() || arguments.size() == 1,
                 "operator %s expects single argument, but multiple values given", operator);
+        Assert.isTrue(typedArguments == null || typedArguments.size() == arguments.size(),
+                "typedArguments must have the same size as arguments");
 
         this.operator = operator;
         this.selector = selector;
-        this.arguments = new ArrayList<>(arguments);
+        this.arguments = ImmutableList.copyOf(arguments);
+        this.typedArguments = typedArguments;
     }
 
 
@@ -80,7 +104,7 @@ public final class ComparisonNode extends AbstractNode {
      * @param newOperator Must not be <tt>null</tt>.
      */
     public ComparisonNode withOperator(ComparisonOperator newOperator) {
-        return new ComparisonNode(newOperator, selector, arguments);
+        return new ComparisonNode(newOperator, selector, arguments, typedArguments);
     }
 
     public String getSelector() {
@@ -88,7 +112,7 @@ public final class ComparisonNode extends AbstractNode {
     }
 
     /**
-     * Returns a copy of this node with the specified selector.
+     * Returns a copy of this node with the specified selector. The copy has no typed arguments.
      *
      * @param newSelector Must not be <tt>null</tt> or blank.
      */
@@ -106,7 +130,32 @@ public final class ComparisonNode extends AbstractNode {
     }
 
     /**
-     * Returns a copy of this node with the specified arguments.
+     * Returns an unmodifiable view of the arguments; unlike {@link #getArguments()} it doesn't
+     * copy them. It can be passed to {@link #withArguments(List)} or a constructor of another
+     * node without being copied again.
+     */
+    public List<String> getArgumentsView() {
+        return arguments;
+    }
+
+    /**
+     * Returns number of the arguments, it's at least one.
+     */
+    public int getArgumentCount() {
+        return arguments.size();
+    }
+
+    /**
+     * Returns the argument at the given index.
+     *
+     * @throws IndexOutOfBoundsException If the index is out of range.
+     */
+    public String getArgument(int index) {
+        return arguments.get(index);
+    }
+
+    /**
+     * Returns a copy of this node with the specified arguments. The copy has no typed arguments.
      *
      * @param newArguments Must not be <tt>null</tt> or empty. If the operator is not
      *          {@link ComparisonOperator#isMultiValue() multiValue}, then it must contain exactly
@@ -116,6 +165,14 @@ public final class ComparisonNode extends AbstractNode {
         return new ComparisonNode(operator, selector, newArguments);
     }
 
+    /**
+     * Returns the arguments converted according to a {@link SelectorSchema} used when parsing,
+     * or <tt>null</tt> if the selector has no declared type.
+     */
+    public TypedArguments getTypedArguments() {
+        return typedArguments;
+    }
+
 
     @Override
     public String toString() {
@@ -131,16 +188,25 @@ public final class ComparisonNode extends AbstractNode {
         if (!(o instanceof ComparisonNode)) return false;
         ComparisonNode that = (ComparisonNode) o;
 
+        if (hash != 0 && that.hash != 0 && hash != that.hash) {
+            return false;
+        }
         return arguments.equals(that.arguments)
             && operator.equals(that.operator)
-            && selector.equals(that.selector);
+            && selector.equals(that.selector)
+            && (typedArguments == null ? that.typedArguments == null : typedArguments.equals(that.typedArguments));
     }
 
+    // typedArguments are derived from the arguments, so it's fine to omit them here
     @Override
     public int hashCode() {
-        int result = selector.hashCode();
-        result = 31 * result + arguments.hashCode();
-        result = 31 * result + operator.hashCode();
+        int result = hash;
+        if (result == 0) {
+            result = selector.hashCode();
+            result = 31 * result + arguments.hashCode();
+            result = 31 * result + operator.hashCode();
+            hash = result;
+        }
         return result;
     }
 }
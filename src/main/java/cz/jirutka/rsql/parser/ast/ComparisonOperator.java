@@ -25,6 +25,8 @@ package cz.jirutka.rsql.parser.ast;
 
 import net.jcip.annotations.Immutable;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.regex.Pattern;
 
 import static cz.jirutka.rsql.parser.ast.StringUtils.isBlank;
@@ -36,6 +38,8 @@ public final class ComparisonOperator {
 
     private final String[] symbols;
 
+    private final List<String> symbolsView;
+
     private final boolean multiValue;
 
 
@@ -56,6 +60,7 @@ public final class ComparisonOperator {
         }
         this.multiValue = multiValue;
         this.symbols = symbols.clone();
+        this.symbolsView = ImmutableList.copyOf(Arrays.asList(this.symbols));
     }
 
     /**
@@ -95,6 +100,15 @@ public final class ComparisonOperator {
         return symbols.clone();
     }
 
+    /**
+     * Returns an unmodifiable view of all representations of this operator; unlike
+     * {@link #getSymbols()} it doesn't copy them. The first item is always the primary
+     * representation.
+     */
+    public List<String> getSymbolsView() {
+        return symbolsView;
+    }
+
     /**
      * Whether this operator may be used with multiple arguments.
      */
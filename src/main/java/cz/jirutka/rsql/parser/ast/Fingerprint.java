@@ -0,0 +1,308 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.ast;
+
+import net.jcip.annotations.Immutable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A 128-bit fingerprint (hash) of an RSQL expression, e.g. to group queries in metrics or to
+ * key caches of results.
+ *
+ * <ul>
+ *   <li>{@link #ofShape(Node) Shape fingerprint} covers the logical structure, selectors,
+ *       operators and the number of arguments, but not their values, so <tt>status==A;age=gt=30</tt>
+ *       and <tt>status==B;age=gt=41</tt> have the same shape. The number of arguments may be
+ *       rounded up to a power of two, so e.g. <tt>=in=</tt> with 5 to 8 arguments have the same
+ *       shape.</li>
+ *   <li>{@link #of(Node) Full fingerprint} covers also the argument values.</li>
+ * </ul>
+ *
+ * <p>The fingerprint is computed in a single non-recursive pass over the tree, without building
+ * any strings. It depends only on the content of the tree, so it's the same in any JVM, but it
+ * may change between versions of this library. The order of children matters; to get the same
+ * fingerprint for equivalent expressions, normalize them first.</p>
+ *
+ * <p>It uses the mixing functions of MurmurHash3 (x64, 128-bit), which is fast and well
+ * distributed, but not cryptographic; don't rely on it when collisions may be forged.</p>
+ */
+@Immutable
+public final class Fingerprint {
+
+    // seeds to distinguish the kinds of fingerprints
+    private static final long
+            SEED_SHAPE = 0x5348415045L,
+            SEED_BUCKETED_SHAPE = 0x4255434b4554L,
+            SEED_FULL = 0x46554c4cL;
+
+    private static final long
+            AND_TAG = 1L << 32,
+            OR_TAG = 2L << 32,
+            COMPARISON_TAG = 3L << 32;
+
+    private final long high;
+
+    private final long low;
+
+
+    private Fingerprint(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * Returns the fingerprint with the given bits, e.g. previously obtained from
+     * {@link #getHigh()} and {@link #getLow()}.
+     */
+    public static Fingerprint of(long high, long low) {
+        return new Fingerprint(high, low);
+    }
+
+    /**
+     * Returns the shape fingerprint of the given expression with the exact numbers of arguments.
+     *
+     * @throws IllegalArgumentException If the {@code node} is <tt>null</tt>.
+     */
+    public static Fingerprint ofShape(Node node) {
+        return ofShape(node, false);
+    }
+
+    /**
+     * Returns the shape fingerprint of the given expression.
+     *
+     * @param bucketArguments Whether to round the number of arguments of each comparison up to
+     *                        a power of two.
+     * @throws IllegalArgumentException If the {@code node} is <tt>null</tt>.
+     */
+    public static Fingerprint ofShape(Node node, boolean bucketArguments) {
+        return compute(node, bucketArguments ? SEED_BUCKETED_SHAPE : SEED_SHAPE, false, bucketArguments);
+    }
+
+    /**
+     * Returns the full fingerprint of the given expression, including the argument values.
+     *
+     * @throws IllegalArgumentException If the {@code node} is <tt>null</tt>.
+     */
+    public static Fingerprint of(Node node) {
+        return compute(node, SEED_FULL, true, false);
+    }
+
+
+    /**
+     * Returns the upper 64 bits of the fingerprint.
+     */
+    public long getHigh() {
+        return high;
+    }
+
+    /**
+     * Returns the lower 64 bits of the fingerprint.
+     */
+    public long getLow() {
+        return low;
+    }
+
+    /**
+     * Returns a 64-bit fingerprint, i.e. the {@linkplain #getHigh() upper bits}.
+     */
+    public long asLong() {
+        return high;
+    }
+
+    /**
+     * Returns the fingerprint as 32 hexadecimal digits.
+     */
+    @Override
+    public String toString() {
+        return hex(high) + hex(low);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Fingerprint)) return false;
+        Fingerprint that = (Fingerprint) o;
+
+        return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (high ^ (high >>> 32));
+    }
+
+
+    private static Fingerprint compute(Node root, long seed, boolean values, boolean bucket) {
+        Assert.notNull(root, "node must not be null");
+
+        Hasher hasher = new Hasher(seed);
+        // explicit stack, so deeply nested trees don't overflow the Java stack
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+
+            if (node instanceof LogicalNode) {
+                LogicalNode logical = (LogicalNode) node;
+                List<Node> children = logical.getChildrenView();
+
+                // the number of children delimits them, so no end mark is needed
+                hasher.word((logical.getOperator() == LogicalOperator.AND ? AND_TAG : OR_TAG) | children.size());
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    stack.push(children.get(i));
+                }
+            } else if (node instanceof ComparisonNode) {
+                ComparisonNode comparison = (ComparisonNode) node;
+                List<String> args = comparison.getArgumentsView();
+
+                hasher.word(COMPARISON_TAG | (bucket ? bucket(args.size()) : args.size()));
+                hasher.string(comparison.getSelector());
+                hasher.string(comparison.getOperator().getSymbol());
+
+                if (values) {
+                    for (int i = 0; i < args.size(); i++) {
+                        hasher.string(args.get(i));
+                    }
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported node: " + node.getClass().getName());
+            }
+        }
+        return hasher.finish();
+    }
+
+    private static int bucket(int count) {
+        return count > 1 ? Integer.highestOneBit(count - 1) << 1 : count;
+    }
+
+    private static String hex(long value) {
+        String str = Long.toHexString(value);
+        return "0000000000000000".substring(str.length()) + str;
+    }
+
+
+    /**
+     * A streaming variant of MurmurHash3 x64 128 that consumes 64-bit words.
+     */
+    private static final class Hasher {
+
+        private static final long C1 = 0x87c37b91114253d5L, C2 = 0x4cf5ad432745937fL;
+
+        private long h1, h2;
+
+        private long pending;
+
+        private boolean hasPending;
+
+        private long length;
+
+        Hasher(long seed) {
+            this.h1 = seed;
+            this.h2 = seed;
+        }
+
+        void word(long word) {
+            length++;
+            if (!hasPending) {
+                pending = word;
+                hasPending = true;
+                return;
+            }
+            hasPending = false;
+            long k1 = pending, k2 = word;
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        /**
+         * Consumes the length and the chars of the string, four chars per word.
+         */
+        void string(String str) {
+            int len = str.length();
+            word(len);
+
+            int i = 0;
+            for (; i + 4 <= len; i += 4) {
+                word((long) str.charAt(i) << 48 | (long) str.charAt(i + 1) << 32
+                        | (long) str.charAt(i + 2) << 16 | str.charAt(i + 3));
+            }
+            if (i < len) {
+                long word = 0;
+                for (; i < len; i++) {
+                    word = word << 16 | str.charAt(i);
+                }
+                word(word);
+            }
+        }
+
+        Fingerprint finish() {
+            if (hasPending) {
+                h1 ^= mixK1(pending);
+            }
+            h1 ^= length;
+            h2 ^= length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix(h1);
+            h2 = fmix(h2);
+            h1 += h2;
+            h2 += h1;
+
+            return new Fingerprint(h1, h2);
+        }
+
+        private static long mixK1(long k1) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            return k1 * C2;
+        }
+
+        private static long mixK2(long k2) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            return k2 * C1;
+        }
+
+        private static long fmix(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+}
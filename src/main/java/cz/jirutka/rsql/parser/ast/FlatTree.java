@@ -0,0 +1,591 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.ast;
+
+import cz.jirutka.rsql.parser.RSQLListener;
+import cz.jirutka.rsql.parser.RSQLParser;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact read-only representation of the AST. Instead of a graph of node objects, the nodes
+ * are stored in pre-order in a few parallel arrays of ints, and the chars of unique selectors
+ * and arguments in a single array. It takes about half of the memory of the equivalent
+ * {@link Node} tree (with its lists and strings) and consists of a dozen objects regardless of
+ * the size of the query, so it's suitable for filters that are cached or queued for a long time.
+ *
+ * <p>The tree is walked using a {@link Cursor} that doesn't allocate (unless the strings are
+ * requested), or converted to the {@link Node} tree when needed.</p>
+ *
+ * <pre>{@code
+ * FlatTree tree = new RSQLParser().parseFlat("name==RSQL;version=ge=2.0");
+ *
+ * FlatTree.Cursor cursor = tree.cursor();
+ * if (cursor.toFirstChild()) {
+ *     do {
+ *         if (cursor.selectorEquals("name")) ...
+ *     } while (cursor.toNextSibling());
+ * }
+ * }</pre>
+ */
+@Immutable
+public final class FlatTree {
+
+    // codes of logical nodes; comparisons have an index into the operators table
+    private static final int AND = -1, OR = -2;
+
+    /**
+     * Code of each node: {@link #AND}, {@link #OR}, or index of the comparison operator.
+     */
+    private final int[] codes;
+
+    private final int[] parents;
+
+    /**
+     * Index after the last node of the subtree of each node.
+     */
+    private final int[] ends;
+
+    /**
+     * Number of children of logical nodes, or number of arguments of comparisons.
+     */
+    private final int[] counts;
+
+    /**
+     * Index into {@link #refs} of the selector of each comparison, the arguments follow.
+     */
+    private final int[] data;
+
+    /**
+     * Indexes of strings (selectors and arguments) of the comparisons.
+     */
+    private final int[] refs;
+
+    /**
+     * Offset of each string in {@link #chars}, and the end of the last one.
+     */
+    private final int[] offsets;
+
+    private final char[] chars;
+
+    private final ComparisonOperator[] operators;
+
+
+    private FlatTree(Builder builder) {
+        int size = builder.size;
+        this.codes = Arrays.copyOf(builder.codes, size);
+        this.parents = Arrays.copyOf(builder.parents, size);
+        this.counts = Arrays.copyOf(builder.counts, size);
+        this.data = Arrays.copyOf(builder.data, size);
+        this.refs = Arrays.copyOf(builder.refs, builder.refsSize);
+        this.offsets = Arrays.copyOf(builder.offsets, builder.stringIndexes.size() + 1);
+        this.chars = Arrays.copyOf(builder.chars, offsets[offsets.length - 1]);
+        this.operators = builder.operators.toArray(new ComparisonOperator[builder.operators.size()]);
+
+        this.ends = new int[size];
+        for (int i = 0; i < size; i++) {
+            ends[i] = i + 1;
+        }
+        // descendants follow their ancestor, so the ends can be propagated in a single pass
+        for (int i = size - 1; i > 0; i--) {
+            int parent = parents[i];
+            if (ends[i] > ends[parent]) {
+                ends[parent] = ends[i];
+            }
+        }
+    }
+
+    /**
+     * Creates a flat tree from the given AST.
+     *
+     * @throws IllegalArgumentException If the {@code node} is <tt>null</tt> or contains a node
+     *         that is not a {@link LogicalNode} or {@link ComparisonNode}.
+     */
+    public static FlatTree of(Node node) {
+        Assert.notNull(node, "node must not be null");
+
+        Builder builder = new Builder();
+        // explicit stack, so deeply nested trees don't overflow the Java stack
+        Deque<Object> stack = new ArrayDeque<>();
+        stack.push(node);
+
+        while (!stack.isEmpty()) {
+            Object item = stack.pop();
+
+            if (item instanceof LogicalOperator) {
+                builder.endLogical((LogicalOperator) item);
+
+            } else if (item instanceof LogicalNode) {
+                LogicalNode logical = (LogicalNode) item;
+                builder.startLogical(logical.getOperator());
+                stack.push(logical.getOperator());
+
+                List<Node> children = logical.getChildrenView();
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    stack.push(children.get(i));
+                }
+            } else if (item instanceof ComparisonNode) {
+                ComparisonNode comparison = (ComparisonNode) item;
+                builder.startComparison(comparison.getSelector(), comparison.getOperator());
+                for (String arg : comparison.getArgumentsView()) {
+                    builder.argument(arg);
+                }
+                builder.endComparison();
+
+            } else {
+                throw new IllegalArgumentException("Unsupported node: " + item.getClass().getName());
+            }
+        }
+        return builder.build();
+    }
+
+
+    /**
+     * Returns number of the nodes.
+     */
+    public int size() {
+        return codes.length;
+    }
+
+    /**
+     * Returns a new cursor positioned on the root node.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Converts this tree to the {@link Node} tree.
+     */
+    public Node toNode() {
+        return toNode(0);
+    }
+
+    @Override
+    public String toString() {
+        return toNode().toString();
+    }
+
+
+    /**
+     * Builds the nodes of the subtree bottom-up, i.e. in reverse pre-order, so the children of
+     * each logical node are on the top of the stack (the first child on the very top).
+     */
+    private Node toNode(int root) {
+        List<Node> stack = new ArrayList<>();
+
+        for (int i = ends[root] - 1; i >= root; i--) {
+            int code = codes[i];
+            Node node;
+
+            if (code >= 0) {
+                int first = data[i] + 1;
+                List<String> args = new ArrayList<>(counts[i]);
+                for (int j = first; j < first + counts[i]; j++) {
+                    args.add(string(refs[j]));
+                }
+                node = new ComparisonNode(operators[code], string(refs[data[i]]), args);
+            } else {
+                int top = stack.size();
+                List<Node> children = new ArrayList<>(counts[i]);
+                for (int j = top - 1; j >= top - counts[i]; j--) {
+                    children.add(stack.get(j));
+                }
+                stack.subList(top - counts[i], top).clear();
+                node = code == AND ? new AndNode(children) : new OrNode(children);
+            }
+            stack.add(node);
+        }
+        return stack.get(0);
+    }
+
+    private String string(int index) {
+        return new String(chars, offsets[index], offsets[index + 1] - offsets[index]);
+    }
+
+    private boolean stringEquals(int index, CharSequence value) {
+        int offset = offsets[index];
+        int length = offsets[index + 1] - offset;
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (chars[offset + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void appendString(int index, StringBuilder out) {
+        out.append(chars, offsets[index], offsets[index + 1] - offsets[index]);
+    }
+
+
+    /**
+     * A movable pointer to a node of the {@link FlatTree}. It doesn't allocate any objects when
+     * moved or read, except the methods that return strings; use the methods that compare or
+     * append the strings to avoid it.
+     */
+    @NotThreadSafe
+    public final class Cursor {
+
+        private int node;
+
+
+        private Cursor() {
+        }
+
+
+        /**
+         * Returns position of the current node in pre-order, the root node is <tt>0</tt>.
+         */
+        public int position() {
+            return node;
+        }
+
+        /**
+         * Moves to the node at the given position in pre-order.
+         *
+         * @throws IndexOutOfBoundsException If the position is out of bounds of the tree.
+         */
+        public Cursor moveTo(int position) {
+            if (position < 0 || position >= codes.length) {
+                throw new IndexOutOfBoundsException("position: " + position + ", size: " + codes.length);
+            }
+            node = position;
+            return this;
+        }
+
+        /**
+         * Moves to the root node.
+         */
+        public Cursor reset() {
+            node = 0;
+            return this;
+        }
+
+        /**
+         * Moves to the first child of the current node, if it's a logical node with any children.
+         *
+         * @return <tt>false</tt> if the current node is a comparison or a logical node with no
+         *         children, so the cursor has not moved.
+         */
+        public boolean toFirstChild() {
+            if (codes[node] >= 0 || counts[node] == 0) {
+                return false;
+            }
+            node++;
+            return true;
+        }
+
+        /**
+         * Moves to the next sibling of the current node, if there's any.
+         *
+         * @return <tt>false</tt> if the current node is the last child, so the cursor has not moved.
+         */
+        public boolean toNextSibling() {
+            int parent = parents[node];
+            if (parent < 0 || ends[node] == ends[parent]) {
+                return false;
+            }
+            node = ends[node];
+            return true;
+        }
+
+        /**
+         * Moves to the parent of the current node, if it's not the root node.
+         *
+         * @return <tt>false</tt> if the current node is the root node, so the cursor has not moved.
+         */
+        public boolean toParent() {
+            if (parents[node] < 0) {
+                return false;
+            }
+            node = parents[node];
+            return true;
+        }
+
+        public boolean isComparison() {
+            return codes[node] >= 0;
+        }
+
+        /**
+         * Returns operator of the current logical node, or <tt>null</tt> if it's a comparison.
+         */
+        public LogicalOperator getLogicalOperator() {
+            switch (codes[node]) {
+                case AND : return LogicalOperator.AND;
+                case OR  : return LogicalOperator.OR;
+                default  : return null;
+            }
+        }
+
+        /**
+         * Returns number of children of the current logical node, or <tt>0</tt> if it's a comparison.
+         */
+        public int getChildCount() {
+            return codes[node] < 0 ? counts[node] : 0;
+        }
+
+        /**
+         * Returns operator of the current comparison, or <tt>null</tt> if it's a logical node.
+         */
+        public ComparisonOperator getOperator() {
+            return codes[node] >= 0 ? operators[codes[node]] : null;
+        }
+
+        /**
+         * Returns a new string with selector of the current comparison, or <tt>null</tt> if it's
+         * a logical node.
+         */
+        public String getSelector() {
+            return codes[node] >= 0 ? string(refs[data[node]]) : null;
+        }
+
+        /**
+         * Returns <tt>true</tt> if the current node is a comparison with the given selector.
+         */
+        public boolean selectorEquals(CharSequence selector) {
+            return codes[node] >= 0 && stringEquals(refs[data[node]], selector);
+        }
+
+        /**
+         * Appends selector of the current comparison to the given builder.
+         *
+         * @throws IllegalStateException If the current node is not a comparison.
+         */
+        public void appendSelector(StringBuilder out) {
+            if (codes[node] < 0) {
+                throw new IllegalStateException("Current node is not a comparison");
+            }
+            appendString(refs[data[node]], out);
+        }
+
+        /**
+         * Returns number of arguments of the current comparison, or <tt>0</tt> if it's a logical
+         * node.
+         */
+        public int getArgumentCount() {
+            return codes[node] >= 0 ? counts[node] : 0;
+        }
+
+        /**
+         * Returns a new string with argument of the current comparison at the given index.
+         *
+         * @throws IndexOutOfBoundsException If the index is out of range, or the current node is
+         *         not a comparison.
+         */
+        public String getArgument(int index) {
+            return string(argumentRef(index));
+        }
+
+        /**
+         * Returns <tt>true</tt> if argument of the current comparison at the given index is
+         * equal to the given value.
+         *
+         * @throws IndexOutOfBoundsException If the index is out of range, or the current node is
+         *         not a comparison.
+         */
+        public boolean argumentEquals(int index, CharSequence value) {
+            return stringEquals(argumentRef(index), value);
+        }
+
+        /**
+         * Appends argument of the current comparison at the given index to the given builder.
+         *
+         * @throws IndexOutOfBoundsException If the index is out of range, or the current node is
+         *         not a comparison.
+         */
+        public void appendArgument(int index, StringBuilder out) {
+            appendString(argumentRef(index), out);
+        }
+
+        /**
+         * Converts the subtree of the current node to the {@link Node} tree.
+         */
+        public Node toNode() {
+            return FlatTree.this.toNode(node);
+        }
+
+        private int argumentRef(int index) {
+            if (index < 0 || index >= getArgumentCount()) {
+                throw new IndexOutOfBoundsException("index: " + index + ", count: " + getArgumentCount());
+            }
+            return refs[data[node] + 1 + index];
+        }
+    }
+
+
+    /**
+     * Builds a {@link FlatTree} from the events of a streaming
+     * {@link RSQLParser#parse(CharSequence, RSQLListener) parse}. Equal strings are stored only
+     * once. The builder can be reused after {@link #build()} or {@link #reset()}.
+     */
+    @NotThreadSafe
+    public static final class Builder implements RSQLListener {
+
+        private int[] codes = new int[16],
+                      parents = new int[16],
+                      counts = new int[16],
+                      data = new int[16],
+                      refs = new int[32],
+                      offsets = new int[32],
+                      open = new int[16];
+
+        private char[] chars = new char[256];
+
+        private int size, refsSize, depth;
+
+        private final Map<String, Integer> stringIndexes = new HashMap<>();
+
+        private final List<ComparisonOperator> operators = new ArrayList<>();
+
+        private final Map<ComparisonOperator, Integer> operatorIndexes = new IdentityHashMap<>();
+
+
+        public void startLogical(LogicalOperator operator) {
+            int index = add(operator == LogicalOperator.AND ? AND : OR);
+
+            if (depth == open.length) {
+                open = Arrays.copyOf(open, depth * 2);
+            }
+            open[depth++] = index;
+        }
+
+        public void endLogical(LogicalOperator operator) {
+            if (depth == 0) {
+                throw new IllegalStateException("No logical node to end");
+            }
+            depth--;
+        }
+
+        public void startComparison(String selector, ComparisonOperator operator) {
+            Integer code = operatorIndexes.get(operator);
+            if (code == null) {
+                code = operators.size();
+                operators.add(operator);
+                operatorIndexes.put(operator, code);
+            }
+            int index = add(code);
+            data[index] = refsSize;
+            addRef(selector);
+        }
+
+        public void argument(String argument) {
+            if (size == 0 || codes[size - 1] < 0) {
+                throw new IllegalStateException("No comparison to add argument to");
+            }
+            addRef(argument);
+            counts[size - 1]++;
+        }
+
+        public void endComparison() {
+        }
+
+        /**
+         * Returns the built tree and resets this builder.
+         *
+         * @throws IllegalStateException If the tree is empty or incomplete.
+         */
+        public FlatTree build() {
+            if (size == 0 || depth != 0) {
+                throw new IllegalStateException("The tree is empty or incomplete");
+            }
+            try {
+                return new FlatTree(this);
+            } finally {
+                reset();
+            }
+        }
+
+        /**
+         * Discards all the nodes added so far.
+         */
+        public void reset() {
+            size = refsSize = depth = 0;
+            stringIndexes.clear();
+            operators.clear();
+            operatorIndexes.clear();
+        }
+
+        private int add(int code) {
+            if (size > 0 && depth == 0) {
+                throw new IllegalStateException("The tree already has a root node");
+            }
+            if (size == codes.length) {
+                int capacity = size * 2;
+                codes = Arrays.copyOf(codes, capacity);
+                parents = Arrays.copyOf(parents, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+                data = Arrays.copyOf(data, capacity);
+            }
+            int parent = depth > 0 ? open[depth - 1] : -1;
+            if (parent >= 0) {
+                counts[parent]++;
+            }
+            codes[size] = code;
+            parents[size] = parent;
+            counts[size] = 0;
+            data[size] = 0;
+
+            return size++;
+        }
+
+        /**
+         * Adds reference to the given string, the string is added if it's not there yet.
+         */
+        private void addRef(String value) {
+            Integer index = stringIndexes.get(value);
+            if (index == null) {
+                index = stringIndexes.size();
+                stringIndexes.put(value, index);
+
+                if (index + 2 > offsets.length) {
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                }
+                int offset = offsets[index];
+                int end = offset + value.length();
+                if (end > chars.length) {
+                    chars = Arrays.copyOf(chars, Math.max(end, chars.length * 2));
+                }
+                value.getChars(0, value.length(), chars, offset);
+                offsets[index + 1] = end;
+            }
+            if (refsSize == refs.length) {
+                refs = Arrays.copyOf(refs, refsSize * 2);
+            }
+            refs[refsSize++] = index;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.ast;
+
+import net.jcip.annotations.Immutable;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * A lightweight unmodifiable list backed by an array, used to hold arguments and children of
+ * the nodes. Since it's known to be immutable, it's shared instead of copied when passed to
+ * another node.
+ */
+@Immutable
+final class ImmutableList<E> extends AbstractList<E> implements RandomAccess {
+
+    private final Object[] elements;
+
+
+    private ImmutableList(Object[] elements) {
+        this.elements = elements;
+    }
+
+    /**
+     * Returns the given collection if it's an {@code ImmutableList}, or its copy otherwise.
+     */
+    @SuppressWarnings("unchecked")
+    static <E> ImmutableList<E> copyOf(Collection<? extends E> collection) {
+        if (collection instanceof ImmutableList) {
+            return (ImmutableList<E>) collection;
+        }
+        return new ImmutableList<>(collection.toArray());
+    }
+
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        return (E) elements[index];
+    }
+
+    @Override
+    public int size() {
+        return elements.length;
+    }
+}
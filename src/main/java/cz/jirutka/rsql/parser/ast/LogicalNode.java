@@ -28,7 +28,6 @@ import java.util.Iterator;
 import java.util.List;
 
 import static cz.jirutka.rsql.parser.ast.StringUtils.join;
-import static java.util.Collections.unmodifiableList;
 
 /**
  * Superclass of all logical nodes that represents a logical operation that connects
@@ -40,6 +39,9 @@ public abstract class LogicalNode extends AbstractNode implements Iterable<Node>
 
     private final LogicalOperator operator;
 
+    // cached hash code, computed lazily; 0 means not computed yet
+    private int hash;
+
 
     /**
      * @param operator Must not be <tt>null</tt>.
@@ -50,7 +52,7 @@ public abstract class LogicalNode extends AbstractNode implements Iterable<Node>
         assert children != null : "children must not be null";
 
         this.operator = operator;
-        this.children = unmodifiableList(new ArrayList<>(children));
+        this.children = ImmutableList.copyOf(children);
     }
 
 
@@ -78,6 +80,31 @@ public abstract class LogicalNode extends AbstractNode implements Iterable<Node>
         return new ArrayList<>(children);
     }
 
+    /**
+     * Returns an unmodifiable view of the children nodes; unlike {@link #getChildren()} it
+     * doesn't copy them. It can be passed to {@link #withChildren(List)} or a constructor of
+     * another node without being copied again.
+     */
+    public List<Node> getChildrenView() {
+        return children;
+    }
+
+    /**
+     * Returns number of the children nodes.
+     */
+    public int getChildCount() {
+        return children.size();
+    }
+
+    /**
+     * Returns the child node at the given index.
+     *
+     * @throws IndexOutOfBoundsException If the index is out of range.
+     */
+    public Node getChild(int index) {
+        return children.get(index);
+    }
+
 
     @Override
     public String toString() {
@@ -90,14 +117,21 @@ public abstract class LogicalNode extends AbstractNode implements Iterable<Node>
         if (!(o instanceof LogicalNode)) return false;
         LogicalNode nodes = (LogicalNode) o;
 
+        if (hash != 0 && nodes.hash != 0 && hash != nodes.hash) {
+            return false;
+        }
         return children.equals(nodes.children)
             && operator == nodes.operator;
     }
 
     @Override
     public int hashCode() {
-        int result = children.hashCode();
-        result = 31 * result + operator.hashCode();
+        int result = hash;
+        if (result == 0) {
+            result = children.hashCode();
+            result = 31 * result + operator.hashCode();
+            hash = result;
+        }
         return result;
     }
 }
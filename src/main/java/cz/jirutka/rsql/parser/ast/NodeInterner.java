@@ -0,0 +1,115 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.ast;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * A pool of canonical instances of strings and {@linkplain Node nodes} used by the
+ * {@link NodesFactory} to share equal selectors, arguments, comparisons and whole subtrees among
+ * parsed expressions (hash-consing). The AST is immutable, so the instances can be safely shared.
+ *
+ * <p>The pool holds its instances weakly, so an instance is dropped when it's no longer used by
+ * any expression. It's split into segments by hash, each guarded by its own lock, so it can be
+ * shared by parsers running concurrently.</p>
+ */
+@ThreadSafe
+public final class NodeInterner {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+
+    public NodeInterner() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+
+    /**
+     * Returns the canonical instance of the given string, i.e. a string equal to the given one
+     * that has been interned before, or the given string itself.
+     */
+    public String intern(String string) {
+        return doIntern(string);
+    }
+
+    /**
+     * Returns the canonical instance of the given node, i.e. a node equal to the given one
+     * that has been interned before, or the given node itself. Note that the children of the
+     * node are not interned by this method.
+     */
+    public <T extends Node> T intern(T node) {
+        return doIntern(node);
+    }
+
+    /**
+     * Returns the current number of the pooled instances (including those that are no longer
+     * used, but have not been garbage collected yet).
+     */
+    public int size() {
+        int size = 0;
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                size += seg.map.size();
+            }
+        }
+        return size;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private <T> T doIntern(T object) {
+        if (object == null) {
+            return null;
+        }
+        int h = object.hashCode();
+        h ^= (h >>> 16);
+        Segment seg = segments[h & (SEGMENTS - 1)];
+
+        synchronized (seg) {
+            WeakReference<Object> ref = seg.map.get(object);
+            Object canonical = ref != null ? ref.get() : null;
+
+            if (canonical == null) {
+                seg.map.put(object, new WeakReference<Object>(object));
+                canonical = object;
+            }
+            return (T) canonical;
+        }
+    }
+
+
+    private static final class Segment {
+
+        @GuardedBy("this")
+        final WeakHashMap<Object, WeakReference<Object>> map = new WeakHashMap<>();
+    }
+}
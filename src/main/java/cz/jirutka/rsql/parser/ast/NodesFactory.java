@@ -26,6 +26,7 @@ package cz.jirutka.rsql.parser.ast;
 import cz.jirutka.rsql.parser.UnknownOperatorException;
 import net.jcip.annotations.Immutable;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,12 +34,23 @@ import java.util.Set;
 
 /**
  * Factory that creates {@link Node} instances for the parser.
+ *
+ * <p>Note: The parser reuses the lists passed to the factory methods, so the created nodes must
+ * not retain them, but copy them (as all the provided nodes do).</p>
+ *
+ * <p>When configured {@linkplain #withInterner(NodeInterner) with an interner}, the factory
+ * returns canonical instances of the nodes, selectors and arguments, so equal parts of the
+ * parsed expressions are shared in memory.</p>
  */
 @Immutable
 public class NodesFactory {
 
     private final Map<String, ComparisonOperator> comparisonOperators;
 
+    private final NodeInterner interner;
+
+    private final SelectorSchema schema;
+
 
     public NodesFactory(Set<ComparisonOperator> operators) {
 
@@ -48,6 +60,51 @@ public class NodesFactory {
                 comparisonOperators.put(sym, op);
             }
         }
+        interner = null;
+        schema = null;
+    }
+
+    private NodesFactory(Map<String, ComparisonOperator> comparisonOperators,
+                         NodeInterner interner, SelectorSchema schema) {
+        this.comparisonOperators = comparisonOperators;
+        this.interner = interner;
+        this.schema = schema;
+    }
+
+
+    /**
+     * Returns a copy of this factory that interns the created nodes and their selectors and
+     * arguments in the given interner.
+     *
+     * @param interner The interner to use, or <tt>null</tt> to disable interning.
+     */
+    public NodesFactory withInterner(NodeInterner interner) {
+        return new NodesFactory(comparisonOperators, interner, schema);
+    }
+
+    /**
+     * Returns the interner used by this factory, or <tt>null</tt> if none.
+     */
+    public NodeInterner getInterner() {
+        return interner;
+    }
+
+    /**
+     * Returns a copy of this factory that converts arguments of the created comparisons
+     * according to the given schema.
+     *
+     * @param schema The schema to use, or <tt>null</tt> to disable conversion.
+     * @see ComparisonNode#getTypedArguments()
+     */
+    public NodesFactory withSchema(SelectorSchema schema) {
+        return new NodesFactory(comparisonOperators, interner, schema);
+    }
+
+    /**
+     * Returns the schema used by this factory, or <tt>null</tt> if none.
+     */
+    public SelectorSchema getSchema() {
+        return schema;
     }
 
     /**
@@ -59,13 +116,15 @@ public class NodesFactory {
      * @return A subclass of the {@link LogicalNode} according to the specified operator.
      */
     public LogicalNode createLogicalNode(LogicalOperator operator, List<Node> children) {
+        LogicalNode node;
         switch (operator) {
-            case AND : return new AndNode(children);
-            case OR  : return new OrNode(children);
+            case AND : node = new AndNode(children); break;
+            case OR  : node = new OrNode(children); break;
 
             // this normally can't happen
             default  : throw new IllegalStateException("Unknown operator: " + operator);
         }
+        return interner != null ? interner.intern(node) : node;
     }
 
     /**
@@ -83,9 +142,36 @@ public class NodesFactory {
 
         ComparisonOperator op = comparisonOperators.get(operatorToken);
         if (op != null) {
-            return new ComparisonNode(op, selector, arguments);
+            return createComparisonNode(op, selector, arguments);
         } else {
             throw new UnknownOperatorException(operatorToken);
         }
     }
+
+    /**
+     * Creates a {@link ComparisonNode} instance with the given parameters. This variant is used
+     * by the parser that resolves the operator itself.
+     *
+     * @param operator The comparison operator; it's not checked against the set of supported
+     *                 operators.
+     * @param selector The selector that specifies the left side of the comparison.
+     * @param arguments A list of arguments that specifies the right side of the comparison.
+     *
+     * @throws ArgumentConversionException If the factory has a {@linkplain #withSchema schema}
+     *         and an argument cannot be converted to the type declared for the selector.
+     */
+    public ComparisonNode createComparisonNode(
+            ComparisonOperator operator, String selector, List<String> arguments) {
+
+        TypedArguments typed = schema != null ? schema.convert(selector, arguments) : null;
+
+        if (interner == null) {
+            return new ComparisonNode(operator, selector, arguments, typed);
+        }
+        List<String> args = new ArrayList<>(arguments.size());
+        for (String arg : arguments) {
+            args.add(interner.intern(arg));
+        }
+        return interner.intern(new ComparisonNode(operator, interner.intern(selector), args, typed));
+    }
 }
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.ast;
+
+import net.jcip.annotations.Immutable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Declares {@link ArgumentType types} of arguments for selectors. When used by the
+ * {@link NodesFactory} (or {@code RSQLParser}), arguments of comparisons with the declared
+ * selectors are converted during parsing and kept in the {@link ComparisonNode} as
+ * {@link TypedArguments}. Comparisons with undeclared selectors are left untyped.
+ *
+ * <pre>{@code
+ * SelectorSchema schema = new SelectorSchema()
+ *     .withSelector("age", ArgumentType.LONG)
+ *     .withSelector("created", ArgumentType.TIMESTAMP);
+ * }</pre>
+ */
+@Immutable
+public final class SelectorSchema {
+
+    private final Map<String, ArgumentType<?>> types;
+
+
+    /**
+     * Creates an empty schema.
+     */
+    public SelectorSchema() {
+        this(Collections.<String, ArgumentType<?>>emptyMap());
+    }
+
+    private SelectorSchema(Map<String, ArgumentType<?>> types) {
+        this.types = types;
+    }
+
+
+    /**
+     * Returns a copy of this schema with the type declared for the selector.
+     *
+     * @throws IllegalArgumentException If the {@code selector} is blank or {@code type} is
+     *         <tt>null</tt>.
+     */
+    public SelectorSchema withSelector(String selector, ArgumentType<?> type) {
+        Assert.notBlank(selector, "selector must not be blank");
+        Assert.notNull(type, "type must not be null");
+
+        Map<String, ArgumentType<?>> map = new HashMap<>(types);
+        map.put(selector, type);
+
+        return new SelectorSchema(map);
+    }
+
+    /**
+     * Returns the type declared for the selector, or <tt>null</tt> if none.
+     */
+    public ArgumentType<?> getType(String selector) {
+        return types.get(selector);
+    }
+
+    /**
+     * Converts the arguments of a comparison with the given selector, if it has a declared type.
+     *
+     * @return The typed arguments, or <tt>null</tt> if the selector has no declared type.
+     * @throws ArgumentConversionException If any of the arguments cannot be converted.
+     */
+    public TypedArguments convert(String selector, List<String> arguments) {
+        ArgumentType<?> type = types.get(selector);
+        return type != null ? type.convertAll(selector, arguments) : null;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.ast;
+
+import net.jcip.annotations.Immutable;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Arguments of a comparison converted to the {@link ArgumentType type} declared for the selector
+ * in a {@link SelectorSchema}. Values of {@link ArgumentType#LONG LONG} and
+ * {@link ArgumentType#TIMESTAMP TIMESTAMP} are stored as <tt>long</tt>, values of
+ * {@link ArgumentType#DOUBLE DOUBLE} as <tt>double</tt>, so they can be read without boxing.
+ */
+@Immutable
+public final class TypedArguments {
+
+    private final ArgumentType<?> type;
+
+    final long[] longs;
+
+    final double[] doubles;
+
+    final Object[] objects;
+
+
+    TypedArguments(ArgumentType<?> type, long[] longs, double[] doubles, Object[] objects) {
+        this.type = type;
+        this.longs = longs;
+        this.doubles = doubles;
+        this.objects = objects;
+    }
+
+
+    /**
+     * Returns typed arguments that consist of values picked from the given typed arguments of
+     * one type: the <tt>i</tt>-th value is the value at <tt>indexes[i]</tt> in
+     * <tt>sources.get(i)</tt>. It's used to rearrange the typed arguments along with the
+     * arguments (e.g. to merge comparisons) without converting them again.
+     *
+     * @throws IllegalArgumentException If the sizes of {@code sources} and {@code indexes}
+     *         differ, no source is given, or the sources have different types.
+     * @throws IndexOutOfBoundsException If an index is out of bounds of its source.
+     */
+    public static TypedArguments pick(List<TypedArguments> sources, int[] indexes) {
+        Assert.isTrue(sources != null && indexes != null && !sources.isEmpty()
+                && sources.size() == indexes.length, "sources and indexes must have the same non-zero size");
+
+        TypedArguments first = sources.get(0);
+        long[] longs = first.longs != null ? new long[indexes.length] : null;
+        double[] doubles = first.doubles != null ? new double[indexes.length] : null;
+        Object[] objects = first.objects != null ? new Object[indexes.length] : null;
+
+        for (int i = 0; i < indexes.length; i++) {
+            TypedArguments source = sources.get(i);
+            Assert.isTrue(source.type.equals(first.type), "sources must have the same type");
+
+            if (longs != null) {
+                longs[i] = source.longs[indexes[i]];
+            } else if (doubles != null) {
+                doubles[i] = source.doubles[indexes[i]];
+            } else {
+                objects[i] = source.objects[indexes[i]];
+            }
+        }
+        return new TypedArguments(first.type, longs, doubles, objects);
+    }
+
+
+    public ArgumentType<?> getType() {
+        return type;
+    }
+
+    public int size() {
+        return longs != null ? longs.length
+             : doubles != null ? doubles.length
+             : objects.length;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the values are stored as <tt>long</tt>.
+     */
+    public boolean isLong() {
+        return longs != null;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the values are stored as <tt>double</tt>.
+     */
+    public boolean isDouble() {
+        return doubles != null;
+    }
+
+    /**
+     * Returns the value at the index, if the values are stored as <tt>long</tt>.
+     *
+     * @throws IllegalStateException If the values are not stored as <tt>long</tt>.
+     * @throws IndexOutOfBoundsException
+     */
+    public long getLong(int index) {
+        if (longs == null) {
+            throw new IllegalStateException("values of type " + type + " are not stored as long");
+        }
+        return longs[index];
+    }
+
+    /**
+     * Returns the value at the index, if the values are stored as <tt>double</tt>.
+     *
+     * @throws IllegalStateException If the values are not stored as <tt>double</tt>.
+     * @throws IndexOutOfBoundsException
+     */
+    public double getDouble(int index) {
+        if (doubles == null) {
+            throw new IllegalStateException("values of type " + type + " are not stored as double");
+        }
+        return doubles[index];
+    }
+
+    /**
+     * Returns the value at the index as an object of the type's
+     * {@link ArgumentType#getJavaType() Java type}.
+     *
+     * @throws IndexOutOfBoundsException
+     */
+    public Object get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size());
+        }
+        return type.box(this, index);
+    }
+
+    /**
+     * Returns an unmodifiable view of the values as objects.
+     */
+    public List<Object> getValues() {
+        return new AbstractList<Object>() {
+            public Object get(int index) {
+                return TypedArguments.this.get(index);
+            }
+            public int size() {
+                return TypedArguments.this.size();
+            }
+        };
+    }
+
+
+    @Override
+    public String toString() {
+        return type + getValues().toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TypedArguments)) return false;
+        TypedArguments that = (TypedArguments) o;
+
+        return type.equals(that.type)
+            && Arrays.equals(longs, that.longs)
+            && Arrays.equals(doubles, that.doubles)
+            && Arrays.equals(objects, that.objects);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = type.hashCode();
+        result = 31 * result + Arrays.hashCode(longs);
+        result = 31 * result + Arrays.hashCode(doubles);
+        result = 31 * result + Arrays.hashCode(objects);
+        return result;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.eval;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * A column of values for the {@link ColumnarEvaluator}. It wraps a primitive array without
+ * copying it, so the array should not be modified while the column is used.
+ */
+@Immutable
+public abstract class Column {
+
+    Column() {
+    }
+
+    /**
+     * Creates a column of the given long values.
+     */
+    public static Column of(long[] values) {
+        if (values == null) {
+            throw new IllegalArgumentException("values must not be null");
+        }
+        return new LongColumn(values);
+    }
+
+    /**
+     * Creates a column of the given double values.
+     */
+    public static Column of(double[] values) {
+        if (values == null) {
+            throw new IllegalArgumentException("values must not be null");
+        }
+        return new DoubleColumn(values);
+    }
+
+    /**
+     * Creates a dictionary-encoded column of strings; each row holds an index into the
+     * dictionary. The dictionary may contain a <tt>null</tt> that represents no value, it's
+     * equal to no argument and is neither less nor greater than any argument.
+     *
+     * @param codes Indexes into the dictionary, one per row.
+     * @param dictionary Distinct values of the column.
+     */
+    public static Column dictionary(int[] codes, String[] dictionary) {
+        if (codes == null || dictionary == null) {
+            throw new IllegalArgumentException("codes and dictionary must not be null");
+        }
+        return new DictionaryColumn(codes, dictionary);
+    }
+
+    /**
+     * Returns number of rows in this column.
+     */
+    public abstract int size();
+
+
+    static final class LongColumn extends Column {
+
+        final long[] values;
+
+        LongColumn(long[] values) {
+            this.values = values;
+        }
+
+        public int size() {
+            return values.length;
+        }
+    }
+
+    static final class DoubleColumn extends Column {
+
+        final double[] values;
+
+        DoubleColumn(double[] values) {
+            this.values = values;
+        }
+
+        public int size() {
+            return values.length;
+        }
+    }
+
+    static final class DictionaryColumn extends Column {
+
+        final int[] codes;
+        final String[] dictionary;
+
+        DictionaryColumn(int[] codes, String[] dictionary) {
+            this.codes = codes;
+            this.dictionary = dictionary;
+        }
+
+        public int size() {
+            return codes.length;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.eval;
+
+import cz.jirutka.rsql.parser.ast.*;
+import cz.jirutka.rsql.parser.eval.Column.DictionaryColumn;
+import cz.jirutka.rsql.parser.eval.Column.DoubleColumn;
+import cz.jirutka.rsql.parser.eval.Column.LongColumn;
+import net.jcip.annotations.Immutable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Evaluates an RSQL expression (AST) on a whole batch of rows stored in primitive
+ * {@linkplain Column columns} at once, producing a selection bitmap.
+ *
+ * <p>Every comparison is evaluated by a branch-free loop over its column that sets one bit per
+ * row; logical nodes then combine the bitmaps of their children word by word. The loops are
+ * simple enough for the JIT to unroll and vectorize, and the only allocation is a scratch
+ * bitmap per level of the expression. Dictionary-encoded columns are compared by testing each
+ * distinct value once and then just looking up the result by the row's code.</p>
+ *
+ * <p>Only the {@linkplain RSQLOperators default operators} are supported. The arguments are
+ * parsed according to the type of the column, as in {@link RSQLSemantics}.</p>
+ */
+@Immutable
+public final class ColumnarEvaluator {
+
+    private static final int
+            EQ = 0, NE = 1, GT = 2, GE = 3, LT = 4, LE = 5, IN = 6, OUT = 7;
+
+    private static final int LINEAR_SCAN_THRESHOLD = 8;
+
+
+    /**
+     * Evaluates the expression on the given batch of rows.
+     *
+     * @return A bitmap with the bit set for each matching row.
+     * @throws IllegalArgumentException If the {@code node} or {@code source} is <tt>null</tt>,
+     *         contains a selector with no column, a column of wrong size, an unsupported
+     *         operator, or an argument that cannot be converted.
+     */
+    public BitSet evaluate(Node node, ColumnSource source) {
+        if (source == null) {
+            throw new IllegalArgumentException("source must not be null");
+        }
+        long[] selection = new long[wordsFor(source.getRowCount())];
+        evaluate(node, source, selection);
+
+        return BitSet.valueOf(selection);
+    }
+
+    /**
+     * Evaluates the expression on the given batch of rows and writes the result into the given
+     * array of bitmap words (in the {@link BitSet#toLongArray()} layout), so it can be reused
+     * for the next batch.
+     *
+     * @param selection An array of at least <tt>(rowCount + 63) / 64</tt> words.
+     * @throws IllegalArgumentException See {@link #evaluate(Node, ColumnSource)}, or if the
+     *         {@code selection} is too small.
+     */
+    public void evaluate(Node node, ColumnSource source, long[] selection) {
+        if (node == null || source == null || selection == null) {
+            throw new IllegalArgumentException("node, source and selection must not be null");
+        }
+        int rows = source.getRowCount();
+        if (selection.length < wordsFor(rows)) {
+            throw new IllegalArgumentException("selection must have at least " + wordsFor(rows) + " words");
+        }
+        new Evaluation(source, rows).evaluate(node, selection, 0);
+    }
+
+
+    private static int wordsFor(int rows) {
+        return (rows + 63) >>> 6;
+    }
+
+    private static int relation(ComparisonOperator op) {
+        if (op.equals(RSQLOperators.EQUAL)) return EQ;
+        if (op.equals(RSQLOperators.NOT_EQUAL)) return NE;
+        if (op.equals(RSQLOperators.GREATER_THAN)) return GT;
+        if (op.equals(RSQLOperators.GREATER_THAN_OR_EQUAL)) return GE;
+        if (op.equals(RSQLOperators.LESS_THAN)) return LT;
+        if (op.equals(RSQLOperators.LESS_THAN_OR_EQUAL)) return LE;
+        if (op.equals(RSQLOperators.IN)) return IN;
+        if (op.equals(RSQLOperators.NOT_IN)) return OUT;
+
+        throw new IllegalArgumentException("No semantics for operator: " + op);
+    }
+
+
+    private static final class Evaluation {
+
+        private final ColumnSource source;
+        private final int rows;
+        private final int words;
+
+        // scratch bitmaps, one per level of logical nodes
+        private long[][] scratch = new long[4][];
+
+
+        Evaluation(ColumnSource source, int rows) {
+            this.source = source;
+            this.rows = rows;
+            this.words = wordsFor(rows);
+        }
+
+        void evaluate(Node node, long[] target, int depth) {
+            if (node instanceof ComparisonNode) {
+                compare((ComparisonNode) node, target);
+                return;
+            }
+            LogicalNode logical = (LogicalNode) node;
+            List<Node> children = logical.getChildrenView();
+            boolean and = logical.getOperator() == LogicalOperator.AND;
+
+            if (children.isEmpty()) {
+                fill(target, and);
+                return;
+            }
+            evaluate(children.get(0), target, depth + 1);
+
+            long[] tmp = scratch(depth);
+            for (int i = 1; i < children.size(); i++) {
+                evaluate(children.get(i), tmp, depth + 1);
+
+                long any = 0;
+                if (and) {
+                    for (int w = 0; w < words; w++) {
+                        any |= (target[w] &= tmp[w]);
+                    }
+                    if (any == 0) {
+                        break;  // nothing can match anymore
+                    }
+                } else {
+                    for (int w = 0; w < words; w++) {
+                        target[w] |= tmp[w];
+                    }
+                }
+            }
+        }
+
+        private void compare(ComparisonNode node, long[] target) {
+            Column column = source.getColumn(node.getSelector());
+            if (column == null) {
+                throw new IllegalArgumentException("No column for selector: " + node.getSelector());
+            }
+            if (column.size() != rows) {
+                throw new IllegalArgumentException(String.format(
+                        "Column %s has %d rows, expected %d", node.getSelector(), column.size(), rows));
+            }
+            int rel = relation(node.getOperator());
+            List<String> args = node.getArgumentsView();
+            try {
+                if (column instanceof LongColumn) {
+                    compareLongs(((LongColumn) column).values, rel, args, target);
+                } else if (column instanceof DoubleColumn) {
+                    compareDoubles(((DoubleColumn) column).values, rel, args, target);
+                } else {
+                    DictionaryColumn dict = (DictionaryColumn) column;
+                    lookup(dict.codes, matchDictionary(dict.dictionary, rel, args), target);
+                }
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException(String.format(
+                        "Invalid argument in %s: %s", node, ex.getMessage()), ex);
+            }
+        }
+
+        private void compareLongs(long[] values, int rel, List<String> args, long[] target) {
+            if (rel == IN || rel == OUT) {
+                long[] set = new long[args.size()];
+                for (int i = 0; i < set.length; i++) {
+                    set[i] = Long.parseLong(args.get(i));
+                }
+                Arrays.sort(set);
+                longsIn(values, set, target);
+                if (rel == OUT) {
+                    negate(target);
+                }
+                return;
+            }
+            long arg = Long.parseLong(args.get(0));
+
+            for (int w = 0, base = 0; w < words; w++, base += 64) {
+                int end = Math.min(64, rows - base);
+                long bits = 0;
+                switch (rel) {
+                    case EQ: for (int b = 0; b < end; b++) bits |= (values[base + b] == arg ? 1L : 0L) << b; break;
+                    case NE: for (int b = 0; b < end; b++) bits |= (values[base + b] != arg ? 1L : 0L) << b; break;
+                    case GT: for (int b = 0; b < end; b++) bits |= (values[base + b] >  arg ? 1L : 0L) << b; break;
+                    case GE: for (int b = 0; b < end; b++) bits |= (values[base + b] >= arg ? 1L : 0L) << b; break;
+                    case LT: for (int b = 0; b < end; b++) bits |= (values[base + b] <  arg ? 1L : 0L) << b; break;
+                    default: for (int b = 0; b < end; b++) bits |= (values[base + b] <= arg ? 1L : 0L) << b; break;
+                }
+                target[w] = bits;
+            }
+        }
+
+        private void longsIn(long[] values, long[] set, long[] target) {
+            for (int w = 0, base = 0; w < words; w++, base += 64) {
+                int end = Math.min(64, rows - base);
+                long bits = 0;
+                if (set.length <= LINEAR_SCAN_THRESHOLD) {
+                    for (int b = 0; b < end; b++) {
+                        long value = values[base + b];
+                        boolean match = false;
+                        for (long arg : set) {
+                            match |= value == arg;
+                        }
+                        bits |= (match ? 1L : 0L) << b;
+                    }
+                } else {
+                    for (int b = 0; b < end; b++) {
+                        bits |= (Arrays.binarySearch(set, values[base + b]) >= 0 ? 1L : 0L) << b;
+                    }
+                }
+                target[w] = bits;
+            }
+        }
+
+        private void compareDoubles(double[] values, int rel, List<String> args, long[] target) {
+            if (rel == IN || rel == OUT) {
+                double[] set = RSQLSemantics.doubleSet(args);
+                doublesIn(values, set, target);
+                if (rel == OUT) {
+                    negate(target);
+                }
+                return;
+            }
+            double arg = Double.parseDouble(args.get(0));
+
+            for (int w = 0, base = 0; w < words; w++, base += 64) {
+                int end = Math.min(64, rows - base);
+                long bits = 0;
+                switch (rel) {
+                    case EQ: for (int b = 0; b < end; b++) bits |= (values[base + b] == arg ? 1L : 0L) << b; break;
+                    case NE: for (int b = 0; b < end; b++) bits |= (values[base + b] != arg ? 1L : 0L) << b; break;
+                    case GT: for (int b = 0; b < end; b++) bits |= (values[base + b] >  arg ? 1L : 0L) << b; break;
+                    case GE: for (int b = 0; b < end; b++) bits |= (values[base + b] >= arg ? 1L : 0L) << b; break;
+                    case LT: for (int b = 0; b < end; b++) bits |= (values[base + b] <  arg ? 1L : 0L) << b; break;
+                    default: for (int b = 0; b < end; b++) bits |= (values[base + b] <= arg ? 1L : 0L) << b; break;
+                }
+                target[w] = bits;
+            }
+        }
+
+        private void doublesIn(double[] values, double[] set, long[] target) {
+            for (int w = 0, base = 0; w < words; w++, base += 64) {
+                int end = Math.min(64, rows - base);
+                long bits = 0;
+                if (set.length <= LINEAR_SCAN_THRESHOLD) {
+                    for (int b = 0; b < end; b++) {
+                        double value = values[base + b];
+                        boolean match = false;
+                        for (double arg : set) {
+                            match |= value == arg;
+                        }
+                        bits |= (match ? 1L : 0L) << b;
+                    }
+                } else {
+                    for (int b = 0; b < end; b++) {
+                        // + 0.0 turns -0.0 into 0.0; NaN is not in the set, so it's not found
+                        bits |= (Arrays.binarySearch(set, values[base + b] + 0.0) >= 0 ? 1L : 0L) << b;
+                    }
+                }
+                target[w] = bits;
+            }
+        }
+
+        private boolean[] matchDictionary(String[] dictionary, int rel, List<String> args) {
+            boolean[] matches = new boolean[dictionary.length];
+            Set<String> set = rel == IN || rel == OUT ? new HashSet<>(args) : null;
+
+            for (int i = 0; i < dictionary.length; i++) {
+                String value = dictionary[i];
+                switch (rel) {
+                    case EQ:  matches[i] = args.get(0).equals(value); break;
+                    case NE:  matches[i] = !args.get(0).equals(value); break;
+                    case IN:  matches[i] = set.contains(value); break;
+                    case OUT: matches[i] = !set.contains(value); break;
+                    default:
+                        if (value != null) {
+                            int cmp = value.compareTo(args.get(0));
+                            matches[i] = rel == GT ? cmp > 0
+                                       : rel == GE ? cmp >= 0
+                                       : rel == LT ? cmp < 0
+                                       : cmp <= 0;
+                        }
+                }
+            }
+            return matches;
+        }
+
+        private void lookup(int[] codes, boolean[] matches, long[] target) {
+            for (int w = 0, base = 0; w < words; w++, base += 64) {
+                int end = Math.min(64, rows - base);
+                long bits = 0;
+                for (int b = 0; b < end; b++) {
+                    bits |= (matches[codes[base + b]] ? 1L : 0L) << b;
+                }
+                target[w] = bits;
+            }
+        }
+
+        private void negate(long[] target) {
+            for (int w = 0; w < words; w++) {
+                target[w] = ~target[w];
+            }
+            clearTail(target);
+        }
+
+        private void fill(long[] target, boolean value) {
+            Arrays.fill(target, 0, words, value ? -1L : 0L);
+            clearTail(target);
+        }
+
+        private void clearTail(long[] target) {
+            int tail = rows & 63;
+            if (tail != 0) {
+                target[words - 1] &= (1L << tail) - 1;
+            }
+        }
+
+        private long[] scratch(int depth) {
+            if (depth >= scratch.length) {
+                scratch = Arrays.copyOf(scratch, depth * 2);
+            }
+            if (scratch[depth] == null) {
+                scratch[depth] = new long[words];
+            }
+            return scratch[depth];
+        }
+    }
+}
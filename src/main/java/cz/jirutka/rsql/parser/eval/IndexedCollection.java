@@ -0,0 +1,883 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.eval;
+
+import cz.jirutka.rsql.parser.ast.*;
+import cz.jirutka.rsql.parser.optimize.ClauseStatistics;
+import cz.jirutka.rsql.parser.optimize.HeuristicStatistics;
+import net.jcip.annotations.Immutable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * An in-memory collection of objects that evaluates RSQL expressions (AST) using indexes on
+ * the selectors, instead of testing every object.
+ *
+ * <p>A selector may have a hash index for <tt>==</tt>, <tt>!=</tt>, <tt>=in=</tt> and
+ * <tt>=out=</tt>, and a sorted index that supports also the ordering operators (for
+ * {@link ObjectAccessor object values} only them). An index stores the row numbers of each
+ * distinct value in a sorted array. A comparison is answered by setting the bits of the
+ * matching rows in a bitmap, and logical nodes intersect and unite the bitmaps of their
+ * children. Comparisons with no suitable index, or with a custom operator, are evaluated by
+ * testing the objects with a predicate compiled by the {@link PredicateCompiler}.</p>
+ *
+ * <p>The operands of a logical node are planned by their estimated number of matching rows,
+ * which is exact for an indexed comparison and based on the {@link ClauseStatistics}
+ * otherwise. The operands of an and are evaluated from the most selective one, each only on
+ * the rows that are still matching; when these are few, the remaining comparisons test them
+ * directly rather than reading a large index.</p>
+ *
+ * <p>The results are the same as of a predicate compiled by the {@link PredicateCompiler}
+ * with the same accessors, see {@link RSQLSemantics}.</p>
+ *
+ * <pre>{@code
+ * IndexedCollection<Person> people = IndexedCollection.of(persons)
+ *     .withHashIndex("city", cityAccessor)
+ *     .withSortedIndex("age", ageAccessor)
+ *     .withAccessor("name", nameAccessor);
+ *
+ * List<Person> result = people.filter(new RSQLParser().parse("city==Prague;age=gt=30"));
+ * }</pre>
+ *
+ * @param <T> Type of the objects.
+ */
+@Immutable
+public final class IndexedCollection<T> {
+
+    private static final int
+            EQ = 0, NE = 1, GT = 2, GE = 3, LT = 4, LE = 5, IN = 6, OUT = 7, CUSTOM = -1;
+
+    /**
+     * Estimated cost of testing one object by a predicate, relative to setting one bit from an
+     * index (it's multiplied by the {@link ClauseStatistics#cost(ComparisonNode) cost} of the
+     * comparison).
+     */
+    private static final double SCAN_COST = 4.0;
+
+    private final List<T> rows;
+
+    private final PredicateCompiler<T> compiler;
+
+    private final Map<String, Index> hashIndexes;
+
+    private final Map<String, Index> sortedIndexes;
+
+    private final ClauseStatistics statistics;
+
+
+    private IndexedCollection(List<T> rows, PredicateCompiler<T> compiler, Map<String, Index> hashIndexes,
+                              Map<String, Index> sortedIndexes, ClauseStatistics statistics) {
+        this.rows = rows;
+        this.compiler = compiler;
+        this.hashIndexes = hashIndexes;
+        this.sortedIndexes = sortedIndexes;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Creates a collection of the given objects with no accessors and indexes. The list is not
+     * copied if it supports fast random access, so it should not be modified while the
+     * collection is used.
+     *
+     * @throws IllegalArgumentException If the {@code rows} is <tt>null</tt>.
+     */
+    public static <T> IndexedCollection<T> of(List<T> rows) {
+        if (rows == null) {
+            throw new IllegalArgumentException("rows must not be null");
+        }
+        if (!(rows instanceof RandomAccess)) {
+            rows = new ArrayList<>(rows);
+        }
+        return new IndexedCollection<>(rows, new PredicateCompiler<T>(),
+                Collections.<String, Index>emptyMap(), Collections.<String, Index>emptyMap(),
+                new HeuristicStatistics());
+    }
+
+
+    /**
+     * Returns a copy of this collection with the given accessor for the selector, without an
+     * index; comparisons of the selector will be evaluated by testing the objects.
+     *
+     * @param selector The selector.
+     * @param accessor One of the {@link LongAccessor}, {@link DoubleAccessor} or
+     *                 {@link ObjectAccessor}.
+     * @throws IllegalArgumentException If either of the parameters is <tt>null</tt>.
+     */
+    public IndexedCollection<T> withAccessor(String selector, Accessor<T> accessor) {
+        return new IndexedCollection<>(rows, compiler.withAccessor(selector, accessor),
+                hashIndexes, sortedIndexes, statistics);
+    }
+
+    /**
+     * Returns a copy of this collection with a hash index of the selector built from the
+     * values read by the given accessor. The accessor is used also to test the objects when the
+     * index doesn't support the operator, or when the planner prefers it.
+     *
+     * @param selector The selector.
+     * @param accessor One of the {@link LongAccessor}, {@link DoubleAccessor} or
+     *                 {@link ObjectAccessor}.
+     * @throws IllegalArgumentException If either of the parameters is <tt>null</tt>, or the
+     *         accessor is not supported.
+     */
+    public IndexedCollection<T> withHashIndex(String selector, Accessor<T> accessor) {
+        PredicateCompiler<T> compiler = this.compiler.withAccessor(selector, accessor);
+        checkAccessor(accessor);
+
+        return new IndexedCollection<>(rows, compiler,
+                with(hashIndexes, selector, HashIndex.build(rows, accessor)), sortedIndexes, statistics);
+    }
+
+    /**
+     * Returns a copy of this collection with a sorted index of the selector built from the
+     * values read by the given accessor. Values of an {@link ObjectAccessor} must be
+     * {@link Comparable} with each other; the index then supports only the ordering operators,
+     * since the natural ordering may be inconsistent with <tt>equals</tt>.
+     *
+     * @param selector The selector.
+     * @param accessor One of the {@link LongAccessor}, {@link DoubleAccessor} or
+     *                 {@link ObjectAccessor}.
+     * @throws IllegalArgumentException If either of the parameters is <tt>null</tt>, the
+     *         accessor is not supported, or the values are not comparable.
+     */
+    public IndexedCollection<T> withSortedIndex(String selector, Accessor<T> accessor) {
+        PredicateCompiler<T> compiler = this.compiler.withAccessor(selector, accessor);
+        checkAccessor(accessor);
+
+        return new IndexedCollection<>(rows, compiler,
+                hashIndexes, with(sortedIndexes, selector, SortedIndex.build(rows, accessor)), statistics);
+    }
+
+    /**
+     * Returns a copy of this collection with the given semantics for the operator, see
+     * {@link PredicateCompiler#withSemantics(ComparisonOperator, OperatorSemantics)}. A custom
+     * operator is always evaluated by testing the objects, since the indexes don't know its
+     * semantics.
+     *
+     * @throws IllegalArgumentException If either of the parameters is <tt>null</tt>.
+     */
+    public IndexedCollection<T> withSemantics(ComparisonOperator operator, OperatorSemantics semantics) {
+        return new IndexedCollection<>(rows, compiler.withSemantics(operator, semantics),
+                hashIndexes, sortedIndexes, statistics);
+    }
+
+    /**
+     * Returns a copy of this collection that estimates comparisons with no index by the given
+     * statistics. The default is {@link HeuristicStatistics} with the default heuristics.
+     *
+     * @throws IllegalArgumentException If the {@code statistics} is <tt>null</tt>.
+     */
+    public IndexedCollection<T> withStatistics(ClauseStatistics statistics) {
+        if (statistics == null) {
+            throw new IllegalArgumentException("statistics must not be null");
+        }
+        return new IndexedCollection<>(rows, compiler, hashIndexes, sortedIndexes, statistics);
+    }
+
+    /**
+     * Returns number of the objects in this collection.
+     */
+    public int size() {
+        return rows.size();
+    }
+
+    /**
+     * Evaluates the expression on the objects of this collection.
+     *
+     * @return A bitmap with the bit set for the index of each matching object.
+     * @throws IllegalArgumentException If the {@code node} is <tt>null</tt>, contains a selector
+     *         with no accessor, an operator with no semantics, or an argument that cannot be
+     *         converted.
+     * @throws UnsupportedOperationException See {@link PredicateCompiler#compile(Node)}.
+     */
+    public BitSet select(Node node) {
+        return BitSet.valueOf(evaluate(node));
+    }
+
+    /**
+     * Evaluates the expression on the objects of this collection and returns the matching ones,
+     * in the order of this collection.
+     *
+     * @throws IllegalArgumentException See {@link #select(Node)}.
+     * @throws UnsupportedOperationException See {@link #select(Node)}.
+     */
+    public List<T> filter(Node node) {
+        long[] selection = evaluate(node);
+        List<T> result = new ArrayList<>(cardinality(selection));
+
+        for (int w = 0; w < selection.length; w++) {
+            for (long word = selection[w]; word != 0; word &= word - 1) {
+                result.add(rows.get((w << 6) + Long.numberOfTrailingZeros(word)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the estimated number of objects that match the expression, as used by the
+     * planner. It's exact for a comparison of an indexed selector that the index supports.
+     *
+     * @throws IllegalArgumentException See {@link #select(Node)}.
+     */
+    public long estimate(Node node) {
+        if (node == null) {
+            throw new IllegalArgumentException("node must not be null");
+        }
+        Evaluation evaluation = new Evaluation();
+        evaluation.prepare(node);
+
+        return Math.round(evaluation.selectivity(node) * rows.size());
+    }
+
+
+    private long[] evaluate(Node node) {
+        if (node == null) {
+            throw new IllegalArgumentException("node must not be null");
+        }
+        Evaluation evaluation = new Evaluation();
+        evaluation.prepare(node);
+
+        return evaluation.evaluate(node, null);
+    }
+
+    private static void checkAccessor(Accessor<?> accessor) {
+        if (!(accessor instanceof LongAccessor || accessor instanceof DoubleAccessor
+                || accessor instanceof ObjectAccessor)) {
+            throw new IllegalArgumentException("Unsupported accessor: " + accessor.getClass());
+        }
+    }
+
+    private static Map<String, Index> with(Map<String, Index> indexes, String selector, Index index) {
+        Map<String, Index> map = new HashMap<>(indexes);
+        map.put(selector, index);
+        return map;
+    }
+
+    private static int relation(ComparisonOperator op) {
+        if (op.equals(RSQLOperators.EQUAL)) return EQ;
+        if (op.equals(RSQLOperators.NOT_EQUAL)) return NE;
+        if (op.equals(RSQLOperators.GREATER_THAN)) return GT;
+        if (op.equals(RSQLOperators.GREATER_THAN_OR_EQUAL)) return GE;
+        if (op.equals(RSQLOperators.LESS_THAN)) return LT;
+        if (op.equals(RSQLOperators.LESS_THAN_OR_EQUAL)) return LE;
+        if (op.equals(RSQLOperators.IN)) return IN;
+        if (op.equals(RSQLOperators.NOT_IN)) return OUT;
+        return CUSTOM;
+    }
+
+    private static int cardinality(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the double value as a key of an index: <tt>-0.0</tt> as <tt>0.0</tt> (they are
+     * equal by <tt>==</tt>), and <tt>null</tt> for <tt>NaN</tt> (it's equal to nothing).
+     */
+    private static Double doubleKey(double value) {
+        return value != value ? null : Double.valueOf(value == 0.0 ? 0.0 : value);
+    }
+
+    /**
+     * Converts the argument to a key of an index on values of the accessor; <tt>null</tt> if
+     * it's equal to no value.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object argumentKey(Accessor<?> accessor, String argument) {
+        if (accessor instanceof LongAccessor) {
+            return Long.parseLong(argument);
+        } else if (accessor instanceof DoubleAccessor) {
+            return doubleKey(Double.parseDouble(argument));
+        }
+        return ((ObjectAccessor<?, Object>) accessor).convert(argument);
+    }
+
+    /**
+     * Returns the value of the object as a key of an index; <tt>null</tt> if it's equal to no
+     * argument.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Object valueKey(Accessor<T> accessor, T object) {
+        if (accessor instanceof LongAccessor) {
+            return ((LongAccessor<T>) accessor).getLong(object);
+        } else if (accessor instanceof DoubleAccessor) {
+            return doubleKey(((DoubleAccessor<T>) accessor).getDouble(object));
+        }
+        return ((ObjectAccessor<T, Object>) accessor).get(object);
+    }
+
+
+    /**
+     * Row numbers grouped by the distinct keys of an index: the rows with the key number
+     * <tt>k</tt> are <tt>rows[offsets[k]]</tt> to <tt>rows[offsets[k + 1] - 1]</tt>, in
+     * ascending order. Rows with no key (e.g. <tt>null</tt>) are not included.
+     */
+    private abstract static class Index {
+
+        final int[] offsets;
+        final int[] rows;
+
+        /**
+         * @param codes The key number of each row, or <tt>-1</tt> for no key.
+         * @param keys Number of the distinct keys.
+         */
+        Index(int[] codes, int keys) {
+            offsets = new int[keys + 1];
+            for (int code : codes) {
+                offsets[code + 1]++;  // code -1 is counted in offsets[0] and then overwritten
+            }
+            offsets[0] = 0;
+            for (int k = 0; k < keys; k++) {
+                offsets[k + 1] += offsets[k];
+            }
+            rows = new int[offsets[keys]];
+            int[] next = Arrays.copyOf(offsets, keys);
+            for (int row = 0; row < codes.length; row++) {
+                if (codes[row] >= 0) {
+                    rows[next[codes[row]]++] = row;
+                }
+            }
+        }
+
+        int keyCount() {
+            return offsets.length - 1;
+        }
+
+        abstract boolean supports(int relation);
+
+        /**
+         * Returns the ranges of key numbers with the rows that match the comparison, as pairs
+         * of the first one and the one after the last one. For <tt>!=</tt> and <tt>=out=</tt>
+         * it returns the rows that match <tt>==</tt> and <tt>=in=</tt> respectively.
+         */
+        abstract int[] lookup(int relation, List<String> arguments);
+
+        /**
+         * Returns ranges of the given key numbers (<tt>-1</tt> for none).
+         */
+        static int[] ranges(int[] keys) {
+            Arrays.sort(keys);
+            int[] ranges = new int[keys.length * 2];
+            int n = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] >= 0 && (i == 0 || keys[i] != keys[i - 1])) {
+                    ranges[n++] = keys[i];
+                    ranges[n++] = keys[i] + 1;
+                }
+            }
+            return Arrays.copyOf(ranges, n);
+        }
+    }
+
+    private static final class HashIndex extends Index {
+
+        private final Accessor<?> accessor;
+        private final Map<Object, Integer> keys;
+
+        private HashIndex(Accessor<?> accessor, Map<Object, Integer> keys, int[] codes) {
+            super(codes, keys.size());
+            this.accessor = accessor;
+            this.keys = keys;
+        }
+
+        static <T> HashIndex build(List<T> rows, Accessor<T> accessor) {
+            Map<Object, Integer> keys = new HashMap<>();
+            int[] codes = new int[rows.size()];
+
+            for (int row = 0; row < codes.length; row++) {
+                Object key = valueKey(accessor, rows.get(row));
+                if (key == null) {
+                    codes[row] = -1;
+                    continue;
+                }
+                Integer code = keys.get(key);
+                if (code == null) {
+                    keys.put(key, code = keys.size());
+                }
+                codes[row] = code;
+            }
+            return new HashIndex(accessor, keys, codes);
+        }
+
+        boolean supports(int relation) {
+            return relation == EQ || relation == NE || relation == IN || relation == OUT;
+        }
+
+        int[] lookup(int relation, List<String> arguments) {
+            int[] codes = new int[arguments.size()];
+            for (int i = 0; i < codes.length; i++) {
+                Object key = argumentKey(accessor, arguments.get(i));
+                Integer code = key != null ? keys.get(key) : null;
+                codes[i] = code != null ? code : -1;
+            }
+            return ranges(codes);
+        }
+    }
+
+    private abstract static class SortedIndex extends Index {
+
+        static final int NO_MATCH = Integer.MIN_VALUE;
+
+        SortedIndex(int[] codes, int keys) {
+            super(codes, keys);
+        }
+
+        @SuppressWarnings("unchecked")
+        static <T> SortedIndex build(List<T> rows, Accessor<T> accessor) {
+            int[] codes = new int[rows.size()];
+
+            if (accessor instanceof LongAccessor) {
+                long[] values = new long[codes.length];
+                for (int row = 0; row < values.length; row++) {
+                    values[row] = ((LongAccessor<T>) accessor).getLong(rows.get(row));
+                }
+                long[] keys = values.clone();
+                Arrays.sort(keys);
+                keys = Arrays.copyOf(keys, distinct(keys));
+                for (int row = 0; row < values.length; row++) {
+                    codes[row] = Arrays.binarySearch(keys, values[row]);
+                }
+                return new LongIndex(keys, codes);
+
+            } else if (accessor instanceof DoubleAccessor) {
+                double[] values = new double[codes.length];
+                int n = 0;
+                for (int row = 0; row < values.length; row++) {
+                    Double key = doubleKey(((DoubleAccessor<T>) accessor).getDouble(rows.get(row)));
+                    values[row] = key != null ? key : Double.NaN;
+                }
+                double[] keys = values.clone();
+                Arrays.sort(keys);  // NaNs are sorted last
+                for (double key : keys) {
+                    if (key == key && (n == 0 || key != keys[n - 1])) {
+                        keys[n++] = key;
+                    }
+                }
+                keys = Arrays.copyOf(keys, n);
+                for (int row = 0; row < values.length; row++) {
+                    codes[row] = values[row] == values[row] ? Arrays.binarySearch(keys, values[row]) : -1;
+                }
+                return new DoubleIndex(keys, codes);
+            }
+
+            ObjectAccessor<T, Object> acc = (ObjectAccessor<T, Object>) accessor;
+            Object[] values = new Object[codes.length];
+            int n = 0;
+            for (int row = 0; row < values.length; row++) {
+                Object value = acc.get(rows.get(row));
+                if (value != null && !(value instanceof Comparable)) {
+                    throw new IllegalArgumentException("value is not comparable: " + value);
+                }
+                values[row] = value;
+            }
+            Object[] keys = new Object[values.length];
+            for (Object value : values) {
+                if (value != null) {
+                    keys[n++] = value;
+                }
+            }
+            try {
+                Arrays.sort(keys, 0, n);
+                keys = Arrays.copyOf(keys, distinct(keys, n));
+                for (int row = 0; row < values.length; row++) {
+                    codes[row] = values[row] != null ? Arrays.binarySearch(keys, values[row]) : -1;
+                }
+            } catch (ClassCastException ex) {
+                throw new IllegalArgumentException("values are not mutually comparable", ex);
+            }
+            return new ObjectIndex(acc, keys, codes);
+        }
+
+        /**
+         * Returns the result of {@link Arrays#binarySearch(long[], long) binary search} of the
+         * argument in the keys, or {@link #NO_MATCH} if it's not comparable with any value.
+         */
+        abstract int search(String argument);
+
+        int[] lookup(int relation, List<String> arguments) {
+            if (relation == IN || relation == OUT) {
+                int[] codes = new int[arguments.size()];
+                for (int i = 0; i < codes.length; i++) {
+                    codes[i] = search(arguments.get(i));
+                }
+                return ranges(codes);  // negative for values not found
+            }
+            int found = search(arguments.get(0));
+            if (found == NO_MATCH) {
+                return new int[0];
+            }
+            int lower = found >= 0 ? found : -found - 1;  // first key >= argument
+            int upper = found >= 0 ? found + 1 : lower;   // first key > argument
+
+            switch (relation) {
+                case GT: return new int[]{ upper, keyCount() };
+                case GE: return new int[]{ lower, keyCount() };
+                case LT: return new int[]{ 0, lower };
+                case LE: return new int[]{ 0, upper };
+                default: return new int[]{ lower, upper };
+            }
+        }
+
+        private static int distinct(long[] sorted) {
+            int n = 0;
+            for (long key : sorted) {
+                if (n == 0 || key != sorted[n - 1]) {
+                    sorted[n++] = key;
+                }
+            }
+            return n;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static int distinct(Object[] sorted, int length) {
+            int n = 0;
+            for (int i = 0; i < length; i++) {
+                if (n == 0 || ((Comparable<Object>) sorted[i]).compareTo(sorted[n - 1]) != 0) {
+                    sorted[n++] = sorted[i];
+                }
+            }
+            return n;
+        }
+    }
+
+    private static final class LongIndex extends SortedIndex {
+
+        private final long[] keys;
+
+        LongIndex(long[] keys, int[] codes) {
+            super(codes, keys.length);
+            this.keys = keys;
+        }
+
+        boolean supports(int relation) {
+            return relation != CUSTOM;
+        }
+
+        int search(String argument) {
+            return Arrays.binarySearch(keys, Long.parseLong(argument));
+        }
+    }
+
+    private static final class DoubleIndex extends SortedIndex {
+
+        private final double[] keys;
+
+        DoubleIndex(double[] keys, int[] codes) {
+            super(codes, keys.length);
+            this.keys = keys;
+        }
+
+        boolean supports(int relation) {
+            return relation != CUSTOM;
+        }
+
+        int search(String argument) {
+            Double key = doubleKey(Double.parseDouble(argument));
+            return key != null ? Arrays.binarySearch(keys, key) : NO_MATCH;
+        }
+    }
+
+    private static final class ObjectIndex extends SortedIndex {
+
+        private final ObjectAccessor<?, Object> accessor;
+        private final Object[] keys;
+
+        ObjectIndex(ObjectAccessor<?, Object> accessor, Object[] keys, int[] codes) {
+            super(codes, keys.length);
+            this.accessor = accessor;
+            this.keys = keys;
+        }
+
+        boolean supports(int relation) {
+            return relation == GT || relation == GE || relation == LT || relation == LE;
+        }
+
+        int search(String argument) {
+            Object key = accessor.convert(argument);
+            if (key == null) {
+                return NO_MATCH;
+            }
+            if (!(key instanceof Comparable)) {
+                throw new IllegalArgumentException("argument is not comparable: " + key);
+            }
+            try {
+                return Arrays.binarySearch(keys, key);
+            } catch (ClassCastException ex) {
+                throw new IllegalArgumentException("argument is not comparable: " + key, ex);
+            }
+        }
+    }
+
+
+    /**
+     * A comparison resolved by an index.
+     */
+    private static final class Lookup {
+
+        final Index index;
+        final int[] ranges;
+        final boolean negated;
+
+        /**
+         * Number of the rows in the ranges.
+         */
+        final int count;
+
+        Lookup(Index index, int[] ranges, boolean negated) {
+            this.index = index;
+            this.ranges = ranges;
+            this.negated = negated;
+            int count = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                count += index.offsets[ranges[i + 1]] - index.offsets[ranges[i]];
+            }
+            this.count = count;
+        }
+    }
+
+    private final class Evaluation {
+
+        private final int size = rows.size();
+        private final int words = (size + 63) >>> 6;
+
+        private final Map<Node, Double> selectivities = new IdentityHashMap<>();
+        private final Map<ComparisonNode, Lookup> lookups = new IdentityHashMap<>();
+        private final Map<ComparisonNode, Predicate<T>> predicates = new IdentityHashMap<>();
+
+        private final Comparator<Node> bySelectivity = new Comparator<Node>() {
+            public int compare(Node a, Node b) {
+                return Double.compare(selectivity(a), selectivity(b));
+            }
+        };
+
+        /**
+         * Resolves all the comparisons in the indexes, or compiles them into predicates if
+         * there's no suitable index, so any invalid comparison is reported even if it wouldn't
+         * be evaluated.
+         */
+        void prepare(Node node) {
+            if (node instanceof LogicalNode) {
+                for (Node child : (LogicalNode) node) {
+                    prepare(child);
+                }
+            } else if (lookup((ComparisonNode) node) == null) {
+                predicate((ComparisonNode) node);
+            }
+        }
+
+        /**
+         * Evaluates the node on the candidate rows.
+         *
+         * @param candidates A bitmap of the rows to evaluate, or <tt>null</tt> for all rows.
+         *                   It's not modified.
+         * @return A new bitmap of the matching candidates.
+         */
+        long[] evaluate(Node node, long[] candidates) {
+            if (node instanceof ComparisonNode) {
+                return compare((ComparisonNode) node, candidates);
+            }
+            LogicalNode logical = (LogicalNode) node;
+            List<Node> children = new ArrayList<>(logical.getChildrenView());
+
+            if (logical.getOperator() == LogicalOperator.AND) {
+                // the most selective first, to narrow down the candidates quickly
+                Collections.sort(children, bySelectivity);
+                long[] result = candidates != null ? candidates.clone() : all();
+
+                for (Node child : children) {
+                    result = evaluate(child, result);
+                    if (cardinality(result) == 0) {
+                        break;
+                    }
+                }
+                return result;
+            }
+            // the least selective first, to evaluate the others on fewer remaining rows
+            Collections.sort(children, Collections.reverseOrder(bySelectivity));
+            long[] result = new long[words];
+            long[] remaining = candidates;
+
+            for (Node child : children) {
+                long[] matching = evaluate(child, remaining);
+                remaining = candidates != null ? candidates.clone() : all();
+                long any = 0;
+                for (int w = 0; w < words; w++) {
+                    result[w] |= matching[w];
+                    any |= (remaining[w] &= ~result[w]);
+                }
+                if (any == 0) {
+                    break;  // everything matches already
+                }
+            }
+            return result;
+        }
+
+        double selectivity(Node node) {
+            Double cached = selectivities.get(node);
+            if (cached != null) {
+                return cached;
+            }
+            double selectivity;
+
+            if (node instanceof ComparisonNode) {
+                Lookup lookup = lookup((ComparisonNode) node);
+                if (lookup == null) {
+                    selectivity = statistics.selectivity((ComparisonNode) node);
+                } else {
+                    int matching = lookup.negated ? size - lookup.count : lookup.count;
+                    selectivity = size == 0 ? 0.0 : (double) matching / size;
+                }
+            } else {
+                LogicalNode logical = (LogicalNode) node;
+                boolean and = logical.getOperator() == LogicalOperator.AND;
+                // assuming that the operands are independent
+                double none = 1.0;
+                for (Node child : logical) {
+                    none *= and ? selectivity(child) : 1.0 - selectivity(child);
+                }
+                selectivity = and ? none : 1.0 - none;
+            }
+            selectivities.put(node, selectivity);
+            return selectivity;
+        }
+
+        private long[] compare(ComparisonNode node, long[] candidates) {
+            Lookup lookup = lookup(node);
+            if (lookup != null) {
+                int indexCost = lookup.count + (lookup.negated ? words : 0);
+                if (candidates == null || indexCost <= cardinality(candidates) * SCAN_COST * statistics.cost(node)) {
+                    return read(lookup, candidates);
+                }
+            }
+            return scan(node, candidates);
+        }
+
+        /**
+         * Returns the lookup of the comparison in a suitable index, or <tt>null</tt> if there's
+         * none.
+         */
+        private Lookup lookup(ComparisonNode node) {
+            if (lookups.containsKey(node)) {
+                return lookups.get(node);
+            }
+            int relation = relation(node.getOperator());
+            Index index = hashIndexes.get(node.getSelector());
+            if (index == null || !index.supports(relation)) {
+                index = sortedIndexes.get(node.getSelector());
+            }
+            Lookup lookup = null;
+            if (index != null && index.supports(relation)) {
+                try {
+                    lookup = new Lookup(index, index.lookup(relation, node.getArgumentsView()),
+                            relation == NE || relation == OUT);
+                } catch (IllegalArgumentException ex) {
+                    throw new IllegalArgumentException(String.format(
+                            "Invalid argument in %s: %s", node, ex.getMessage()), ex);
+                }
+            }
+            lookups.put(node, lookup);
+            return lookup;
+        }
+
+        private Predicate<T> predicate(ComparisonNode node) {
+            Predicate<T> predicate = predicates.get(node);
+            if (predicate == null) {
+                predicates.put(node, predicate = compiler.compile(node));
+            }
+            return predicate;
+        }
+
+        private long[] read(Lookup lookup, long[] candidates) {
+            long[] result = new long[words];
+            int[] offsets = lookup.index.offsets, indexRows = lookup.index.rows;
+
+            for (int i = 0; i < lookup.ranges.length; i += 2) {
+                for (int j = offsets[lookup.ranges[i]], end = offsets[lookup.ranges[i + 1]]; j < end; j++) {
+                    int row = indexRows[j];
+                    result[row >>> 6] |= 1L << row;
+                }
+            }
+            if (lookup.negated) {
+                for (int w = 0; w < words; w++) {
+                    result[w] = ~result[w];
+                }
+                clearTail(result);
+            }
+            if (candidates != null) {
+                for (int w = 0; w < words; w++) {
+                    result[w] &= candidates[w];
+                }
+            }
+            return result;
+        }
+
+        private long[] scan(ComparisonNode node, long[] candidates) {
+            Predicate<T> predicate = predicate(node);
+            long[] result = new long[words];
+
+            if (candidates == null) {
+                for (int row = 0; row < size; row++) {
+                    if (predicate.test(rows.get(row))) {
+                        result[row >>> 6] |= 1L << row;
+                    }
+                }
+                return result;
+            }
+            for (int w = 0; w < words; w++) {
+                for (long word = candidates[w]; word != 0; word &= word - 1) {
+                    int row = (w << 6) + Long.numberOfTrailingZeros(word);
+                    if (predicate.test(rows.get(row))) {
+                        result[w] |= 1L << row;
+                    }
+                }
+            }
+            return result;
+        }
+
+        private long[] all() {
+            long[] bits = new long[words];
+            Arrays.fill(bits, -1L);
+            clearTail(bits);
+            return bits;
+        }
+
+        private void clearTail(long[] bits) {
+            int tail = size & 63;
+            if (tail != 0) {
+                bits[words - 1] &= (1L << tail) - 1;
+            }
+        }
+    }
+}
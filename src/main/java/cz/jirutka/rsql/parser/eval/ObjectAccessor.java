@@ -0,0 +1,49 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.eval;
+
+/**
+ * An accessor of a selector with object values, e.g. strings, dates or enums. The values are
+ * compared using {@link Object#equals(Object) equals} and, for the ordering operators,
+ * {@link Comparable#compareTo(Object) compareTo}. A <tt>null</tt> value is equal to no
+ * argument and is neither less nor greater than any argument.
+ *
+ * @param <T> Type of the tested objects.
+ * @param <V> Type of the values.
+ */
+public interface ObjectAccessor<T, V> extends Accessor<T> {
+
+    /**
+     * Returns the value of the selector, may be <tt>null</tt>.
+     */
+    V get(T object);
+
+    /**
+     * Converts the argument to the type of values. It's called only once per argument when the
+     * predicate is compiled.
+     *
+     * @throws IllegalArgumentException If the argument cannot be converted.
+     */
+    V convert(String argument);
+}
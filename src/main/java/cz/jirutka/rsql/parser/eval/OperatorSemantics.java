@@ -0,0 +1,48 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.eval;
+
+import cz.jirutka.rsql.parser.ast.ComparisonOperator;
+
+import java.util.List;
+
+/**
+ * Semantics of a {@link ComparisonOperator} for the {@link PredicateCompiler}; it compiles a
+ * comparison with the given accessor and arguments into a predicate. The arguments should be
+ * converted and the needed structures prepared here, so the predicate does as little work as
+ * possible per tested object.
+ *
+ * <p>An implementation that doesn't support some kind of accessor should throw
+ * {@link UnsupportedOperationException}.</p>
+ *
+ * @see RSQLSemantics
+ */
+public interface OperatorSemantics {
+
+    <T> Predicate<T> compile(LongAccessor<T> accessor, List<String> arguments);
+
+    <T> Predicate<T> compile(DoubleAccessor<T> accessor, List<String> arguments);
+
+    <T, V> Predicate<T> compile(ObjectAccessor<T, V> accessor, List<String> arguments);
+}
@@ -0,0 +1,255 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.eval;
+
+import cz.jirutka.rsql.parser.ast.*;
+import net.jcip.annotations.Immutable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Simplifies an RSQL expression (AST) using known values of some selectors, e.g. a tenant or
+ * feature flags fixed by the context before the query is evaluated on the data.
+ *
+ * <p>Comparisons of the known selectors are evaluated to true or false, and the logical nodes
+ * are simplified accordingly: an and with a false operand is false, an or with a true operand
+ * is true, and true operands of an and (false of an or) are removed. The result is the
+ * remaining expression, or a constant {@link #TRUE} or {@link #FALSE} if it's decided
+ * completely; e.g. <tt>tenant==acme;(region==eu,price=lt=10)</tt> with <tt>tenant=acme</tt>
+ * and <tt>region=us</tt> is simplified to <tt>price=lt=10</tt>, and with <tt>tenant=other</tt>
+ * to {@link #FALSE}, so the query doesn't have to be evaluated at all.</p>
+ *
+ * <p>The constants are logical nodes without children, as they are understood by the other
+ * evaluators (an empty and matches everything, an empty or nothing), so the result can be
+ * always evaluated as is: the {@link PredicateCompiler} compiles them into a constant
+ * predicate, the {@link ColumnarEvaluator} selects all or no rows, and the
+ * {@link cz.jirutka.rsql.parser.sql.SQLGenerator SQLGenerator} generates <tt>1 = 1</tt> or
+ * <tt>1 = 0</tt>. However, they have no RSQL representation; their {@code toString()} is
+ * <tt>()</tt>, which cannot be parsed back. Custom {@link RSQLVisitor visitors} are given
+ * a logical node with no children as well, so a caller that doesn't handle it should check
+ * the result with {@link #isTrue(Node)} and {@link #isFalse(Node)} first. The order of the
+ * remaining operands is preserved and unchanged subtrees are returned as the same
+ * instances.</p>
+ *
+ * <p>The comparisons are evaluated with the {@link OperatorSemantics} (the
+ * {@linkplain RSQLSemantics default} for the default operators), so they give the same result
+ * as a predicate compiled by the {@link PredicateCompiler}. Comparisons with an operator that
+ * has no semantics are left as is.</p>
+ */
+@Immutable
+public final class PartialEvaluator {
+
+    /**
+     * A constant expression that matches everything, i.e. an {@link AndNode} with no children.
+     */
+    public static final Node TRUE = new AndNode(Collections.<Node>emptyList());
+
+    /**
+     * A constant expression that matches nothing, i.e. an {@link OrNode} with no children.
+     */
+    public static final Node FALSE = new OrNode(Collections.<Node>emptyList());
+
+    private final Map<ComparisonOperator, OperatorSemantics> semantics;
+
+
+    /**
+     * Creates an evaluator with semantics of the default operators.
+     */
+    public PartialEvaluator() {
+        this(RSQLSemantics.defaultSemantics());
+    }
+
+    private PartialEvaluator(Map<ComparisonOperator, OperatorSemantics> semantics) {
+        this.semantics = semantics;
+    }
+
+
+    /**
+     * Returns a copy of this evaluator with the given semantics for the operator.
+     *
+     * @throws IllegalArgumentException If either of the parameters is <tt>null</tt>.
+     */
+    public PartialEvaluator withSemantics(ComparisonOperator operator, OperatorSemantics semantics) {
+        if (operator == null || semantics == null) {
+            throw new IllegalArgumentException("operator and semantics must not be null");
+        }
+        Map<ComparisonOperator, OperatorSemantics> map = new HashMap<>(this.semantics);
+        map.put(operator, semantics);
+
+        return new PartialEvaluator(map);
+    }
+
+    /**
+     * Simplifies the expression using the known values of the selectors.
+     *
+     * @param node The root node of the expression.
+     * @param values The known values of selectors. A value may be a <tt>Long</tt>,
+     *               <tt>Integer</tt>, <tt>Short</tt> or <tt>Byte</tt> (compared as a
+     *               <tt>long</tt>), a <tt>Double</tt> or <tt>Float</tt> (compared as a
+     *               <tt>double</tt>), a <tt>String</tt>, a <tt>Boolean</tt>, an enum constant
+     *               (compared with its name), or <tt>null</tt> for no value.
+     * @return The simplified expression, or {@link #TRUE} or {@link #FALSE}.
+     * @throws IllegalArgumentException If the {@code node} or {@code values} is <tt>null</tt>,
+     *         a value is not supported, or an argument of a known selector cannot be converted.
+     */
+    public Node evaluate(Node node, Map<String, ?> values) {
+        if (node == null || values == null) {
+            throw new IllegalArgumentException("node and values must not be null");
+        }
+        Map<String, Accessor<Object>> accessors = new HashMap<>(values.size() * 2);
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            accessors.put(entry.getKey(), accessor(entry.getKey(), entry.getValue()));
+        }
+        return simplify(node, accessors);
+    }
+
+    /**
+     * Returns <tt>true</tt> if the expression is a constant that matches everything, i.e. an
+     * {@link AndNode} with no children.
+     */
+    public static boolean isTrue(Node node) {
+        return isConstant(node, LogicalOperator.AND);
+    }
+
+    /**
+     * Returns <tt>true</tt> if the expression is a constant that matches nothing, i.e. an
+     * {@link OrNode} with no children.
+     */
+    public static boolean isFalse(Node node) {
+        return isConstant(node, LogicalOperator.OR);
+    }
+
+
+    private Node simplify(Node node, Map<String, Accessor<Object>> accessors) {
+        if (node instanceof ComparisonNode) {
+            return simplify((ComparisonNode) node, accessors);
+        }
+        LogicalNode logical = (LogicalNode) node;
+        LogicalOperator op = logical.getOperator();
+        List<Node> children = new ArrayList<>(logical.getChildCount());
+        boolean changed = false;
+
+        for (Node child : logical) {
+            Node simplified = simplify(child, accessors);
+            changed |= simplified != child;
+
+            if (!(simplified instanceof LogicalNode)) {
+                children.add(simplified);
+            } else if (((LogicalNode) simplified).getChildCount() == 0) {
+                if (((LogicalNode) simplified).getOperator() != op) {
+                    return op == LogicalOperator.AND ? FALSE : TRUE;  // absorbing element
+                }
+                changed = true;  // identity element, drop it
+            } else if (((LogicalNode) simplified).getOperator() == op && simplified != child) {
+                children.addAll(((LogicalNode) simplified).getChildrenView());
+            } else {
+                children.add(simplified);
+            }
+        }
+        if (!changed) {
+            return node;
+        }
+        switch (children.size()) {
+            case 0: return op == LogicalOperator.AND ? TRUE : FALSE;
+            case 1: return children.get(0);
+            default: return logical.withChildren(children);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node simplify(ComparisonNode node, Map<String, Accessor<Object>> accessors) {
+        Accessor<Object> accessor = accessors.get(node.getSelector());
+        OperatorSemantics sem = semantics.get(node.getOperator());
+        if (accessor == null || sem == null) {
+            return node;
+        }
+        Predicate<Object> predicate;
+        try {
+            if (accessor instanceof LongAccessor) {
+                predicate = sem.compile((LongAccessor<Object>) accessor, node.getArgumentsView());
+            } else if (accessor instanceof DoubleAccessor) {
+                predicate = sem.compile((DoubleAccessor<Object>) accessor, node.getArgumentsView());
+            } else {
+                predicate = sem.compile((ObjectAccessor<Object, ?>) accessor, node.getArgumentsView());
+            }
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid argument in %s: %s", node, ex.getMessage()), ex);
+        }
+        return predicate.test(null) ? TRUE : FALSE;
+    }
+
+    private static boolean isConstant(Node node, LogicalOperator op) {
+        return node instanceof LogicalNode
+                && ((LogicalNode) node).getOperator() == op
+                && ((LogicalNode) node).getChildCount() == 0;
+    }
+
+    /**
+     * Returns an accessor that reads the given value from any object.
+     */
+    private static Accessor<Object> accessor(String selector, final Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            final long longValue = ((Number) value).longValue();
+            return new LongAccessor<Object>() {
+                public long getLong(Object object) { return longValue; }
+            };
+        }
+        if (value instanceof Double || value instanceof Float) {
+            final double doubleValue = ((Number) value).doubleValue();
+            return new DoubleAccessor<Object>() {
+                public double getDouble(Object object) { return doubleValue; }
+            };
+        }
+        if (value == null || value instanceof String) {
+            return new ObjectAccessor<Object, String>() {
+                public String get(Object object) { return (String) value; }
+                public String convert(String argument) { return argument; }
+            };
+        }
+        if (value instanceof Boolean) {
+            return new ObjectAccessor<Object, Boolean>() {
+                public Boolean get(Object object) { return (Boolean) value; }
+                public Boolean convert(String argument) {
+                    if (!argument.equalsIgnoreCase("true") && !argument.equalsIgnoreCase("false")) {
+                        throw new IllegalArgumentException("not a boolean: " + argument);
+                    }
+                    return Boolean.valueOf(argument);
+                }
+            };
+        }
+        if (value instanceof Enum) {
+            return new ObjectAccessor<Object, String>() {
+                public String get(Object object) { return ((Enum<?>) value).name(); }
+                public String convert(String argument) { return argument; }
+            };
+        }
+        throw new IllegalArgumentException(String.format(
+                "Unsupported value of selector %s: %s", selector, value.getClass().getName()));
+    }
+}
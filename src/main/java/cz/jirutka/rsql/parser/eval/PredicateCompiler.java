@@ -0,0 +1,178 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.eval;
+
+import cz.jirutka.rsql.parser.ast.*;
+import net.jcip.annotations.Immutable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles an RSQL expression (AST) into a {@link Predicate} that can be evaluated on in-memory
+ * objects many times.
+ *
+ * <p>The AST is walked only once; every comparison is turned into a specialized predicate with
+ * pre-converted arguments (e.g. a sorted <tt>long[]</tt> for <tt>=in=</tt> on a
+ * {@link LongAccessor}), and logical nodes into short-circuiting combinators. Evaluation of the
+ * compiled predicate thus doesn't involve visitor dispatch, map lookups, argument parsing nor
+ * allocation (with primitive accessors).</p>
+ *
+ * <p>Selectors are resolved using the registered {@link Accessor accessors}, operators using
+ * the registered {@link OperatorSemantics}; the default operators are registered from the start
+ * with {@link RSQLSemantics}.</p>
+ *
+ * <pre>{@code
+ * Predicate<Person> predicate = new PredicateCompiler<Person>()
+ *     .withAccessor("age", new LongAccessor<Person>() {
+ *         public long getLong(Person p) { return p.getAge(); }
+ *     })
+ *     .compile(new RSQLParser().parse("age=gt=18"));
+ * }</pre>
+ *
+ * @param <T> Type of the tested objects.
+ */
+@Immutable
+public final class PredicateCompiler<T> {
+
+    private final Map<String, Accessor<T>> accessors;
+
+    private final Map<ComparisonOperator, OperatorSemantics> semantics;
+
+
+    /**
+     * Creates a new compiler with no accessors and semantics of the default operators.
+     */
+    public PredicateCompiler() {
+        this(Collections.<String, Accessor<T>>emptyMap(), RSQLSemantics.defaultSemantics());
+    }
+
+    private PredicateCompiler(Map<String, Accessor<T>> accessors,
+                              Map<ComparisonOperator, OperatorSemantics> semantics) {
+        this.accessors = accessors;
+        this.semantics = semantics;
+    }
+
+
+    /**
+     * Returns a copy of this compiler with the given accessor for the selector.
+     *
+     * @param selector The selector.
+     * @param accessor One of the {@link LongAccessor}, {@link DoubleAccessor} or
+     *                 {@link ObjectAccessor}.
+     * @throws IllegalArgumentException If either of the parameters is <tt>null</tt>.
+     */
+    public PredicateCompiler<T> withAccessor(String selector, Accessor<T> accessor) {
+        if (selector == null || accessor == null) {
+            throw new IllegalArgumentException("selector and accessor must not be null");
+        }
+        Map<String, Accessor<T>> map = new HashMap<>(accessors);
+        map.put(selector, accessor);
+
+        return new PredicateCompiler<>(map, semantics);
+    }
+
+    /**
+     * Returns a copy of this compiler with the given semantics for the operator. It may be used
+     * to add a custom operator or to override semantics of a default one.
+     *
+     * @throws IllegalArgumentException If either of the parameters is <tt>null</tt>.
+     */
+    public PredicateCompiler<T> withSemantics(ComparisonOperator operator, OperatorSemantics semantics) {
+        if (operator == null || semantics == null) {
+            throw new IllegalArgumentException("operator and semantics must not be null");
+        }
+        Map<ComparisonOperator, OperatorSemantics> map = new HashMap<>(this.semantics);
+        map.put(operator, semantics);
+
+        return new PredicateCompiler<>(accessors, map);
+    }
+
+    /**
+     * Compiles the given RSQL expression into a predicate.
+     *
+     * @param node The root node of the expression.
+     * @return A thread-safe predicate, provided that the accessors are thread-safe.
+     * @throws IllegalArgumentException If the {@code node} is <tt>null</tt>, contains a selector
+     *         with no accessor, an operator with no semantics, or an argument that cannot be
+     *         converted.
+     * @throws UnsupportedOperationException If the operator's semantics doesn't support the
+     *         kind of accessor of the selector.
+     */
+    public Predicate<T> compile(Node node) {
+        if (node == null) {
+            throw new IllegalArgumentException("node must not be null");
+        }
+        return node.accept(new CompilingVisitor());
+    }
+
+
+    private final class CompilingVisitor extends NoArgRSQLVisitorAdapter<Predicate<T>> {
+
+        public Predicate<T> visit(AndNode node) {
+            return Predicates.and(compileChildren(node));
+        }
+
+        public Predicate<T> visit(OrNode node) {
+            return Predicates.or(compileChildren(node));
+        }
+
+        @SuppressWarnings("unchecked")
+        public Predicate<T> visit(ComparisonNode node) {
+            Accessor<T> accessor = accessors.get(node.getSelector());
+            if (accessor == null) {
+                throw new IllegalArgumentException("No accessor for selector: " + node.getSelector());
+            }
+            OperatorSemantics sem = semantics.get(node.getOperator());
+            if (sem == null) {
+                throw new IllegalArgumentException("No semantics for operator: " + node.getOperator());
+            }
+            List<String> args = node.getArgumentsView();
+            try {
+                if (accessor instanceof LongAccessor) {
+                    return sem.compile((LongAccessor<T>) accessor, args);
+                } else if (accessor instanceof DoubleAccessor) {
+                    return sem.compile((DoubleAccessor<T>) accessor, args);
+                } else if (accessor instanceof ObjectAccessor) {
+                    return sem.compile((ObjectAccessor<T, Object>) accessor, args);
+                }
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException(String.format(
+                        "Invalid argument in %s: %s", node, ex.getMessage()), ex);
+            }
+            throw new UnsupportedOperationException("Unsupported accessor: " + accessor.getClass());
+        }
+
+        private List<Predicate<T>> compileChildren(LogicalNode node) {
+            List<Predicate<T>> predicates = new ArrayList<>(node.getChildCount());
+            for (Node child : node) {
+                predicates.add(child.accept(this));
+            }
+            return predicates;
+        }
+    }
+}
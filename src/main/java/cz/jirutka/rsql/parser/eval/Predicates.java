@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.eval;
+
+import java.util.List;
+
+/**
+ * Logical combinators of predicates. The children are held in an array (or fields for two
+ * children) and evaluated with short-circuiting, in the order they were given.
+ */
+abstract class Predicates {
+
+    private static final Predicate<Object> TRUE = new Predicate<Object>() {
+        public boolean test(Object object) { return true; }
+    };
+
+    private static final Predicate<Object> FALSE = new Predicate<Object>() {
+        public boolean test(Object object) { return false; }
+    };
+
+
+    @SuppressWarnings("unchecked")
+    static <T> Predicate<T> and(List<Predicate<T>> predicates) {
+        switch (predicates.size()) {
+            case 0: return (Predicate<T>) TRUE;
+            case 1: return predicates.get(0);
+            case 2: return new And2<>(predicates.get(0), predicates.get(1));
+            default: return new And<>(toArray(predicates));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> Predicate<T> or(List<Predicate<T>> predicates) {
+        switch (predicates.size()) {
+            case 0: return (Predicate<T>) FALSE;
+            case 1: return predicates.get(0);
+            case 2: return new Or2<>(predicates.get(0), predicates.get(1));
+            default: return new Or<>(toArray(predicates));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Predicate<T>[] toArray(List<Predicate<T>> predicates) {
+        // a generic array cannot be created, but it's only read as Predicate<T>
+        return predicates.toArray((Predicate<T>[]) new Predicate<?>[predicates.size()]);
+    }
+
+
+    private static final class And2<T> implements Predicate<T> {
+
+        private final Predicate<T> left, right;
+
+        And2(Predicate<T> left, Predicate<T> right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        public boolean test(T object) {
+            return left.test(object) && right.test(object);
+        }
+    }
+
+    private static final class Or2<T> implements Predicate<T> {
+
+        private final Predicate<T> left, right;
+
+        Or2(Predicate<T> left, Predicate<T> right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        public boolean test(T object) {
+            return left.test(object) || right.test(object);
+        }
+    }
+
+    private static final class And<T> implements Predicate<T> {
+
+        private final Predicate<T>[] children;
+
+        And(Predicate<T>[] children) {
+            this.children = children;
+        }
+
+        public boolean test(T object) {
+            for (Predicate<T> child : children) {
+                if (!child.test(object)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Or<T> implements Predicate<T> {
+
+        private final Predicate<T>[] children;
+
+        Or(Predicate<T>[] children) {
+            this.children = children;
+        }
+
+        public boolean test(T object) {
+            for (Predicate<T> child : children) {
+                if (child.test(object)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.eval;
+
+import cz.jirutka.rsql.parser.ast.ComparisonOperator;
+import cz.jirutka.rsql.parser.ast.RSQLOperators;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Semantics of the default {@linkplain cz.jirutka.rsql.parser.ast.RSQLOperators RSQL operators}.
+ */
+public abstract class RSQLSemantics {
+
+    public static final OperatorSemantics
+            EQUAL = new Relational(Relational.EQ),
+            NOT_EQUAL = new Relational(Relational.NE),
+            GREATER_THAN = new Relational(Relational.GT),
+            GREATER_THAN_OR_EQUAL = new Relational(Relational.GE),
+            LESS_THAN = new Relational(Relational.LT),
+            LESS_THAN_OR_EQUAL = new Relational(Relational.LE),
+            IN = new Membership(false),
+            NOT_IN = new Membership(true);
+
+
+    /**
+     * Returns a new modifiable map of the default operators to their semantics.
+     */
+    public static Map<ComparisonOperator, OperatorSemantics> defaultSemantics() {
+        Map<ComparisonOperator, OperatorSemantics> map = new HashMap<>();
+        map.put(RSQLOperators.EQUAL, EQUAL);
+        map.put(RSQLOperators.NOT_EQUAL, NOT_EQUAL);
+        map.put(RSQLOperators.GREATER_THAN, GREATER_THAN);
+        map.put(RSQLOperators.GREATER_THAN_OR_EQUAL, GREATER_THAN_OR_EQUAL);
+        map.put(RSQLOperators.LESS_THAN, LESS_THAN);
+        map.put(RSQLOperators.LESS_THAN_OR_EQUAL, LESS_THAN_OR_EQUAL);
+        map.put(RSQLOperators.IN, IN);
+        map.put(RSQLOperators.NOT_IN, NOT_IN);
+        return map;
+    }
+
+
+    private static String single(List<String> arguments) {
+        if (arguments.size() != 1) {
+            throw new IllegalArgumentException("expected single argument, but given: " + arguments);
+        }
+        return arguments.get(0);
+    }
+
+
+    /**
+     * Semantics of the equality and ordering operators that compare a value with a single
+     * argument.
+     */
+    private static final class Relational implements OperatorSemantics {
+
+        static final int EQ = 0, NE = 1, GT = 2, GE = 3, LT = 4, LE = 5;
+
+        private final int relation;
+
+        Relational(int relation) {
+            this.relation = relation;
+        }
+
+        public <T> Predicate<T> compile(final LongAccessor<T> acc, List<String> arguments) {
+            final long arg = Long.parseLong(single(arguments));
+
+            switch (relation) {
+                case EQ: return new Predicate<T>() {
+                    public boolean test(T obj) { return acc.getLong(obj) == arg; }
+                };
+                case NE: return new Predicate<T>() {
+                    public boolean test(T obj) { return acc.getLong(obj) != arg; }
+                };
+                case GT: return new Predicate<T>() {
+                    public boolean test(T obj) { return acc.getLong(obj) > arg; }
+                };
+                case GE: return new Predicate<T>() {
+                    public boolean test(T obj) { return acc.getLong(obj) >= arg; }
+                };
+                case LT: return new Predicate<T>() {
+                    public boolean test(T obj) { return acc.getLong(obj) < arg; }
+                };
+                default: return new Predicate<T>() {
+                    public boolean test(T obj) { return acc.getLong(obj) <= arg; }
+                };
+            }
+        }
+
+        public <T> Predicate<T> compile(final DoubleAccessor<T> acc, List<String> arguments) {
+            final double arg = Double.parseDouble(single(arguments));
+
+            switch (relation) {
+                case EQ: return new Predicate<T>() {
+                    public boolean test(T obj) { return acc.getDouble(obj) == arg; }
+                };
+                case NE: return new Predicate<T>() {
+                    public boolean test(T obj) { return acc.getDouble(obj) != arg; }
+                };
+                case GT: return new Predicate<T>() {
+                    public boolean test(T obj) { return acc.getDouble(obj) > arg; }
+                };
+                case GE: return new Predicate<T>() {
+                    public boolean test(T obj) { return acc.getDouble(obj) >= arg; }
+                };
+                case LT: return new Predicate<T>() {
+                    public boolean test(T obj) { return acc.getDouble(obj) < arg; }
+                };
+                default: return new Predicate<T>() {
+                    public boolean test(T obj) { return acc.getDouble(obj) <= arg; }
+                };
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T, V> Predicate<T> compile(final ObjectAccessor<T, V> acc, List<String> arguments) {
+            final V arg = acc.convert(single(arguments));
+
+            switch (relation) {
+                case EQ: return new Predicate<T>() {
+                    public boolean test(T obj) { return arg.equals(acc.get(obj)); }
+                };
+                case NE: return new Predicate<T>() {
+                    public boolean test(T obj) { return !arg.equals(acc.get(obj)); }
+                };
+            }
+            if (!(arg instanceof Comparable)) {
+                throw new IllegalArgumentException("argument is not comparable: " + arg);
+            }
+            final Comparable<Object> cmpArg = (Comparable<Object>) arg;
+
+            switch (relation) {
+                // Note: the comparisons are reversed, because it's arg.compareTo(value).
+                case GT: return new Predicate<T>() {
+                    public boolean test(T obj) { V v = acc.get(obj); return v != null && cmpArg.compareTo(v) < 0; }
+                };
+                case GE: return new Predicate<T>() {
+                    public boolean test(T obj) { V v = acc.get(obj); return v != null && cmpArg.compareTo(v) <= 0; }
+                };
+                case LT: return new Predicate<T>() {
+                    public boolean test(T obj) { V v = acc.get(obj); return v != null && cmpArg.compareTo(v) > 0; }
+                };
+                default: return new Predicate<T>() {
+                    public boolean test(T obj) { V v = acc.get(obj); return v != null && cmpArg.compareTo(v) >= 0; }
+                };
+            }
+        }
+    }
+
+    /**
+     * Parses the arguments into a sorted array of values that can be searched with
+     * {@link Arrays#binarySearch(double[], double)} with the <tt>==</tt> semantics: without NaN
+     * (it's equal to nothing) and with -0.0 as 0.0 (they are equal).
+     */
+    static double[] doubleSet(List<String> args) {
+        double[] set = new double[args.size()];
+        int n = 0;
+        for (String arg : args) {
+            double value = Double.parseDouble(arg);
+            if (value == value) {
+                set[n++] = value + 0.0;  // -0.0 + 0.0 is 0.0
+            }
+        }
+        set = Arrays.copyOf(set, n);
+        Arrays.sort(set);
+        return set;
+    }
+
+    /**
+     * Semantics of the set membership operators. Primitive arguments are stored in a sorted
+     * array and looked up by a linear scan for a few items or a binary search otherwise.
+     */
+    private static final class Membership implements OperatorSemantics {
+
+        private static final int LINEAR_SCAN_THRESHOLD = 8;
+
+        private final boolean negated;
+
+        Membership(boolean negated) {
+            this.negated = negated;
+        }
+
+        public <T> Predicate<T> compile(final LongAccessor<T> acc, List<String> arguments) {
+            final long[] args = new long[arguments.size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = Long.parseLong(arguments.get(i));
+            }
+            Arrays.sort(args);
+
+            if (args.length <= LINEAR_SCAN_THRESHOLD) {
+                return new Predicate<T>() {
+                    public boolean test(T obj) {
+                        long value = acc.getLong(obj);
+                        for (long arg : args) {
+                            if (arg == value) return !negated;
+                        }
+                        return negated;
+                    }
+                };
+            }
+            return new Predicate<T>() {
+                public boolean test(T obj) {
+                    return (Arrays.binarySearch(args, acc.getLong(obj)) >= 0) != negated;
+                }
+            };
+        }
+
+        public <T> Predicate<T> compile(final DoubleAccessor<T> acc, List<String> arguments) {
+            final double[] args = doubleSet(arguments);
+
+            if (args.length <= LINEAR_SCAN_THRESHOLD) {
+                return new Predicate<T>() {
+                    public boolean test(T obj) {
+                        double value = acc.getDouble(obj);
+                        for (double arg : args) {
+                            if (arg == value) return !negated;
+                        }
+                        return negated;
+                    }
+                };
+            }
+            return new Predicate<T>() {
+                public boolean test(T obj) {
+                    // + 0.0 turns -0.0 into 0.0; NaN is not in the set, so it's not found
+                    return (Arrays.binarySearch(args, acc.getDouble(obj) + 0.0) >= 0) != negated;
+                }
+            };
+        }
+
+        public <T, V> Predicate<T> compile(final ObjectAccessor<T, V> acc, List<String> arguments) {
+            final Set<V> args = new HashSet<>(arguments.size() * 2);
+            for (String arg : arguments) {
+                args.add(acc.convert(arg));
+            }
+            return new Predicate<T>() {
+                public boolean test(T obj) {
+                    return args.contains(acc.get(obj)) != negated;
+                }
+            };
+        }
+    }
+}
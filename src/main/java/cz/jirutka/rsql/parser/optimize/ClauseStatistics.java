@@ -0,0 +1,48 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.optimize;
+
+import cz.jirutka.rsql.parser.ast.ComparisonNode;
+
+/**
+ * Provides estimates of comparisons for the {@link SelectivityOptimizer}, typically based on
+ * statistics of the data the queries are evaluated against (e.g. a histogram of a column).
+ * The estimates only need to be comparable with each other, they don't have to be exact.
+ *
+ * @see HeuristicStatistics
+ */
+public interface ClauseStatistics {
+
+    /**
+     * Returns the estimated fraction of entries that match the comparison, from <tt>0.0</tt>
+     * (none) to <tt>1.0</tt> (all).
+     */
+    double selectivity(ComparisonNode node);
+
+    /**
+     * Returns the estimated relative cost of evaluating the comparison for one entry; a
+     * non-negative number, e.g. <tt>1.0</tt> for a simple comparison of a value.
+     */
+    double cost(ComparisonNode node);
+}
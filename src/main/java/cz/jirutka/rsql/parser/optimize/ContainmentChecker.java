@@ -0,0 +1,558 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.optimize;
+
+import cz.jirutka.rsql.parser.ast.ComparisonNode;
+import cz.jirutka.rsql.parser.ast.ComparisonOperator;
+import cz.jirutka.rsql.parser.ast.LogicalNode;
+import cz.jirutka.rsql.parser.ast.LogicalOperator;
+import cz.jirutka.rsql.parser.ast.Node;
+import net.jcip.annotations.Immutable;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static cz.jirutka.rsql.parser.ast.RSQLOperators.*;
+
+/**
+ * Decides whether one RSQL expression implies another one, i.e. whether every entry that
+ * matches the first one matches also the second one. It can be used to answer a narrower query
+ * by filtering the cached results of a broader one, e.g. <tt>a=gt=5;b==x</tt> implies
+ * <tt>a=gt=1</tt>.
+ *
+ * <p>The expressions are expanded into a disjunction of conjunctions (the first one) and a
+ * conjunction of disjunctions (the second one), and each pair is decided per selector by
+ * reasoning about the ranges, equalities and sets of values of the
+ * {@linkplain cz.jirutka.rsql.parser.ast.RSQLOperators default operators}. Comparisons with
+ * other operators are compared only for equality. The values of a selector are compared with
+ * its {@linkplain #withOrder(String, Comparator) order}, by default as strings.</p>
+ *
+ * <p>The result is {@link Result#YES YES} only if the implication holds for any values, under
+ * two assumptions. First, each entry has at most one value of each selector; for a multi-valued
+ * selector, e.g. <tt>a==1;a==2</tt> is not a contradiction, so the answers are not valid.
+ * Second, the operators behave as in the {@link cz.jirutka.rsql.parser.eval.RSQLSemantics
+ * RSQLSemantics}: a missing (<tt>null</tt>) or unordered value (e.g. NaN) matches only
+ * <tt>!=</tt> and <tt>=out=</tt>, so e.g. <tt>a!=1</tt> doesn't imply <tt>a=lt=1,a=gt=1</tt>.</p>
+ *
+ * <p>{@link Result#NO NO} means that there's an entry that matches the first expression, but
+ * not the second one; it assumes that there are infinitely many possible values (e.g. strings
+ * or numbers), so e.g. <tt>a!=1;a!=2</tt> doesn't imply <tt>a==3</tt>.
+ * {@link Result#UNKNOWN UNKNOWN} is returned when it cannot be decided, or the expressions
+ * are too complex to be decided within the {@linkplain #withMaxWork(int) limit of work}.</p>
+ */
+@Immutable
+public final class ContainmentChecker {
+
+    /**
+     * The result of the check.
+     */
+    public enum Result {
+        YES, NO, UNKNOWN
+    }
+
+    /**
+     * Order of decimal numbers (e.g. <tt>2 &lt; 10.0</tt> and <tt>1 == 1.0</tt>). A value that
+     * is not a number makes the result {@link Result#UNKNOWN UNKNOWN}.
+     */
+    public static final Comparator<String> NUMERIC_ORDER = new Comparator<String>() {
+        public int compare(String a, String b) {
+            return new BigDecimal(a).compareTo(new BigDecimal(b));
+        }
+    };
+
+    private static final int DEFAULT_MAX_WORK = 100000,
+                             MAX_DEPTH = 256;
+
+    private final Map<String, Comparator<String>> orders;
+
+    private final Comparator<String> defaultOrder;
+
+    private final int maxWork;
+
+
+    /**
+     * Creates a new checker that compares all values as strings.
+     */
+    public ContainmentChecker() {
+        this(Collections.<String, Comparator<String>>emptyMap(), natural(), DEFAULT_MAX_WORK);
+    }
+
+    private ContainmentChecker(Map<String, Comparator<String>> orders, Comparator<String> defaultOrder,
+                               int maxWork) {
+        this.orders = orders;
+        this.defaultOrder = defaultOrder;
+        this.maxWork = maxWork;
+    }
+
+
+    /**
+     * Returns a copy of this checker that compares values of the selector using the given
+     * order, e.g. {@link #NUMERIC_ORDER}. The order must be consistent with the backend that
+     * evaluates the queries.
+     *
+     * @throws IllegalArgumentException If either of the parameters is <tt>null</tt>.
+     */
+    public ContainmentChecker withOrder(String selector, Comparator<String> order) {
+        if (selector == null || order == null) {
+            throw new IllegalArgumentException("selector and order must not be null");
+        }
+        Map<String, Comparator<String>> map = new HashMap<>(orders);
+        map.put(selector, order);
+
+        return new ContainmentChecker(map, defaultOrder, maxWork);
+    }
+
+    /**
+     * Returns a copy of this checker that compares values of the selectors with no specific
+     * order using the given order.
+     *
+     * @throws IllegalArgumentException If the {@code order} is <tt>null</tt>.
+     */
+    public ContainmentChecker withDefaultOrder(Comparator<String> order) {
+        if (order == null) {
+            throw new IllegalArgumentException("order must not be null");
+        }
+        return new ContainmentChecker(orders, order, maxWork);
+    }
+
+    /**
+     * Returns a copy of this checker with the given limit of work per check, roughly the number
+     * of comparisons evaluated. The default is 100000.
+     *
+     * @throws IllegalArgumentException If the {@code maxWork} is not positive.
+     */
+    public ContainmentChecker withMaxWork(int maxWork) {
+        if (maxWork <= 0) {
+            throw new IllegalArgumentException("maxWork must be positive");
+        }
+        return new ContainmentChecker(orders, defaultOrder, maxWork);
+    }
+
+
+    /**
+     * Decides whether the expression {@code a} implies the expression {@code b}, i.e. results
+     * of {@code a} are a subset of results of {@code b}.
+     *
+     * @throws IllegalArgumentException If either of the nodes is <tt>null</tt>.
+     */
+    public Result implies(Node a, Node b) {
+        if (a == null || b == null) {
+            throw new IllegalArgumentException("nodes must not be null");
+        }
+        try {
+            Work work = new Work(maxWork);
+            List<List<Atom>> conjunctions = expand(a, LogicalOperator.AND, work, 0);
+            List<List<Atom>> clauses = expand(b, LogicalOperator.OR, work, 0);
+
+            boolean unknown = false;
+            for (List<Atom> conjunction : conjunctions) {
+                for (List<Atom> clause : clauses) {
+                    Result result = implies(conjunction, clause, work);
+                    if (result == Result.NO) {
+                        return Result.NO;
+                    }
+                    unknown |= result == Result.UNKNOWN;
+                }
+            }
+            return unknown ? Result.UNKNOWN : Result.YES;
+
+        } catch (Undecidable ex) {
+            return Result.UNKNOWN;
+        }
+    }
+
+    /**
+     * Decides whether results of the expression {@code broader} contain all results of the
+     * expression {@code narrower}; it's the same as {@code implies(narrower, broader)}.
+     *
+     * @throws IllegalArgumentException If either of the nodes is <tt>null</tt>.
+     */
+    public Result contains(Node broader, Node narrower) {
+        return implies(narrower, broader);
+    }
+
+
+    /**
+     * Expands the node into a list of terms of atoms, where the terms are joined by the
+     * opposite operator than the {@code inner} one; i.e. a disjunctive normal form for AND,
+     * or a conjunctive normal form for OR.
+     */
+    private static List<List<Atom>> expand(Node node, LogicalOperator inner, Work work, int depth) {
+        if (node instanceof ComparisonNode) {
+            work.charge(1);
+            List<Atom> term = new ArrayList<>(1);
+            term.add(new Atom((ComparisonNode) node));
+
+            return Collections.singletonList(term);
+        }
+        if (depth > MAX_DEPTH) {
+            throw Undecidable.INSTANCE;
+        }
+        LogicalNode logical = (LogicalNode) node;
+        List<List<Atom>> result;
+
+        if (logical.getOperator() == inner) {
+            // cross product of the children's terms; the identity is a single empty term
+            result = Collections.singletonList(Collections.<Atom>emptyList());
+
+            for (Node child : logical) {
+                List<List<Atom>> terms = expand(child, inner, work, depth + 1);
+                List<List<Atom>> product = new ArrayList<>(result.size() * terms.size());
+
+                for (List<Atom> left : result) {
+                    for (List<Atom> right : terms) {
+                        work.charge(1 + left.size() + right.size());
+                        List<Atom> term = new ArrayList<>(left.size() + right.size());
+                        term.addAll(left);
+                        term.addAll(right);
+                        product.add(term);
+                    }
+                }
+                result = product;
+            }
+        } else {
+            result = new ArrayList<>();
+            for (Node child : logical) {
+                result.addAll(expand(child, inner, work, depth + 1));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decides whether the conjunction of atoms implies the disjunction of atoms, i.e. whether
+     * the conjunction with the negated disjunction is unsatisfiable. The selectors are
+     * independent, so it's unsatisfiable if it's unsatisfiable for any selector, and satisfiable
+     * if it's satisfiable for all of them.
+     */
+    private Result implies(List<Atom> conjunction, List<Atom> disjunction, Work work) {
+        Map<String, List<Atom>> bySelector = new LinkedHashMap<>();
+        for (Atom atom : conjunction) {
+            add(bySelector, atom);
+        }
+        for (Atom atom : disjunction) {
+            add(bySelector, atom.negate());
+        }
+        Satisfiability all = Satisfiability.SATISFIABLE;
+
+        for (Map.Entry<String, List<Atom>> entry : bySelector.entrySet()) {
+            Satisfiability sat = solve(entry.getValue(), order(entry.getKey()), work);
+            if (sat == Satisfiability.UNSATISFIABLE) {
+                return Result.YES;
+            } else if (sat == Satisfiability.UNKNOWN) {
+                all = Satisfiability.UNKNOWN;
+            }
+        }
+        return all == Satisfiability.SATISFIABLE ? Result.NO : Result.UNKNOWN;
+    }
+
+    /**
+     * Decides whether there's a value that satisfies all the atoms (of the same selector).
+     */
+    private static Satisfiability solve(List<Atom> atoms, Comparator<String> order, Work work) {
+        List<Atom> opaque = new ArrayList<>();
+        List<String> finite = null;
+        List<String> candidates = new ArrayList<>();
+
+        for (Atom atom : atoms) {
+            if (atom.kind == Kind.OPAQUE) {
+                for (Atom other : opaque) {
+                    if (other.negated != atom.negated && other.node.equals(atom.node)) {
+                        return Satisfiability.UNSATISFIABLE;  // x and not x
+                    }
+                }
+                opaque.add(atom);
+                continue;
+            }
+            if (finite == null && (atom.kind == Kind.EQ || atom.kind == Kind.IN)) {
+                finite = atom.values;
+            }
+            candidates.addAll(atom.values);
+        }
+        if (satisfiedByUnordered(atoms)) {
+            return opaque.isEmpty() ? Satisfiability.SATISFIABLE : Satisfiability.UNKNOWN;
+        }
+        boolean satisfied = false;
+
+        for (String value : finite != null ? finite : candidates) {
+            work.charge(atoms.size());
+            if (satisfiesAll(value, atoms, order)) {
+                satisfied = true;
+                break;
+            }
+        }
+        if (finite != null) {
+            // the value must be one of the finite set
+            return !satisfied ? Satisfiability.UNSATISFIABLE
+                 : opaque.isEmpty() ? Satisfiability.SATISFIABLE
+                 : Satisfiability.UNKNOWN;
+        }
+        Bounds bounds = new Bounds();
+        for (Atom atom : atoms) {
+            bounds.add(atom, order);
+        }
+        if (bounds.isEmpty(order)) {
+            return Satisfiability.UNSATISFIABLE;
+        }
+        if (bounds.isPoint(order) && !satisfiesAll(bounds.lower, atoms, order)) {
+            return Satisfiability.UNSATISFIABLE;  // the only value is excluded
+        }
+        if (!opaque.isEmpty()) {
+            return Satisfiability.UNKNOWN;
+        }
+        // an open range has infinitely many values, only finitely many of them can be excluded
+        return satisfied || !bounds.isClosed() ? Satisfiability.SATISFIABLE : Satisfiability.UNKNOWN;
+    }
+
+    private static boolean satisfiesAll(String value, List<Atom> atoms, Comparator<String> order) {
+        for (Atom atom : atoms) {
+            if (atom.kind != Kind.OPAQUE && !atom.test(value, order)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns <tt>true</tt> if a missing or unordered value satisfies all the atoms that are not
+     * opaque.
+     */
+    private static boolean satisfiedByUnordered(List<Atom> atoms) {
+        for (Atom atom : atoms) {
+            if (atom.kind != Kind.OPAQUE && !atom.matchesUnordered()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void add(Map<String, List<Atom>> map, Atom atom) {
+        List<Atom> list = map.get(atom.selector);
+        if (list == null) {
+            map.put(atom.selector, list = new ArrayList<>());
+        }
+        list.add(atom);
+    }
+
+    private Comparator<String> order(String selector) {
+        Comparator<String> order = orders.get(selector);
+        return order != null ? order : defaultOrder;
+    }
+
+    private static Comparator<String> natural() {
+        return new Comparator<String>() {
+            public int compare(String a, String b) {
+                return a.compareTo(b);
+            }
+        };
+    }
+
+    private static int compare(Comparator<String> order, String a, String b) {
+        try {
+            return order.compare(a, b);
+        } catch (RuntimeException ex) {
+            throw Undecidable.INSTANCE;  // e.g. not a number
+        }
+    }
+
+
+    private enum Satisfiability {
+        SATISFIABLE, UNSATISFIABLE, UNKNOWN
+    }
+
+    private enum Kind {
+        EQ, NE, LT, LE, GT, GE, IN, OUT, OPAQUE;
+
+        Kind negate() {
+            switch (this) {
+                case EQ: return NE;
+                case NE: return EQ;
+                case LT: return GE;
+                case GE: return LT;
+                case LE: return GT;
+                case GT: return LE;
+                case IN: return OUT;
+                case OUT: return IN;
+                default: return OPAQUE;
+            }
+        }
+    }
+
+    /**
+     * A comparison, possibly negated.
+     */
+    private static final class Atom {
+
+        final String selector;
+        final Kind kind;
+        final List<String> values;
+        final ComparisonNode node;
+        final boolean negated;
+
+        Atom(ComparisonNode node) {
+            this(node.getSelector(), kind(node.getOperator()), node.getArgumentsView(), node, false);
+        }
+
+        Atom(String selector, Kind kind, List<String> values, ComparisonNode node, boolean negated) {
+            this.selector = selector;
+            this.kind = kind;
+            this.values = values;
+            this.node = node;
+            this.negated = negated;
+        }
+
+        Atom negate() {
+            return new Atom(selector, kind.negate(), values, node, !negated);
+        }
+
+        boolean test(String value, Comparator<String> order) {
+            switch (kind) {
+                case EQ: return compare(order, value, values.get(0)) == 0;
+                case NE: return compare(order, value, values.get(0)) != 0;
+                case LT: return compare(order, value, values.get(0)) < 0;
+                case LE: return compare(order, value, values.get(0)) <= 0;
+                case GT: return compare(order, value, values.get(0)) > 0;
+                case GE: return compare(order, value, values.get(0)) >= 0;
+                case IN: return contains(value, order);
+                case OUT: return !contains(value, order);
+                default: throw new IllegalStateException("opaque atom cannot be tested");
+            }
+        }
+
+        /**
+         * Returns <tt>true</tt> if a missing or unordered value matches this atom; it matches
+         * only <tt>!=</tt> and <tt>=out=</tt>, so it matches also a negated ordering.
+         */
+        boolean matchesUnordered() {
+            Kind original = negated ? kind.negate() : kind;
+            return (original == Kind.NE || original == Kind.OUT) != negated;
+        }
+
+        private boolean contains(String value, Comparator<String> order) {
+            for (int i = 0; i < values.size(); i++) {
+                if (compare(order, value, values.get(i)) == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static Kind kind(ComparisonOperator op) {
+            if (op.equals(EQUAL)) return Kind.EQ;
+            if (op.equals(NOT_EQUAL)) return Kind.NE;
+            if (op.equals(LESS_THAN)) return Kind.LT;
+            if (op.equals(LESS_THAN_OR_EQUAL)) return Kind.LE;
+            if (op.equals(GREATER_THAN)) return Kind.GT;
+            if (op.equals(GREATER_THAN_OR_EQUAL)) return Kind.GE;
+            if (op.equals(IN)) return Kind.IN;
+            if (op.equals(NOT_IN)) return Kind.OUT;
+            return Kind.OPAQUE;
+        }
+    }
+
+    /**
+     * The tightest lower and upper bound of a range.
+     */
+    private static final class Bounds {
+
+        String lower, upper;
+        boolean lowerStrict, upperStrict;
+
+        void add(Atom atom, Comparator<String> order) {
+            if (atom.kind == Kind.GT || atom.kind == Kind.GE) {
+                String value = atom.values.get(0);
+                boolean strict = atom.kind == Kind.GT;
+                int cmp = lower == null ? 1 : compare(order, value, lower);
+                if (cmp > 0 || cmp == 0 && strict) {
+                    lower = value;
+                    lowerStrict = strict;
+                }
+            } else if (atom.kind == Kind.LT || atom.kind == Kind.LE) {
+                String value = atom.values.get(0);
+                boolean strict = atom.kind == Kind.LT;
+                int cmp = upper == null ? -1 : compare(order, value, upper);
+                if (cmp < 0 || cmp == 0 && strict) {
+                    upper = value;
+                    upperStrict = strict;
+                }
+            }
+        }
+
+        boolean isClosed() {
+            return lower != null && upper != null;
+        }
+
+        /**
+         * Returns <tt>true</tt> if the range contains just the single value (the bounds).
+         */
+        boolean isPoint(Comparator<String> order) {
+            return isClosed() && !lowerStrict && !upperStrict && compare(order, lower, upper) == 0;
+        }
+
+        boolean isEmpty(Comparator<String> order) {
+            if (!isClosed()) {
+                return false;
+            }
+            int cmp = compare(order, lower, upper);
+            return cmp > 0 || cmp == 0 && (lowerStrict || upperStrict);
+        }
+    }
+
+    /**
+     * Counts the work done and aborts the check when the limit is exceeded.
+     */
+    private static final class Work {
+
+        private int remaining;
+
+        Work(int limit) {
+            this.remaining = limit;
+        }
+
+        void charge(int amount) {
+            remaining -= amount;
+            if (remaining < 0) {
+                throw Undecidable.INSTANCE;
+            }
+        }
+    }
+
+    /**
+     * Thrown to abort a check that cannot be decided.
+     */
+    private static final class Undecidable extends RuntimeException {
+
+        static final Undecidable INSTANCE = new Undecidable();
+
+        private Undecidable() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.optimize;
+
+import cz.jirutka.rsql.parser.ast.ComparisonNode;
+import cz.jirutka.rsql.parser.ast.ComparisonOperator;
+import net.jcip.annotations.Immutable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static cz.jirutka.rsql.parser.ast.RSQLOperators.*;
+
+/**
+ * {@link ClauseStatistics} based on simple heuristics for the
+ * {@linkplain cz.jirutka.rsql.parser.ast.RSQLOperators default operators}, which can be
+ * overridden for the known selectors:
+ *
+ * <ul>
+ *   <li><tt>==</tt> matches 10 % of entries, <tt>=in=</tt> 10 % per argument;</li>
+ *   <li><tt>!=</tt> matches 90 % of entries, <tt>=out=</tt> 10 % less per argument;</li>
+ *   <li><tt>=lt=</tt>, <tt>=le=</tt>, <tt>=gt=</tt> and <tt>=ge=</tt> match one third of
+ *       entries;</li>
+ *   <li>any other operator matches half of entries;</li>
+ *   <li>all comparisons cost <tt>1.0</tt>.</li>
+ * </ul>
+ *
+ * <pre>{@code
+ * ClauseStatistics stats = new HeuristicStatistics()
+ *     .withSelectivity("status", EQUAL, 0.5)
+ *     .withCost("description", null, 20.0);
+ * }</pre>
+ */
+@Immutable
+public final class HeuristicStatistics implements ClauseStatistics {
+
+    private static final double
+            EQUAL_SELECTIVITY = 0.1,
+            RANGE_SELECTIVITY = 1.0 / 3,
+            UNKNOWN_SELECTIVITY = 0.5,
+            DEFAULT_COST = 1.0;
+
+    private final Map<String, Double> selectivities;
+
+    private final Map<String, Double> costs;
+
+
+    /**
+     * Creates statistics with just the default heuristics.
+     */
+    public HeuristicStatistics() {
+        this(new HashMap<String, Double>(), new HashMap<String, Double>());
+    }
+
+    private HeuristicStatistics(Map<String, Double> selectivities, Map<String, Double> costs) {
+        this.selectivities = selectivities;
+        this.costs = costs;
+    }
+
+
+    /**
+     * Returns a copy of these statistics with the selectivity of comparisons of the given
+     * selector with the given operator.
+     *
+     * @param selector The selector.
+     * @param operator The operator, or <tt>null</tt> for all operators (that are not specified
+     *                 explicitly).
+     * @param selectivity The fraction of matching entries, between <tt>0.0</tt> and
+     *                    <tt>1.0</tt>.
+     * @throws IllegalArgumentException If the {@code selector} is <tt>null</tt> or the
+     *          {@code selectivity} is out of the range.
+     */
+    public HeuristicStatistics withSelectivity(String selector, ComparisonOperator operator, double selectivity) {
+        if (!(selectivity >= 0.0 && selectivity <= 1.0)) {
+            throw new IllegalArgumentException("selectivity must be between 0.0 and 1.0");
+        }
+        return new HeuristicStatistics(with(selectivities, selector, operator, selectivity), costs);
+    }
+
+    /**
+     * Returns a copy of these statistics with the cost of comparisons of the given selector
+     * with the given operator.
+     *
+     * @param selector The selector.
+     * @param operator The operator, or <tt>null</tt> for all operators (that are not specified
+     *                 explicitly).
+     * @param cost The relative cost, non-negative.
+     * @throws IllegalArgumentException If the {@code selector} is <tt>null</tt> or the
+     *          {@code cost} is negative.
+     */
+    public HeuristicStatistics withCost(String selector, ComparisonOperator operator, double cost) {
+        if (!(cost >= 0.0) || Double.isInfinite(cost)) {
+            throw new IllegalArgumentException("cost must be a non-negative number");
+        }
+        return new HeuristicStatistics(selectivities, with(costs, selector, operator, cost));
+    }
+
+
+    public double selectivity(ComparisonNode node) {
+        Double value = lookup(selectivities, node);
+        if (value != null) {
+            return value;
+        }
+        ComparisonOperator op = node.getOperator();
+        int count = node.getArgumentCount();
+
+        if (op.equals(EQUAL)) {
+            return EQUAL_SELECTIVITY;
+        } else if (op.equals(NOT_EQUAL)) {
+            return 1.0 - EQUAL_SELECTIVITY;
+        } else if (op.equals(IN)) {
+            return Math.min(1.0, count * EQUAL_SELECTIVITY);
+        } else if (op.equals(NOT_IN)) {
+            return Math.max(0.0, 1.0 - count * EQUAL_SELECTIVITY);
+        } else if (op.equals(GREATER_THAN) || op.equals(GREATER_THAN_OR_EQUAL)
+                || op.equals(LESS_THAN) || op.equals(LESS_THAN_OR_EQUAL)) {
+            return RANGE_SELECTIVITY;
+        }
+        return UNKNOWN_SELECTIVITY;
+    }
+
+    public double cost(ComparisonNode node) {
+        Double value = lookup(costs, node);
+        return value != null ? value : DEFAULT_COST;
+    }
+
+
+    private static Map<String, Double> with(Map<String, Double> map, String selector,
+                                            ComparisonOperator operator, double value) {
+        if (selector == null) {
+            throw new IllegalArgumentException("selector must not be null");
+        }
+        Map<String, Double> copy = new HashMap<>(map);
+        copy.put(key(selector, operator), value);
+
+        return copy;
+    }
+
+    private static Double lookup(Map<String, Double> map, ComparisonNode node) {
+        if (map.isEmpty()) {
+            return null;
+        }
+        Double value = map.get(key(node.getSelector(), node.getOperator()));
+
+        return value != null ? value : map.get(key(node.getSelector(), null));
+    }
+
+    private static String key(String selector, ComparisonOperator operator) {
+        // the selector cannot contain a space
+        return operator != null ? selector + ' ' + operator.getSymbol() : selector;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.optimize;
+
+import cz.jirutka.rsql.parser.ast.ComparisonNode;
+import cz.jirutka.rsql.parser.ast.LogicalNode;
+import cz.jirutka.rsql.parser.ast.Node;
+import cz.jirutka.rsql.parser.ast.TypedArguments;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A structural order of nodes: comparisons go first (by selector, operator, arguments and
+ * typed arguments), then AND nodes and OR nodes (by number of children and then the children).
+ *
+ * <p>It's consistent with {@link Node#equals(Object) equals}, except for typed arguments with
+ * values that are not mutually {@link Comparable} (e.g. of a custom
+ * {@link cz.jirutka.rsql.parser.ast.ArgumentType ArgumentType}); comparisons that differ only
+ * in them are equal by this order, but not by equals.</p>
+ */
+final class NodeOrder implements Comparator<Node> {
+
+    static final NodeOrder INSTANCE = new NodeOrder();
+
+
+    private NodeOrder() {
+    }
+
+    public int compare(Node a, Node b) {
+        if (a == b) {
+            return 0;
+        }
+        int cmp = Integer.compare(rank(a), rank(b));
+        if (cmp != 0) {
+            return cmp;
+        }
+        return a instanceof ComparisonNode
+                ? compare((ComparisonNode) a, (ComparisonNode) b)
+                : compare(((LogicalNode) a).getChildrenView(), ((LogicalNode) b).getChildrenView());
+    }
+
+    private int compare(ComparisonNode a, ComparisonNode b) {
+        int cmp = a.getSelector().compareTo(b.getSelector());
+        if (cmp == 0) {
+            cmp = a.getOperator().getSymbol().compareTo(b.getOperator().getSymbol());
+        }
+        if (cmp == 0) {
+            List<String> argsA = a.getArgumentsView(), argsB = b.getArgumentsView();
+            cmp = Integer.compare(argsA.size(), argsB.size());
+
+            for (int i = 0; cmp == 0 && i < argsA.size(); i++) {
+                cmp = argsA.get(i).compareTo(argsB.get(i));
+            }
+        }
+        if (cmp == 0) {
+            cmp = compare(a.getTypedArguments(), b.getTypedArguments());
+        }
+        return cmp;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(TypedArguments a, TypedArguments b) {
+        if (a == null || b == null) {
+            return a == b ? 0 : a == null ? -1 : 1;
+        }
+        int cmp = a.getType().getName().compareTo(b.getType().getName());
+        cmp = cmp != 0 ? cmp : Integer.compare(a.size(), b.size());
+
+        for (int i = 0; cmp == 0 && i < a.size(); i++) {
+            if (a.isLong() && b.isLong()) {
+                cmp = Long.compare(a.getLong(i), b.getLong(i));
+            } else if (a.isDouble() && b.isDouble()) {
+                cmp = Double.compare(a.getDouble(i), b.getDouble(i));
+            } else {
+                Object valueA = a.get(i), valueB = b.get(i);
+                if (valueA instanceof Comparable && valueA.getClass() == valueB.getClass()) {
+                    cmp = ((Comparable<Object>) valueA).compareTo(valueB);
+                }
+            }
+        }
+        return cmp;
+    }
+
+    private int compare(List<Node> a, List<Node> b) {
+        int cmp = Integer.compare(a.size(), b.size());
+
+        for (int i = 0; cmp == 0 && i < a.size(); i++) {
+            cmp = compare(a.get(i), b.get(i));
+        }
+        return cmp;
+    }
+
+    private static int rank(Node node) {
+        if (node instanceof ComparisonNode) {
+            return 0;
+        }
+        switch (((LogicalNode) node).getOperator()) {
+            case AND: return 1;
+            default : return 2;
+        }
+    }
+}
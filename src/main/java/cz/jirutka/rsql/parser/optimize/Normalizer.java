@@ -0,0 +1,267 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.optimize;
+
+import cz.jirutka.rsql.parser.ast.*;
+import net.jcip.annotations.Immutable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static cz.jirutka.rsql.parser.ast.RSQLOperators.*;
+
+/**
+ * Rewrites an RSQL expression (AST) into a normal form, so that equivalent expressions written
+ * in different ways map to the same (equal) tree, and redundant parts are removed. It:
+ *
+ * <ul>
+ *   <li>flattens nested logical nodes with the same operator,
+ *       e.g. <tt>a==1,(a==2,a==3)</tt> into <tt>a==1,a==2,a==3</tt>;</li>
+ *   <li>merges equality comparisons of the same selector in an OR into <tt>=in=</tt>, and
+ *       non-equality comparisons in an AND into <tt>=out=</tt>,
+ *       e.g. <tt>a==1,a=in=(2,3)</tt> into <tt>a=in=(1,2,3)</tt>;</li>
+ *   <li>sorts and deduplicates arguments of <tt>=in=</tt> and <tt>=out=</tt>, and replaces
+ *       them with <tt>==</tt> and <tt>!=</tt> when only one argument remains;</li>
+ *   <li>removes duplicate children of logical nodes and sorts them into a canonical order;</li>
+ *   <li>replaces logical nodes with just one child by the child.</li>
+ * </ul>
+ *
+ * <p>Only the {@linkplain RSQLOperators default operators} are merged or rewritten, custom
+ * operators are left as is (but sorted). The children of logical nodes may be reordered, so the
+ * normalized expression must not be evaluated by a backend that relies on the order of
+ * operands.</p>
+ */
+@Immutable
+public final class Normalizer {
+
+    /**
+     * Returns a normalized copy of the given expression. The result is a fixed point, i.e.
+     * normalizing it again gives an equal tree.
+     *
+     * @throws IllegalArgumentException If the {@code node} is <tt>null</tt>.
+     */
+    public Node normalize(Node node) {
+        if (node == null) {
+            throw new IllegalArgumentException("node must not be null");
+        }
+        return node.accept(VISITOR);
+    }
+
+
+    private static final NoArgRSQLVisitorAdapter<Node> VISITOR = new NoArgRSQLVisitorAdapter<Node>() {
+
+        public Node visit(AndNode node) {
+            return normalize(node);
+        }
+
+        public Node visit(OrNode node) {
+            return normalize(node);
+        }
+
+        public Node visit(ComparisonNode node) {
+            return normalize(node);
+        }
+    };
+
+
+    private static Node normalize(LogicalNode node) {
+        LogicalOperator op = node.getOperator();
+        List<Node> children = new ArrayList<>();
+
+        for (Node child : node) {
+            Node normalized = child.accept(VISITOR);
+
+            if (normalized instanceof LogicalNode && ((LogicalNode) normalized).getOperator() == op) {
+                for (Node grandchild : (LogicalNode) normalized) {
+                    children.add(grandchild);
+                }
+            } else {
+                children.add(normalized);
+            }
+        }
+        children = op == LogicalOperator.OR
+                ? merge(children, EQUAL, IN)
+                : merge(children, NOT_EQUAL, NOT_IN);
+
+        children = sortDistinct(children);
+
+        return children.size() == 1 ? children.get(0) : node.withChildren(children);
+    }
+
+    /**
+     * Sorts the nodes by the {@link NodeOrder} and removes the duplicates. The order is not
+     * fully consistent with equals (for typed arguments), so equal nodes are looked up among
+     * all the nodes that are equal by the order.
+     */
+    private static List<Node> sortDistinct(List<Node> nodes) {
+        List<Node> sorted = new ArrayList<>(nodes);
+        Collections.sort(sorted, NodeOrder.INSTANCE);
+
+        List<Node> result = new ArrayList<>(sorted.size());
+        int runStart = 0;
+        for (Node node : sorted) {
+            if (!result.isEmpty() && NodeOrder.INSTANCE.compare(result.get(result.size() - 1), node) != 0) {
+                runStart = result.size();
+            }
+            if (!result.subList(runStart, result.size()).contains(node)) {
+                result.add(node);
+            }
+        }
+        return result;
+    }
+
+    private static Node normalize(ComparisonNode node) {
+        ComparisonOperator op = node.getOperator();
+
+        if (op.equals(IN) || op.equals(NOT_IN)) {
+            ArgumentSet args = new ArgumentSet();
+            args.addAll(node);
+            ComparisonNode normalized = args.toComparison(node.getSelector(), op.equals(IN) ? EQUAL : NOT_EQUAL, op);
+
+            return normalized.equals(node) ? node : normalized;
+        }
+        return node;
+    }
+
+    /**
+     * Merges comparisons with the single or multi-value operator that have the same selector
+     * into one comparison. The comparisons are already normalized.
+     */
+    private static List<Node> merge(List<Node> nodes, ComparisonOperator single, ComparisonOperator multi) {
+        Map<String, ArgumentSet> groups = new LinkedHashMap<>();
+        Map<String, Integer> counts = new LinkedHashMap<>();
+
+        for (Node node : nodes) {
+            if (isMergeable(node, single, multi)) {
+                ComparisonNode comp = (ComparisonNode) node;
+                ArgumentSet args = groups.get(comp.getSelector());
+                if (args == null) {
+                    groups.put(comp.getSelector(), args = new ArgumentSet());
+                    counts.put(comp.getSelector(), 0);
+                }
+                args.addAll(comp);
+                counts.put(comp.getSelector(), counts.get(comp.getSelector()) + 1);
+            }
+        }
+        if (!hasMultiple(counts)) {
+            return nodes;
+        }
+        List<Node> result = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            if (!isMergeable(node, single, multi)) {
+                result.add(node);
+                continue;
+            }
+            String selector = ((ComparisonNode) node).getSelector();
+            ArgumentSet args = groups.get(selector);
+
+            if (counts.get(selector) == 1 || !args.isConsistent()) {
+                result.add(node);
+            } else if (!args.isMerged()) {
+                result.add(args.toComparison(selector, single, multi));
+                args.merged = true;
+            }
+        }
+        return result;
+    }
+
+    private static boolean isMergeable(Node node, ComparisonOperator single, ComparisonOperator multi) {
+        if (!(node instanceof ComparisonNode)) {
+            return false;
+        }
+        ComparisonOperator op = ((ComparisonNode) node).getOperator();
+        return op.equals(single) || op.equals(multi);
+    }
+
+    private static boolean hasMultiple(Map<String, Integer> counts) {
+        for (int count : counts.values()) {
+            if (count > 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+
+    /**
+     * Distinct arguments of comparisons of one selector, sorted, with their typed values (if
+     * the comparisons have them). Comparisons with and without typed arguments, or with typed
+     * arguments of different types, are not merged, since it would lose the types.
+     */
+    private static final class ArgumentSet {
+
+        private final TreeMap<String, TypedArguments> sources = new TreeMap<>();
+        private final Map<String, Integer> indexes = new HashMap<>();
+
+        private ArgumentType<?> type;
+        private boolean empty = true, consistent = true, merged;
+
+        void addAll(ComparisonNode node) {
+            TypedArguments typed = node.getTypedArguments();
+            ArgumentType<?> nodeType = typed != null ? typed.getType() : null;
+
+            if (empty) {
+                type = nodeType;
+                empty = false;
+            } else if (type == null ? nodeType != null : !type.equals(nodeType)) {
+                consistent = false;
+            }
+            List<String> args = node.getArgumentsView();
+            for (int i = 0; i < args.size(); i++) {
+                if (!sources.containsKey(args.get(i))) {
+                    sources.put(args.get(i), typed);
+                    indexes.put(args.get(i), i);
+                }
+            }
+        }
+
+        boolean isConsistent() {
+            return consistent;
+        }
+
+        boolean isMerged() {
+            return merged;
+        }
+
+        ComparisonNode toComparison(String selector, ComparisonOperator single, ComparisonOperator multi) {
+            List<String> arguments = new ArrayList<>(sources.keySet());
+            TypedArguments typed = null;
+
+            if (type != null) {
+                int[] picked = new int[arguments.size()];
+                for (int i = 0; i < picked.length; i++) {
+                    picked[i] = indexes.get(arguments.get(i));
+                }
+                typed = TypedArguments.pick(new ArrayList<>(sources.values()), picked);
+            }
+            return new ComparisonNode(arguments.size() == 1 ? single : multi, selector, arguments, typed);
+        }
+    }
+}
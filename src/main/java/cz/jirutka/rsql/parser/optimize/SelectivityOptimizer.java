@@ -0,0 +1,168 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.optimize;
+
+import cz.jirutka.rsql.parser.ast.ComparisonNode;
+import cz.jirutka.rsql.parser.ast.LogicalNode;
+import cz.jirutka.rsql.parser.ast.LogicalOperator;
+import cz.jirutka.rsql.parser.ast.Node;
+import net.jcip.annotations.Immutable;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Reorders children of logical nodes, so an evaluator that short-circuits (like
+ * {@link cz.jirutka.rsql.parser.eval.PredicateCompiler}, or a database) tests the cheap and
+ * decisive operands first. The children of an AND are ordered by <i>cost / (1 - selectivity)</i>,
+ * i.e. the cheap operands that reject the most entries first, and the children of an OR by
+ * <i>cost / selectivity</i>, i.e. the cheap operands that accept the most entries first. This
+ * order minimizes the expected cost of the evaluation, if the operands are independent.
+ *
+ * <p>The estimates of comparisons are provided by {@link ClauseStatistics}; the selectivity
+ * and cost of a nested logical node are derived from its children. Operands with equal rank
+ * keep their original order, and nodes that don't need to be reordered are not copied.</p>
+ *
+ * <p>AND and OR are commutative, so the reordered expression is equivalent to the original
+ * one, unless it's evaluated by a backend that relies on the order of operands.</p>
+ */
+@Immutable
+public final class SelectivityOptimizer {
+
+    private final ClauseStatistics statistics;
+
+
+    /**
+     * @param statistics The estimates of comparisons.
+     * @throws IllegalArgumentException If the {@code statistics} is <tt>null</tt>.
+     */
+    public SelectivityOptimizer(ClauseStatistics statistics) {
+        if (statistics == null) {
+            throw new IllegalArgumentException("statistics must not be null");
+        }
+        this.statistics = statistics;
+    }
+
+
+    /**
+     * Returns the given expression with reordered children of the logical nodes, or the same
+     * instance if it's already in the optimal order.
+     *
+     * @throws IllegalArgumentException If the {@code node} is <tt>null</tt>.
+     */
+    public Node optimize(Node node) {
+        if (node == null) {
+            throw new IllegalArgumentException("node must not be null");
+        }
+        return estimate(node).node;
+    }
+
+    /**
+     * Returns the estimated fraction of entries that match the given expression.
+     *
+     * @throws IllegalArgumentException If the {@code node} is <tt>null</tt>.
+     */
+    public double selectivity(Node node) {
+        if (node == null) {
+            throw new IllegalArgumentException("node must not be null");
+        }
+        return estimate(node).selectivity;
+    }
+
+
+    private Estimate estimate(Node node) {
+        if (node instanceof ComparisonNode) {
+            ComparisonNode comp = (ComparisonNode) node;
+            return new Estimate(comp, clamp(statistics.selectivity(comp), 1.0),
+                    clamp(statistics.cost(comp), Double.MAX_VALUE));
+        }
+        LogicalNode logical = (LogicalNode) node;
+        List<Node> children = logical.getChildrenView();
+        boolean and = logical.getOperator() == LogicalOperator.AND;
+
+        Estimate[] estimates = new Estimate[children.size()];
+        boolean changed = false;
+
+        for (int i = 0; i < estimates.length; i++) {
+            Estimate child = estimate(children.get(i));
+            // the probability that the evaluation continues after the child
+            child.rank = rank(child.cost, and ? child.selectivity : 1.0 - child.selectivity);
+            child.index = i;
+            changed |= child.node != children.get(i);
+            estimates[i] = child;
+        }
+        Arrays.sort(estimates, RANK_ORDER);  // stable
+
+        // expected cost of the short-circuit evaluation in this order
+        double cost = 0, passing = 1.0;
+        Node[] reordered = new Node[estimates.length];
+
+        for (int i = 0; i < estimates.length; i++) {
+            Estimate child = estimates[i];
+            cost += passing * child.cost;
+            passing *= and ? child.selectivity : 1.0 - child.selectivity;
+            changed |= child.index != i;
+            reordered[i] = child.node;
+        }
+        return new Estimate(changed ? logical.withChildren(Arrays.asList(reordered)) : logical,
+                and ? passing : 1.0 - passing, cost);
+    }
+
+    /**
+     * Returns the cost per the probability of stopping the evaluation; lower is better.
+     */
+    private static double rank(double cost, double continuing) {
+        double stopping = 1.0 - continuing;
+        return stopping > 0.0 ? cost / stopping : Double.POSITIVE_INFINITY;
+    }
+
+    private static double clamp(double value, double max) {
+        return value >= 0.0 ? Math.min(value, max) : 0.0;  // NaN is 0.0
+    }
+
+
+    private static final Comparator<Estimate> RANK_ORDER = new Comparator<Estimate>() {
+        public int compare(Estimate a, Estimate b) {
+            int cmp = Double.compare(a.rank, b.rank);
+            // operands that never stop the evaluation by the cost
+            return cmp == 0 && a.rank == Double.POSITIVE_INFINITY ? Double.compare(a.cost, b.cost) : cmp;
+        }
+    };
+
+    private static final class Estimate {
+
+        final Node node;
+        final double selectivity;
+        final double cost;
+        double rank;
+        int index;
+
+        Estimate(Node node, double selectivity, double cost) {
+            this.node = node;
+            this.selectivity = selectivity;
+            this.cost = cost;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.sql;
+
+import cz.jirutka.rsql.parser.ast.ComparisonOperator;
+
+/**
+ * A dialect of SQL for the {@link SQLGenerator}; it writes the comparisons, placeholders and
+ * constants into the generated <tt>WHERE</tt> clause.
+ *
+ * <p>An implementation that doesn't support some operator should throw
+ * {@link UnsupportedOperationException}.</p>
+ *
+ * @see StandardSQLDialect
+ */
+public interface SQLDialect {
+
+    /**
+     * Returns the number of parameters (placeholders) to bind for a comparison with the given
+     * number of arguments; it's at least {@code argumentCount}. The arguments are padded with
+     * the last one, so a bigger number may be returned only for operators where repeating an
+     * argument doesn't change the result (e.g. <tt>IN</tt>). Rounding the number up reduces the
+     * number of distinct SQL statements.
+     */
+    int parameterCount(ComparisonOperator operator, int argumentCount);
+
+    /**
+     * Appends a comparison of the column with the parameters.
+     *
+     * @param sql The SQL being generated.
+     * @param column The SQL expression of the column (as configured in the generator).
+     * @param operator The operator of the comparison.
+     * @param firstParameter The 1-based index of the first parameter of the comparison.
+     * @param parameterCount The number of parameters of the comparison, as returned by
+     *                       {@link #parameterCount(ComparisonOperator, int)}.
+     * @throws UnsupportedOperationException If the operator is not supported.
+     */
+    void appendComparison(StringBuilder sql, String column, ComparisonOperator operator,
+                          int firstParameter, int parameterCount);
+
+    /**
+     * Appends a placeholder of the parameter with the given 1-based index, e.g. <tt>?</tt>.
+     */
+    void appendPlaceholder(StringBuilder sql, int index);
+
+    /**
+     * Appends a condition that is always true (for an empty AND) or false (for an empty OR).
+     */
+    void appendConstant(StringBuilder sql, boolean value);
+}
@@ -0,0 +1,288 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.sql;
+
+import cz.jirutka.rsql.parser.ast.ComparisonNode;
+import cz.jirutka.rsql.parser.ast.ComparisonOperator;
+import cz.jirutka.rsql.parser.ast.LogicalNode;
+import cz.jirutka.rsql.parser.ast.LogicalOperator;
+import cz.jirutka.rsql.parser.ast.Node;
+import cz.jirutka.rsql.parser.ast.TypedArguments;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates an SQL <tt>WHERE</tt> condition with placeholders from an RSQL expression (AST),
+ * and the values to bind to them. The values are never inlined into the SQL, so it can be
+ * safely used with untrusted queries and the database can reuse the prepared statements.
+ *
+ * <p>Selectors are mapped to SQL columns explicitly; a selector with no column is rejected.
+ * The arguments are bound as strings, or as the converted values (e.g. <tt>Long</tt>) if the
+ * query has been parsed with a {@link cz.jirutka.rsql.parser.ast.SelectorSchema}.</p>
+ *
+ * <p>The generated SQL depends only on the <i>shape</i> of the expression, i.e. the tree
+ * without the argument values and with the number of parameters rounded by the
+ * {@link SQLDialect}. The generator caches the SQL by shape, so expressions that differ only in
+ * the values return the same SQL string without generating it again.</p>
+ *
+ * <pre>{@code
+ * SQLGenerator generator = new SQLGenerator()
+ *     .withColumn("name", "p.name")
+ *     .withColumn("age", "p.age");
+ *
+ * SQLQuery where = generator.generate(new RSQLParser().parse("name==Jo;age=in=(18,19,20)"));
+ * // where.getSql(): p.name = ? AND p.age IN (?, ?, ?, ?)
+ * // where.getParameters(): [Jo, 18, 19, 20, 20]
+ * }</pre>
+ */
+@ThreadSafe
+public final class SQLGenerator {
+
+    private static final int DEFAULT_CACHE_SIZE = 256;
+
+    private final Map<String, String> columns;
+
+    private final SQLDialect dialect;
+
+    private final ShapeCache cache;
+
+
+    /**
+     * Creates a new generator with no columns, the {@link StandardSQLDialect} and a cache of
+     * 256 shapes.
+     */
+    public SQLGenerator() {
+        this(Collections.<String, String>emptyMap(), new StandardSQLDialect(), DEFAULT_CACHE_SIZE);
+    }
+
+    private SQLGenerator(Map<String, String> columns, SQLDialect dialect, int cacheSize) {
+        this.columns = columns;
+        this.dialect = dialect;
+        this.cache = cacheSize > 0 ? new ShapeCache(cacheSize) : null;
+    }
+
+
+    /**
+     * Returns a copy of this generator (with an empty cache) that maps the selector to the
+     * given column.
+     *
+     * @param selector The selector.
+     * @param column The SQL expression of the column, e.g. <tt>p.name</tt>. It's inserted into
+     *               the SQL as is.
+     * @throws IllegalArgumentException If either of the parameters is <tt>null</tt>.
+     */
+    public SQLGenerator withColumn(String selector, String column) {
+        if (selector == null || column == null) {
+            throw new IllegalArgumentException("selector and column must not be null");
+        }
+        Map<String, String> map = new HashMap<>(columns);
+        map.put(selector, column);
+
+        return new SQLGenerator(map, dialect, getCacheSize());
+    }
+
+    /**
+     * Returns a copy of this generator (with an empty cache) that uses the given dialect.
+     *
+     * @throws IllegalArgumentException If the {@code dialect} is <tt>null</tt>.
+     */
+    public SQLGenerator withDialect(SQLDialect dialect) {
+        if (dialect == null) {
+            throw new IllegalArgumentException("dialect must not be null");
+        }
+        return new SQLGenerator(columns, dialect, getCacheSize());
+    }
+
+    /**
+     * Returns a copy of this generator with an empty cache of the given size.
+     *
+     * @param maximumSize The maximum number of cached shapes, or <tt>0</tt> to disable caching.
+     * @throws IllegalArgumentException If the {@code maximumSize} is negative.
+     */
+    public SQLGenerator withCacheSize(int maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("maximumSize must not be negative");
+        }
+        return new SQLGenerator(columns, dialect, maximumSize);
+    }
+
+    /**
+     * Returns the maximum number of cached shapes, or <tt>0</tt> if caching is disabled.
+     */
+    public int getCacheSize() {
+        return cache != null ? cache.maximumSize : 0;
+    }
+
+
+    /**
+     * Generates the SQL condition from the given RSQL expression.
+     *
+     * @param node The root node of the expression.
+     * @throws IllegalArgumentException If the {@code node} is <tt>null</tt> or contains a
+     *         selector with no column.
+     * @throws UnsupportedOperationException If the dialect doesn't support an operator.
+     */
+    public SQLQuery generate(Node node) {
+        if (node == null) {
+            throw new IllegalArgumentException("node must not be null");
+        }
+        // the shape is needed only as the key to the cache
+        StringBuilder shape = cache != null ? new StringBuilder(64) : null;
+        List<Object> parameters = new ArrayList<>();
+        describe(node, shape, parameters);
+
+        String key = cache != null ? shape.toString() : null;
+        String sql = cache != null ? cache.get(key) : null;
+
+        if (sql == null) {
+            StringBuilder sb = new StringBuilder(64);
+            append(node, sb, new int[]{ 1 });
+            sql = sb.toString();
+
+            if (cache != null) {
+                sql = cache.put(key, sql);
+            }
+        }
+        return new SQLQuery(sql, parameters.toArray());
+    }
+
+
+    /**
+     * Writes the shape of the node into a key (if not <tt>null</tt>) and collects its
+     * parameters.
+     */
+    private void describe(Node node, StringBuilder shape, List<Object> parameters) {
+        if (node instanceof LogicalNode) {
+            LogicalNode logical = (LogicalNode) node;
+            if (shape != null) {
+                shape.append(logical.getOperator() == LogicalOperator.AND ? '&' : '|')
+                     .append(logical.getChildCount()).append(':');
+            }
+
+            for (int i = 0; i < logical.getChildCount(); i++) {
+                describe(logical.getChild(i), shape, parameters);
+            }
+            return;
+        }
+        ComparisonNode comp = (ComparisonNode) node;
+        TypedArguments typed = comp.getTypedArguments();
+        int count = comp.getArgumentCount();
+        int paramCount = dialect.parameterCount(comp.getOperator(), count);
+
+        for (int i = 0; i < paramCount; i++) {
+            int index = Math.min(i, count - 1);  // padded with the last one
+            parameters.add(typed != null ? typed.get(index) : comp.getArgument(index));
+        }
+        if (shape != null) {
+            // the selector is prefixed with its length, since it may contain any char
+            shape.append(comp.getSelector().length()).append(':').append(comp.getSelector())
+                 .append(comp.getOperator().getSymbol()).append(paramCount).append(';');
+        }
+    }
+
+    /**
+     * Appends the SQL of the node.
+     *
+     * @param parameter The index of the next parameter.
+     */
+    private void append(Node node, StringBuilder sql, int[] parameter) {
+        if (node instanceof LogicalNode) {
+            LogicalNode logical = (LogicalNode) node;
+            boolean and = logical.getOperator() == LogicalOperator.AND;
+
+            if (logical.getChildCount() == 0) {
+                dialect.appendConstant(sql, and);
+            }
+            for (int i = 0; i < logical.getChildCount(); i++) {
+                Node child = logical.getChild(i);
+                if (i > 0) {
+                    sql.append(and ? " AND " : " OR ");
+                }
+                if (child instanceof LogicalNode) {
+                    sql.append('(');
+                    append(child, sql, parameter);
+                    sql.append(')');
+                } else {
+                    append(child, sql, parameter);
+                }
+            }
+            return;
+        }
+        ComparisonNode comp = (ComparisonNode) node;
+        String column = columns.get(comp.getSelector());
+        if (column == null) {
+            throw new IllegalArgumentException("No column for selector: " + comp.getSelector());
+        }
+        ComparisonOperator op = comp.getOperator();
+        int count = dialect.parameterCount(op, comp.getArgumentCount());
+
+        dialect.appendComparison(sql, column, op, parameter[0], count);
+        parameter[0] += count;
+    }
+
+
+    /**
+     * A bounded LRU cache of the generated SQL by shape.
+     */
+    @ThreadSafe
+    private static final class ShapeCache {
+
+        final int maximumSize;
+
+        @GuardedBy("this")
+        private final Map<String, String> map;
+
+        ShapeCache(final int maximumSize) {
+            this.maximumSize = maximumSize;
+            this.map = new LinkedHashMap<String, String>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > maximumSize;
+                }
+            };
+        }
+
+        synchronized String get(String shape) {
+            return map.get(shape);
+        }
+
+        /**
+         * Caches the SQL, unless another thread has cached it already; returns the cached one.
+         */
+        synchronized String put(String shape, String sql) {
+            String cached = map.get(shape);
+            if (cached != null) {
+                return cached;
+            }
+            map.put(shape, sql);
+            return sql;
+        }
+    }
+}
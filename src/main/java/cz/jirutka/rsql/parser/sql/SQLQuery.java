@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.sql;
+
+import net.jcip.annotations.Immutable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A <tt>WHERE</tt> condition with placeholders and the values to bind to them, generated by
+ * {@link SQLGenerator}.
+ */
+@Immutable
+public final class SQLQuery {
+
+    private final String sql;
+
+    private final Object[] parameters;
+
+
+    SQLQuery(String sql, Object[] parameters) {
+        this.sql = sql;
+        this.parameters = parameters;
+    }
+
+
+    /**
+     * Returns the SQL condition with placeholders. Conditions of the same shape (that differ
+     * only in the values) are equal.
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Returns an unmodifiable list of the values to bind to the placeholders, in order.
+     */
+    public List<Object> getParameters() {
+        return Collections.unmodifiableList(Arrays.asList(parameters));
+    }
+
+    /**
+     * Returns the value to bind to the placeholder with the given 1-based index (as used by
+     * JDBC).
+     *
+     * @throws IndexOutOfBoundsException
+     */
+    public Object getParameter(int index) {
+        return parameters[index - 1];
+    }
+
+    public int getParameterCount() {
+        return parameters.length;
+    }
+
+
+    @Override
+    public String toString() {
+        return sql + " " + Arrays.toString(parameters);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SQLQuery)) return false;
+        SQLQuery that = (SQLQuery) o;
+
+        return sql.equals(that.sql) && Arrays.equals(parameters, that.parameters);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * sql.hashCode() + Arrays.hashCode(parameters);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.sql;
+
+import cz.jirutka.rsql.parser.ast.ComparisonOperator;
+import net.jcip.annotations.Immutable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static cz.jirutka.rsql.parser.ast.RSQLOperators.*;
+
+/**
+ * The standard SQL dialect for the {@linkplain cz.jirutka.rsql.parser.ast.RSQLOperators
+ * default operators} with <tt>?</tt> placeholders. The number of parameters of <tt>=in=</tt>
+ * and <tt>=out=</tt> is rounded up to a power of two (<tt>1, 2, 4, 8, ...</tt>), so lists of
+ * similar size share the same SQL.
+ *
+ * <p>The methods may be overridden to adapt it to a specific database, e.g. to use numbered
+ * placeholders like <tt>$1</tt>.</p>
+ */
+@Immutable
+public class StandardSQLDialect implements SQLDialect {
+
+    private static final Map<ComparisonOperator, String> OPERATORS = new HashMap<>();
+
+    static {
+        OPERATORS.put(EQUAL, " = ");
+        OPERATORS.put(NOT_EQUAL, " <> ");
+        OPERATORS.put(GREATER_THAN, " > ");
+        OPERATORS.put(GREATER_THAN_OR_EQUAL, " >= ");
+        OPERATORS.put(LESS_THAN, " < ");
+        OPERATORS.put(LESS_THAN_OR_EQUAL, " <= ");
+        OPERATORS.put(IN, " IN (");
+        OPERATORS.put(NOT_IN, " NOT IN (");
+    }
+
+
+    public int parameterCount(ComparisonOperator operator, int argumentCount) {
+        // Rounded up to a power of two, as in the bucketed shape Fingerprint.
+        if ((operator.equals(IN) || operator.equals(NOT_IN)) && argumentCount > 1) {
+            return Integer.highestOneBit(argumentCount - 1) << 1;
+        }
+        return argumentCount;
+    }
+
+    public void appendComparison(StringBuilder sql, String column, ComparisonOperator operator,
+                                 int firstParameter, int parameterCount) {
+        String op = OPERATORS.get(operator);
+        if (op == null) {
+            throw new UnsupportedOperationException("Unsupported operator: " + operator);
+        }
+        sql.append(column).append(op);
+
+        if (operator.isMultiValue()) {
+            for (int i = 0; i < parameterCount; i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                appendPlaceholder(sql, firstParameter + i);
+            }
+            sql.append(')');
+        } else {
+            appendPlaceholder(sql, firstParameter);
+        }
+    }
+
+    public void appendPlaceholder(StringBuilder sql, int index) {
+        sql.append('?');
+    }
+
+    public void appendConstant(StringBuilder sql, boolean value) {
+        sql.append(value ? "1 = 1" : "1 = 0");
+    }
+}
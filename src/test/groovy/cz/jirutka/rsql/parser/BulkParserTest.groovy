@@ -0,0 +1,137 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+
+@Unroll
+class BulkParserTest extends Specification {
+
+    def parser = new RSQLParser()
+
+
+    def 'parse #count queries in order with #executorName'() {
+        setup:
+            def random = new Random(count)
+            def queries = (0..<count).collect { QueryGenerator.query(random, 3) }
+        when:
+            def results = executor ? parser.parseAll(queries, executor) : parser.parseAll(queries)
+        then:
+            results.size() == count
+            verifyResults(results, queries)
+        cleanup:
+            executor?.shutdown()
+        where:
+            count | executorName      | executor
+            0     | 'default pool'    | null
+            1     | 'default pool'    | null
+            100   | 'default pool'    | null
+            5000  | 'default pool'    | null
+            5000  | 'fixed pool'      | Executors.newFixedThreadPool(3)
+            5000  | 'single thread'   | Executors.newSingleThreadExecutor()
+    }
+
+    def 'parse on the calling thread when executor rejects tasks'() {
+        setup:
+            def executor = { Runnable task -> throw new RejectedExecutionException() } as Executor
+            def queries = (1..1000).collect { "a==$it".toString() }
+        when:
+            def results = parser.parseAll(queries, executor)
+        then:
+            results*.node == queries.collect { parser.parse(it) }
+    }
+
+    def 'parse with a direct executor'() {
+        setup:
+            def executor = { Runnable task -> task.run() } as Executor
+            def queries = (1..1000).collect { "a==$it;b=in=(1,2)".toString() }
+        expect:
+            parser.parseAll(queries, executor)*.success.every()
+    }
+
+    def 'keep per-query errors'() {
+        setup:
+            def limited = parser.withLimits(new ParserLimits().withMaxLength(10))
+        when:
+            def results = limited.parseAll(['a==1', 'a==', 'a==1;b==2;c==3', 'b!=2'])
+        then:
+            results*.success == [true, false, false, true]
+            results[1].exception.cause instanceof ParseException
+            results[2].exception instanceof LimitExceededException
+        when:
+            results[1].get()
+        then:
+            thrown RSQLParserException
+    }
+
+    def 'propagate unexpected failure of worker'() {
+        setup:
+            def failing = parser.withMonitor({ stats -> throw new IllegalStateException('boom') } as ParserMonitor)
+        when:
+            failing.parseAll((1..100).collect { 'a==1' })
+        then:
+            thrown IllegalStateException
+    }
+
+    def 'return unmodifiable list'() {
+        when:
+            parser.parseAll(['a==1']).add(null)
+        then:
+            thrown UnsupportedOperationException
+    }
+
+    def 'throw exception when #name is null'() {
+        when:
+            parser.parseAll(queries, executor)
+        then:
+            thrown IllegalArgumentException
+        where:
+            name       | queries          | executor
+            'queries'  | null             | Executors.newSingleThreadExecutor()
+            'query'    | ['a==1', null]   | Executors.newSingleThreadExecutor()
+            'executor' | ['a==1']         | null
+    }
+
+
+    void verifyResults(List<ParseResult> results, List<String> queries) {
+        results.eachWithIndex { result, i ->
+            assert result.query.is(queries[i])
+            try {
+                def expected = parser.parse(queries[i])
+                assert result.success
+                assert result.node == expected
+                assert result.get() == expected
+            } catch (RSQLParserException ex) {
+                assert !result.success
+                assert result.node == null
+                assert result.exception.message == ex.message
+            }
+        }
+    }
+}
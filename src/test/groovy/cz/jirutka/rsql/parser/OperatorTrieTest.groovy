@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser
+
+import cz.jirutka.rsql.parser.ast.ComparisonOperator
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static cz.jirutka.rsql.parser.OperatorTrie.NONE
+import static cz.jirutka.rsql.parser.OperatorTrie.ROOT
+import static cz.jirutka.rsql.parser.ast.RSQLOperators.*
+
+@Unroll
+class OperatorTrieTest extends Specification {
+
+    static final ALL = new ComparisonOperator('=all=', true)
+
+    def trie = new OperatorTrie(defaultOperators() + ALL)
+
+
+    def 'resolve operator for symbol: #symbol'() {
+        expect:
+            trie.operator(walk(symbol)) == expected
+        where:
+            symbol  | expected
+            '=='    | EQUAL
+            '!='    | NOT_EQUAL
+            '=gt='  | GREATER_THAN
+            '>'     | GREATER_THAN
+            '>='    | GREATER_THAN_OR_EQUAL
+            '<'     | LESS_THAN
+            '=le='  | LESS_THAN_OR_EQUAL
+            '=out=' | NOT_IN
+            '=all=' | ALL
+    }
+
+    def 'resolve no operator for unknown symbol or prefix: #symbol'() {
+        expect:
+            trie.operator(walk(symbol)) == null
+        where:
+            symbol << ['=', '=g', '=gt', '=GT=', '=foo=', '=alll=', '!', '=á=']
+    }
+
+    def 'stay in NONE state after a missing transition'() {
+        expect:
+            trie.next(trie.next(ROOT, 'x' as char), '=' as char) == NONE
+    }
+
+
+    def walk(String symbol) {
+        symbol.toCharArray().inject(ROOT) { state, ch -> trie.next(state, ch) }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser
+
+import spock.lang.Specification
+
+class ParserContextTest extends Specification {
+
+    def 'reuse context of the current thread'() {
+        when:
+            def first = ParserContext.acquire()
+            first.release()
+            def second = ParserContext.acquire()
+            second.release()
+        then:
+            first.is(second)
+    }
+
+    def 'create new context when the current one is in use'() {
+        when:
+            def first = ParserContext.acquire()
+            def second = ParserContext.acquire()
+        then:
+            !first.is(second)
+        cleanup:
+            second.release()
+            first.release()
+    }
+
+    def 'release reference to the parsed input'() {
+        setup:
+            def ctx = ParserContext.acquire()
+            def input = ctx.input('a==b')
+        when:
+            ctx.release()
+        then:
+            input.seq == null
+    }
+}
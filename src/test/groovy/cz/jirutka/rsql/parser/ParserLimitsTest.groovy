@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser
+
+import cz.jirutka.rsql.parser.ParserLimits.Limit
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.ByteBuffer
+
+import static cz.jirutka.rsql.parser.ast.RSQLOperators.defaultOperators
+
+@Unroll
+class ParserLimitsTest extends Specification {
+
+    def parser = new RSQLParser(defaultOperators())
+
+
+    def 'reject query exceeding #limit limit: #input'() {
+        setup:
+            def listener = [
+                startLogical: { op -> }, endLogical: { op -> }, startComparison: { sel, op -> },
+                argument: { arg -> }, endComparison: { -> } ] as RSQLListener
+            def limited = parser.withLimits(limits)
+        when:
+            limited.parse(input)
+        then:
+            def ex = thrown LimitExceededException
+            ex.limit == limit
+            ex.maxValue == max
+        when:
+            limited.parse(ByteBuffer.wrap(input.getBytes('UTF-8')), listener)
+        then:
+            ex = thrown LimitExceededException
+            ex.limit == limit
+        where:
+            input                      | limits                                  || limit                  | max
+            'a==b;c==d'                | new ParserLimits().withMaxLength(8)     || Limit.LENGTH           | 8
+            '(a==b,(c==d;e==f))'       | new ParserLimits().withMaxDepth(1)      || Limit.DEPTH            | 1
+            '(a==b)'                   | new ParserLimits().withMaxDepth(0)      || Limit.DEPTH            | 0
+            'a==b;c==d;e==f'           | new ParserLimits().withMaxNodes(3)      || Limit.NODES            | 3
+            'a==b,c==d;e==f'           | new ParserLimits().withMaxNodes(4)      || Limit.NODES            | 4
+            'a=in=(1,2,3)'             | new ParserLimits().withMaxArguments(2)  || Limit.ARGUMENTS        | 2
+            'a==abc;b==\'de\''         | new ParserLimits().withMaxArgumentsLength(6) || Limit.ARGUMENTS_LENGTH | 6
+    }
+
+    def 'parse query within limits: #input'() {
+        setup:
+            def limited = parser.withLimits(limits)
+        expect:
+            limited.parse(input) == parser.parse(input)
+        where:
+            input                      | limits
+            'a==b;c==d'                | new ParserLimits().withMaxLength(9)
+            '(a==b,(c==d;e==f))'       | new ParserLimits().withMaxDepth(2)
+            'a==b'                     | new ParserLimits().withMaxDepth(0)
+            'a==b;c==d;e==f'           | new ParserLimits().withMaxNodes(4)
+            'a=in=(1,2,3)'             | new ParserLimits().withMaxArguments(3)
+            'a==abc;b==\'de\''         | new ParserLimits().withMaxArgumentsLength(7)
+    }
+
+    def 'reject very deeply nested query without overflowing the stack (iterative: #iterative)'() {
+        setup:
+            def input = '(' * 100000 + 'a==b' + ')' * 100000
+        when:
+            parser.withIterativeParsing(iterative).withLimits(new ParserLimits().withMaxDepth(64)).parse(input.toString())
+        then:
+            def ex = thrown LimitExceededException
+            ex.limit == Limit.DEPTH
+        where:
+            iterative << [false, true]
+    }
+
+    def 'reject query exceeding limit before reading it'() {
+        when:
+            parser.withLimits(new ParserLimits().withMaxLength(3)).parse('a==b;(((')
+        then:
+            def ex = thrown LimitExceededException
+            ex.limit == Limit.LENGTH
+    }
+
+    def 'throw exception for #value in #method'() {
+        when:
+            new ParserLimits()."$method"(value)
+        then:
+            thrown IllegalArgumentException
+        where:
+            method                   | value
+            'withMaxLength'          | 0
+            'withMaxDepth'           | -1
+            'withMaxNodes'           | 0
+            'withMaxArguments'       | -5
+            'withMaxArgumentsLength' | 0
+    }
+
+    def 'keep limits in copies of parser'() {
+        setup:
+            def limits = new ParserLimits().withMaxNodes(1)
+        expect:
+            parser.limits == ParserLimits.NONE
+            parser.withLimits(limits).withCache(new QueryCache(10)).limits.is(limits)
+            parser.withLimits(limits).withLimits(null).limits == ParserLimits.NONE
+    }
+}
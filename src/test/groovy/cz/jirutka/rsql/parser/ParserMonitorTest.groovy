@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser
+
+import cz.jirutka.rsql.parser.ParseStatistics.FailureKind
+import cz.jirutka.rsql.parser.ast.ArgumentType
+import cz.jirutka.rsql.parser.ast.FlatTree
+import cz.jirutka.rsql.parser.ast.SelectorSchema
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static cz.jirutka.rsql.parser.ast.RSQLOperators.defaultOperators
+
+@Unroll
+class ParserMonitorTest extends Specification {
+
+    def reported = []
+    def monitor = { stats -> reported << stats } as ParserMonitor
+    def parser = new RSQLParser(defaultOperators()).withMonitor(monitor)
+
+
+    def 'report statistics of successful parse: #input'() {
+        when:
+            parser.withIterativeParsing(iterative).parse(input)
+        then:
+            reported.size() == 1
+            with (reported[0] as ParseStatistics) {
+                success
+                failure == null
+                failureKind == null
+                failureOffset == -1
+                inputLength == input.length()
+                tokenCount == tokens
+                nodeCount == nodes
+                maxDepth == depth
+                argumentCount == arguments
+                durationNanos >= 0
+            }
+        where:
+            input                          | iterative || tokens | nodes | depth | arguments
+            'a==b'                         | false     || 3      | 1     | 0     | 1
+            'a==b;c=in=(1,2)'              | false     || 11     | 3     | 0     | 3
+            '(a==b,(c==d;e==f)) and g==h ' | false     || 19     | 7     | 2     | 4
+            '(a==b,(c==d;e==f)) and g==h ' | true      || 19     | 7     | 2     | 4
+            '((a==b))'                     | true      || 7      | 1     | 2     | 1
+    }
+
+    def 'report the same statistics for parsing into listener: #input'() {
+        setup:
+            parser.parse(input)
+        when:
+            parser.parse(input, new FlatTree.Builder())
+        then:
+            with (reported[1] as ParseStatistics) {
+                success
+                tokenCount == reported[0].tokenCount
+                nodeCount == reported[0].nodeCount
+                maxDepth == reported[0].maxDepth
+                argumentCount == reported[0].argumentCount
+            }
+        where:
+            input << ['a==b', 'a==b;c=in=(1,2)', '(a==b,(c==d;e==f)) and g==h', 'a==1,(b==2,c==3)']
+    }
+
+    def 'report failure #kind at #offset: #input'() {
+        when:
+            parser.withLimits(new ParserLimits().withMaxDepth(2).withMaxLength(64)).parse(input)
+        then:
+            def ex = thrown RSQLParserException
+            reported.size() == 1
+            with (reported[0] as ParseStatistics) {
+                !success
+                failure.is(ex)
+                failureKind == kind
+                failureOffset == offset
+                inputLength == input.length()
+            }
+        where:
+            input                  || kind                         | offset
+            'a==b;'                || FailureKind.SYNTAX           | 5
+            'a==b;c=d'             || FailureKind.SYNTAX           | 8
+            'a==b;(c==d'           || FailureKind.SYNTAX           | 10
+            'a==b)'                || FailureKind.SYNTAX           | 4
+            'a==b;c=="d'           || FailureKind.SYNTAX           | 10
+            'a==b;c=foo=d'         || FailureKind.UNKNOWN_OPERATOR | 6
+            '(((a==b)))'           || FailureKind.LIMIT_EXCEEDED   | 2
+            'a==' + 'b' * 70       || FailureKind.LIMIT_EXCEEDED   | 0
+    }
+
+    def 'report invalid argument with its offset'() {
+        setup:
+            def schema = new SelectorSchema().withSelector('age', ArgumentType.LONG)
+        when:
+            parser.withSchema(schema).parse('name==Jo;age=in=(1,x)')
+        then:
+            thrown RSQLParserException
+            with (reported[0] as ParseStatistics) {
+                failureKind == FailureKind.INVALID_ARGUMENT
+                failureOffset == 19
+            }
+    }
+
+    def 'report too deeply nested query'() {
+        setup:
+            def input = new StringBuilder()
+            100000.times { input << '(' }
+            input << 'a==b'
+            100000.times { input << ')' }
+        when:
+            parser.parse(input.toString())
+        then:
+            thrown RSQLParserException
+            (reported[0] as ParseStatistics).failureKind == FailureKind.TOO_DEEP
+    }
+
+    def 'report failure of listener'() {
+        setup:
+            def listener = [
+                startLogical: { op -> }, endLogical: { op -> },
+                startComparison: { sel, op -> throw new IllegalStateException('boom') },
+                argument: { arg -> }, endComparison: { -> } ] as RSQLListener
+        when:
+            parser.parse('a==b', listener)
+        then:
+            thrown RSQLParserException
+            (reported[0] as ParseStatistics).failureKind == FailureKind.OTHER
+    }
+
+    def 'do not report cached results'() {
+        setup:
+            def cached = parser.withCache(new QueryCache(10))
+        when:
+            3.times { cached.parse('a==b') }
+        then:
+            reported.size() == 1
+    }
+
+    def 'propagate exception of monitor and release parser context'() {
+        setup:
+            def failing = parser.withMonitor({ stats -> throw new IllegalStateException('boom') } as ParserMonitor)
+        when:
+            failing.parse('a==b')
+        then:
+            thrown IllegalStateException
+        when:
+            def ctx = ParserContext.acquire()
+            ctx.release()
+        then:
+            ctx.is(ParserContext.acquire())
+        cleanup:
+            ctx?.release()
+    }
+
+    def 'keep monitor in copies of parser'() {
+        expect:
+            parser.monitor.is(monitor)
+            parser.withLimits(new ParserLimits()).monitor.is(monitor)
+            parser.withIterativeParsing(true).monitor.is(monitor)
+            new RSQLParser().monitor == null
+            parser.withMonitor(null).monitor == null
+    }
+}
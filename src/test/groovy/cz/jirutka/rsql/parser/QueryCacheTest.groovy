@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser
+
+import cz.jirutka.rsql.parser.ast.ComparisonNode
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+import static cz.jirutka.rsql.parser.ast.RSQLOperators.EQUAL
+
+class QueryCacheTest extends Specification {
+
+    def 'throw exception when created with non-positive maximum size'() {
+        when:
+            new QueryCache(size)
+        then:
+            thrown IllegalArgumentException
+        where:
+            size << [0, -1]
+    }
+
+    def 'count hits and misses'() {
+        setup:
+            def cache = new QueryCache(10)
+        when:
+            def first = cache.get('a==b')
+            cache.put('a==b', node(0))
+            def second = cache.get('a==b')
+        then:
+            first == null
+            second == node(0)
+            cache.hitCount == 1
+            cache.missCount == 1
+            cache.evictionCount == 0
+    }
+
+    def 'never exceed maximum size: #size'() {
+        setup:
+            def cache = new QueryCache(size)
+        when:
+            100.times { cache.put("q$it" as String, node(it)) }
+        then:
+            cache.size() == size
+            cache.evictionCount == 100 - size
+        where:
+            size << [1, 7, 16, 50]
+    }
+
+    def 'evict least recently used entries'() {
+        setup:
+            def cache = new QueryCache(2)  // i.e. two segments of size 1
+            def queries = (0..<100).collect { "q$it" as String }
+            def sameSegment = queries.findAll { cache.segmentFor(it).is(cache.segmentFor('q0')) }.take(2)
+        when:
+            cache.put(sameSegment[0], node(0))
+            cache.put(sameSegment[1], node(1))
+        then:
+            cache.get(sameSegment[0]) == null
+            cache.get(sameSegment[1]) == node(1)
+    }
+
+    def 'clear cached results'() {
+        setup:
+            def cache = new QueryCache(10)
+            cache.put('a==b', node(0))
+        when:
+            cache.clear()
+        then:
+            cache.size() == 0
+            cache.get('a==b') == null
+    }
+
+    def 'be safe under concurrent access'() {
+        setup:
+            def cache = new QueryCache(64)
+            def parser = new RSQLParser().withCache(cache)
+            def queries = (0..<128).collect { "sel==v${it % 100}" as String }
+            def executor = Executors.newFixedThreadPool(8)
+        when:
+            def futures = (0..<8).collect { thread ->
+                executor.submit({
+                    1000.times { i -> parser.parse(queries[(i * 7 + thread) % queries.size()]) }
+                } as Callable)
+            }
+            futures*.get()
+        then:
+            cache.hitCount + cache.missCount == 8000
+            cache.size() <= 64
+        cleanup:
+            executor.shutdown()
+    }
+
+
+    def node(int value) { new ComparisonNode(EQUAL, 'q', [value as String]) }
+}
@@ -0,0 +1,73 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser
+
+/**
+ * Generator of random (possibly invalid) queries for differential tests.
+ */
+class QueryGenerator {
+
+    static final SELECTORS = ['a', 'sel', 'and', 'or', 'n:x/y', 'č€😀', 'a\tb', 'a\\b', '*']
+
+    static final ARGUMENTS = ['1', 'val', 'and', '"x y"', "'it''", "'a\\'b'", '"\\\\"', '"a\\"b"',
+                              "'\\ž'", '"(,;)"', "''", 'ž*', '\t']
+
+    static final OPERATORS = ['==', '!=', '=gt=', '>', '>=', '<', '<=', '=in=', '=out=', '=foo=', '=Lt=']
+
+    static final NOISE = [' ', '\t', '(', ')', ';', ',', ' and ', ' or ', '=', '!', '~', '<', '"', "'",
+                          '\\', 'x', 'č', ' an', 'or ', '==']
+
+    static String query(Random random, int depth) {
+        def parts = (0..random.nextInt(3)).collect {
+            depth > 0 && random.nextInt(3) == 0
+                ? "(${query(random, depth - 1)})"
+                : comparison(random)
+        }
+        def glues = [';', ',', ' and ', ' or ', ' ;', ', ']
+        parts.inject { acc, part -> acc + pick(random, glues) + part }
+    }
+
+    static String comparison(Random random) {
+        def args = (0..random.nextInt(3)).collect { pick(random, ARGUMENTS) }
+        def argsStr = args.size() == 1 && random.nextBoolean() ? args[0] : "(${args.join(pick(random, [',', ' or ', ' , ']))})"
+
+        pick(random, SELECTORS) + pick(random, OPERATORS) + argsStr
+    }
+
+    static String mutate(Random random, String input, int count) {
+        count.times {
+            def pos = random.nextInt(input.length() + 1)
+            switch (random.nextInt(3)) {
+                case 0: input = input.substring(0, pos) + pick(random, NOISE) + input.substring(pos); break
+                case 1: input = input.substring(0, pos) + input.substring(Math.min(pos + 1, input.length())); break
+                case 2: input = input.substring(0, pos); break
+            }
+        }
+        input
+    }
+
+    static pick(Random random, List list) {
+        list[random.nextInt(list.size())]
+    }
+}
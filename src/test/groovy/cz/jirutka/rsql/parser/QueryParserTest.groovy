@@ -0,0 +1,172 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser
+
+import cz.jirutka.rsql.parser.ast.NodesFactory
+import cz.jirutka.rsql.parser.javacc.Parser
+import cz.jirutka.rsql.parser.javacc.StringCharStream
+import cz.jirutka.rsql.parser.javacc.TokenMgrError
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static cz.jirutka.rsql.parser.ast.RSQLOperators.defaultOperators
+
+/**
+ * Differential tests of the hand-written {@link QueryParser} against the JavaCC generated
+ * {@link Parser}.
+ */
+@Unroll
+class QueryParserTest extends Specification {
+
+    def factory = new NodesFactory(defaultOperators())
+
+    def operators = new OperatorTrie(defaultOperators())
+
+
+    def 'parse the same as JavaCC parser: #input'() {
+        expect:
+            result(input) == javaccResult(input)
+            result(input, true) == javaccResult(input)
+        where:
+            input << [
+                'a==b', 'a==b;c==d', 'a==b,c==d', 'a==b and c==d', 'a==b or c==d', 'a==b  and  c==d',
+                'a==b and(c==d)', 'a==b andc==d', 'a==b and', ' a==b ', '\ta==b', 'a==b\t', '\t\ta==b',
+                'a==b\t;c==d', 'a\t==b', 'a=in=(b or c)', 'a=in=(b and c)', 'a=in=( b , c )',
+                'a=in=(b,c', 'a=in=()', 'a==(b)', 'a==(b,c)', 'a=gt', 'a=gt=', 'a=g1=b', 'a=', 'a!b',
+                'a!=b', 'a<b', 'a<=b', 'a>=b', 'a=<b', 'a===b', 'a=foo=b', 'a=foo=b~', 'a=foo=(b;',
+                "a=='b", 'a=="b\\"', "a=='b\\'c'", 'a=="b"c', "a=='b''c'", '(a==b', 'a==b)', '()',
+                '((a==b))', '(a==b;(c==d,e==f));g==h', 'a==b;;c==d', ';a==b', 'a==b,', 'a~=b', '~',
+                '', ' ', '\t', 'a==😀', 'a==b\r\nc', 'a==b and c==d'
+            ]
+    }
+
+    def 'parse the same as JavaCC parser: generated queries with seed #seed'() {
+        setup:
+            def random = new Random(seed)
+        expect:
+            1000.times {
+                def input = QueryGenerator.mutate(random, QueryGenerator.query(random, 3), random.nextInt(3))
+                def actual = result(input)
+                assert actual == javaccResult(input) : "input: $input"
+                assert actual == result(input, true) : "iterative: $input"
+
+                def bytes = input.getBytes('UTF-8')
+                if (new String(bytes, 'UTF-8') == input) {  // i.e. the mutation didn't split a surrogate pair
+                    assert actual == result(bytes) : "UTF-8 input: $input"
+                }
+            }
+        where:
+            seed << (1..10)
+    }
+
+
+    def 'reuse parser after failed parse: #failing (iterative: #iterative)'() {
+        setup:
+            def parser = new QueryParser()
+            def parse = { String input -> parser.parse(new ParserInput.CharSequenceInput().reset(input), factory, operators, ParserLimits.NONE, iterative) }
+        when:
+            parse(failing)
+        then:
+            thrown ParseException
+        expect:
+            parse('a=in=(x,y)') == parse('(a=in=(x,y))')
+            parse('a=in=(x,y)').arguments == ['x', 'y']
+            parse('a==b;(c==d,e==f)') == parse('((a==b;((c==d),e==f)))')
+        where:
+            [failing, iterative] << [['a=in=(b,c', '(a==b;(c==d,e==f', 'a==b,c=in=(d;', '((((a==b'], [false, true]].combinations()
+    }
+
+    def 'not extract argument that exceeds the length limit (iterative: #iterative)'() {
+        setup:
+            def input = new RecordingInput('a==b;c==' + 'x' * 1000)
+            def limits = new ParserLimits().withMaxArgumentsLength(10)
+        when:
+            new QueryParser().parse(input, factory, operators, limits, iterative)
+        then:
+            thrown LimitExceededException
+            input.substrings == ['a', 'b', 'c']
+        where:
+            iterative << [false, true]
+    }
+
+    def 'parse very deeply nested query in iterative mode'() {
+        setup:
+            def depth = 100000
+            def input = new StringBuilder()
+            depth.times { input << '(a==' << it << ';' }
+            input << 'b==c'
+            depth.times { input << ')' }
+        when:
+            def node = new QueryParser().parse(new ParserInput.CharSequenceInput().reset(input.toString()), factory, operators, ParserLimits.NONE, true)
+        then:
+            depth.times {
+                assert node.children[0].arguments == [it as String]
+                node = node.children[1]
+            }
+            node.selector == 'b'
+    }
+
+
+    //////// Helpers ////////
+
+    static class RecordingInput extends ParserInput {
+        final String query
+        final List<String> substrings = []
+
+        RecordingInput(String query) { this.query = query }
+
+        int length() { query.length() }
+
+        char charAt(int index) { query.charAt(index) }
+
+        String substring(int begin, int end) { substrings << query.substring(begin, end); substrings.last() }
+
+        void clear() {}
+    }
+
+    def result(input, boolean iterative = false) {
+        outcome {
+            def parserInput = input instanceof byte[]
+                ? new ParserInput.Utf8ArrayInput().reset(input, 0, input.length)
+                : new ParserInput.CharSequenceInput().reset(input)
+            new QueryParser().parse(parserInput, factory, operators, ParserLimits.NONE, iterative)
+        }
+    }
+
+    def javaccResult(String input) {
+        outcome { new Parser(new StringCharStream(input), factory).Input() }
+    }
+
+    def outcome(Closure parse) {
+        try {
+            parse()
+        } catch (UnknownOperatorException ex) {
+            "unknown operator: ${ex.operator}"
+        } catch (ParseException | cz.jirutka.rsql.parser.javacc.ParseException | TokenMgrError ex) {
+            'syntax error'
+        } catch (IllegalArgumentException ex) {
+            "invalid: ${ex.message}"
+        }
+    }
+}
@@ -200,6 +200,32 @@ class RSQLParserTest extends Specification {
             '((s0==a0));s1==a1'                      | and(eq('s0', 'a0'), eq('s1','a1'))
     }
 
+    def 'parse queries with parenthesis in iterative mode: #input'() {
+        expect:
+            new RSQLParser().withIterativeParsing(true).parse(input) == parse(input)
+        where:
+            input << ['(s0==a0,s1==a1);s2==a2', '((s0==a0,s1==a1);s2==a2,s3==a3);s4==a4', '((s0==a0));s1==a1']
+    }
+
+    def 'parse deeply nested query in iterative mode'() {
+        setup:
+            def input = '(' * 100000 + 'a==b' + ')' * 100000
+        expect:
+            new RSQLParser().withIterativeParsing(true).parse(input.toString()) == eq('a', 'b')
+    }
+
+    def 'throw RSQLParserException for query nested too deeply for recursive mode'() {
+        setup:
+            def input = '(' * 1000000 + 'a==b' + ')' * 1000000
+        when:
+            new RSQLParser().parse(input.toString())
+        then:
+            def ex = thrown RSQLParserException
+            ex.cause instanceof StackOverflowError
+        expect:
+            parse('(a==b)') == eq('a', 'b')
+    }
+
     def 'throw exception for unclosed parenthesis: #input'() {
         when:
             parse(input)
@@ -224,11 +250,210 @@ class RSQLParserTest extends Specification {
         then:
             def ex = thrown(RSQLParserException)
             ex.cause instanceof UnknownOperatorException
+            ex.cause.operator == '=ge='
+            ex.cause.message == 'Unknown operator: =ge='
+    }
+
+
+    def 'parse query given as #type'() {
+        setup:
+            def query = 'název=="Příliš \\"žluťoučký\\" kůň";city=in=(Plzeň,\'Ústí n. L.\') or emoji==☺😀'
+            def expected = or(
+                and(eq('název', 'Příliš "žluťoučký" kůň'), new ComparisonNode(IN, 'city', ['Plzeň', 'Ústí n. L.'])),
+                eq('emoji', '☺😀'))
+        expect:
+            parse(new RSQLParser(), input(query)) == expected
+        where:
+            type                | input
+            'StringBuilder'     | { new StringBuilder(it) }
+            'char[] slice'      | { ('xx' + it + 'yy').toCharArray() }
+            'UTF-8 byte[]'      | { it.getBytes('UTF-8') }
+            'byte[] slice'      | { ('xx' + it + 'yy').getBytes('UTF-8') }
+            'heap ByteBuffer'   | { java.nio.ByteBuffer.wrap(('xx' + it).getBytes('UTF-8')).position(2) }
+            'direct ByteBuffer' | { def b = it.getBytes('UTF-8'); java.nio.ByteBuffer.allocateDirect(b.length).put(b).flip() }
+    }
+
+    def 'throw exception for invalid query given as #type'() {
+        when:
+            parse(new RSQLParser(), input)
+        then:
+            thrown RSQLParserException
+        where:
+            type           | input
+            'char[] slice' | 'sel==(a,b'.toCharArray()
+            'UTF-8 byte[]' | 'sel==a;'.getBytes('UTF-8')
+    }
+
+    def 'throw exception when array slice is out of bounds'() {
+        when:
+            new RSQLParser().parse('sel==val'.toCharArray(), 5, 4)
+        then:
+            thrown IndexOutOfBoundsException
+    }
+
+    def 'leave position of ByteBuffer unchanged'() {
+        setup:
+            def buffer = java.nio.ByteBuffer.wrap('sel==val'.getBytes('UTF-8'))
+        when:
+            new RSQLParser().parse(buffer)
+        then:
+            buffer.position() == 0
+            buffer.remaining() == 8
+    }
+
+
+    def 'use cached result for repeated query'() {
+        setup:
+            def cache = new QueryCache(10)
+            def parser = new RSQLParser().withCache(cache)
+        when:
+            def first = parser.parse('a==b;c=in=(d,e)')
+            def second = parser.parse('a==b;c=in=(d,e)')
+        then:
+            first.is(second)
+            first == and(eq('a', 'b'), new ComparisonNode(IN, 'c', ['d', 'e']))
+            cache.hitCount == 1
+            cache.missCount == 1
+    }
+
+    def 'throw new exception for cached failure: #desc'() {
+        setup:
+            def parser = new RSQLParser().withLimits(new ParserLimits().withMaxNodes(2))
+                    .withCache(new QueryCache(10))
+        when:
+            parser.parse(query)
+        then:
+            def first = thrown(RSQLParserException)
+        when:
+            parser.parse(query)
+        then:
+            def second = thrown(RSQLParserException)
+            !second.is(first)
+            second.class == first.class
+            second.message == first.message
+            second.cause?.class == first.cause?.class
+            second.cause?.message == first.cause?.message
+            second.stackTrace.any { it.methodName == 'parseCached' }
+            parser.cache.hitCount == 1
+            parser.cache.size() == 1
+        where:
+            desc                | query
+            'syntax error'      | 'a==b;'
+            'lexical error'     | 'a==b;c'
+            'unknown operator'  | 'a=foo=b'
+            'limit exceeded'    | 'a==b;c==d;e==f'
+    }
+
+    def 'not cache failure of argument conversion'() {
+        setup:
+            def parser = new RSQLParser()
+                    .withSchema(new SelectorSchema().withSelector('a', ArgumentType.LONG))
+                    .withCache(new QueryCache(10))
+        when:
+            parser.parse('a==x')
+        then:
+            thrown RSQLParserException
+            parser.cache.size() == 0
+    }
+
+    def 'not share cache with copy created by #method'() {
+        setup:
+            def parser = new RSQLParser().withCache(new QueryCache(10))
+        expect:
+            parser.cache != null
+            copy.call(parser).cache == null
+            parser.withMonitor(Mock(ParserMonitor)).cache.is(parser.cache)
+        where:
+            method                  | copy
+            'withInterner'          | { it.withInterner(new NodeInterner()) }
+            'withSchema'            | { it.withSchema(new SelectorSchema()) }
+            'withLimits'            | { it.withLimits(new ParserLimits()) }
+            'withIterativeParsing'  | { it.withIterativeParsing(true) }
+    }
+
+    def 'enforce limits of copy of parser with cache'() {
+        setup:
+            def parser = new RSQLParser().withCache(new QueryCache(10))
+            def strict = parser.withLimits(new ParserLimits().withMaxNodes(2))
+        when:
+            parser.parse('a==1;b==2;c==3')
+            strict.parse('a==1;b==2;c==3')
+        then:
+            thrown LimitExceededException
+    }
+
+
+    def 'share equal subtrees of parsed queries when interning'() {
+        setup:
+            def parser = new RSQLParser().withInterner(new NodeInterner())
+        when:
+            def first = parser.parse('(a==b,c=in=(d,e));f==g')
+            def second = parser.parse('x==y,(a==b,c=in=(d,e))')
+        then:
+            second.children[1].is(first.children[0])
+            parser.parse('(a==b,c=in=(d,e));f==g').is(first)
+    }
+
+
+    def 'convert arguments according to schema'() {
+        setup:
+            def parser = new RSQLParser().withSchema(new SelectorSchema().withSelector('age', ArgumentType.LONG))
+        when:
+            def node = parser.parse('name==Flynn;age=in=(27,32)')
+        then:
+            node.children[0].typedArguments == null
+            node.children[1].typedArguments.getLong(1) == 32L
+    }
+
+    def 'throw exception with position of argument that cannot be converted'() {
+        setup:
+            def parser = new RSQLParser().withSchema(new SelectorSchema().withSelector('age', ArgumentType.LONG))
+        when:
+            parser.parse('name==Flynn;age=in=(27, old)')
+        then:
+            def ex = thrown(RSQLParserException)
+            ex.cause instanceof InvalidArgumentException
+            ex.cause.column == 25
+            ex.cause.selector == 'age'
+            ex.cause.argument == 'old'
+    }
+
+
+    def 'parse query given as #type into listener'() {
+        setup:
+            def events = []
+            def listener = [
+                startLogical: { events << it }, endLogical: { events << it },
+                startComparison: { sel, op -> events << sel }, argument: { events << it }, endComparison: { }
+            ] as RSQLListener
+        when:
+            new RSQLParser().parse(input, listener)
+        then:
+            events == [LogicalOperator.OR, 'a', 'b', 'č', 'd', 'e', LogicalOperator.OR]
+        where:
+            type         | input
+            'String'     | 'a==b,č=in=(d,e)'
+            'ByteBuffer' | java.nio.ByteBuffer.wrap('a==b,č=in=(d,e)'.getBytes('UTF-8'))
+    }
+
+    def 'throw exception for invalid query parsed into listener'() {
+        when:
+            new RSQLParser().parse('a==b,c=in=(d', Mock(RSQLListener))
+        then:
+            thrown RSQLParserException
     }
 
 
     //////// Helpers ////////
 
+    def parse(RSQLParser parser, input) {
+        switch (input) {
+            case char[]: return parser.parse(input, 2, input.length - 4)
+            case byte[]: return input[0] == 'x' as char ? parser.parse(input, 2, input.length - 4) : parser.parse(input)
+            default    : return parser.parse(input)
+        }
+    }
+
     def parse(String rsql) { new RSQLParser().parse(rsql) }
 
     def and(Node... nodes) { new AndNode(nodes as List) }
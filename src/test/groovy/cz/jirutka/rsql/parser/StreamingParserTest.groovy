@@ -0,0 +1,194 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser
+
+import cz.jirutka.rsql.parser.ast.*
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static cz.jirutka.rsql.parser.ast.RSQLOperators.*
+
+/**
+ * Differential tests of the {@link StreamingParser} against the {@link QueryParser}; the events
+ * are assembled back into AST.
+ */
+@Unroll
+class StreamingParserTest extends Specification {
+
+    def factory = new NodesFactory(defaultOperators())
+
+    def operators = new OperatorTrie(defaultOperators())
+
+    def streaming = new StreamingParser()
+
+
+    def 'report events in order'() {
+        setup:
+            def events = []
+            def listener = [
+                startLogical: { events << "start $it" },
+                endLogical: { events << "end $it" },
+                startComparison: { sel, op -> events << "$sel$op" },
+                argument: { events << it },
+                endComparison: { events << 'end' }
+            ] as RSQLListener
+        when:
+            new StreamingParser().parse(new ParserInput.CharSequenceInput().reset('a==1;(b=in=(2,"3"),((c!=4)))'), operators, ParserLimits.NONE, listener)
+        then:
+            events*.toString() == [
+                'start ;', 'a==', '1', 'end', 'start ,', 'b=in=', '2', '3', 'end', 'c!=', '4', 'end', 'end ,', 'end ;'
+            ]
+    }
+
+    def 'produce the same tree as QueryParser: #input'() {
+        expect:
+            streamed(input) == parsed(input)
+        where:
+            input << [
+                'a==b', 'a==b;c==d', 'a==b,c==d', 'a==b,c==d;e==f', 'a==b;c==d,e==f', '(a==b,c==d);e==f',
+                '((a==b))', '(a==b;(c==d,e==f));g==h', 'a=in=(b,c),d=out=(e,f);g==h', 'a==b and c==d or e==f',
+                'a==b;', ';a==b', 'a==b)', '(a==b', 'a=foo=(b,c)', 'a=foo=(b,c', 'a==(b;c)', 'a==b;(c==d,"e',
+                '', '()', 'a==b,(c==d;e==f),g==h;(i==j)'
+            ]
+    }
+
+    def 'produce the same tree as QueryParser: generated queries with seed #seed'() {
+        setup:
+            def random = new Random(seed)
+        expect:
+            1000.times {
+                def input = QueryGenerator.mutate(random, QueryGenerator.query(random, 3), random.nextInt(2))
+                assert streamed(input) == parsed(input) : "input: $input"
+            }
+        where:
+            seed << (1..5)
+    }
+
+    def 'parse huge argument list without retaining arguments'() {
+        setup:
+            def count = 0
+            def listener = [
+                startLogical: {}, endLogical: {}, startComparison: { s, o -> }, argument: { count++ }, endComparison: {}
+            ] as RSQLListener
+            def query = 'id=in=(' + (1..50000).join(',') + ')'
+        when:
+            new StreamingParser().parse(new ParserInput.CharSequenceInput().reset(query), operators, ParserLimits.NONE, listener)
+        then:
+            count == 50000
+    }
+
+
+    def 'read each char of right-nested query #depth levels deep a constant number of times'() {
+        setup:
+            def query = ('a==1;(' * depth) + 'b==2' + (')' * depth)
+            def input = new CountingInput(query)
+            def listener = [
+                startLogical: {}, endLogical: {}, startComparison: { s, o -> }, argument: {}, endComparison: {}
+            ] as RSQLListener
+        when:
+            streaming.parse(input, operators, ParserLimits.NONE, listener)
+        then:
+            input.reads < 8 * query.length()
+        where:
+            depth << [10, 1000]
+    }
+
+    def 'reuse parser for query with different groups'() {
+        expect:
+            streamed('(a==1;(b==2,c==3));d==4') == parsed('(a==1;(b==2,c==3));d==4')
+            streamed('(a==1,b==2);(c==3;d==4)') == parsed('(a==1,b==2);(c==3;d==4)')
+            streamed('((a==1') == parsed('((a==1')
+            streamed('(a==1);((b==2),c==3)') == parsed('(a==1);((b==2),c==3)')
+    }
+
+
+    //////// Helpers ////////
+
+    static class CountingInput extends ParserInput {
+        final String query
+        int reads = 0
+
+        CountingInput(String query) { this.query = query }
+
+        int length() { query.length() }
+
+        char charAt(int index) { reads++; query.charAt(index) }
+
+        String substring(int begin, int end) { query.substring(begin, end) }
+
+        void clear() {}
+    }
+
+    def parsed(String input) {
+        outcome { new QueryParser().parse(new ParserInput.CharSequenceInput().reset(input), factory, operators, ParserLimits.NONE, false) }
+    }
+
+    def streamed(String input) {
+        outcome {
+            def builder = new TreeBuilder()
+            streaming.parse(new ParserInput.CharSequenceInput().reset(input), operators, ParserLimits.NONE, builder)
+            builder.result()
+        }
+    }
+
+    def outcome(Closure parse) {
+        try {
+            parse()
+        } catch (UnknownOperatorException ex) {
+            "unknown operator: ${ex.operator}"
+        } catch (ParseException ex) {
+            "syntax error: ${ex.message}"
+        } catch (IllegalArgumentException ex) {
+            "invalid: ${ex.message}"
+        }
+    }
+
+    static class TreeBuilder implements RSQLListener {
+
+        def stack = [[]]
+        def comparison
+
+        void startLogical(LogicalOperator operator) { stack.push([]) }
+
+        void endLogical(LogicalOperator operator) {
+            def children = stack.pop()
+            stack.last() << (operator == LogicalOperator.AND ? new AndNode(children) : new OrNode(children))
+        }
+
+        void startComparison(String selector, ComparisonOperator operator) {
+            comparison = [selector: selector, operator: operator, args: []]
+        }
+
+        void argument(String argument) { comparison.args << argument }
+
+        void endComparison() {
+            stack.last() << new ComparisonNode(comparison.operator, comparison.selector, comparison.args)
+        }
+
+        Node result() {
+            assert stack.size() == 1 && stack[0].size() == 1
+            stack[0][0]
+        }
+    }
+}
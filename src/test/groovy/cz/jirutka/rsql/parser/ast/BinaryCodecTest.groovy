@@ -0,0 +1,222 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.ast
+
+import cz.jirutka.rsql.parser.QueryGenerator
+import cz.jirutka.rsql.parser.RSQLParser
+import cz.jirutka.rsql.parser.RSQLParserException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static cz.jirutka.rsql.parser.ast.RSQLOperators.*
+
+@Unroll
+class BinaryCodecTest extends Specification {
+
+    def parser = new RSQLParser()
+
+    def codec = new BinaryCodec(defaultOperators())
+
+
+    def 'encode and decode: #input'() {
+        setup:
+            def node = parser.parse(input)
+        expect:
+            codec.decode(codec.encode(node)) == node
+        where:
+            input << [
+                'a==b', 'a==b;c=in=(d,e)', 'a==b,c==d;e==f', '(a==b,c==d);(e=out=(f,"g h"),i<j)',
+                'a=in=(b,b,b)', 'name=="Kill Bill";year=gt=2003', 'a==😀;ž=in=(č,"")', 'a=ge=b;a>=b'
+            ]
+    }
+
+    def 'encode and decode generated queries with seed #seed'() {
+        setup:
+            def random = new Random(seed)
+        expect:
+            200.times {
+                def input = QueryGenerator.query(random, 4)
+                def node
+                try {
+                    node = parser.parse(input)
+                } catch (RSQLParserException ex) {
+                    return  // the generator produces also invalid queries
+                }
+                assert codec.decode(codec.encode(node)) == node : "input: $input"
+            }
+        where:
+            seed << (1..5)
+    }
+
+    def 'encode node with empty children'() {
+        setup:
+            def node = new AndNode([new OrNode([]), new ComparisonNode(EQUAL, 'a', ['b'])])
+        expect:
+            codec.decode(codec.encode(node)) == node
+    }
+
+    def 'encode and decode with schema'() {
+        setup:
+            def schema = new SelectorSchema().withSelector('year', ArgumentType.LONG)
+            def node = parser.withSchema(schema).parse('name=="Kill Bill";year=in=(2003,2004)')
+        when:
+            def decoded = codec.withSchema(schema).decode(codec.encode(node))
+        then:
+            decoded == node
+            decoded.children[1].typedArguments.getLong(1) == 2004L
+        and:
+            codec.decode(codec.encode(node)) != node
+    }
+
+    def 'decode into the interned nodes'() {
+        setup:
+            def interner = new NodeInterner()
+            def node = parser.withInterner(interner).parse('a==b;c=in=(d,e)')
+        expect:
+            codec.withInterner(interner).decode(codec.encode(node)).is(node)
+    }
+
+    def 'throw exception when decoded argument cannot be converted'() {
+        setup:
+            def bytes = codec.encode(parser.parse('year==abc'))
+        when:
+            codec.withSchema(new SelectorSchema().withSelector('year', ArgumentType.LONG)).decode(bytes)
+        then:
+            thrown ArgumentConversionException
+    }
+
+    def 'store each operator symbol and string only once'() {
+        setup:
+            def bytes = codec.encode(parser.parse('selector==argument;selector!=argument;selector==x'))
+            def text = new String(bytes, 'ISO-8859-1')
+        expect:
+            text.count('selector') == 1
+            text.count('argument') == 1
+            text.count('==') == 1
+            text.startsWith('RQ\u0001')
+    }
+
+    def 'decode #desc like the JDK decoder'() {
+        setup:
+            def utf8 = bytes as byte[]
+            def placeholder = 'X' * utf8.length
+            def encoded = codec.encode(parser.parse("a==$placeholder"))
+            def at = new String(encoded, 'ISO-8859-1').indexOf(placeholder)
+            System.arraycopy(utf8, 0, encoded, at, utf8.length)
+        expect:
+            codec.decode(encoded).arguments == [new String(utf8, 'UTF-8')]
+        where:
+            desc                        | bytes
+            'valid 2-byte sequence'     | [0x61, 0xC5, 0xBE]
+            'valid 3-byte sequence'     | [0xE2, 0x82, 0xAC, 0x61]
+            'valid 4-byte sequence'     | [0xF4, 0x8F, 0xBF, 0xBF]
+            'overlong 2-byte NUL'       | [0x61, 0xC0, 0x80]
+            'overlong 2-byte sequence'  | [0xC1, 0xBF, 0x61]
+            'overlong 3-byte NUL'       | [0xE0, 0x80, 0x80]
+            'overlong 3-byte sequence'  | [0xE0, 0x9F, 0xBF]
+            'overlong 4-byte sequence'  | [0xF0, 0x8F, 0xBF, 0xBF]
+            'high surrogate'            | [0xED, 0xA0, 0x80]
+            'low surrogate'             | [0x61, 0xED, 0xBF, 0xBF]
+            'code point above U+10FFFF' | [0xF4, 0x90, 0x80, 0x80]
+            'lead byte 0xF5'            | [0xF5, 0x80, 0x80, 0x80]
+            'lead byte 0xF7'            | [0xF7, 0xBF, 0xBF, 0xBF]
+            'truncated sequence'        | [0x61, 0xE2, 0x82]
+    }
+
+    def 'decode slice of array'() {
+        setup:
+            def node = parser.parse('a==b;c==d')
+            def encoded = codec.encode(node)
+            def bytes = new byte[encoded.length + 4]
+            System.arraycopy(encoded, 0, bytes, 2, encoded.length)
+        expect:
+            codec.decode(bytes, 2, encoded.length) == node
+    }
+
+    def 'encode and decode very deeply nested tree without overflowing the stack'() {
+        setup:
+            def depth = 100000
+            def input = new StringBuilder()
+            depth.times { input << '(a==' << it << ';' }
+            input << 'b==c'
+            depth.times { input << ')' }
+        when:
+            def node = codec.decode(codec.encode(parser.withIterativeParsing(true).parse(input.toString())))
+        then:
+            depth.times {
+                assert node.children[0].arguments == [it as String]
+                node = node.children[1]
+            }
+            node.selector == 'b'
+    }
+
+    def 'throw exception for truncated input'() {
+        setup:
+            def bytes = codec.encode(parser.parse('a==b;(c=in=(d,e),f!=g)'))
+        expect:
+            (0..<bytes.length).each { length ->
+                try {
+                    codec.decode(bytes, 0, length)
+                    assert false : "decoded truncated input of length $length"
+                } catch (IllegalArgumentException ex) {
+                    // expected
+                }
+            }
+    }
+
+    def 'throw exception for malformed input: #desc'() {
+        when:
+            codec.decode(bytes as byte[])
+        then:
+            def ex = thrown IllegalArgumentException
+            ex.message.contains(message)
+        where:
+            desc                | bytes                                          | message
+            'wrong magic'       | [0x52, 0x53, 1, 0, 0, 0, 0]                    | 'Not an encoded'
+            'wrong version'     | [0x52, 0x51, 9, 0, 0, 0, 0]                    | 'Unsupported version'
+            'unknown operator'  | [0x52, 0x51, 1, 1, 3, 0x3d, 0x78, 0x3d, 0]     | 'Unknown operator: =x='
+            'invalid operator'  | [0x52, 0x51, 1, 0, 0, 2, 0, 1, 0]              | 'invalid operator index'
+            'invalid string'    | [0x52, 0x51, 1, 1, 2, 0x3d, 0x3d, 0, 2, 0, 1, 0] | 'invalid string index'
+            'huge count'        | [0x52, 0x51, 1, 0, 0xff, 0xff, 0xff, 0xff, 7]  | 'invalid count'
+            'trailing bytes'    | [0x52, 0x51, 1, 0, 0, 0, 0, 0]                 | 'unexpected bytes'
+    }
+
+    def 'throw exception for null'() {
+        when:
+            codec.decode(null)
+        then:
+            thrown IllegalArgumentException
+        when:
+            codec.encode(null)
+        then:
+            thrown IllegalArgumentException
+    }
+
+    def 'throw exception when slice is out of bounds'() {
+        when:
+            codec.decode(new byte[4], 2, 3)
+        then:
+            thrown IndexOutOfBoundsException
+    }
+}
@@ -59,4 +59,32 @@ class ComparisonNodeTest extends Specification {
         then: "node's arguments remains unchanged"
             node.getArguments() == ['thriller', 'sci-fi']
     }
+
+    def 'read arguments without copying'() {
+        given:
+            def node = new ComparisonNode(IN, 'genres', ['thriller', 'sci-fi'])
+
+        expect:
+            node.argumentCount == 2
+            node.getArgument(0) == 'thriller'
+            node.getArgument(1) == 'sci-fi'
+            node.argumentsView == ['thriller', 'sci-fi']
+            node.argumentsView.is(node.argumentsView)
+
+        when:
+            node.argumentsView << 'horror'
+        then:
+            thrown UnsupportedOperationException
+
+        when:
+            node.getArgument(2)
+        then:
+            thrown IndexOutOfBoundsException
+
+        expect: 'the view is shared with copies of the node'
+            node.withOperator(NOT_IN).argumentsView.is(node.argumentsView)
+            node.withSelector('foo').argumentsView.is(node.argumentsView)
+            node.withArguments(node.argumentsView).argumentsView.is(node.argumentsView)
+            node.withArguments(node.argumentsView) == node
+    }
 }
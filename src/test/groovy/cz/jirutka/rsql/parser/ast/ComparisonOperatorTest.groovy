@@ -47,4 +47,21 @@ class ComparisonOperatorTest extends Specification {
         expect:
             new ComparisonOperator('=out=', '=notin=') == new ComparisonOperator('=out=', '=notin=', true)
     }
+
+    def 'read symbols without copying'() {
+        given:
+            def symbols = ['=out=', '=notin='] as String[]
+            def op = new ComparisonOperator(symbols, true)
+        expect:
+            op.symbolsView == ['=out=', '=notin=']
+            op.symbolsView.is(op.symbolsView)
+        when:
+            op.symbolsView.set(0, '=foo=')
+        then:
+            thrown UnsupportedOperationException
+        when: 'modify the original array'
+            symbols[0] = '=foo='
+        then:
+            op.symbolsView == ['=out=', '=notin=']
+    }
 }
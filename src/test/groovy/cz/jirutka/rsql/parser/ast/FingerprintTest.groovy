@@ -0,0 +1,164 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.ast
+
+import cz.jirutka.rsql.parser.QueryGenerator
+import cz.jirutka.rsql.parser.RSQLParser
+import cz.jirutka.rsql.parser.RSQLParserException
+import cz.jirutka.rsql.parser.sql.StandardSQLDialect
+import spock.lang.Specification
+import spock.lang.Unroll
+
+@Unroll
+class FingerprintTest extends Specification {
+
+    static final PARSER = new RSQLParser()
+
+
+    def 'have the same shape: #a and #b'() {
+        expect:
+            Fingerprint.ofShape(parse(a)) == Fingerprint.ofShape(parse(b))
+            Fingerprint.of(parse(a)) != Fingerprint.of(parse(b))
+        where:
+            a                           | b
+            'status==A;age=gt=30'       | 'status==B;age=gt=41'
+            'a=in=(1,2,3)'              | 'a=in=(x,y,z)'
+            '(a==1,b==2);c=="x y"'      | '(a==3,b==4);c==z'
+    }
+
+    def 'have different shapes: #a and #b'() {
+        expect:
+            Fingerprint.ofShape(parse(a)) != Fingerprint.ofShape(parse(b))
+        where:
+            a                     | b
+            'a==1'                | 'b==1'
+            'a==1'                | 'a!=1'
+            'a==1;b==1'           | 'a==1,b==1'
+            'a==1;b==1'           | 'b==1;a==1'
+            'a=in=(1,2)'          | 'a=in=(1,2,3)'
+            '(a==1;b==1),c==1'    | 'a==1;(b==1,c==1)'
+            '(a==1,b==1),c==1'    | 'a==1,(b==1,c==1)'
+            'ab==1'               | 'a==1'
+    }
+
+    def 'bucket number of arguments: #a and #b'() {
+        expect:
+            (Fingerprint.ofShape(parse(a), true) == Fingerprint.ofShape(parse(b), true)) == same
+            Fingerprint.ofShape(parse(a)) != Fingerprint.ofShape(parse(b))
+        where:
+            a                         | b                           || same
+            'a=in=(1,2,3)'            | 'a=in=(1,2,3,4)'            || true
+            'a=in=(1,2,3,4,5)'        | 'a=in=(1,2,3,4,5,6,7,8)'    || true
+            'a=in=(1,2)'              | 'a=in=(1,2,3)'              || false
+            'a=in=(1)'                | 'a=in=(1,2)'                || false
+    }
+
+    def 'round number of arguments #count up to #expected'() {
+        expect:
+            Fingerprint.ofShape(parse("a=in=(${(1..count).join(',')})"), true) ==
+                Fingerprint.ofShape(parse("a=in=(${(1..expected).join(',')})"), true)
+            new StandardSQLDialect().parameterCount(RSQLOperators.IN, count) == expected
+        where:
+            count | expected
+            1     | 1
+            2     | 2
+            3     | 4
+            4     | 4
+            5     | 8
+            8     | 8
+            9     | 16
+    }
+
+    def 'distinguish values: #a and #b'() {
+        expect:
+            Fingerprint.of(parse(a)) != Fingerprint.of(parse(b))
+        where:
+            a                       | b
+            'a==1'                  | 'a==2'
+            'a=in=(ab,c)'           | 'a=in=(a,bc)'
+            'a=in=(1,2)'            | 'a=in=(2,1)'
+            'a==abcde'              | 'a==abcdf'
+    }
+
+    def 'compute the same fingerprint for equal trees'() {
+        setup:
+            def random = new Random(21)
+            def shapes = new HashSet()
+            def fulls = new HashSet()
+            def nodes = new HashSet()
+        when:
+            2000.times {
+                def node
+                try {
+                    node = parse(QueryGenerator.query(random, 3))
+                } catch (RSQLParserException ex) {
+                    return  // the generator produces also invalid queries
+                }
+                def copy = FlatTree.of(node).toNode()  // equal tree of new instances
+                assert Fingerprint.of(copy) == Fingerprint.of(node)
+                assert Fingerprint.ofShape(copy) == Fingerprint.ofShape(node)
+                nodes << node
+                fulls << Fingerprint.of(node)
+            }
+        then:
+            fulls.size() == nodes.size()
+    }
+
+    def 'compute fingerprint of deeply nested tree'() {
+        setup:
+            Node node = new ComparisonNode(RSQLOperators.EQUAL, 'a', ['1'])
+            100000.times { i ->
+                node = i % 2 == 0 ? new AndNode([node, new ComparisonNode(RSQLOperators.EQUAL, 'b', ['2'])])
+                                  : new OrNode([node, new ComparisonNode(RSQLOperators.EQUAL, 'c', ['3'])])
+            }
+        expect:
+            Fingerprint.of(node) != Fingerprint.ofShape(node)
+    }
+
+    def 'convert to string and back'() {
+        setup:
+            def fp = Fingerprint.of(parse('a==1;b=in=(2,3)'))
+        expect:
+            fp.toString() ==~ /[0-9a-f]{32}/
+            Fingerprint.of(fp.high, fp.low) == fp
+            fp.asLong() == fp.high
+            Fingerprint.of(fp.high, fp.low).hashCode() == fp.hashCode()
+    }
+
+    def 'compute stable values'() {
+        expect:
+            Fingerprint.of(parse('a==1')).toString() == Fingerprint.of(parse('a==1')).toString()
+            Fingerprint.ofShape(new AndNode([])) != Fingerprint.ofShape(new OrNode([]))
+    }
+
+    def 'throw exception when node is null'() {
+        when:
+            Fingerprint.of(null)
+        then:
+            thrown IllegalArgumentException
+    }
+
+
+    def parse(String query) { PARSER.parse(query) }
+}
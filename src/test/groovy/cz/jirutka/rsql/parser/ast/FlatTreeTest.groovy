@@ -0,0 +1,240 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.ast
+
+import cz.jirutka.rsql.parser.QueryGenerator
+import cz.jirutka.rsql.parser.RSQLParser
+import cz.jirutka.rsql.parser.RSQLParserException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static cz.jirutka.rsql.parser.ast.RSQLOperators.*
+
+@Unroll
+class FlatTreeTest extends Specification {
+
+    def parser = new RSQLParser()
+
+
+    def 'convert to the same AST as parse: #input'() {
+        setup:
+            def tree = parser.parseFlat(input)
+        expect:
+            tree.toNode() == parser.parse(input)
+            FlatTree.of(parser.parse(input)).toNode() == parser.parse(input)
+            tree.toString() == parser.parse(input).toString()
+        where:
+            input << ['a==b', 'a==b;c=in=(d,e)', 'a==b,c==d;e==f', '(a==b,c==d);(e=out=(f,"g h"),i<j)', 'a=in=(b,b,b)']
+    }
+
+    def 'convert generated queries with seed #seed'() {
+        setup:
+            def random = new Random(seed)
+        expect:
+            200.times {
+                def input = QueryGenerator.query(random, 4)
+                def node
+                try {
+                    node = parser.parse(input)
+                } catch (RSQLParserException ex) {
+                    return  // the generator produces also invalid queries
+                }
+                assert parser.parseFlat(input).toNode() == node : "input: $input"
+                assert FlatTree.of(node).toNode() == node : "input: $input"
+                assert walk(FlatTree.of(node).cursor()) == node : "input: $input"
+            }
+        where:
+            seed << (1..5)
+    }
+
+    def 'walk the tree with cursor'() {
+        setup:
+            def cursor = parser.parseFlat('a==b;(c=in=(d,e),f!=g)').cursor()
+        expect:
+            cursor.position() == 0
+            !cursor.comparison
+            cursor.logicalOperator == LogicalOperator.AND
+            cursor.childCount == 2
+            cursor.argumentCount == 0
+            cursor.selector == null
+            !cursor.toParent()
+            !cursor.toNextSibling()
+        and:
+            cursor.toFirstChild()
+            cursor.comparison
+            cursor.operator == EQUAL
+            cursor.selector == 'a'
+            cursor.argumentCount == 1
+            cursor.getArgument(0) == 'b'
+            !cursor.toFirstChild()
+        and:
+            cursor.toNextSibling()
+            cursor.logicalOperator == LogicalOperator.OR
+            cursor.toNode() == new OrNode([new ComparisonNode(IN, 'c', ['d', 'e']), new ComparisonNode(NOT_EQUAL, 'f', ['g'])])
+            !cursor.toNextSibling()
+        and:
+            cursor.toFirstChild()
+            cursor.getArgument(1) == 'e'
+            cursor.toNextSibling()
+            cursor.selector == 'f'
+            !cursor.toNextSibling()
+            cursor.toParent()
+            cursor.toParent()
+            cursor.position() == 0
+            cursor.moveTo(4).selector == 'f'
+            cursor.reset().position() == 0
+    }
+
+    def 'not move to first child of logical node with no children: #node'() {
+        setup:
+            def cursor = FlatTree.of(node).cursor()
+        expect:
+            walk(cursor) == node
+            cursor.position() == 0
+        and:
+            !cursor.moveTo(position).toFirstChild()
+            cursor.position() == position
+            cursor.childCount == 0
+        where:
+            node                                                            | position
+            new AndNode([])                                                 | 0
+            new OrNode([new AndNode([]), new ComparisonNode(EQUAL, 'a', ['b'])]) | 1
+            new AndNode([new ComparisonNode(EQUAL, 'a', ['b']), new OrNode([])]) | 2
+    }
+
+    def 'throw exception for argument out of bounds: #index'() {
+        when:
+            parser.parseFlat('a=in=(b,c)').cursor().getArgument(index)
+        then:
+            thrown IndexOutOfBoundsException
+        where:
+            index << [-1, 2]
+    }
+
+    def 'throw exception for position out of bounds: #position'() {
+        when:
+            parser.parseFlat('a==b;c==d').cursor().moveTo(position)
+        then:
+            thrown IndexOutOfBoundsException
+        where:
+            position << [-1, 3]
+    }
+
+    def 'compare and append strings of comparison'() {
+        setup:
+            def cursor = parser.parseFlat('name==x;name!=xy;nam=in=(x,"")').cursor()
+            def out = new StringBuilder()
+        expect:
+            !cursor.selectorEquals('name')
+        when:
+            cursor.toFirstChild()
+            cursor.appendSelector(out)
+            cursor.appendArgument(0, out)
+        then:
+            out.toString() == 'namex'
+            cursor.selectorEquals('name')
+            !cursor.selectorEquals('nam')
+            cursor.argumentEquals(0, 'x')
+        when:
+            cursor.toNextSibling()
+            cursor.toNextSibling()
+        then:
+            cursor.selectorEquals(new StringBuilder('nam'))
+            !cursor.argumentEquals(0, 'xy')
+            cursor.argumentEquals(1, '')
+            cursor.getArgument(1) == ''
+        when:
+            cursor.reset().appendSelector(out)
+        then:
+            thrown IllegalStateException
+    }
+
+    def 'convert very deeply nested tree without overflowing the stack'() {
+        setup:
+            def depth = 100000
+            def input = new StringBuilder()
+            depth.times { input << '(a==' << it << ';' }
+            input << 'b==c'
+            depth.times { input << ')' }
+            def tree = FlatTree.of(parser.withIterativeParsing(true).parse(input.toString()))
+        when:
+            def node = tree.toNode()
+        then:
+            tree.size() == 2 * depth + 1
+            depth.times {
+                assert node.children[0].arguments == [it as String]
+                node = node.children[1]
+            }
+            node.selector == 'b'
+    }
+
+    def 'throw exception when building incomplete tree'() {
+        setup:
+            def builder = new FlatTree.Builder()
+        when:
+            builder.build()
+        then:
+            thrown IllegalStateException
+        when:
+            builder.startLogical(LogicalOperator.AND)
+            builder.startComparison('a', EQUAL)
+            builder.argument('b')
+            builder.endComparison()
+            builder.build()
+        then:
+            thrown IllegalStateException
+        when:
+            builder.endLogical(LogicalOperator.AND)
+        then:
+            builder.build().toNode() == new AndNode([new ComparisonNode(EQUAL, 'a', ['b'])])
+    }
+
+    def 'throw exception for invalid query'() {
+        when:
+            parser.parseFlat('a==b;(c==d')
+        then:
+            thrown RSQLParserException
+    }
+
+
+    //////// Helpers ////////
+
+    def walk(FlatTree.Cursor cursor) {
+        if (cursor.comparison) {
+            return new ComparisonNode(cursor.operator, cursor.selector,
+                (0..<cursor.argumentCount).collect { cursor.getArgument(it) })
+        }
+        def children = []
+        if (cursor.toFirstChild()) {
+            children << walk(cursor)
+            while (cursor.toNextSibling()) {
+                children << walk(cursor)
+            }
+            cursor.toParent()
+        }
+        assert children.size() == cursor.childCount
+
+        cursor.logicalOperator == LogicalOperator.AND ? new AndNode(children) : new OrNode(children)
+    }
+}
@@ -57,6 +57,34 @@ abstract class LogicalNodeTest extends Specification {
         then: "node's children remains unchanged"
             node.children == [child1, child2]
     }
+
+    def 'read children without copying'() {
+        given:
+            def child1 = new ComparisonNode(EQUAL, 'foo', ['bar'])
+            def child2 = new AndNode([])
+            def node = newNode([child1, child2])
+
+        expect:
+            node.childCount == 2
+            node.getChild(0).is(child1)
+            node.getChild(1).is(child2)
+            node.childrenView == [child1, child2]
+            node.childrenView.is(node.childrenView)
+
+        when:
+            node.childrenView << child1
+        then:
+            thrown UnsupportedOperationException
+
+        when:
+            node.getChild(2)
+        then:
+            thrown IndexOutOfBoundsException
+
+        expect: 'the view is shared with a copy of the node'
+            node.withChildren(node.childrenView).childrenView.is(node.childrenView)
+            newNode(node.childrenView).hashCode() == node.hashCode()
+    }
 }
 
 class AndNodeTest extends LogicalNodeTest {
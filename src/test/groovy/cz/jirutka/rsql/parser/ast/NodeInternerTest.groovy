@@ -0,0 +1,75 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.ast
+
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+import static cz.jirutka.rsql.parser.ast.RSQLOperators.*
+
+class NodeInternerTest extends Specification {
+
+    def interner = new NodeInterner()
+
+
+    def 'return the first interned instance of equal strings'() {
+        setup:
+            def first = new String('foo')
+            def second = new String('foo')
+        expect:
+            interner.intern(first).is(first)
+            interner.intern(second).is(first)
+            interner.intern(null) == null
+    }
+
+    def 'return the first interned instance of equal nodes'() {
+        setup:
+            def first = new AndNode([eq('a', '1'), eq('b', '2')])
+            def second = new AndNode([eq('a', '1'), eq('b', '2')])
+            def other = new OrNode([eq('a', '1'), eq('b', '2')])
+        expect:
+            interner.intern(first).is(first)
+            interner.intern(second).is(first)
+            interner.intern(other).is(other)
+            interner.size() == 2
+    }
+
+    def 'return the same instance when interned concurrently'() {
+        setup:
+            def pool = Executors.newFixedThreadPool(4)
+        when:
+            def results = (1..100).collect {
+                pool.submit({ interner.intern(eq('sel', 'val')) } as Callable)
+            }*.get()
+        then:
+            results.every { it.is(results[0]) }
+        cleanup:
+            pool.shutdown()
+    }
+
+
+    def eq(sel, arg) { new ComparisonNode(EQUAL, sel, [arg]) }
+}
@@ -71,4 +71,26 @@ class NodesFactoryTest extends Specification {
         then:
             thrown UnknownOperatorException
     }
+
+    def 'create ComparisonNode when given resolved operator'() {
+        when:
+            def node = factory.createComparisonNode(GREATER_THAN, 'doctor', ['who?'])
+        then:
+            node == new ComparisonNode(GREATER_THAN, 'doctor', ['who?'])
+    }
+
+    def 'share equal nodes and strings when interning'() {
+        setup:
+            def interning = factory.withInterner(new NodeInterner())
+        when:
+            def first = interning.createLogicalNode(AND, [
+                interning.createComparisonNode('==', new String('sel'), [new String('val')])])
+            def second = interning.createLogicalNode(AND, [
+                interning.createComparisonNode('==', new String('sel'), [new String('val')])])
+            def third = interning.createComparisonNode('=gt=', new String('sel'), [new String('val')])
+        then:
+            second.is(first)
+            third.selector.is(first.children[0].selector)
+            third.arguments[0].is(first.children[0].arguments[0])
+    }
 }
@@ -0,0 +1,136 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.ast
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+import static cz.jirutka.rsql.parser.ast.ArgumentType.*
+
+@Unroll
+class SelectorSchemaTest extends Specification {
+
+    def schema = new SelectorSchema()
+        .withSelector('str', STRING)
+        .withSelector('bool', BOOLEAN)
+        .withSelector('long', LONG)
+        .withSelector('double', DOUBLE)
+        .withSelector('time', TIMESTAMP)
+        .withSelector('size', of('size', Integer, { it.length() } as ArgumentConverter))
+
+
+    def 'convert #selector arguments #args'() {
+        when:
+            def typed = schema.convert(selector, args)
+        then:
+            typed.type == schema.getType(selector)
+            typed.size() == args.size()
+            typed.values == expected
+        where:
+            selector | args                                             | expected
+            'str'    | ['a', 'b']                                       | ['a', 'b']
+            'bool'   | ['true', 'FALSE']                                | [true, false]
+            'long'   | ['42', '-1']                                     | [42L, -1L]
+            'double' | ['1.5', '2']                                     | [1.5d, 2.0d]
+            'time'   | ['2016-03-15']                                   | [new Date(1458000000000L)]
+            'time'   | ['2016-03-15T10:15:30Z']                         | [new Date(1458036930000L)]
+            'time'   | ['2016-03-15T11:15:30.120+01:00']                | [new Date(1458036930120L)]
+            'size'   | ['abc']                                          | [3]
+    }
+
+    def 'convert timestamps in concurrent threads'() {
+        setup:
+            def pool = Executors.newFixedThreadPool(4)
+            def day = 86400000L
+        when:
+            def futures = (0..<400).collect { i ->
+                def arg = String.format('2016-03-%02dT10:15:30Z', i % 28 + 1)
+                pool.submit({ schema.convert('time', [arg, arg[0..9]]).values } as Callable)
+            }
+        then:
+            futures.eachWithIndex { future, i ->
+                def date = 1456827330000L + (i % 28) * day
+                assert future.get() == [new Date(date), new Date(date - 36930000L)]
+            }
+        cleanup:
+            pool.shutdown()
+    }
+
+    def 'store #type values in primitive array'() {
+        when:
+            def typed = schema.convert(selector, ['1', '2'])
+        then:
+            typed.isLong() == isLong
+            typed.isDouble() == !isLong
+            isLong ? typed.getLong(1) == 2L : typed.getDouble(1) == 2.0d
+        where:
+            type     | selector | isLong
+            'long'   | 'long'   | true
+            'double' | 'double' | false
+    }
+
+    def 'throw IllegalStateException when reading #type values as primitive'() {
+        when:
+            schema.convert('str', ['a']).getLong(0)
+        then:
+            thrown IllegalStateException
+    }
+
+    def 'return null for undeclared selector'() {
+        expect:
+            schema.convert('other', ['1']) == null
+            schema.getType('other') == null
+    }
+
+    def 'throw ArgumentConversionException for invalid #selector argument: #arg'() {
+        when:
+            schema.convert(selector, [valid, arg])
+        then:
+            def ex = thrown(ArgumentConversionException)
+            ex.selector == selector
+            ex.argument == arg
+            ex.index == 1
+        where:
+            selector | valid        | arg
+            'bool'   | 'true'       | 'yes'
+            'long'   | '1'          | '1.5'
+            'double' | '1'          | 'x'
+            'time'   | '2016-03-15' | '2016-13-01'
+            'time'   | '2016-03-15' | '2016-03-15T10:15:30'
+    }
+
+    def 'create comparison node with typed arguments in factory'() {
+        setup:
+            def factory = new NodesFactory(RSQLOperators.defaultOperators()).withSchema(schema)
+        when:
+            def node = factory.createComparisonNode('=in=', 'long', ['1', '2'])
+        then:
+            node.typedArguments.getLong(0) == 1L
+            node != new ComparisonNode(RSQLOperators.IN, 'long', ['1', '2'])
+            node == new ComparisonNode(RSQLOperators.IN, 'long', ['1', '2'], schema.convert('long', ['1', '2']))
+    }
+}
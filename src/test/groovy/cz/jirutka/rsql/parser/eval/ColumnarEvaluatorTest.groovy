@@ -0,0 +1,146 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.eval
+
+import cz.jirutka.rsql.parser.RSQLParser
+import cz.jirutka.rsql.parser.ast.AndNode
+import cz.jirutka.rsql.parser.ast.ComparisonOperator
+import cz.jirutka.rsql.parser.ast.OrNode
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static cz.jirutka.rsql.parser.ast.RSQLOperators.defaultOperators
+
+@Unroll
+class ColumnarEvaluatorTest extends Specification {
+
+    static final ROWS = 150  // not a multiple of 64
+    static final NAMES = ['Flynn', 'Alan', null, 'Quorra', 'Clu'] as String[]
+
+    @Shared rows = (0..<ROWS).collect { i ->
+        [age: (i * 7) % 50, height: ((i * 13) % 40) / 20.0d, name: (i * 3) % NAMES.length]
+    }
+
+    @Shared source = [
+        getRowCount: { ROWS },
+        getColumn: { String sel ->
+            switch (sel) {
+                case 'age'   : return Column.of(rows*.age as long[])
+                case 'height': return Column.of(rows*.height as double[])
+                case 'name'  : return Column.dictionary(rows*.name as int[], NAMES)
+                default      : return null
+            }
+        }
+    ] as ColumnSource
+
+    @Shared predicates = new PredicateCompiler<Map>()
+        .withAccessor('age', { it.age as long } as LongAccessor)
+        .withAccessor('height', { it.height as double } as DoubleAccessor)
+        .withAccessor('name', [get: { NAMES[it.name] }, convert: { it }] as ObjectAccessor)
+
+    def evaluator = new ColumnarEvaluator()
+
+
+    def 'evaluate query like the predicate: #query'() {
+        setup:
+            def node = new RSQLParser().parse(query)
+            def predicate = predicates.compile(node)
+            def expected = (0..<ROWS).findAll { predicate.test(rows[it]) }
+        when:
+            def result = evaluator.evaluate(node, source)
+        then:
+            result.stream().toArray() as List == expected
+            !expected.empty || query.contains('==99')
+        where:
+            query << [
+                'age==21', 'age!=21', 'age=gt=40', 'age=ge=40', 'age=lt=5', 'age=le=5',
+                'age=in=(1,2,3,49)', 'age=out=(1,2,3,49)', "age=in=(${(10..30).join(',')})",
+                "age=out=(${(10..30).join(',')})", 'age==99',
+                'height==0.5', 'height!=0.5', 'height=gt=1.5', 'height=le=0.25',
+                'height=in=(0.5,1.0)', 'height=out=(0.5,1.0)',
+                'name==Alan', 'name!=Alan', 'name=gt=Clu', 'name=lt=Clu', 'name=le=Clu',
+                'name=in=(Flynn,Clu)', 'name=out=(Flynn,Clu)',
+                'age=gt=10;height=lt=1.0', 'age==1,age==2;name==Clu,height=ge=1.9',
+                'age==99;name==Alan', '(age=lt=10,age=gt=40);(name==Alan,name==Clu)',
+                'age=gt=5;age=lt=45;height!=0.5;name!=Flynn'
+            ]
+    }
+
+    def 'evaluate empty #type node'() {
+        expect:
+            evaluator.evaluate(node, source).cardinality() == expected
+        where:
+            type  | node            | expected
+            'and' | new AndNode([]) | ROWS
+            'or'  | new OrNode([])  | 0
+    }
+
+    def 'match doubles by == in #query'() {
+        setup:
+            def values = [0.0d, -0.0d, Double.NaN, 1.5d, -2.0d, 70.0d] as double[]
+            def source = [getRowCount: { values.length }, getColumn: { Column.of(values) }] as ColumnSource
+        expect:
+            evaluator.evaluate(new RSQLParser().parse(query), source).stream().toArray() as List == expected
+        where:
+            query                                                 | expected
+            'x=in=(-0.0,NaN,1.5)'                                 | [0, 1, 3]
+            'x=out=(-0.0,NaN,1.5)'                                | [2, 4, 5]
+            "x=in=(0.0,NaN,1.5,${(10..20).join(',')})"            | [0, 1, 3]
+            "x=in=(-0.0,NaN,-2.0,${(60..70).join(',')})"          | [0, 1, 4, 5]
+            "x=out=(-0.0,NaN,-2.0,${(60..70).join(',')})"         | [2, 3]
+    }
+
+    def 'write result into given selection words'() {
+        setup:
+            def selection = new long[3]
+        when:
+            evaluator.evaluate(new RSQLParser().parse('age=ge=0'), source, selection)
+        then:
+            selection as List == [-1L, -1L, (1L << (ROWS - 128)) - 1]
+    }
+
+    def 'throw exception for #desc'() {
+        setup:
+            def parser = new RSQLParser(defaultOperators() + new ComparisonOperator('=div='))
+        when:
+            evaluator.evaluate(parser.parse(query), source)
+        then:
+            thrown IllegalArgumentException
+        where:
+            desc                    | query
+            'unknown selector'      | 'weight==80'
+            'invalid argument'      | 'age=in=(1,old)'
+            'unsupported operator'  | 'age=div=4'
+    }
+
+    def 'throw exception for column of wrong size'() {
+        setup:
+            def source = [getRowCount: { 10 }, getColumn: { Column.of(new long[5]) }] as ColumnSource
+        when:
+            evaluator.evaluate(new RSQLParser().parse('age==1'), source)
+        then:
+            thrown IllegalArgumentException
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.eval
+
+import cz.jirutka.rsql.parser.RSQLParser
+import cz.jirutka.rsql.parser.ast.AndNode
+import cz.jirutka.rsql.parser.ast.ComparisonOperator
+import cz.jirutka.rsql.parser.ast.OrNode
+import cz.jirutka.rsql.parser.optimize.HeuristicStatistics
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static cz.jirutka.rsql.parser.ast.RSQLOperators.defaultOperators
+
+@Unroll
+class IndexedCollectionTest extends Specification {
+
+    static final ROWS = 300  // not a multiple of 64
+    static final NAMES = ['Flynn', 'Alan', null, 'Quorra', 'Clu']
+    static final HEIGHTS = [0.5d, -0.0d, 0.0d, Double.NaN, 1.25d, 2.0d]
+
+    static final QUERIES = [
+        'age==21', 'age!=21', 'age=gt=40', 'age=ge=40', 'age=lt=5', 'age=le=5', 'age=gt=-1', 'age=lt=0',
+        'age=in=(1,2,3,49)', 'age=out=(1,2,3,49)', 'age=in=(1,1,99)', 'age==99', 'age!=99',
+        'height==0.5', 'height==0', 'height==-0.0', 'height!=0.0', 'height==NaN', 'height!=NaN',
+        'height=gt=0', 'height=ge=-0.0', 'height=lt=1.25', 'height=le=NaN', 'height=gt=-1',
+        'height=in=(0.5,-0.0,NaN)', 'height=out=(0.5,0.0)',
+        'name==Alan', 'name!=Alan', 'name=gt=Clu', 'name=lt=Clu', 'name=le=Clu', 'name=ge=Z',
+        'name=in=(Flynn,Clu)', 'name=out=(Flynn,Clu)',
+        'age=gt=10;height=lt=1.0', 'age==1,age==2;name==Clu,height=ge=1.9',
+        'age==99;name==Alan', '(age=lt=10,age=gt=40);(name==Alan,name==Clu)',
+        'age=gt=5;age=lt=45;height!=0.5;name!=Flynn', 'age!=1,name!=Alan,height=lt=3',
+        'age=ge=0;age=lt=49', 'age==7;name=gt=A;height=ge=0;age=le=48'
+    ]
+
+    @Shared rows = (0..<ROWS).collect { i ->
+        [age: (i * 7) % 50, height: HEIGHTS[(i * 5) % HEIGHTS.size()], name: NAMES[(i * 3) % NAMES.size()]]
+    }
+
+    @Shared accessors = [
+        age   : { it.age as long } as LongAccessor,
+        height: { it.height as double } as DoubleAccessor,
+        name  : [get: { it.name }, convert: { it }] as ObjectAccessor
+    ]
+
+    @Shared predicates = new PredicateCompiler<Map>()
+        .withAccessor('age', accessors.age)
+        .withAccessor('height', accessors.height)
+        .withAccessor('name', accessors.name)
+
+
+    def 'evaluate query like the predicate with #indexes indexes: #query'() {
+        setup:
+            def collection = IndexedCollection.of(rows)
+            accessors.each { selector, accessor ->
+                switch (indexes) {
+                    case 'no'    : collection = collection.withAccessor(selector, accessor); break
+                    case 'hash'  : collection = collection.withHashIndex(selector, accessor); break
+                    case 'sorted': collection = collection.withSortedIndex(selector, accessor); break
+                    default      : collection = collection.withHashIndex(selector, accessor)
+                                                          .withSortedIndex(selector, accessor)
+                }
+            }
+            def node = new RSQLParser().parse(query)
+            def predicate = predicates.compile(node)
+            def expected = (0..<ROWS).findAll { predicate.test(rows[it]) }
+        expect:
+            collection.select(node).stream().toArray() as List == expected
+            collection.filter(node) == expected.collect { rows[it] }
+        where:
+            [indexes, query] << [['no', 'hash', 'sorted', 'both'], QUERIES].combinations()
+    }
+
+    def 'estimate exactly number of rows matching indexed comparison: #query'() {
+        setup:
+            def collection = IndexedCollection.of(rows)
+                .withHashIndex('name', accessors.name)
+                .withSortedIndex('age', accessors.age)
+                .withSortedIndex('height', accessors.height)
+            def node = new RSQLParser().parse(query)
+            def predicate = predicates.compile(node)
+        expect:
+            collection.estimate(node) == rows.count { predicate.test(it) }
+        where:
+            query << QUERIES.findAll { !it.contains(';') && !it.contains(',') && !it.contains('name=gt') &&
+                                       !it.contains('name=l') && !it.contains('name=ge') }
+    }
+
+    def 'estimate comparison with no index by statistics'() {
+        setup:
+            def collection = IndexedCollection.of(rows)
+                .withAccessor('age', accessors.age)
+                .withStatistics(new HeuristicStatistics().withSelectivity('age', null, 0.25d))
+        expect:
+            collection.estimate(new RSQLParser().parse('age==1')) == ROWS / 4
+            collection.estimate(new RSQLParser().parse('age==1;age==2')) == Math.round(ROWS / 16)
+    }
+
+    def 'evaluate empty #type node'() {
+        setup:
+            def collection = IndexedCollection.of(rows)
+        expect:
+            collection.select(node).cardinality() == expected
+        where:
+            type  | node            | expected
+            'and' | new AndNode([]) | ROWS
+            'or'  | new OrNode([])  | 0
+    }
+
+    def 'evaluate query on empty collection'() {
+        setup:
+            def collection = IndexedCollection.of([])
+                .withHashIndex('age', accessors.age)
+                .withSortedIndex('height', accessors.height)
+        expect:
+            collection.filter(new RSQLParser().parse('age==1,height=gt=1;age!=2')).empty
+    }
+
+    def 'evaluate custom operator on indexed selector by predicate'() {
+        setup:
+            def divisible = new ComparisonOperator('=div=')
+            def collection = IndexedCollection.of(rows)
+                .withSortedIndex('age', accessors.age)
+                .withHashIndex('name', accessors.name)
+                .withSemantics(divisible, Mock(OperatorSemantics) {
+                    compile(_ as LongAccessor, _) >> { LongAccessor acc, List args ->
+                        [test: { acc.getLong(it) % (args[0] as long) == 0 }] as Predicate
+                    }
+                })
+            def node = new RSQLParser(defaultOperators() + divisible).parse('age=div=10;name==Alan')
+        expect:
+            collection.filter(node) == rows.findAll { it.age % 10 == 0 && it.name == 'Alan' }
+    }
+
+    def 'throw exception for #desc'() {
+        setup:
+            def parser = new RSQLParser(defaultOperators() + new ComparisonOperator('=div='))
+            def collection = IndexedCollection.of(rows)
+                .withHashIndex('age', accessors.age)
+                .withSortedIndex('height', accessors.height)
+        when:
+            collection.select(parser.parse(query))
+        then:
+            thrown IllegalArgumentException
+        where:
+            desc                                  | query
+            'unknown selector'                    | 'weight==80'
+            'unknown selector in skipped operand' | 'age==99;weight==80'
+            'invalid argument in hash index'      | 'age=in=(1,old)'
+            'invalid argument in sorted index'    | 'height=gt=tall'
+            'unsupported operator'                | 'age=div=4'
+    }
+
+    def 'throw exception for sorted index of values that are not comparable'() {
+        when:
+            IndexedCollection.of([[:], [:]]).withSortedIndex('x', [get: { new Object() }, convert: { it }] as ObjectAccessor)
+        then:
+            thrown IllegalArgumentException
+    }
+
+    def 'throw exception for #desc given'() {
+        when:
+            action.call(IndexedCollection.of(rows))
+        then:
+            thrown IllegalArgumentException
+        where:
+            desc                    | action
+            'null rows'             | { IndexedCollection.of(null) }
+            'null selector'         | { it.withHashIndex(null, { 1L } as LongAccessor) }
+            'null accessor'         | { it.withSortedIndex('age', null) }
+            'unsupported accessor'  | { it.withHashIndex('age', Mock(Accessor)) }
+            'null semantics'        | { it.withSemantics(new ComparisonOperator('=div='), null) }
+            'null statistics'       | { it.withStatistics(null) }
+            'null node'             | { it.select(null) }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.eval
+
+import cz.jirutka.rsql.parser.RSQLParser
+import cz.jirutka.rsql.parser.ast.AndNode
+import cz.jirutka.rsql.parser.ast.ComparisonNode
+import cz.jirutka.rsql.parser.ast.ComparisonOperator
+import cz.jirutka.rsql.parser.ast.OrNode
+import cz.jirutka.rsql.parser.ast.RSQLVisitor
+import cz.jirutka.rsql.parser.sql.SQLGenerator
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.TimeUnit
+
+import static cz.jirutka.rsql.parser.ast.RSQLOperators.defaultOperators
+import static cz.jirutka.rsql.parser.eval.PartialEvaluator.FALSE
+import static cz.jirutka.rsql.parser.eval.PartialEvaluator.TRUE
+
+@Unroll
+class PartialEvaluatorTest extends Specification {
+
+    def parser = new RSQLParser()
+    def evaluator = new PartialEvaluator()
+
+
+    def 'simplify #query with #values to #expected'() {
+        setup:
+            def node = parser.parse(query)
+        expect:
+            evaluator.evaluate(node, values) == (expected instanceof String ? parser.parse(expected) : expected)
+        where:
+            query                                | values                        | expected
+            'tenant==acme'                       | [tenant: 'acme']              | TRUE
+            'tenant==acme'                       | [tenant: 'other']             | FALSE
+            'tenant==acme;price=lt=10'           | [tenant: 'acme']              | 'price=lt=10'
+            'tenant==acme;price=lt=10'           | [tenant: 'other']             | FALSE
+            'tenant==acme,price=lt=10'           | [tenant: 'acme']              | TRUE
+            'tenant==acme,price=lt=10'           | [tenant: 'other']             | 'price=lt=10'
+            'tenant==acme;(region==eu,a==1)'     | [tenant: 'acme', region: 'us']| 'a==1'
+            'tenant==acme;(region==eu,a==1)'     | [tenant: 'acme', region: 'eu']| TRUE
+            'a==1;(region==eu,b==2;c==3);d==4'   | [region: 'us']                | 'a==1;b==2;c==3;d==4'
+            'a==1,(region==eu;b==2,c==3),d==4'   | [region: 'eu']                | 'a==1,b==2,c==3,d==4'
+            'a==1;b==2'                          | [c: 'x']                      | 'a==1;b==2'
+            'a==1;b==2'                          | [:]                           | 'a==1;b==2'
+            'level=gt=3;level=le=5'              | [level: 4]                    | TRUE
+            'level=gt=3;level=le=5'              | [level: 6L]                   | FALSE
+            'level=in=(1,2,3),a==1'              | [level: (short) 2]            | TRUE
+            'level=out=(1,2,3);a==1'             | [level: (byte) 2]             | FALSE
+            'ratio=ge=0.5;a==1'                  | [ratio: 0.5d]                 | 'a==1'
+            'ratio==0;a==1'                      | [ratio: -0.0f]                | 'a==1'
+            'ratio!=NaN;a==1'                    | [ratio: Double.NaN]           | 'a==1'
+            'beta==true;a==1'                    | [beta: true]                  | 'a==1'
+            'beta==TRUE;a==1'                    | [beta: false]                 | FALSE
+            'unit==SECONDS;a==1'                 | [unit: TimeUnit.SECONDS]      | 'a==1'
+            'unit=in=(DAYS,HOURS),a==1'          | [unit: TimeUnit.SECONDS]      | 'a==1'
+            'region==eu,a==1'                    | [region: null]                | 'a==1'
+            'region!=eu;region=out=(us);a==1'    | [region: null]                | 'a==1'
+            'region=gt=a,a==1'                   | [region: null]                | 'a==1'
+    }
+
+    def 'return same instance for unchanged #desc'() {
+        setup:
+            def node = parser.parse(query)
+        expect:
+            evaluator.evaluate(node, [x: 'known']).is(node)
+        where:
+            desc       | query
+            'tree'     | 'a==1;(b==2,c==3)'
+            'leaf'     | 'a==1'
+    }
+
+    def 'keep unchanged subtrees as same instances'() {
+        setup:
+            def node = parser.parse('x==1;(a==1,b==2);(x==2,c==3)')
+        when:
+            def result = evaluator.evaluate(node, [x: 1])
+        then:
+            result == parser.parse('(a==1,b==2);c==3')
+            result.getChild(0).is(node.getChild(1))
+            result.getChild(1).is(node.getChild(2).getChild(1))
+    }
+
+    def 'simplify constants in input: #node'() {
+        expect:
+            evaluator.evaluate(node, [x: 1]) == expected
+        where:
+            node                                                     | expected
+            new AndNode([])                                          | TRUE
+            new OrNode([])                                           | FALSE
+            new AndNode([new OrNode([]), new RSQLParser().parse('a==1')]) | FALSE
+            new OrNode([new AndNode([]), new RSQLParser().parse('a==1')]) | TRUE
+            new AndNode([new AndNode([]), new RSQLParser().parse('a==1')]) | new RSQLParser().parse('a==1')
+    }
+
+    def 'recognize constants'() {
+        expect:
+            PartialEvaluator.isTrue(TRUE) && PartialEvaluator.isTrue(new AndNode([]))
+            PartialEvaluator.isFalse(FALSE) && PartialEvaluator.isFalse(new OrNode([]))
+            !PartialEvaluator.isTrue(FALSE) && !PartialEvaluator.isFalse(TRUE)
+            !PartialEvaluator.isTrue(parser.parse('a==1;b==2'))
+            !PartialEvaluator.isFalse(parser.parse('a==1'))
+    }
+
+    def 'render constant #name as logical node with no children'() {
+        setup:
+            def visitor = Mock(RSQLVisitor)
+        when:
+            constant.accept(visitor)
+        then:
+            1 * visitor.visit({ type.isInstance(it) && it.children.empty }, _)
+        expect:
+            constant.toString() == '()'
+            new SQLGenerator().generate(constant).sql == sql
+            new PredicateCompiler().compile(constant).test(null) == matches
+        where:
+            name    | constant | type    | sql     | matches
+            'TRUE'  | TRUE     | AndNode | '1 = 1' | true
+            'FALSE' | FALSE    | OrNode  | '1 = 0' | false
+    }
+
+    def 'leave comparison with operator with no semantics'() {
+        setup:
+            def divisible = new ComparisonOperator('=div=')
+            def node = new RSQLParser(defaultOperators() + divisible).parse('level=div=2;level==4')
+            def semantics = Mock(OperatorSemantics) {
+                compile(_ as LongAccessor, _) >> { LongAccessor acc, List args ->
+                    [test: { acc.getLong(it) % (args[0] as long) == 0 }] as Predicate
+                }
+            }
+        expect:
+            evaluator.evaluate(node, [level: 4]) == node.getChild(0)
+            evaluator.withSemantics(divisible, semantics).evaluate(node, [level: 4]) == TRUE
+    }
+
+    def 'give the same results as the original expression'() {
+        setup:
+            def random = new Random(42)
+            def compiler = new PredicateCompiler<Map>()
+            ['a', 'b', 'c', 'd'].each { sel -> compiler = compiler.withAccessor(sel, { it[sel] as long } as LongAccessor) }
+            def ops = ['==', '!=', '=gt=', '=le=']
+            def comparison = { "${['a', 'b', 'c', 'd'][random.nextInt(4)]}${ops[random.nextInt(4)]}${random.nextInt(3)}" }
+            def expression
+            expression = { int depth ->
+                depth == 0 || random.nextInt(3) == 0 ? comparison()
+                    : '(' + (1..(2 + random.nextInt(2))).collect { expression(depth - 1) }.join([';', ','][random.nextInt(2)]) + ')'
+            }
+        expect:
+            500.times {
+                def node = parser.parse(expression(4))
+                def known = [a: random.nextInt(3), b: random.nextInt(3)]
+                def simplified = evaluator.evaluate(node, known)
+
+                assert !selectors(simplified).any { it in known.keySet() }
+                def original = compiler.compile(node)
+                def partial = compiler.compile(simplified)
+                [0, 1, 2].each { c -> [0, 1, 2].each { d ->
+                    def row = known + [c: c, d: d]
+                    assert partial.test(row) == original.test(row)
+                }}
+            }
+    }
+
+    def selectors(node) {
+        node instanceof ComparisonNode ? [node.selector] : node.children.collectMany { selectors(it) }
+    }
+
+    def 'throw exception for #desc'() {
+        when:
+            evaluator.evaluate(node, values)
+        then:
+            thrown IllegalArgumentException
+        where:
+            desc                | node                               | values
+            'null node'         | null                               | [a: 1]
+            'null values'       | new RSQLParser().parse('a==1')     | null
+            'unsupported value' | new RSQLParser().parse('a==1')     | [a: new BigDecimal(1)]
+            'invalid argument'  | new RSQLParser().parse('a==x;b==1') | [a: 1]
+            'invalid boolean'   | new RSQLParser().parse('a==yes')   | [a: true]
+    }
+
+    def 'throw exception for null semantics'() {
+        when:
+            evaluator.withSemantics(new ComparisonOperator('=div='), null)
+        then:
+            thrown IllegalArgumentException
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.eval
+
+import cz.jirutka.rsql.parser.RSQLParser
+import cz.jirutka.rsql.parser.ast.AndNode
+import cz.jirutka.rsql.parser.ast.ComparisonOperator
+import cz.jirutka.rsql.parser.ast.OrNode
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static cz.jirutka.rsql.parser.ast.RSQLOperators.defaultOperators
+
+@Unroll
+class PredicateCompilerTest extends Specification {
+
+    static final PEOPLE = [
+        [name: 'Flynn', age: 32, height: 1.83d],
+        [name: 'Alan',  age: 27, height: 1.75d],
+        [name: 'Quorra', age: 20, height: 1.68d],
+        [name: null,    age: 0,  height: 0.5d]
+    ]
+
+    def compiler = new PredicateCompiler<Map>()
+        .withAccessor('age', new LongAccessor<Map>() {
+            long getLong(Map obj) { obj.age }
+        })
+        .withAccessor('height', new DoubleAccessor<Map>() {
+            double getDouble(Map obj) { obj.height }
+        })
+        .withAccessor('name', new ObjectAccessor<Map, String>() {
+            String get(Map obj) { obj.name }
+            String convert(String arg) { arg }
+        })
+
+
+    def 'evaluate query: #query'() {
+        setup:
+            def predicate = compile(query)
+        expect:
+            PEOPLE.findAll { predicate.test(it) }*.age == expected
+        where:
+            query                                   | expected
+            'age==27'                               | [27]
+            'age!=27'                               | [32, 20, 0]
+            'age=gt=20'                             | [32, 27]
+            'age=ge=20'                             | [32, 27, 20]
+            'age=lt=27'                             | [20, 0]
+            'age=le=27'                             | [27, 20, 0]
+            'age=in=(20,32,99)'                     | [32, 20]
+            'age=out=(20,32)'                       | [27, 0]
+            "age=in=(${(20..40).join(',')})"        | [32, 27, 20]
+            'height==1.75'                          | [27]
+            'height=gt=1.7'                         | [32, 27]
+            'height=le=1.68'                        | [20, 0]
+            'height=in=(1.68,1.83)'                 | [32, 20]
+            'height=out=(1.68,1.83)'                | [27, 0]
+            'name==Alan'                            | [27]
+            'name!=Alan'                            | [32, 20, 0]
+            'name=gt=Flynn'                         | [20]
+            'name=ge=Flynn'                         | [32, 20]
+            'name=lt=Flynn'                         | [27]
+            'name=in=(Flynn,Quorra)'                | [32, 20]
+            'name=out=(Flynn,Quorra)'               | [27, 0]
+            'age=gt=18;height=lt=1.8'               | [27, 20]
+            'age==0,name==Alan,name==Flynn'         | [32, 27, 0]
+            'age=gt=18;name!=Flynn;height=gt=1.7'   | [27]
+            '(age==20,age==32);height=gt=1.7'       | [32]
+    }
+
+    def 'match doubles by == in #query'() {
+        setup:
+            def predicate = compile(query)
+            def values = [0.0d, -0.0d, Double.NaN, 1.5d, -2.0d, 70.0d]
+        expect:
+            values.findIndexValues { predicate.test([height: it]) } == expected
+        where:
+            query                                                 | expected
+            'height=in=(-0.0,NaN,1.5)'                            | [0, 1, 3]
+            'height=out=(-0.0,NaN,1.5)'                           | [2, 4, 5]
+            "height=in=(0.0,NaN,1.5,${(10..20).join(',')})"       | [0, 1, 3]
+            "height=in=(-0.0,NaN,-2.0,${(60..70).join(',')})"     | [0, 1, 4, 5]
+            "height=out=(-0.0,NaN,-2.0,${(60..70).join(',')})"    | [2, 3]
+    }
+
+    def 'compile empty #type node into constant predicate'() {
+        expect:
+            compiler.compile(node).test([:]) == expected
+        where:
+            type  | node             | expected
+            'and' | new AndNode([])  | true
+            'or'  | new OrNode([])   | false
+    }
+
+    def 'use custom operator semantics'() {
+        setup:
+            def divisible = new ComparisonOperator('=div=')
+            def semantics = Mock(OperatorSemantics) {
+                compile(_ as LongAccessor, ['4']) >> { LongAccessor acc, args ->
+                    { obj -> acc.getLong(obj) % 4 == 0 } as Predicate
+                }
+            }
+            def predicate = compiler.withSemantics(divisible, semantics)
+                .compile(new RSQLParser(defaultOperators() + divisible).parse('age=div=4'))
+        expect:
+            PEOPLE.findAll { predicate.test(it) }*.age == [32, 20, 0]
+    }
+
+    def 'throw exception when compiling #desc'() {
+        when:
+            compile(query)
+        then:
+            thrown IllegalArgumentException
+        where:
+            desc                    | query
+            'unknown selector'      | 'weight==80'
+            'invalid long argument' | 'age==old'
+            'invalid double arg'    | 'height=in=(1.8,tall)'
+    }
+
+    def 'throw exception when compiling operator with no semantics'() {
+        setup:
+            def op = new ComparisonOperator('=div=')
+        when:
+            compiler.compile(new RSQLParser(defaultOperators() + op).parse('age=div=4'))
+        then:
+            thrown IllegalArgumentException
+    }
+
+    def 'not modify the original compiler by with* methods'() {
+        when:
+            new PredicateCompiler<Map>().compile(new RSQLParser().parse('age==1'))
+        then:
+            thrown IllegalArgumentException
+    }
+
+
+    def compile(String query) {
+        compiler.compile(new RSQLParser().parse(query))
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.javacc
+
+/**
+ * {@link CharStream} of a query for the reference JavaCC generated parser. The query is
+ * handled as a single line, columns are 1-based.
+ */
+class StringCharStream implements CharStream {
+
+    private final String input
+    private int position = 0
+    private int tokenBegin = 0
+
+    StringCharStream(String input) {
+        this.input = input
+    }
+
+    char readChar() throws IOException {
+        if (position >= input.length()) {
+            throw new IOException('End of input')  // JavaCC token manager detects EOF this way
+        }
+        input.charAt(position++)
+    }
+
+    char BeginToken() throws IOException {
+        tokenBegin = position
+        readChar()
+    }
+
+    void backup(int amount) {
+        position -= amount
+    }
+
+    String GetImage() {
+        input.substring(tokenBegin, position)
+    }
+
+    char[] GetSuffix(int len) {
+        input.substring(position - len, position).toCharArray()
+    }
+
+    void Done() {
+    }
+
+    int getBeginColumn() { tokenBegin + 1 }
+
+    int getBeginLine() { 1 }
+
+    int getEndColumn() { position }
+
+    int getEndLine() { 1 }
+
+    int getColumn() { getEndColumn() }
+
+    int getLine() { getEndLine() }
+}
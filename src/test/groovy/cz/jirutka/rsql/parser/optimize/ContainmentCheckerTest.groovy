@@ -0,0 +1,215 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.optimize
+
+import cz.jirutka.rsql.parser.RSQLParser
+import cz.jirutka.rsql.parser.ast.AndNode
+import cz.jirutka.rsql.parser.ast.ComparisonOperator
+import cz.jirutka.rsql.parser.ast.Node
+import cz.jirutka.rsql.parser.ast.OrNode
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static cz.jirutka.rsql.parser.ast.RSQLOperators.defaultOperators
+import static cz.jirutka.rsql.parser.optimize.ContainmentChecker.Result.*
+
+@Unroll
+class ContainmentCheckerTest extends Specification {
+
+    static final PARSER = new RSQLParser(defaultOperators() + new ComparisonOperator('=like='))
+
+    def checker = new ContainmentChecker().withDefaultOrder(ContainmentChecker.NUMERIC_ORDER)
+
+
+    def '#a implies #b: #expected'() {
+        expect:
+            checker.implies(parse(a), parse(b)) == expected
+        where:
+            a                               | b                               || expected
+            'a==1'                          | 'a==1'                          || YES
+            'a==1;b==2'                     | 'a==1'                          || YES
+            'a==1'                          | 'a==1;b==2'                     || NO
+            'a==1'                          | 'a==1,b==2'                     || YES
+            'a==1,b==2'                     | 'a==1'                          || NO
+            'a==1'                          | 'a==1.0'                        || YES
+            'a==1'                          | 'a==2'                          || NO
+            'a==1'                          | 'a!=2'                          || YES
+            'a!=2'                          | 'a==1'                          || NO
+            'a=gt=5'                        | 'a=gt=1'                        || YES
+            'a=gt=5'                        | 'a=ge=5'                        || YES
+            'a=ge=5'                        | 'a=gt=5'                        || NO
+            'a=gt=1'                        | 'a=gt=5'                        || NO
+            'a=gt=1;a=lt=3'                 | 'a=ge=0;a=le=5'                 || YES
+            'a=gt=1;a=lt=3'                 | 'a=lt=2'                        || NO
+            'a=gt=1;a=lt=3'                 | 'a=gt=2,a=lt=2,a==2'            || YES
+            'a=ge=1;a=le=1'                 | 'a==1'                          || YES
+            'a=gt=3;a=lt=1'                 | 'b==7'                          || YES
+            'a==1;a==2'                     | 'b==7'                          || YES
+            'a=in=(1,2)'                    | 'a=in=(1,2,3)'                  || YES
+            'a=in=(1,2,3)'                  | 'a=in=(1,2)'                    || NO
+            'a=in=(1,2)'                    | 'a==1,a==2'                     || YES
+            'a=in=(1,2)'                    | 'a=le=2'                        || YES
+            'a=in=(1,2);a!=2'               | 'a==1'                          || YES
+            'a=out=(1,2,3)'                 | 'a!=2'                          || YES
+            'a!=2'                          | 'a=out=(1,2,3)'                 || NO
+            'a=out=(1,2)'                   | 'a=gt=5'                        || NO
+            'a=lt=10'                       | 'a=out=(20,30)'                 || YES
+            '(a==1,a==2);b=gt=3'            | 'a=in=(1,2);b=gt=0'             || YES
+            'a==1;(b==1,b==2)'              | '(a==1;b==1),(a==1;b==2)'       || YES
+            '(a==1;b==1),(a==1;b==2)'       | 'a==1;b=in=(1,2)'               || YES
+            'a=gt=1'                        | 'a=gt=1;price=lt=100'           || NO
+            'a=gt=1;price=lt=100'           | 'a=gt=1'                        || YES
+            'a=like=x'                      | 'a=like=x'                      || YES
+            'a=like=x;b==1'                 | 'a=like=x,c==1'                 || YES
+            'a=like=x'                      | 'a=like=y'                      || UNKNOWN
+            'a=gt=1;a=lt=2'                 | 'a==1.5'                        || UNKNOWN
+            'a=like=x;a=in=(1,2)'           | 'a==1'                          || UNKNOWN
+    }
+
+    def 'handle empty logical nodes: #a implies #b'() {
+        expect:
+            checker.implies(a, b) == expected
+        where:
+            a               | b               || expected
+            new AndNode([]) | new AndNode([]) || YES
+            new AndNode([]) | new OrNode([])  || NO
+            new OrNode([])  | new OrNode([])  || YES
+            parse('a==1')   | new AndNode([]) || YES
+            parse('a==1')   | new OrNode([])  || NO
+    }
+
+    def 'compare values as strings by default'() {
+        setup:
+            def strings = new ContainmentChecker()
+        expect:
+            strings.implies(parse('a==1'), parse('a==1.0')) == NO
+            strings.implies(parse('a=gt=b'), parse('a=gt=a')) == YES
+            strings.withOrder('a', ContainmentChecker.NUMERIC_ORDER)
+                .implies(parse('a==1'), parse('a==1.0')) == YES
+    }
+
+    def 'return UNKNOWN when values cannot be compared'() {
+        expect:
+            checker.implies(parse('a=gt=x'), parse('a=gt=1')) == UNKNOWN
+    }
+
+    def 'return UNKNOWN when expansion exceeds the limit of work'() {
+        setup:
+            def a = (1..12).collect { "(a$it==1,b$it==2)" }.join(';')
+        expect:
+            checker.implies(parse(a), parse('c==1')) == NO
+            checker.withMaxWork(1000).implies(parse(a), parse('c==1')) == UNKNOWN
+    }
+
+    def 'contains is implies with swapped arguments'() {
+        expect:
+            checker.contains(parse('a=gt=1'), parse('a=gt=1;price=lt=100')) == YES
+            checker.contains(parse('a=gt=1;price=lt=100'), parse('a=gt=1')) == NO
+    }
+
+    def 'agree with brute-force evaluation'() {
+        setup:
+            def random = new Random(7)
+            def domain = ['-1', '0', '0.5', '1', '1.5', '2', '2.5', '3', '4'].collect { new BigDecimal(it) }
+            def entries = [domain + null, domain + null].combinations().collect { [a: it[0], b: it[1]] }
+            def decided = 0
+        when:
+            3000.times {
+                def a = parse(randomQuery(random, 2))
+                def b = parse(randomQuery(random, 2))
+                def counterexample = entries.any { evaluate(a, it) && !evaluate(b, it) }
+
+                switch (checker.implies(a, b)) {
+                    case YES: assert !counterexample, "$a => $b"; decided++; break
+                    case NO: assert counterexample, "$a =/=> $b"; decided++; break
+                }
+            }
+        then:
+            decided > 2700
+    }
+
+    def 'account for entry with null value: #a implies #b: #expected'() {
+        setup:
+            def entry = [a: null, b: 1G]
+        expect:
+            checker.implies(parse(a), parse(b)) == expected
+            (evaluate(parse(a), entry) && !evaluate(parse(b), entry)) == (expected == NO)
+        where:
+            a             | b                           || expected
+            'a!=1'        | 'a=lt=1,a=gt=1'             || NO
+            'a=out=(1,2)' | 'a=lt=1,a=gt=2,a=in=(1.5)'  || NO
+            'a!=1;b==1'   | 'a=lt=1,a=ge=1,b==1'        || YES
+    }
+
+    def 'throw exception when #name is invalid'() {
+        when:
+            action()
+        then:
+            thrown IllegalArgumentException
+        where:
+            name      | action
+            'node'    | { new ContainmentChecker().implies(null, parse('a==1')) }
+            'order'   | { new ContainmentChecker().withOrder('a', null) }
+            'default' | { new ContainmentChecker().withDefaultOrder(null) }
+            'maxWork' | { new ContainmentChecker().withMaxWork(0) }
+    }
+
+
+    static parse(String query) { PARSER.parse(query) }
+
+    static String randomQuery(Random random, int depth) {
+        if (depth == 0 || random.nextInt(3) == 0) {
+            def op = ['==', '!=', '=lt=', '=le=', '=gt=', '=ge=', '=in=', '=out='][random.nextInt(8)]
+            def args = (0..(op.endsWith('n=') || op == '=out=' ? random.nextInt(3) : 0)).collect { random.nextInt(4) }
+            return "${['a', 'b'][random.nextInt(2)]}$op(${args.join(',')})"
+        }
+        def children = (0..random.nextInt(3)).collect { "(${randomQuery(random, depth - 1)})" }
+        return children.join(random.nextBoolean() ? ';' : ',')
+    }
+
+    static boolean evaluate(Node node, Map entry) {
+        if (node instanceof AndNode) {
+            return node.every { evaluate(it, entry) }
+        } else if (node instanceof OrNode) {
+            return node.any { evaluate(it, entry) }
+        }
+        def value = entry[node.selector] as BigDecimal
+        if (value == null) {
+            return node.operator.symbol in ['!=', '=out=']
+        }
+        def args = node.arguments.collect { new BigDecimal(it) }
+        def cmp = value.compareTo(args[0])
+
+        switch (node.operator.symbol) {
+            case '==': return cmp == 0
+            case '!=': return cmp != 0
+            case '=lt=': return cmp < 0
+            case '=le=': return cmp <= 0
+            case '=gt=': return cmp > 0
+            case '=ge=': return cmp >= 0
+            case '=in=': return args.any { value.compareTo(it) == 0 }
+            case '=out=': return !args.any { value.compareTo(it) == 0 }
+        }
+    }
+}
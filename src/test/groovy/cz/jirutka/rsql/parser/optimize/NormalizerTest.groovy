@@ -0,0 +1,165 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.optimize
+
+import cz.jirutka.rsql.parser.RSQLParser
+import cz.jirutka.rsql.parser.ast.AndNode
+import cz.jirutka.rsql.parser.ast.ArgumentType
+import cz.jirutka.rsql.parser.ast.ComparisonNode
+import cz.jirutka.rsql.parser.ast.ComparisonOperator
+import cz.jirutka.rsql.parser.ast.OrNode
+import cz.jirutka.rsql.parser.ast.SelectorSchema
+import cz.jirutka.rsql.parser.sql.SQLGenerator
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static cz.jirutka.rsql.parser.ast.RSQLOperators.defaultOperators
+
+@Unroll
+class NormalizerTest extends Specification {
+
+    def normalizer = new Normalizer()
+
+
+    def 'normalize #input'() {
+        expect:
+            normalize(input) == parse(expected)
+        where:
+            input                                   | expected
+            'a==1'                                  | 'a==1'
+            '(a==1,(a==2,a==3));b==x;b==x'          | 'a=in=(1,2,3);b==x'
+            'a==1;(b==2;(c==3;d==4))'               | 'a==1;b==2;c==3;d==4'
+            'b==2;a==1'                             | 'a==1;b==2'
+            'a==1;a==1'                             | 'a==1'
+            'a==1,a==1'                             | 'a==1'
+            'a==1,a=in=(3,2),b==1'                  | 'a=in=(1,2,3),b==1'
+            'a==1,a==1,b==1'                        | 'a==1,b==1'
+            'a!=1;a=out=(2,3);b==1'                 | 'a=out=(1,2,3);b==1'
+            'a==1;a==2'                             | 'a==1;a==2'
+            'a!=1,a!=2'                             | 'a!=1,a!=2'
+            'a=in=(c,b,a,b)'                        | 'a=in=(a,b,c)'
+            'a=in=(x,x)'                            | 'a==x'
+            'a=out=(x)'                             | 'a!=x'
+            'a=gt=1,a=gt=1'                         | 'a=gt=1'
+            '(b==1,a==1);(a==1,b==1)'               | 'a==1,b==1'
+            'x==1,(b==1;a==1),(a==1;b==1)'          | 'x==1,(a==1;b==1)'
+            '((x==1,y==1);(y==1,x==1)),z==1'        | 'x==1,y==1,z==1'
+            '(c==1,d==1);a==1;(b==1,b==2)'          | 'a==1;b=in=(1,2);(c==1,d==1)'
+    }
+
+    def 'produce equal trees for equivalent queries'() {
+        expect:
+            normalize(a) == normalize(b)
+        where:
+            a                               | b
+            'a==1,a==2,a==3'                | 'a=in=(3,2,1)'
+            's==x;(t==1,t==2);u!=y'         | 'u!=y;(t=in=(2,1));s==x;s==x'
+    }
+
+    def 'return fixed point: #input'() {
+        setup:
+            def once = normalize(input)
+        expect:
+            normalizer.normalize(once) == once
+        where:
+            input << [
+                '(a==1,(a==2,a==3));b==x;b==x', 'x==1,(b==1;a==1),(a==1;b==1)',
+                'a!=1;a=out=(2,3);(b==1,(b==2;c==3))', '((x==1,y==1);(y==1,x==1)),z==1'
+            ]
+    }
+
+    def 'leave custom operators as is'() {
+        setup:
+            def all = new ComparisonOperator('=all=', true)
+            def parser = new RSQLParser(defaultOperators() + all)
+        expect:
+            normalizer.normalize(parser.parse('b=all=(y,x),b=all=(z)')) == parser.parse('b=all=(z),b=all=(y,x)')
+    }
+
+    def 'keep empty #type node'() {
+        expect:
+            normalizer.normalize(node) == node
+        where:
+            type  | node
+            'and' | new AndNode([])
+            'or'  | new OrNode([])
+    }
+
+    def 'keep typed arguments of schema-parsed query: #input'() {
+        setup:
+            def parser = new RSQLParser().withSchema(new SelectorSchema()
+                .withSelector('a', ArgumentType.LONG)
+                .withSelector('t', ArgumentType.TIMESTAMP))
+            def normalized = normalizer.normalize(parser.parse(input))
+        expect:
+            normalized == parser.parse(expected)
+            typedValues(normalized) == typedValues(parser.parse(expected))
+            typedValues(normalized).every { it != null }
+        where:
+            input                                       | expected
+            'a=in=(3,1,2,1)'                            | 'a=in=(1,2,3)'
+            'a==3,a=in=(2,1)'                           | 'a=in=(1,2,3)'
+            'a!=3;a=out=(2,1);t==2020-01-01'            | 'a=out=(1,2,3);t==2020-01-01'
+            'a=in=(5,5)'                                | 'a==5'
+            't==2020-01-02,t==2020-01-01'               | 't=in=(2020-01-01,2020-01-02)'
+    }
+
+    def 'not merge comparisons with and without typed arguments'() {
+        setup:
+            def typed = new RSQLParser().withSchema(new SelectorSchema().withSelector('a', ArgumentType.LONG))
+            def node = new OrNode([typed.parse('a==1'), parse('a==2'), parse('a==1')])
+        when:
+            def normalized = normalizer.normalize(node)
+        then:
+            normalized.children.size() == 3
+            normalized.children.count { it.typedArguments != null } == 1
+            normalizer.normalize(normalized) == normalized
+    }
+
+    def 'bind typed values of normalized query in SQL'() {
+        setup:
+            def parser = new RSQLParser().withSchema(new SelectorSchema().withSelector('a', ArgumentType.LONG))
+            def query = new SQLGenerator().withColumn('a', 'a')
+                .generate(normalizer.normalize(parser.parse('a==2,a==1')))
+        expect:
+            query.parameters == [1L, 2L]
+    }
+
+    def 'throw exception when node is null'() {
+        when:
+            normalizer.normalize(null)
+        then:
+            thrown IllegalArgumentException
+    }
+
+
+    def parse(String query) { new RSQLParser().parse(query) }
+
+    def normalize(String query) { normalizer.normalize(parse(query)) }
+
+    def typedValues(node) {
+        node instanceof ComparisonNode ? [node.typedArguments?.values]
+                                       : node.children.collectMany { typedValues(it) }
+    }
+}
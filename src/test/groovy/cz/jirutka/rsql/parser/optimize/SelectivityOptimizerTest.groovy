@@ -0,0 +1,168 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.optimize
+
+import cz.jirutka.rsql.parser.QueryGenerator
+import cz.jirutka.rsql.parser.RSQLParser
+import cz.jirutka.rsql.parser.RSQLParserException
+import cz.jirutka.rsql.parser.ast.AndNode
+import cz.jirutka.rsql.parser.ast.ComparisonNode
+import cz.jirutka.rsql.parser.ast.ComparisonOperator
+import cz.jirutka.rsql.parser.ast.OrNode
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static cz.jirutka.rsql.parser.ast.RSQLOperators.*
+
+@Unroll
+class SelectivityOptimizerTest extends Specification {
+
+    static final PARSER = new RSQLParser(defaultOperators() + new ComparisonOperator('=foo='))
+
+    def optimizer = new SelectivityOptimizer(new HeuristicStatistics())
+
+
+    def 'reorder #input'() {
+        expect:
+            optimize(input) == parse(expected)
+        where:
+            input                           | expected
+            'a!=1;b==2'                     | 'b==2;a!=1'
+            'a==1,b!=2'                     | 'b!=2,a==1'
+            'a=gt=1;b=in=(1,2)'             | 'b=in=(1,2);a=gt=1'
+            'a=out=(1,2);b=out=(1,2,3)'     | 'b=out=(1,2,3);a=out=(1,2)'
+            'a!=1;(b==1,c==1)'              | '(b==1,c==1);a!=1'
+            'a==1,(b==1;c==1)'              | 'a==1,(b==1;c==1)'
+            '(a==1,b!=1);(c!=1,d==1)'       | '(b!=1,a==1);(c!=1,d==1)'
+            'x!=1;y=foo=1;z==1'             | 'z==1;y=foo=1;x!=1'
+    }
+
+    def 'keep the same instance if already ordered: #input'() {
+        setup:
+            def node = parse(input)
+        expect:
+            optimizer.optimize(node).is(node)
+        where:
+            input << ['a==1', 'b==1;a==1', 'a==1;b!=2', 'a!=1,b==2', 'c==1,(a==1;b==1)']
+    }
+
+    def 'use selectivity and cost of selector'() {
+        setup:
+            def stats = new HeuristicStatistics()
+                .withSelectivity('status', EQUAL, 0.95)
+                .withCost('text', null, 100)
+            def optimizer = new SelectivityOptimizer(stats)
+        expect:
+            optimizer.optimize(parse(input)) == parse(expected)
+        where:
+            input                    | expected
+            'status==A;a!=1'         | 'a!=1;status==A'
+            'status!=A;a!=1'         | 'status!=A;a!=1'
+            'text==x;a!=1'           | 'a!=1;text==x'
+            'text=gt=x;a=gt=1'       | 'a=gt=1;text=gt=x'
+    }
+
+    def 'use custom statistics'() {
+        setup:
+            def stats = [
+                selectivity: { ComparisonNode node -> node.selector == 'rare' ? 0.001d : 0.5d },
+                cost: { ComparisonNode node -> node.selector == 'slow' ? 50d : 1d }
+            ] as ClauseStatistics
+            def optimizer = new SelectivityOptimizer(stats)
+        expect:
+            optimizer.optimize(parse('slow==1;a==1;rare==1')) == parse('rare==1;a==1;slow==1')
+            optimizer.optimize(parse('slow==1,a==1,rare==1')) == parse('a==1,slow==1,rare==1')
+    }
+
+    def 'put operands that never stop evaluation last, by cost'() {
+        setup:
+            def stats = new HeuristicStatistics()
+                .withSelectivity('all', null, 1.0)
+                .withSelectivity('none', null, 0.0)
+                .withCost('slow', null, 10)
+                .withSelectivity('slow', null, 1.0)
+            def optimizer = new SelectivityOptimizer(stats)
+        expect:
+            optimizer.optimize(parse('slow==1;all==1;a==1')) == parse('a==1;all==1;slow==1')
+            optimizer.optimize(parse('none==1,a==1')) == parse('a==1,none==1')
+            optimizer.optimize(parse('a==1;none==1')) == parse('none==1;a==1')
+    }
+
+    def 'estimate selectivity of #input'() {
+        expect:
+            Math.abs(optimizer.selectivity(parse(input)) - expected) < 1e-9
+        where:
+            input               | expected
+            'a==1'              | 0.1
+            'a==1;b!=1'         | 0.09
+            'a==1,b==1'         | 0.19
+            'a=in=(1,2,3)'      | 0.3
+            'a=out=(1,2,3)'     | 0.7
+            'a=ge=1'            | 1 / 3
+    }
+
+    def 'produce equivalent expression'() {
+        setup:
+            def random = new Random(42)
+            def normalizer = new Normalizer()
+        expect:
+            1000.times {
+                def node
+                try {
+                    node = parse(QueryGenerator.query(random, 4))
+                } catch (RSQLParserException ex) {
+                    return  // the generator produces also invalid queries
+                }
+                assert normalizer.normalize(optimizer.optimize(node)) == normalizer.normalize(node)
+            }
+    }
+
+    def 'keep empty #type node'() {
+        expect:
+            optimizer.optimize(node).is(node)
+        where:
+            type  | node
+            'and' | new AndNode([])
+            'or'  | new OrNode([])
+    }
+
+    def 'throw exception when #name is invalid'() {
+        when:
+            action()
+        then:
+            thrown IllegalArgumentException
+        where:
+            name          | action
+            'statistics'  | { new SelectivityOptimizer(null) }
+            'node'        | { new SelectivityOptimizer(new HeuristicStatistics()).optimize(null) }
+            'selectivity' | { new HeuristicStatistics().withSelectivity('a', null, 1.5) }
+            'cost'        | { new HeuristicStatistics().withCost('a', null, -1) }
+            'selector'    | { new HeuristicStatistics().withCost(null, null, 1) }
+    }
+
+
+    def parse(String query) { PARSER.parse(query) }
+
+    def optimize(String query) { optimizer.optimize(parse(query)) }
+}
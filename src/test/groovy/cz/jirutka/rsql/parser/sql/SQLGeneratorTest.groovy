@@ -0,0 +1,175 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jakub Jirutka <jakub@jirutka.cz>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.jirutka.rsql.parser.sql
+
+import cz.jirutka.rsql.parser.RSQLParser
+import cz.jirutka.rsql.parser.ast.AndNode
+import cz.jirutka.rsql.parser.ast.ArgumentType
+import cz.jirutka.rsql.parser.ast.ComparisonOperator
+import cz.jirutka.rsql.parser.ast.OrNode
+import cz.jirutka.rsql.parser.ast.SelectorSchema
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static cz.jirutka.rsql.parser.ast.RSQLOperators.defaultOperators
+
+@Unroll
+class SQLGeneratorTest extends Specification {
+
+    def generator = new SQLGenerator()
+        .withColumn('a', 't.a')
+        .withColumn('b', 't.b')
+        .withColumn('c', 'c')
+
+
+    def 'generate #input'() {
+        when:
+            def query = generate(input)
+        then:
+            query.sql == sql
+            query.parameters == parameters
+            query.parameterCount == parameters.size()
+        where:
+            input                        | sql                                              | parameters
+            'a==1'                       | 't.a = ?'                                        | ['1']
+            'a!=1'                       | 't.a <> ?'                                       | ['1']
+            'a=gt=1;a>=2;a<3;a=le=4'     | 't.a > ? AND t.a >= ? AND t.a < ? AND t.a <= ?'  | ['1', '2', '3', '4']
+            'a=in=x'                     | 't.a IN (?)'                                     | ['x']
+            'a=in=(x,y)'                 | 't.a IN (?, ?)'                                  | ['x', 'y']
+            'a=in=(x,y,z)'               | 't.a IN (?, ?, ?, ?)'                            | ['x', 'y', 'z', 'z']
+            'a=out=(1,2,3,4,5)'          | 't.a NOT IN (?, ?, ?, ?, ?, ?, ?, ?)'            | ['1', '2', '3', '4', '5', '5', '5', '5']
+            'a==1,b==2'                  | 't.a = ? OR t.b = ?'                             | ['1', '2']
+            'a==1;(b==2,c==3)'           | 't.a = ? AND (t.b = ? OR c = ?)'                 | ['1', '2', '3']
+            "(a==1;b=='x y'),c=='; --'"  | '(t.a = ? AND t.b = ?) OR c = ?'                 | ['1', 'x y', '; --']
+    }
+
+    def 'generate the same SQL instance for the same shape'() {
+        when:
+            def first = generate('a=in=(1,2,3);b==x')
+            def second = generate('a=in=(7,8,9,10);b==y')
+        then:
+            first.sql.is(second.sql)
+            second.parameters == ['7', '8', '9', '10', 'y']
+    }
+
+    def 'generate different SQL for different shapes: #a vs #b'() {
+        expect:
+            !generate(a).sql.is(generate(b).sql)
+        where:
+            a               | b
+            'a==1'          | 'b==1'
+            'a==1'          | 'a!=1'
+            'a=in=(1,2)'    | 'a=in=(1,2,3)'
+            'a==1;b==1'     | 'a==1,b==1'
+            '(a==1;b==1),c==1' | 'a==1;(b==1,c==1)'
+    }
+
+    def 'generate SQL without cache'() {
+        setup:
+            def uncached = generator.withCacheSize(0)
+        expect:
+            uncached.cacheSize == 0
+            uncached.generate(parse('a==1')).sql == 't.a = ?'
+            !uncached.generate(parse('a==1')).sql.is(uncached.generate(parse('a==2')).sql)
+    }
+
+    def 'evict least recently used shapes'() {
+        setup:
+            def small = generator.withCacheSize(2)
+            def sql = small.generate(parse('a==1')).sql
+        when:
+            small.generate(parse('b==1'))
+            small.generate(parse('a==2'))
+            small.generate(parse('c==1'))
+        then:
+            small.generate(parse('a==3')).sql.is(sql)
+    }
+
+    def 'bind converted values of typed selectors'() {
+        setup:
+            def parser = new RSQLParser().withSchema(new SelectorSchema().withSelector('a', ArgumentType.LONG))
+        when:
+            def query = generator.generate(parser.parse('a=in=(1,2,3);b==4'))
+        then:
+            query.parameters == [1L, 2L, 3L, 3L, '4']
+            query.getParameter(1) == 1L
+            query.getParameter(5) == '4'
+    }
+
+    def 'generate constant for empty #type node'() {
+        expect:
+            generator.generate(node).sql == sql
+        where:
+            type  | node            | sql
+            'and' | new AndNode([]) | '1 = 1'
+            'or'  | new OrNode([])  | '1 = 0'
+    }
+
+    def 'use custom dialect'() {
+        setup:
+            def dialect = new StandardSQLDialect() {
+                void appendPlaceholder(StringBuilder sql, int index) {
+                    sql.append('$').append(index)
+                }
+            }
+        expect:
+            generator.withDialect(dialect).generate(parse('a==1;b=in=(x,y,z)')).sql ==
+                't.a = $1 AND t.b IN ($2, $3, $4, $5)'
+    }
+
+    def 'reject selector with no column'() {
+        when:
+            generate('a==1;x==2')
+        then:
+            def ex = thrown IllegalArgumentException
+            ex.message.contains('x')
+    }
+
+    def 'reject unsupported operator'() {
+        setup:
+            def parser = new RSQLParser(defaultOperators() + new ComparisonOperator('=foo='))
+        when:
+            generator.generate(parser.parse('a=foo=1'))
+        then:
+            thrown UnsupportedOperationException
+    }
+
+    def 'throw exception when #name is null'() {
+        when:
+            action()
+        then:
+            thrown IllegalArgumentException
+        where:
+            name      | action
+            'node'    | { new SQLGenerator().generate(null) }
+            'column'  | { new SQLGenerator().withColumn('a', null) }
+            'dialect' | { new SQLGenerator().withDialect(null) }
+            'size'    | { new SQLGenerator().withCacheSize(-1) }
+    }
+
+
+    def parse(String query) { new RSQLParser().parse(query) }
+
+    def generate(String query) { generator.generate(parse(query)) }
+}